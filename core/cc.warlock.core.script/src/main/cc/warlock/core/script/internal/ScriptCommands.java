@@ -98,7 +98,7 @@ public class ScriptCommands implements IScriptCommands, IStreamListener, IRoomLi
 	}
 	
 	private void setClient(IWarlockClient client) {
-		client.addStreamListener(IWarlockClient.MAIN_STREAM_NAME, this);
+		client.addStreamListener(IWarlockClient.MAIN_STREAM_NAME, this, IStream.SCRIPT_CONSUMER);
 		client.addRoomListener(this);
 	}
 	
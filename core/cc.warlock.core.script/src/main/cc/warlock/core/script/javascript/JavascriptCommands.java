@@ -27,6 +27,7 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -34,6 +35,8 @@ import org.mozilla.javascript.Context;
 import org.mozilla.javascript.EcmaError;
 import org.mozilla.javascript.Script;
 
+import cc.warlock.core.client.logging.LogIndex;
+import cc.warlock.core.client.logging.LogSearchHit;
 import cc.warlock.core.script.IMatch;
 import cc.warlock.core.script.IScriptCommands;
 import cc.warlock.core.script.IScriptFileInfo;
@@ -260,6 +263,26 @@ public class JavascriptCommands {
 		}
 	}
 	
+	/**
+	 * @return up to limit lines from past logs with phrase in them, the most recent first
+	 */
+	public LogSearchHit[] searchLogs(String phrase, int limit) throws IOException {
+		script.checkStop();
+		
+		List<LogSearchHit> hits = LogIndex.getIndex(commands.getClient()).search(phrase, limit);
+		return hits.toArray(new LogSearchHit[hits.size()]);
+	}
+	
+	/**
+	 * @return up to limit lines from past logs matching regex, the most recent first
+	 */
+	public LogSearchHit[] searchLogsRe(String regex, int limit) throws IOException {
+		script.checkStop();
+		
+		List<LogSearchHit> hits = LogIndex.getIndex(commands.getClient()).searchRegex(regex, limit);
+		return hits.toArray(new LogSearchHit[hits.size()]);
+	}
+	
 	protected void checkStop() {
 		script.checkStop();
 	}
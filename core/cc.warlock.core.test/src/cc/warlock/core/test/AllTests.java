@@ -33,6 +33,18 @@ public class AllTests {
 		
 		suite.addTest(new JUnit4TestAdapter(StreamTest.class));
 		suite.addTest(new JUnit4TestAdapter(SGETest.class));
+		suite.addTest(new JUnit4TestAdapter(StormFrontTokenizerTest.class));
+		suite.addTest(new JUnit4TestAdapter(StreamEventRingTest.class));
+		suite.addTest(new JUnit4TestAdapter(WarlockStringTest.class));
+		suite.addTest(new JUnit4TestAdapter(StreamHistoryTest.class));
+		suite.addTest(new JUnit4TestAdapter(BinaryLogTest.class));
+		suite.addTest(new JUnit4TestAdapter(LogIndexTest.class));
+		suite.addTest(new JUnit4TestAdapter(WarlockMarkerTreeTest.class));
+		suite.addTest(new JUnit4TestAdapter(StreamFilterEngineTest.class));
+		suite.addTest(new JUnit4TestAdapter(HighlightEngineTest.class));
+		suite.addTest(new JUnit4TestAdapter(LineStoreTest.class));
+		suite.addTest(new JUnit4TestAdapter(StormFrontConnectionTest.class));
+		suite.addTest(new JUnit4TestAdapter(TagDispatcherTest.class));
 //		suite.addTest(new JUnit4TestAdapter(ServerScriptTest.class));
 		return suite;
 	}
@@ -0,0 +1,141 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cc.warlock.core.client.IWarlockStyle;
+import cc.warlock.core.client.WarlockString;
+import cc.warlock.core.client.internal.WarlockStyle;
+import cc.warlock.core.client.logging.BinaryLogReader;
+import cc.warlock.core.client.logging.BinaryLogWriter;
+import cc.warlock.core.client.logging.ILogRecordHandler;
+import cc.warlock.core.client.logging.LogRecord;
+
+public class BinaryLogTest {
+
+	protected static class Collector implements ILogRecordHandler {
+		public ArrayList<LogRecord> records = new ArrayList<LogRecord>();
+		
+		public void handleRecord(LogRecord record) {
+			records.add(record);
+		}
+	}
+	
+	protected static File createLog() throws IOException {
+		File file = File.createTempFile("warlock", BinaryLogWriter.EXTENSION);
+		file.delete();
+		file.deleteOnExit();
+		new File(file.getPath() + BinaryLogWriter.INDEX_EXTENSION).deleteOnExit();
+		return file;
+	}
+	
+	// enough records for several blocks, 10ms apart
+	protected static void writeRecords(BinaryLogWriter writer, int from, int to) throws IOException {
+		WarlockStyle speech = new WarlockStyle("speech");
+		speech.setBold(true);
+		for(int i = from; i < to; i++) {
+			WarlockString text = new WarlockString("Someone says, ");
+			int run = text.openStyle(speech);
+			text.append("\"<" + i + ">\"");
+			text.closeStyle(run);
+			text.append("\n");
+			writer.writeText(i * 10, i % 2 == 0 ? "main" : "thoughts", text);
+			writer.writePrompt(i * 10, "main", ">");
+		}
+	}
+	
+	@Test
+	public void testReadRange() throws IOException {
+		File file = createLog();
+		BinaryLogWriter writer = new BinaryLogWriter(file);
+		writeRecords(writer, 0, 5000);
+		writer.close();
+		
+		BinaryLogReader reader = new BinaryLogReader(file);
+		Assert.assertTrue(reader.getBlockCount() > 1);
+		Assert.assertEquals(10000, reader.getRecordCount());
+		Assert.assertEquals(0L, reader.getStartTime());
+		Assert.assertEquals(49990L, reader.getEndTime());
+		
+		Collector collector = new Collector();
+		reader.read(30000, 30040, "main", collector);
+		Assert.assertEquals(8, collector.records.size());
+		LogRecord record = collector.records.get(0);
+		Assert.assertEquals(LogRecord.Type.TEXT, record.getType());
+		Assert.assertEquals(30000L, record.getTime());
+		Assert.assertEquals("Someone says, \"<3000>\"\n", record.getText().toString());
+		Assert.assertEquals(1, record.getText().getRunCount());
+		Assert.assertEquals(14, record.getText().getRunStart(0));
+		Assert.assertEquals("speech", record.getText().getRunStyle(0).getName());
+		Assert.assertTrue(record.getText().getRunStyle(0).isBold());
+		Assert.assertEquals(LogRecord.Type.PROMPT, collector.records.get(1).getType());
+		
+		StringWriter html = new StringWriter();
+		reader.exportHtml(10, 10, "thoughts", null, html);
+		Assert.assertTrue(html.toString().contains(
+				"Someone says, <span class=\"speech\" style=\"font-weight: bold;\">&quot;&lt;1&gt;&quot;</span>\n"));
+		
+		// preset names end up in a style sheet, so they can't close it
+		WarlockStyle preset = new WarlockStyle("x</style>");
+		preset.setItalic(true);
+		html = new StringWriter();
+		reader.exportHtml(10, 10, "thoughts", Collections.<String, IWarlockStyle>singletonMap(preset.getName(), preset), html);
+		Assert.assertTrue(html.toString().contains(".x__style_ { font-style: italic; }\n</style>"));
+	}
+	
+	@Test
+	public void testRecovery() throws IOException {
+		File file = createLog();
+		BinaryLogWriter writer = new BinaryLogWriter(file);
+		writeRecords(writer, 0, 3000);
+		writer.close();
+		
+		// a block cut off part way, and an index that never heard of it
+		RandomAccessFile log = new RandomAccessFile(file, "rw");
+		long length = log.length();
+		log.setLength(length - 10);
+		log.close();
+		BinaryLogReader reader = new BinaryLogReader(file);
+		int blocks = reader.getBlockCount();
+		
+		// times carry on from the last block left, even from earlier
+		writer = new BinaryLogWriter(file);
+		Assert.assertEquals(reader.getEndTime(), writer.checkTime(0));
+		writeRecords(writer, 3000, 3010);
+		writer.close();
+		
+		reader = new BinaryLogReader(file);
+		Assert.assertEquals(blocks + 1, reader.getBlockCount());
+		Collector collector = new Collector();
+		reader.read(30000, Long.MAX_VALUE, null, collector);
+		Assert.assertEquals(20, collector.records.size());
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cc.warlock.core.client.IWarlockHighlight;
+import cc.warlock.core.client.internal.HighlightEngine;
+import cc.warlock.core.client.internal.WarlockHighlight;
+import cc.warlock.core.client.internal.WarlockStyle;
+
+public class HighlightEngineTest {
+
+	private static WarlockHighlight highlight(String text, boolean literal, boolean caseSensitive, boolean fullLine) {
+		WarlockStyle style = new WarlockStyle(text);
+		style.setFullLine(fullLine);
+		return new WarlockHighlight(text, literal, caseSensitive, false, style);
+	}
+	
+	@Test
+	public void testMatch() {
+		ArrayList<IWarlockHighlight> highlights = new ArrayList<IWarlockHighlight>();
+		highlights.add(highlight("goblin", true, false, false));
+		highlights.add(highlight("You've gained a new rank in .+\\.", false, true, true));
+		highlights.add(highlight("(Xibar|Katamba) rises", false, false, false));
+		highlights.add(highlight("cat|dog", false, true, false));
+		highlights.add(highlight("[0-9]+ silver", false, false, false));
+		highlights.add(highlight("(bad", false, true, false));
+		highlights.add(null);
+		HighlightEngine engine = new HighlightEngine(highlights.iterator());
+		Assert.assertEquals(5, engine.size());
+		
+		String text = "A GOBLIN hits a Goblin.\nYou've gained a new rank in Stealth.\n"
+			+ "KATAMBA RISES, the dog sleeps\n12 Silver and 3 copper";
+		List<HighlightEngine.Match> matches = engine.match(text);
+		
+		ArrayList<String> found = new ArrayList<String>();
+		for(HighlightEngine.Match match : matches)
+			found.add(match.getHighlight().getText() + ":" + text.substring(match.getStart(), match.getEnd()));
+		
+		// every match an engine without gates finds, in the same order
+		ArrayList<String> expected = new ArrayList<String>();
+		for(IWarlockHighlight highlight : highlights) {
+			if(highlight == null || highlight.getText().equals("(bad"))
+				continue;
+			Matcher m = highlight.getPattern().matcher(text);
+			while(m.find()) {
+				String s = m.group();
+				if(highlight.getStyle().isFullLine())
+					s = "You've gained a new rank in Stealth.\n";
+				expected.add(highlight.getText() + ":" + s);
+			}
+		}
+		Assert.assertEquals(expected, found);
+		Assert.assertEquals(6, found.size());
+		
+		Assert.assertTrue(engine.match("nothing to see").isEmpty());
+		
+		Assert.assertTrue(engine.isCurrent());
+		((WarlockHighlight)highlights.get(0)).setText("orc");
+		Assert.assertFalse(engine.isCurrent());
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cc.warlock.core.client.IWarlockStyle;
+import cc.warlock.core.client.WarlockString;
+import cc.warlock.core.client.internal.LineStore;
+import cc.warlock.core.client.internal.WarlockStyle;
+
+public class LineStoreTest {
+
+	@Test
+	public void testLines() {
+		LineStore store = new LineStore(LineStore.DEFAULT_BYTE_LIMIT);
+		IWarlockStyle bold = new WarlockStyle("bold");
+		IWarlockStyle link = new WarlockStyle("link");
+		
+		WarlockString line = new WarlockString("You see ");
+		line.append(new WarlockString("a goblin", bold));
+		line.append(".\n");
+		line.addRun(link, 10, 16, 1);
+		
+		Assert.assertEquals(0L, store.append(new WarlockString("\n")));
+		Assert.assertEquals(1L, store.append(line));
+		Assert.assertEquals(2L, store.getEndLineNumber());
+		
+		WarlockString read = store.getLine(1);
+		Assert.assertEquals("You see a goblin.\n", read.toString());
+		Assert.assertEquals(2, read.getRunCount());
+		Assert.assertSame(bold, read.getRunStyle(0));
+		Assert.assertEquals(8, read.getRunStart(0));
+		Assert.assertEquals(16, read.getRunEnd(0));
+		Assert.assertSame(link, read.getRunStyle(1));
+		Assert.assertEquals(1, read.getRunDepth(1));
+		Assert.assertEquals("\n", store.getLine(0).toString());
+		Assert.assertNull(store.getLine(2));
+		
+		store.clear();
+		Assert.assertNull(store.getLine(1));
+		Assert.assertEquals(2L, store.getFirstLineNumber());
+		Assert.assertEquals(0L, store.getBytesUsed());
+	}
+	
+	@Test
+	public void testByteLimit() {
+		// lines too big for two to share a segment
+		StringBuilder big = new StringBuilder();
+		for(int i = 0; i < 300000; i++)
+			big.append('x');
+		LineStore store = new LineStore(5L << 19);
+		for(int i = 0; i < 5; i++)
+			store.append(new WarlockString(i + big.toString()));
+		
+		Assert.assertEquals(3L, store.getFirstLineNumber());
+		Assert.assertEquals(5L, store.getEndLineNumber());
+		Assert.assertNull(store.getLine(2));
+		Assert.assertTrue(store.getLine(3).toString().startsWith("3x"));
+		Assert.assertTrue(store.getLine(4).toString().startsWith("4x"));
+		Assert.assertTrue(store.getBytesUsed() <= 5L << 19);
+	}
+}
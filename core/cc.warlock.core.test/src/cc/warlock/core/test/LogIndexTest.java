@@ -0,0 +1,166 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cc.warlock.core.client.WarlockString;
+import cc.warlock.core.client.logging.BinaryLogWriter;
+import cc.warlock.core.client.logging.LogIndex;
+import cc.warlock.core.client.logging.LogSearchHit;
+
+public class LogIndexTest {
+
+	protected static final long YESTERDAY = System.currentTimeMillis() - 2 * 24 * 60 * 60 * 1000L;
+	
+	protected static File createDirectory() throws IOException {
+		File directory = File.createTempFile("warlock", "logs");
+		directory.delete();
+		directory.mkdirs();
+		return directory;
+	}
+	
+	protected static void delete(File file) {
+		File[] files = file.listFiles();
+		if(files != null) {
+			for(File child : files)
+				delete(child);
+		}
+		file.delete();
+	}
+	
+	protected static void writeLog(File file, String text, long modified) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		if(file.getName().endsWith(".gz"))
+			out = new GZIPOutputStream(out);
+		out.write(text.getBytes("UTF-8"));
+		out.close();
+		file.setLastModified(modified);
+	}
+	
+	protected static LogIndex update(File directory) {
+		LogIndex index = LogIndex.getIndex(directory);
+		index.update();
+		Assert.assertTrue(index.waitForUpdate(10000));
+		return index;
+	}
+	
+	@Test
+	public void testSearch() throws IOException {
+		File directory = createDirectory();
+		try {
+			writeLog(new File(directory, "Tester-01-01-2010.txt"),
+					"[1:2:3] Someone says, \"Hello there.\"\r\n[1:2:4] Obvious exits: north, east.\n", YESTERDAY);
+			writeLog(new File(directory, "Tester-01-02-2010.txt.gz"),
+					"[2:0:0] Someone whispers, \"hello THERE\"\n[2:0:1] You see a goblin.\n", YESTERDAY + 1000);
+			// today's log is still being written
+			writeLog(new File(directory, "Tester-today.txt"), "hello there, again\n", System.currentTimeMillis());
+			
+			File binary = new File(directory, "Tester-01-03-2010" + BinaryLogWriter.EXTENSION);
+			BinaryLogWriter writer = new BinaryLogWriter(binary);
+			writer.writeText(0, "main", new WarlockString("A goblin says, \"hello there\"\n"));
+			writer.close();
+			binary.setLastModified(YESTERDAY + 2000);
+			
+			LogIndex index = update(directory);
+			List<LogSearchHit> hits = index.search("Hello There", 10);
+			Assert.assertEquals(3, hits.size());
+			Assert.assertEquals("A goblin says, \"hello there\"", hits.get(0).getText());
+			Assert.assertEquals("[2:0:0] Someone whispers, \"hello THERE\"", hits.get(1).getText());
+			Assert.assertEquals("[1:2:3] Someone says, \"Hello there.\"", hits.get(2).getText());
+			Assert.assertEquals(1, hits.get(2).getLineNumber());
+			Assert.assertEquals(1, index.search("Hello There", 1).size());
+			
+			// the words are there, the phrase isn't
+			Assert.assertEquals(0, index.search("there hello", 10).size());
+			// timestamps aren't words
+			Assert.assertEquals(0, index.search("1", 10).size());
+			
+			hits = index.searchRegex("exits: \\w+, east", 10);
+			Assert.assertEquals(1, hits.size());
+			Assert.assertEquals(2, hits.get(0).getLineNumber());
+			Assert.assertEquals(2, index.searchRegex("gob(lin)?", 10).size());
+			Assert.assertEquals(2, index.searchRegex("whispers|exits", 10).size());
+		} finally {
+			delete(directory);
+		}
+	}
+	
+	@Test
+	public void testRegexEscapes() throws IOException {
+		File directory = createDirectory();
+		try {
+			writeLog(new File(directory, "Tester-01-01-2010.txt"), "You see Abcdef.\n", YESTERDAY);
+			LogIndex index = update(directory);
+			// the letters after these escapes aren't text to look for
+			Assert.assertEquals(1, index.searchRegex("\\u0041bcdef", 10).size());
+			Assert.assertEquals(1, index.searchRegex("\\x41bcdef", 10).size());
+			Assert.assertEquals(1, index.searchRegex("\\0101bcdef", 10).size());
+		} finally {
+			delete(directory);
+		}
+	}
+	
+	@Test
+	public void testUpdate() throws IOException {
+		File directory = createDirectory();
+		try {
+			File log = new File(directory, "Tester-01-01-2010.txt");
+			writeLog(log, "You see a goblin.\n", YESTERDAY);
+			LogIndex index = update(directory);
+			Assert.assertEquals(1, index.search("goblin", 10).size());
+			
+			// changed logs are indexed again, deleted ones are dropped
+			writeLog(log, "You see an orc.\nYou see a troll.\n", YESTERDAY + 1000);
+			update(directory);
+			Assert.assertEquals(0, index.search("goblin", 10).size());
+			Assert.assertEquals(1, index.search("orc", 10).size());
+			
+			// many small updates are merged into fewer segments
+			for(int i = 0; i < 40; i++) {
+				writeLog(new File(directory, "Tester-02-" + i + "-2010.txt"), "goblin number " + i + "\n", YESTERDAY + 2000 + i);
+				update(directory);
+			}
+			Assert.assertTrue(index.getSegmentCount() <= 32);
+			List<LogSearchHit> hits = index.search("goblin number", 100);
+			Assert.assertEquals(40, hits.size());
+			Assert.assertEquals("goblin number 39", hits.get(0).getText());
+			
+			// a new index on the same directory picks up where the old one left off
+			log.delete();
+			LogIndex reloaded = new LogIndex(directory) { };
+			Assert.assertEquals(index.getSegmentCount(), reloaded.getSegmentCount());
+			Assert.assertEquals(40, reloaded.search("goblin number", 100).size());
+			Assert.assertEquals(0, reloaded.search("orc", 10).size());
+		} finally {
+			delete(directory);
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cc.warlock.core.network.IConnection;
+import cc.warlock.core.network.IConnection.ErrorType;
+import cc.warlock.core.network.IConnectionListener;
+import cc.warlock.core.stormfront.network.StormFrontConnection;
+
+public class StormFrontConnectionTest {
+
+	@Test
+	public void testConnectRefused() throws Exception {
+		// a port nothing listens on
+		ServerSocket socket = new ServerSocket(0);
+		int port = socket.getLocalPort();
+		socket.close();
+		
+		final CountDownLatch parserDone = new CountDownLatch(1);
+		final ErrorType[] error = new ErrorType[1];
+		StormFrontConnection connection = new StormFrontConnection(null, "key") {
+			@Override
+			protected void disconnected() {
+				// the parser thread's last call
+				parserDone.countDown();
+			}
+		};
+		connection.addConnectionListener(new IConnectionListener() {
+			public void connected(IConnection connection) {}
+			public void dataReady(IConnection connection, String data) {}
+			public void dataSent(IConnection connection, String data) {}
+			public void disconnected(IConnection connection) {}
+			public void connectionError(IConnection connection, ErrorType errorType) {
+				error[0] = errorType;
+			}
+		});
+		connection.connect("127.0.0.1", port);
+		
+		Assert.assertTrue(parserDone.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals(ErrorType.ConnectionRefused, error[0]);
+		Assert.assertFalse(connection.isConnected());
+	}
+	
+	@Test
+	public void testKeySentOnConnect() throws Exception {
+		ServerSocket server = new ServerSocket(0);
+		try {
+			server.setSoTimeout(10000);
+			// a loopback connect finishes about as soon as it starts, so the
+			// key is written from channelConnected() before connect() returns
+			StormFrontConnection connection = new StormFrontConnection(null, "KEY") {
+				@Override
+				protected void disconnected() {
+					// there's no client to tell
+				}
+			};
+			connection.connect("127.0.0.1", server.getLocalPort());
+			Socket socket = server.accept();
+			try {
+				socket.setSoTimeout(10000);
+				BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+				Assert.assertEquals("<c>KEY", in.readLine());
+				Assert.assertTrue(in.readLine().startsWith("<c>/FE:STORMFRONT"));
+			} finally {
+				connection.disconnect();
+				socket.close();
+			}
+		} finally {
+			server.close();
+		}
+	}
+}
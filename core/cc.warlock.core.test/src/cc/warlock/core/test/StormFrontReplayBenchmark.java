@@ -0,0 +1,210 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import cc.warlock.core.network.SessionRecording;
+import cc.warlock.core.stormfront.client.internal.StormFrontClient;
+import cc.warlock.core.stormfront.internal.StormFrontProtocolHandler;
+import cc.warlock.core.stormfront.internal.StormFrontTokenizer;
+import cc.warlock.core.stormfront.network.StormFrontReplayConnection;
+import cc.warlock.core.stormfront.xml.IStormFrontRawXMLFilter;
+import cc.warlock.core.stormfront.xml.StormFrontAttributeList;
+
+/**
+ * Replays a session recording (see StormFrontClient.RECORD_SESSIONS_PROPERTY)
+ * through the tokenizer, protocol handler and streams of a headless client,
+ * and reports throughput, allocation and time spent per tag.
+ * 
+ * Usage: StormFrontReplayBenchmark recording.wlrec [iterations]
+ */
+public class StormFrontReplayBenchmark {
+
+	protected static class TagTiming {
+		public String name;
+		public long count, nanos;
+	}
+	
+	/**
+	 * Times every start and end tag as it passes through to the protocol handler
+	 */
+	protected static class TimingHandler implements IStormFrontRawXMLFilter {
+		protected StormFrontProtocolHandler handler;
+		protected HashMap<String, TagTiming> timings = new HashMap<String, TagTiming>();
+		
+		public TimingHandler (StormFrontProtocolHandler handler) {
+			this.handler = handler;
+		}
+		
+		protected void addTime (String name, long nanos) {
+			TagTiming timing = timings.get(name);
+			if (timing == null) {
+				timing = new TagTiming();
+				timing.name = name;
+				timings.put(name, timing);
+			}
+			timing.count++;
+			timing.nanos += nanos;
+		}
+		
+		public void characters(String characters) {
+			handler.characters(characters);
+		}
+		
+		public void startElement(String name, StormFrontAttributeList attributes, String rawXML) {
+			long start = System.nanoTime();
+			handler.startElement(name, attributes, rawXML);
+			addTime(name, System.nanoTime() - start);
+		}
+		
+		public void endElement(String name, String rawXML) {
+			long start = System.nanoTime();
+			handler.endElement(name, rawXML);
+			addTime(name, System.nanoTime() - start);
+		}
+		
+		public boolean needsRawXML(String name) {
+			return handler.needsRawXML(name);
+		}
+	}
+	
+	protected static String load (File file) throws IOException
+	{
+		SessionRecording recording = new SessionRecording(file);
+		ByteBuffer bytes = ByteBuffer.allocate(0);
+		try {
+			while (recording.next()) {
+				ByteBuffer data = recording.getData();
+				if (bytes.remaining() < data.remaining()) {
+					ByteBuffer larger = ByteBuffer.allocate((bytes.position() + data.remaining()) * 2);
+					bytes.flip();
+					larger.put(bytes);
+					bytes = larger;
+				}
+				bytes.put(data);
+			}
+		} finally {
+			recording.close();
+		}
+		bytes.flip();
+		return Charset.defaultCharset().decode(bytes).toString();
+	}
+	
+	protected static long allocatedBytes ()
+	{
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+	
+	/**
+	 * A client whose connection is never connected, so that anything the tag
+	 * handlers send is dropped
+	 */
+	protected static class HeadlessClient extends StormFrontClient {
+		public HeadlessClient (File recording) {
+			super("BM");
+			connection = new StormFrontReplayConnection(this, recording, false);
+		}
+		
+		public StormFrontProtocolHandler getProtocolHandler () {
+			return ((StormFrontReplayConnection)connection).getProtocolHandler();
+		}
+	}
+	
+	protected static TimingHandler run (File recording, String session) throws IOException
+	{
+		HeadlessClient client = new HeadlessClient(recording);
+		TimingHandler handler = new TimingHandler(client.getProtocolHandler());
+		StormFrontTokenizer tokenizer = new StormFrontTokenizer(new StringReader(session));
+		tokenizer.setHandler(handler);
+		tokenizer.parse();
+		client.flushStreams();
+		return handler;
+	}
+	
+	public static void main (String[] args) throws IOException
+	{
+		if (args.length < 1) {
+			System.err.println("Usage: StormFrontReplayBenchmark recording.wlrec [iterations]");
+			return;
+		}
+		File recording = new File(args[0]);
+		String session = load(recording);
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		double kilobytes = session.length() / 1024.0;
+		
+		// warm up
+		for (int i = 0; i < Math.max(1, iterations / 4); i++)
+			run(recording, session);
+		
+		HashMap<String, TagTiming> totals = new HashMap<String, TagTiming>();
+		long allocated = allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			TimingHandler handler = run(recording, session);
+			for (Map.Entry<String, TagTiming> entry : handler.timings.entrySet()) {
+				TagTiming total = totals.get(entry.getKey());
+				if (total == null) {
+					totals.put(entry.getKey(), entry.getValue());
+				} else {
+					total.count += entry.getValue().count;
+					total.nanos += entry.getValue().nanos;
+				}
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		allocated = allocatedBytes() - allocated;
+		
+		System.out.println(String.format("%d chars x %d iterations in %.3fs: %.2f MB/s",
+				session.length(), iterations, seconds, session.length() * (double)iterations / (1024 * 1024) / seconds));
+		if (allocated >= 0)
+			System.out.println(String.format("%.0f bytes allocated per KB", allocated / (kilobytes * iterations)));
+		
+		ArrayList<TagTiming> timings = new ArrayList<TagTiming>(totals.values());
+		Collections.sort(timings, new Comparator<TagTiming>() {
+			public int compare(TagTiming a, TagTiming b) {
+				return a.nanos < b.nanos ? 1 : (a.nanos > b.nanos ? -1 : 0);
+			}
+		});
+		System.out.println(String.format("%-20s %10s %12s %10s", "tag", "count", "total ms", "ns/tag"));
+		for (TagTiming timing : timings) {
+			System.out.println(String.format("%-20s %10d %12.2f %10d", timing.name, timing.count,
+					timing.nanos / 1e6, timing.nanos / timing.count));
+		}
+		
+		// the clients' round time timers would keep us alive
+		System.exit(0);
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cc.warlock.core.stormfront.internal.StormFrontProtocolParser;
+import cc.warlock.core.stormfront.internal.StormFrontTokenizer;
+import cc.warlock.core.stormfront.xml.IStormFrontXMLHandler;
+import cc.warlock.core.stormfront.xml.StormFrontAttribute;
+import cc.warlock.core.stormfront.xml.StormFrontAttributeList;
+
+/**
+ * Checks that the hand-written tokenizer produces the same events as the
+ * JavaCC grammar it replaces, no matter how the input is split across reads.
+ */
+public class StormFrontTokenizerTest {
+
+	protected static final String TRAFFIC =
+		"<mode id=\"GAME\"/><settingsInfo  crc='0' instance='DR'/>\n" +
+		"<streamWindow id='main' title='Story' subtitle=\" - [The Crossing, Hodierna Way]\" location='center' target='drop'/>\n" +
+		"<pushStream id=\"logons\"/> * Foo joins the adventure.\n" +
+		"<popStream/><prompt time=\"1210000000\">&gt;</prompt>\n" +
+		"<component id='room objs'>You also see <pushBold/>a goblin<popBold/>.</component>\n" +
+		"<preset id='roomDesc'>A narrow &amp; dusty road.</preset>\n" +
+		"<progressBar id='health' value='100' text='health 100%' left='0%' top='0%' width='25%' height='100%'/>\n" +
+		"<roundTime value='1210000005'/><compass><dir value=\"n\"/><dir value=\"s\"/></compass>\n" +
+		"< not a tag, 3 < 4 &lt;tag&gt; &quot;quoted&quot; &apos;single&apos;\n" +
+		"<output class=\"mono\"/>  spaced   out  <output class=\"\"/>\n";
+	
+	protected static class Recorder implements IStormFrontXMLHandler {
+		public ArrayList<String> events = new ArrayList<String>();
+		protected StringBuilder text = new StringBuilder();
+		
+		protected void flushText () {
+			if (text.length() > 0) {
+				events.add("text:" + text);
+				text.setLength(0);
+			}
+		}
+		
+		public void characters(String characters) {
+			text.append(characters);
+		}
+		
+		public void startElement(String name, StormFrontAttributeList attributes, String rawXML) {
+			flushText();
+			StringBuilder event = new StringBuilder("start:" + name);
+			for (StormFrontAttribute attribute : attributes)
+				event.append(" " + attribute.getName() + "=" + attribute.getValue());
+			events.add(event.toString());
+		}
+		
+		public void endElement(String name, String rawXML) {
+			flushText();
+			events.add("end:" + name);
+		}
+		
+		public ArrayList<String> finish () {
+			flushText();
+			return events;
+		}
+	}
+	
+	/** Hands out at most <code>chunk</code> characters per read */
+	protected static class ChunkedReader extends Reader {
+		protected String data;
+		protected int pos, chunk;
+		
+		public ChunkedReader (String data, int chunk) {
+			this.data = data;
+			this.chunk = chunk;
+		}
+		
+		public int read(char[] cbuf, int off, int len) {
+			if (pos >= data.length())
+				return -1;
+			int n = Math.min(Math.min(len, chunk), data.length() - pos);
+			data.getChars(pos, pos + n, cbuf, off);
+			pos += n;
+			return n;
+		}
+		
+		public void close() { }
+	}
+	
+	protected static ArrayList<String> parseWithGrammar (String data)
+	{
+		Recorder recorder = new Recorder();
+		StormFrontProtocolParser parser = new StormFrontProtocolParser(new StringReader(data));
+		parser.setHandler(recorder);
+		try {
+			parser.Document();
+		} catch (Exception e) {
+			Assert.fail(e.toString());
+		}
+		return recorder.finish();
+	}
+	
+	protected static ArrayList<String> parseWithTokenizer (Reader reader)
+	{
+		Recorder recorder = new Recorder();
+		StormFrontTokenizer tokenizer = new StormFrontTokenizer(reader);
+		tokenizer.setHandler(recorder);
+		try {
+			tokenizer.parse();
+		} catch (IOException e) {
+			Assert.fail(e.toString());
+		}
+		return recorder.finish();
+	}
+	
+	@Test
+	public void testMatchesGrammar ()
+	{
+		Assert.assertEquals(parseWithGrammar(TRAFFIC), parseWithTokenizer(new StringReader(TRAFFIC)));
+	}
+	
+	@Test
+	public void testChunkedInput ()
+	{
+		ArrayList<String> expected = parseWithTokenizer(new StringReader(TRAFFIC));
+		for (int chunk = 1; chunk <= 7; chunk++)
+			Assert.assertEquals("chunk size " + chunk, expected, parseWithTokenizer(new ChunkedReader(TRAFFIC, chunk)));
+	}
+	
+	@Test
+	public void testPassThrough ()
+	{
+		final String data = "<mode id=\"CMGR\"/><b>raw & unparsed</b>\n<mode id=\"GAME\"/>done";
+		final StormFrontTokenizer tokenizer = new StormFrontTokenizer(new ChunkedReader(data, 3));
+		Recorder recorder = new Recorder() {
+			public void endElement(String name, String rawXML) {
+				super.endElement(name, rawXML);
+				if (name.equals("mode") && events.size() == 2)
+					tokenizer.passThrough();
+			}
+		};
+		tokenizer.setHandler(recorder);
+		try {
+			tokenizer.parse();
+		} catch (IOException e) {
+			Assert.fail(e.toString());
+		}
+		
+		ArrayList<String> events = recorder.finish();
+		Assert.assertEquals("text:<b>raw & unparsed</b>\n", events.get(2));
+		Assert.assertEquals("start:mode id=GAME", events.get(3));
+		Assert.assertEquals("text:done", events.get(5));
+	}
+}
@@ -0,0 +1,170 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cc.warlock.core.client.internal.StreamEvent;
+import cc.warlock.core.client.internal.StreamEventRing;
+
+public class StreamEventRingTest {
+
+	protected static class Collector implements StreamEventRing.IEventHandler {
+		public ArrayList<String> seen = new ArrayList<String>();
+		
+		public synchronized void handleEvent(StreamEvent event) {
+			seen.add(event.getString());
+		}
+		
+		public synchronized String last() {
+			return seen.isEmpty() ? null : seen.get(seen.size() - 1);
+		}
+		
+		public void waitFor(String last) throws InterruptedException {
+			for (int i = 0; i < 1000 && !last.equals(last()); i++)
+				Thread.sleep(10);
+			Assert.assertEquals(last, last());
+		}
+	}
+	
+	protected static StreamEvent event(String string) {
+		return new StreamEvent(StreamEvent.Type.PROMPT, null, null, string, null);
+	}
+	
+	@Test
+	public void testLossless() throws Exception {
+		final StreamEventRing ring = new StreamEventRing("test");
+		Collector collector = new Collector();
+		StreamEventRing.Consumer consumer = ring.addConsumer("collector", collector);
+		
+		final int count = 10000;
+		Thread[] producers = new Thread[2];
+		for (int p = 0; p < producers.length; p++) {
+			final String prefix = p + ":";
+			producers[p] = new Thread() {
+				public void run() {
+					for (int i = 0; i < count; i++)
+						ring.publish(event(prefix + i));
+				}
+			};
+			producers[p].start();
+		}
+		for (Thread producer : producers)
+			producer.join();
+		for (int i = 0; i < 1000 && collector.seen.size() < count * producers.length; i++)
+			Thread.sleep(10);
+		ring.shutdown();
+		
+		synchronized (collector) {
+			Assert.assertEquals(count * producers.length, collector.seen.size());
+			int[] next = new int[producers.length];
+			for (String s : collector.seen) {
+				int p = Integer.parseInt(s.substring(0, s.indexOf(':')));
+				Assert.assertEquals(next[p]++, Integer.parseInt(s.substring(s.indexOf(':') + 1)));
+			}
+		}
+		Assert.assertEquals(0L, consumer.getDropped());
+	}
+	
+	@Test
+	public void testDropOldest() throws Exception {
+		StreamEventRing ring = new StreamEventRing("test");
+		ring.setPolicy("slow", StreamEventRing.Policy.DROP_OLDEST, 10);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Collector collector = new Collector() {
+			public void handleEvent(StreamEvent event) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+				super.handleEvent(event);
+			}
+		};
+		StreamEventRing.Consumer consumer = ring.addConsumer("slow", collector);
+		
+		for (int i = 0; i < 1000; i++)
+			ring.publish(event(String.valueOf(i)));
+		release.countDown();
+		collector.waitFor("999");
+		ring.shutdown();
+		
+		Assert.assertTrue(consumer.getDropped() > 0);
+		Assert.assertEquals(1000L, consumer.getHandled() + consumer.getDropped());
+	}
+	
+	@Test
+	public void testLosslessLimit() throws Exception {
+		StreamEventRing ring = new StreamEventRing("test");
+		ring.setLosslessLimit(10);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Collector collector = new Collector() {
+			public void handleEvent(StreamEvent event) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+				super.handleEvent(event);
+			}
+		};
+		StreamEventRing.Consumer consumer = ring.addConsumer("stalled", collector);
+		
+		// a stalled lossless consumer skips ahead rather than keep everything
+		for (int i = 0; i < 1000; i++)
+			ring.publish(event(String.valueOf(i)));
+		release.countDown();
+		collector.waitFor("999");
+		ring.shutdown();
+		
+		Assert.assertTrue(consumer.getDropped() > 0);
+		Assert.assertEquals(1000L, consumer.getHandled() + consumer.getDropped());
+	}
+	
+	@Test
+	public void testShutdownAndJoin() throws Exception {
+		StreamEventRing ring = new StreamEventRing("test");
+		final Collector collector = new Collector() {
+			public void handleEvent(StreamEvent event) {
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+				super.handleEvent(event);
+			}
+		};
+		ring.addConsumer("slow", collector);
+		for (int i = 0; i < 200; i++)
+			ring.publish(event(String.valueOf(i)));
+		
+		// everything published before the shutdown is handled by the time it returns
+		Assert.assertTrue(ring.shutdownAndJoin(10000));
+		synchronized (collector) {
+			Assert.assertEquals(200, collector.seen.size());
+		}
+	}
+}
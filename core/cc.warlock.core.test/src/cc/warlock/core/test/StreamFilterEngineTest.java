@@ -0,0 +1,85 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cc.warlock.core.client.IStream;
+import cc.warlock.core.client.IStreamFilter;
+import cc.warlock.core.client.WarlockString;
+import cc.warlock.core.client.internal.Stream;
+import cc.warlock.core.client.internal.StreamFilter;
+import cc.warlock.core.client.internal.StreamFilterEngine;
+import cc.warlock.core.client.internal.WarlockStyle;
+import cc.warlock.core.util.RegexLiterals;
+
+public class StreamFilterEngineTest {
+
+	@Test
+	public void testRequiredLiteral() {
+		Assert.assertEquals("You've gained a new rank in ", RegexLiterals.getRequiredLiteral("^You've gained a new rank in .+\\."));
+		Assert.assertEquals(" slowly rises above the horizon.", RegexLiterals.getRequiredLiteral("^(Xibar|Katamba|Yavash) slowly rises above the horizon\\."));
+		Assert.assertEquals("thoughts in your head", RegexLiterals.getRequiredLiteral("\\bthoughts in your head\\b"));
+		Assert.assertEquals("SEND[", RegexLiterals.getRequiredLiteral("^SEND\\[\\w+\\].*$"));
+		Assert.assertEquals("colo", RegexLiterals.getRequiredLiteral("colou?r"));
+		Assert.assertEquals("xyz", RegexLiterals.getRequiredLiteral("[a[b]]xyz"));
+		Assert.assertNull(RegexLiterals.getRequiredLiteral("cat|dog"));
+		Assert.assertNull(RegexLiterals.getRequiredLiteral("(?i)hello"));
+		Assert.assertNull(RegexLiterals.getRequiredLiteral("\\x41bc"));
+		Assert.assertNull(RegexLiterals.getRequiredLiteral("\\u0041bcdef"));
+		Assert.assertNull(RegexLiterals.getRequiredLiteral("\\0101bcdef"));
+	}
+	
+	@Test
+	public void testFilters() {
+		IStream main = new Stream(null, "main");
+		IStream events = new Stream(null, "events");
+		IStream talk = new Stream(null, "talk");
+		StreamFilterEngine engine = new StreamFilterEngine();
+		
+		engine.subscribe(events, new IStreamFilter[] {
+				new StreamFilter("^Announcement: .+$", IStreamFilter.type.regex),
+				new StreamFilter("[0-9]+ silver", IStreamFilter.type.regex),
+				new StreamFilter("(bad", IStreamFilter.type.string) }, null);
+		engine.subscribe(talk, new IStreamFilter[] {
+				new StreamFilter("yells,", IStreamFilter.type.string) }, new String[] { "speech" });
+		
+		WarlockString text = new WarlockString("Not an Announcement: here\r\nAnnouncement: hi\n");
+		text.append(new WarlockString("You say, \"yes\"\n", new WarlockStyle("speech")));
+		text.append("Bob yells, \"12 silver\"\n\nA (bad line\nAnnouncement: spl");
+		engine.streamReceivedText(main, text);
+		engine.streamReceivedText(main, new WarlockString("it\n"));
+		
+		Assert.assertEquals("Announcement: hi\nBob yells, \"12 silver\"\nA (bad line\nAnnouncement: split\n",
+				events.getHistory().toString());
+		Assert.assertEquals("You say, \"yes\"\nBob yells, \"12 silver\"\n", talk.getHistory().toString());
+		Assert.assertTrue(talk.getHistory().hasStyleNamed("speech"));
+		
+		// a prompt ends the line before it
+		engine.unsubscribe(talk);
+		engine.streamReceivedText(main, new WarlockString("You say, \"3 silver\""));
+		engine.streamPrompted(main, ">");
+		Assert.assertTrue(events.getHistory().toString().endsWith("split\nYou say, \"3 silver\"\n"));
+		Assert.assertEquals("You say, \"yes\"\nBob yells, \"12 silver\"\n", talk.getHistory().toString());
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cc.warlock.core.client.MemoryReport;
+import cc.warlock.core.client.WarlockString;
+import cc.warlock.core.client.internal.MemoryBudget;
+import cc.warlock.core.client.internal.StreamHistory;
+import cc.warlock.core.client.internal.WarlockStyle;
+
+public class StreamHistoryTest {
+
+	@Test
+	public void testEviction() {
+		StreamHistory history = new StreamHistory();
+		// lines arrive split across pieces of text
+		for(int i = 0; i < 5100; i++) {
+			history.streamReceivedText(null, new WarlockString("line "));
+			history.streamReceivedText(null, new WarlockString(i + "\nnext"));
+			history.streamReceivedText(null, new WarlockString(" " + i));
+		}
+		history.streamReceivedText(null, new WarlockString("\n"));
+		
+		Assert.assertEquals(5001, history.getLineCount());
+		Assert.assertEquals(101L, history.getFirstLineNumber());
+		Assert.assertEquals("next 100line 101\n", history.getLine(0).toString());
+		Assert.assertEquals("next 5099\n", history.getLine(4999).toString());
+		Assert.assertEquals("", history.getLine(5000).toString());
+		
+		String text = history.getHistory().toString();
+		Assert.assertTrue(text.startsWith("next 100line 101\n"));
+		Assert.assertEquals(text.indexOf("next 5099\n"), history.getLineOffset(4999));
+		Assert.assertEquals(text.length(), history.getLineOffset(5000));
+	}
+	
+	@Test
+	public void testComponentUpdate() {
+		WarlockStyle exits = new WarlockStyle();
+		exits.setComponentName("room exits");
+		
+		StreamHistory history = new StreamHistory();
+		history.streamReceivedText(null, new WarlockString("Exits: "));
+		history.streamReceivedText(null, new WarlockString("north", exits));
+		history.streamReceivedText(null, new WarlockString("\nExits: "));
+		history.streamReceivedText(null, new WarlockString("south", exits));
+		history.streamReceivedText(null, new WarlockString("\nend"));
+		
+		history.componentUpdated(null, "room exits", new WarlockString("east, west"));
+		Assert.assertEquals("Exits: east, west\nExits: south\nend", history.getHistory().toString());
+		Assert.assertEquals(18, history.getLineOffset(1));
+		Assert.assertEquals(31, history.getLineOffset(2));
+		
+		history.streamCleared(null);
+		history.componentUpdated(null, "room exits", new WarlockString("up"));
+		Assert.assertEquals("", history.getHistory().toString());
+	}
+	
+	@Test
+	public void testComponentEviction() {
+		StreamHistory history = new StreamHistory();
+		history.setByteLimit(2000);
+		for(int i = 0; i < 100; i++) {
+			WarlockStyle style = new WarlockStyle();
+			style.setComponentName("component " + i);
+			history.streamReceivedText(null, new WarlockString("value", style));
+			history.streamReceivedText(null, new WarlockString("\n"));
+		}
+		Assert.assertTrue(history.getLineCount() < 50);
+		// dropped lines take their components with them
+		Assert.assertEquals(history.getLineCount() - 1, history.getComponentCount());
+		Assert.assertEquals(history.getLineCount() - 1, history.getMemoryReport("test").getMarkers());
+		
+		history.setByteLimit(0);
+		Assert.assertEquals(1, history.getComponentCount());
+		Assert.assertEquals(1, history.getMemoryReport("test").getMarkers());
+	}
+	
+	protected static void addLines(StreamHistory history, int lines) {
+		for(int i = 0; i < lines; i++) {
+			StringBuilder line = new StringBuilder();
+			while(line.length() < 100)
+				line.append("word ");
+			history.streamReceivedText(null, new WarlockString(line.append("\n").toString()));
+		}
+	}
+	
+	@Test
+	public void testMemoryBudget() {
+		StreamHistory history = new StreamHistory();
+		history.setByteLimit(10000);
+		addLines(history, 100);
+		Assert.assertTrue(history.getLineCount() < 50);
+		MemoryReport report = history.getMemoryReport("thoughts");
+		Assert.assertEquals(history.getLineCount(), report.getLines());
+		Assert.assertEquals((history.getLineCount() - 1) * 101 * 2L, report.getTextBytes());
+		Assert.assertEquals(history.getMemoryUsed(), report.getBytes());
+		
+		// the history used longest ago is trimmed first
+		MemoryBudget budget = MemoryBudget.getGlobalBudget().createBudget(100000);
+		try {
+			StreamHistory first = new StreamHistory();
+			StreamHistory second = new StreamHistory();
+			first.setBudget(budget);
+			second.setBudget(budget);
+			addLines(first, 200);
+			Assert.assertEquals(201, first.getLineCount());
+			addLines(second, 200);
+			Assert.assertEquals(201, second.getLineCount());
+			Assert.assertTrue(first.getLineCount() < 201);
+			Assert.assertTrue(budget.getUsed() <= 100000);
+			Assert.assertEquals(first.getMemoryUsed() + second.getMemoryUsed(), budget.getUsed());
+			
+			second.setBudget(null);
+			Assert.assertEquals(first.getMemoryUsed(), budget.getUsed());
+		} finally {
+			budget.dispose();
+		}
+	}
+	
+	@Test
+	public void testDisposedBudget() {
+		MemoryBudget global = MemoryBudget.getGlobalBudget();
+		long before = global.getUsed();
+		MemoryBudget budget = global.createBudget(100000);
+		StreamHistory history = new StreamHistory();
+		history.setBudget(budget);
+		addLines(history, 10);
+		Assert.assertEquals(before + history.getMemoryUsed(), global.getUsed());
+		
+		budget.dispose();
+		Assert.assertEquals(before, global.getUsed());
+		// a history still holding the budget doesn't count any more
+		addLines(history, 10);
+		Assert.assertEquals(before, global.getUsed());
+		Assert.assertEquals(0L, budget.getUsed());
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.test;
+
+import java.util.HashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cc.warlock.core.stormfront.IStormFrontTagHandler;
+import cc.warlock.core.stormfront.internal.TagDispatcher;
+import cc.warlock.core.stormfront.tags.BaseTagHandler;
+
+public class TagDispatcherTest {
+
+	protected static class Handler extends BaseTagHandler {
+		public HashMap<String, IStormFrontTagHandler> children = new HashMap<String, IStormFrontTagHandler>();
+		private String name;
+		
+		public Handler(String name) {
+			this.name = name;
+		}
+		
+		@Override
+		public String[] getTagNames() {
+			return new String[] { name };
+		}
+		
+		@Override
+		public IStormFrontTagHandler getTagHandler(String tagName) {
+			return children.get(tagName);
+		}
+	}
+	
+	// open each tag in turn, and return what the last one was dispatched to
+	protected static IStormFrontTagHandler dispatch(TagDispatcher dispatcher, String... tags) {
+		IStormFrontTagHandler handler = null;
+		for (String tag : tags)
+			handler = dispatcher.push(tag);
+		for (int i = 0; i < tags.length; i++)
+			dispatcher.pop();
+		Assert.assertTrue(dispatcher.isEmpty());
+		return handler;
+	}
+	
+	@Test
+	public void testNestedResolution() {
+		Handler a = new Handler("a");
+		Handler b = new Handler("b");
+		Handler c = new Handler("c");
+		Handler topC = new Handler("c");
+		a.children.put("b", b);
+		HashMap<String, IStormFrontTagHandler> defaults = new HashMap<String, IStormFrontTagHandler>();
+		defaults.put("a", a);
+		defaults.put("c", topC);
+		TagDispatcher dispatcher = new TagDispatcher(defaults);
+		
+		Assert.assertSame(b, dispatch(dispatcher, "a", "b"));
+		// a tag no open handler has falls back to the top level
+		Assert.assertSame(topC, dispatch(dispatcher, "a", "b", "c"));
+		Assert.assertSame(topC, dispatch(dispatcher, "a", "x", "c"));
+		
+		// children added after the first dispatch are found under nested tags
+		a.children.put("c", c);
+		Assert.assertSame(c, dispatch(dispatcher, "a", "b", "c"));
+		Assert.assertSame(c, dispatch(dispatcher, "a", "x", "c"));
+		Handler inner = new Handler("c");
+		b.children.put("c", inner);
+		Assert.assertSame(inner, dispatch(dispatcher, "a", "b", "c"));
+		
+		// and removed ones are forgotten
+		b.children.remove("c");
+		a.children.remove("c");
+		Assert.assertSame(topC, dispatch(dispatcher, "a", "b", "c"));
+		Assert.assertSame(topC, dispatch(dispatcher, "c"));
+		
+		// resolving doesn't open anything
+		dispatcher.push("a");
+		Assert.assertSame(b, dispatcher.resolve("b"));
+		Assert.assertEquals(1, dispatcher.getDepth());
+		dispatcher.pop();
+	}
+}
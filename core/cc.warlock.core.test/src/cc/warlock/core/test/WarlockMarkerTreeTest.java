@@ -0,0 +1,184 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.test;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cc.warlock.core.client.WarlockMarkerTree;
+import cc.warlock.core.client.WarlockString;
+import cc.warlock.core.client.internal.WarlockStyle;
+
+public class WarlockMarkerTreeTest {
+
+	protected static final WarlockStyle BOLD = new WarlockStyle("bold");
+	protected static final WarlockStyle LINK = new WarlockStyle("link");
+	protected static final WarlockStyle[] COMPONENTS = new WarlockStyle[3];
+	static {
+		for(int i = 0; i < COMPONENTS.length; i++) {
+			COMPONENTS[i] = new WarlockStyle("component");
+			COMPONENTS[i].setComponentName("component " + i);
+		}
+	}
+	
+	protected static WarlockString randomText(Random random, boolean components) {
+		WarlockString text = new WarlockString();
+		int pieces = random.nextInt(4);
+		for(int i = 0; i < pieces; i++) {
+			text.append("x ");
+			int kind = random.nextInt(components ? 3 : 2);
+			if(kind == 0)
+				continue;
+			WarlockStyle style = kind == 1 ? BOLD : COMPONENTS[random.nextInt(COMPONENTS.length)];
+			int run = text.openStyle(style);
+			text.append("word" + random.nextInt(100));
+			if(random.nextBoolean()) {
+				int inner = text.openStyle(LINK);
+				text.append("link");
+				text.closeStyle(inner);
+			}
+			text.closeStyle(run);
+		}
+		text.append("\n");
+		return text;
+	}
+	
+	protected static void assertSame(WarlockString document, WarlockMarkerTree tree) {
+		Assert.assertEquals(document.getRunCount(), tree.size());
+		for(int i = 0; i < tree.size(); i++) {
+			Assert.assertEquals(document.getRunStart(i), tree.getStart(i));
+			Assert.assertEquals(document.getRunEnd(i), tree.getEnd(i));
+			Assert.assertEquals(document.getRunStyle(i), tree.getStyle(i));
+			int parent = tree.getParent(i);
+			if(parent < 0) {
+				Assert.assertEquals(0, document.getRunDepth(i));
+			} else {
+				Assert.assertTrue(document.getRunDepth(parent) < document.getRunDepth(i));
+				Assert.assertEquals(tree.getDepth(parent) + 1, tree.getDepth(i));
+			}
+		}
+	}
+	
+	@Test
+	public void testReplace() {
+		Random random = new Random(42);
+		WarlockString document = new WarlockString();
+		WarlockMarkerTree tree = new WarlockMarkerTree();
+		for(int step = 0; step < 2000; step++) {
+			if(random.nextInt(3) > 0) {
+				WarlockString line = randomText(random, true);
+				tree.append(line, document.length());
+				document.append(line);
+			} else {
+				String name = "component " + random.nextInt(COMPONENTS.length);
+				WarlockString value = randomText(random, false);
+				int marker = tree.findComponent(name);
+				Assert.assertEquals(marker >= 0, document.replaceComponent(name, value));
+				if(marker >= 0)
+					tree.replace(marker, value);
+			}
+			assertSame(document, tree);
+		}
+	}
+	
+	@Test
+	public void testInsertLinks() {
+		// each line is "ab" then bold "cd" holding link "ef"
+		WarlockString line = new WarlockString("ab");
+		int bold = line.openStyle(BOLD);
+		line.append("cd");
+		int link = line.openStyle(LINK);
+		line.append("ef");
+		line.closeStyle(link);
+		line.closeStyle(bold);
+		line.append("\n");
+		WarlockMarkerTree tree = new WarlockMarkerTree();
+		for(int i = 0; i < 100; i++)
+			tree.append(line, i * 7);
+		
+		// a marker inside the bold of line 50, before its link
+		int marker = tree.insert(LINK, 352, 353);
+		Assert.assertEquals(101, marker);
+		Assert.assertEquals(100, tree.getParent(marker));
+		Assert.assertEquals(100, tree.getParent(102));
+		Assert.assertEquals(1, tree.getDepth(102));
+		for(int i = 51; i < 100; i++) {
+			Assert.assertEquals(-1, tree.getParent(2 * i + 1));
+			Assert.assertEquals(2 * i + 1, tree.getParent(2 * i + 2));
+			Assert.assertEquals(i * 7 + 4, tree.getStart(2 * i + 2));
+		}
+		for(int i = 0; i < 50; i++)
+			Assert.assertEquals(2 * i, tree.getParent(2 * i + 1));
+		
+		tree.remove(marker);
+		Assert.assertEquals(200, tree.size());
+		for(int i = 0; i < 100; i++) {
+			Assert.assertEquals(-1, tree.getParent(2 * i));
+			Assert.assertEquals(2 * i, tree.getParent(2 * i + 1));
+		}
+	}
+	
+	@Test
+	public void testEdits() {
+		WarlockMarkerTree tree = new WarlockMarkerTree();
+		WarlockString line = new WarlockString("aaaa\n");
+		line.addStyle(BOLD);
+		for(int i = 0; i < 1000; i++)
+			tree.append(line, i * 5);
+		
+		// a newline taken out of the middle of line 10
+		int marker = tree.insert(LINK, 52, 53);
+		Assert.assertEquals(11, marker);
+		Assert.assertEquals(10, tree.getParent(marker));
+		tree.resize(marker, -1);
+		Assert.assertEquals(52, tree.getEnd(marker));
+		Assert.assertEquals(54, tree.getEnd(10));
+		Assert.assertEquals(54, tree.getStart(12));
+		Assert.assertEquals(4999, tree.getEnd(1000));
+		Assert.assertEquals(11, tree.indexOf(51));
+		tree.remove(marker);
+		Assert.assertEquals(1000, tree.size());
+		Assert.assertEquals(54, tree.getStart(11));
+		
+		// dropping text from the start drops the markers that end before it
+		tree.removeBefore(12);
+		Assert.assertEquals(998, tree.size());
+		Assert.assertEquals(0, tree.getStart(0));
+		Assert.assertEquals(3, tree.getEnd(0));
+		Assert.assertEquals(3, tree.getStart(1));
+		Assert.assertEquals(4987, tree.getEnd(997));
+		
+		// appending past the capacity moves what is held back to the start
+		for(int i = 0; i < 1000; i++)
+			tree.removeBefore(5);
+		Assert.assertEquals(0, tree.size());
+		for(int i = 0; i < 2000; i++) {
+			tree.append(line, 5);
+			tree.removeBefore(5);
+		}
+		Assert.assertEquals(2, tree.size());
+		Assert.assertEquals(0, tree.getStart(0));
+		Assert.assertEquals(5, tree.getEnd(1));
+	}
+}
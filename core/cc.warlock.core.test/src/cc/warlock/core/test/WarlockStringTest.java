@@ -0,0 +1,148 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.test;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cc.warlock.core.client.WarlockString;
+import cc.warlock.core.client.WarlockStringMarker;
+import cc.warlock.core.client.internal.WarlockStyle;
+
+public class WarlockStringTest {
+
+	protected static final WarlockStyle OUTER = new WarlockStyle("outer");
+	protected static final WarlockStyle INNER = new WarlockStyle("inner");
+	protected static final WarlockStyle COMPONENT = new WarlockStyle("component");
+	static {
+		COMPONENT.setComponentName("room");
+	}
+	
+	// "a[outer b[inner c]d]e"
+	protected static WarlockString styled() {
+		WarlockString string = new WarlockString();
+		string.append("a");
+		int outer = string.openStyle(OUTER);
+		string.append("b");
+		int inner = string.openStyle(INNER);
+		string.append("c");
+		string.closeStyle(inner);
+		string.append("d");
+		string.closeStyle(outer);
+		string.append("e");
+		return string;
+	}
+	
+	@Test
+	public void testStyleView() {
+		WarlockString string = styled();
+		Assert.assertEquals("abcde", string.toString());
+		Assert.assertEquals(2, string.getRunCount());
+		
+		List<WarlockStringMarker> styles = string.getStyles();
+		Assert.assertEquals(1, styles.size());
+		WarlockStringMarker outer = styles.get(0);
+		Assert.assertEquals(OUTER, outer.getStyle());
+		Assert.assertEquals(1, outer.getStart());
+		Assert.assertEquals(4, outer.getEnd());
+		Assert.assertEquals(1, outer.getSubMarkers().size());
+		WarlockStringMarker inner = outer.getSubMarkers().get(0);
+		Assert.assertEquals(INNER, inner.getStyle());
+		Assert.assertEquals(2, inner.getStart());
+		Assert.assertEquals(3, inner.getEnd());
+		
+		// the tree is a copy
+		styles.clear();
+		Assert.assertEquals(1, string.getStyles().size());
+	}
+	
+	@Test
+	public void testRemoveRun() {
+		// "a[outer b[inner c]" with outer never closed
+		WarlockString string = new WarlockString();
+		string.append("a");
+		int outer = string.openStyle(OUTER);
+		string.append("b");
+		int inner = string.openStyle(INNER);
+		string.append("c");
+		string.closeStyle(inner);
+		Assert.assertEquals(string.getRunStart(outer), string.getRunEnd(outer));
+		
+		string.removeRun(outer);
+		Assert.assertEquals(1, string.getRunCount());
+		Assert.assertEquals(0, string.getRunDepth(0));
+		List<WarlockStringMarker> styles = string.getStyles();
+		Assert.assertEquals(1, styles.size());
+		Assert.assertEquals(INNER, styles.get(0).getStyle());
+		Assert.assertEquals(2, styles.get(0).getStart());
+		Assert.assertEquals(3, styles.get(0).getEnd());
+	}
+	
+	@Test
+	public void testAppendAndSubstring() {
+		WarlockString string = new WarlockString();
+		string.append(styled());
+		string.append(styled());
+		Assert.assertEquals("abcdeabcde", string.toString());
+		Assert.assertEquals(4, string.getRunCount());
+		Assert.assertEquals(6, string.getRunStart(2));
+		Assert.assertEquals(0, string.getRunDepth(2));
+		
+		WarlockString substring = string.substring(3, 8);
+		Assert.assertEquals("deabc", substring.toString());
+		Assert.assertEquals(0, substring.getRunStart(0));
+		Assert.assertEquals(1, substring.getRunEnd(0));
+		
+		// appending to the substring must not change the original
+		substring.append("xyz");
+		Assert.assertEquals("deabcxyz", substring.toString());
+		Assert.assertEquals("abcdeabcde", string.toString());
+	}
+	
+	@Test
+	public void testReplaceComponent() {
+		WarlockString string = new WarlockString("before ");
+		int outer = string.openStyle(OUTER);
+		int component = string.openStyle(COMPONENT);
+		string.append("old");
+		string.closeStyle(component);
+		string.closeStyle(outer);
+		string.append(" after");
+		string.addStyle(INNER);
+		
+		Assert.assertTrue(string.replaceComponent("room", styled()));
+		Assert.assertFalse(string.replaceComponent("nothing", styled()));
+		Assert.assertEquals("before abcde after", string.toString());
+		
+		WarlockStringMarker all = string.getStyles().get(0);
+		Assert.assertEquals(18, all.getEnd());
+		WarlockStringMarker outerMarker = all.getSubMarkers().get(0);
+		Assert.assertEquals(7, outerMarker.getStart());
+		Assert.assertEquals(12, outerMarker.getEnd());
+		WarlockStringMarker componentMarker = outerMarker.getSubMarkers().get(0);
+		Assert.assertEquals(12, componentMarker.getEnd());
+		Assert.assertEquals(OUTER, componentMarker.getSubMarkers().get(0).getStyle());
+		Assert.assertEquals(8, componentMarker.getSubMarkers().get(0).getStart());
+	}
+}
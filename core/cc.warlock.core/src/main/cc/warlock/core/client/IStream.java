@@ -33,6 +33,16 @@ package cc.warlock.core.client;
  */
 public interface IStream {
 	
+	/*
+	 * Consumers of stream events. Listeners of one consumer are called in
+	 * order on that consumer's thread, independently of the other consumers.
+	 */
+	public static final String UI_CONSUMER = "ui";
+	public static final String SCRIPT_CONSUMER = "scripts";
+	public static final String LOGGER_CONSUMER = "logger";
+	public static final String HISTORY_CONSUMER = "history";
+	public static final String FILTER_CONSUMER = "filters";
+	
 	public void clear();
 	
 	public String getName();
@@ -48,6 +58,11 @@ public interface IStream {
 	public void sendCommand(ICommand command);
 	//public boolean isPrompting();
 	public void flush();
+	/**
+	 * Flush only if text was put since the last flush.
+	 * @return whether the stream was flushed
+	 */
+	public boolean flushIfDirty();
 	public void create();
 	
 	public void setClosedTarget(String target);
@@ -57,7 +72,14 @@ public interface IStream {
 	
 	public void echo(WarlockString text);
 	
+	/**
+	 * Add a listener called by the UI consumer.
+	 */
 	public void addStreamListener(IStreamListener listener);
+	/**
+	 * Add a listener called by the named consumer.
+	 */
+	public void addStreamListener(IStreamListener listener, String consumer);
 	public void removeStreamListener(IStreamListener listener);
 	
 	public IWarlockClient getClient();
@@ -70,4 +92,9 @@ public interface IStream {
 	public String getLocation();
 	
 	public WarlockString getHistory();
+	
+	/**
+	 * @return what the stream's history holds in memory
+	 */
+	public MemoryReport getMemoryReport();
 }
@@ -29,6 +29,9 @@ import java.io.InputStream;
 import java.util.Collection;
 import java.util.Iterator;
 
+import cc.warlock.core.client.internal.HighlightEngine;
+import cc.warlock.core.client.internal.StreamFilterEngine;
+import cc.warlock.core.client.internal.StyleRegistry;
 import cc.warlock.core.client.internal.WarlockDialog;
 import cc.warlock.core.client.logging.IClientLogger;
 import cc.warlock.core.network.IConnection;
@@ -113,6 +116,11 @@ public interface IWarlockClient extends IRoomListener {
 	public void addHighlights(Collection<IWarlockHighlight> highlights);
 	public boolean removeHighlights(Collection<IWarlockHighlight> highlights);
 	
+	/**
+	 * @return the highlights compiled, rebuilt after they change
+	 */
+	public HighlightEngine getHighlightEngine();
+	
 	/**
 	 * @return A unique string identifying this client (this string should be a constant that can be restored from at a later time)
 	 */
@@ -158,6 +166,12 @@ public interface IWarlockClient extends IRoomListener {
 	 */
 	public void addStreamListener(String streamName, IStreamListener listener);
 	
+	/**
+	 * As addStreamListener(streamName, listener), with the listener called
+	 *   by the named consumer (see IStream)
+	 */
+	public void addStreamListener(String streamName, IStreamListener listener, String consumer);
+	
 	public void removeStreamListener(String streamName, IStreamListener listener);
 	
 	/**
@@ -192,6 +206,11 @@ public interface IWarlockClient extends IRoomListener {
 	 */
 	public WarlockDialog getDialog(String id);
 	
+	/**
+	 * @return the registry sharing this client's named styles
+	 */
+	public StyleRegistry getStyleRegistry();
+	
 	public IProperty<String> getProperty(String name);
 	
 	public void setProperty(String name, IProperty<String> property);
@@ -219,4 +238,14 @@ public interface IWarlockClient extends IRoomListener {
 	public String getStreamTitle(String streamName);
 	
 	public WarlockString getStreamHistory(String streamName);
+	
+	/**
+	 * @return what each stream's history holds in memory
+	 */
+	public Collection<MemoryReport> getMemoryReports();
+	
+	/**
+	 * @return the engine copying lines of the main stream into user streams
+	 */
+	public StreamFilterEngine getFilterEngine();
 }
@@ -29,6 +29,12 @@ package cc.warlock.core.client;
  */
 public interface IWarlockStyle {
 
+	/**
+	 * @return the style's id in its client's StyleRegistry, or 0 if it
+	 *   didn't come from one
+	 */
+	public int getId();
+	
 	public Runnable getAction();
 	
 	public WarlockColor getForegroundColor();
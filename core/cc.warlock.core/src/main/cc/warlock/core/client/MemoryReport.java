@@ -0,0 +1,82 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.client;
+
+/**
+ * What a stream holds in memory. Byte counts are estimates.
+ */
+public class MemoryReport {
+
+	private String name;
+	private int lines;
+	private long textBytes;
+	private int styleRuns;
+	private int markers;
+	private long bytes;
+	
+	public MemoryReport(String name, int lines, long textBytes, int styleRuns, int markers, long bytes) {
+		this.name = name;
+		this.lines = lines;
+		this.textBytes = textBytes;
+		this.styleRuns = styleRuns;
+		this.markers = markers;
+		this.bytes = bytes;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public int getLines() {
+		return lines;
+	}
+	
+	/**
+	 * @return the bytes taken by characters
+	 */
+	public long getTextBytes() {
+		return textBytes;
+	}
+	
+	public int getStyleRuns() {
+		return styleRuns;
+	}
+	
+	/**
+	 * @return the component markers indexed
+	 */
+	public int getMarkers() {
+		return markers;
+	}
+	
+	/**
+	 * @return all the bytes held, text and styles included
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+	
+	public String toString() {
+		return name + ": " + lines + " lines, " + textBytes + " text bytes, "
+			+ styleRuns + " style runs, " + markers + " markers, " + bytes + " bytes";
+	}
+}
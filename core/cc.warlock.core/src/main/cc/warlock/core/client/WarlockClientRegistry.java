@@ -21,9 +21,9 @@
  */
 package cc.warlock.core.client;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * The warlock client registry is a single place of entry for finding and discovering about IWarlockClients that exist, or registering as a listener for
@@ -33,8 +33,9 @@ import java.util.List;
  */
 public class WarlockClientRegistry {
 
-	protected static ArrayList<IWarlockClient> clients = new ArrayList<IWarlockClient>();
-	protected static ArrayList<IWarlockClientListener> listeners = new ArrayList<IWarlockClientListener>();
+	// copied when changed, so they can be walked from any thread without a lock
+	protected static CopyOnWriteArrayList<IWarlockClient> clients = new CopyOnWriteArrayList<IWarlockClient>();
+	protected static CopyOnWriteArrayList<IWarlockClientListener> listeners = new CopyOnWriteArrayList<IWarlockClientListener>();
 	
 	public static void addWarlockClientListener (IWarlockClientListener listener)
 	{
@@ -43,13 +44,11 @@ public class WarlockClientRegistry {
 	
 	public static void removeWarlockClientListener (IWarlockClientListener listener)
 	{
-		if (listeners.contains(listener))
-			listeners.remove(listener);
+		listeners.remove(listener);
 	}
 	
 	public static void clientCreated (IWarlockClient client) {
-		if (!clients.contains(client))
-			clients.add(client);
+		clients.addIfAbsent(client);
 		
 		for (IWarlockClientListener listener : listeners) {
 			listener.clientCreated(client);
@@ -0,0 +1,461 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.client;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+import cc.warlock.core.client.internal.StyleRegistry;
+import cc.warlock.core.client.internal.WarlockStyle;
+
+/**
+ * The styles of a document that keeps changing: text is added at the end,
+ * dropped from the start and replaced inside components.
+ * 
+ * Markers are kept flat, in the order they were opened, with the index of
+ * each one's parent, so nothing is allocated per marker. Moving the markers
+ * after a change is put off: the markers from one index on share a pending
+ * delta, which is only applied when a change comes in somewhere else.
+ * Dropping text from the start moves every marker, so that is a single base
+ * offset. Component markers are indexed by name.
+ * 
+ * Appending costs only the markers added. Inserting, removing and replacing
+ * markers shift the arrays and renumber the parents of every marker after
+ * the edit, so they cost time linear in the markers that follow it.
+ * 
+ * Markers are numbered from 0, the oldest one held. A number changes when
+ * markers are added or removed before it or text is dropped from the start.
+ */
+public class WarlockMarkerTree {
+
+	// indices of the markers styled as one component, in order
+	private static class Holders {
+		int[] markers = new int[4];
+		int count = 0;
+		
+		void add(int marker) {
+			int i = count;
+			while(i > 0 && markers[i - 1] > marker)
+				i--;
+			if(count == markers.length) {
+				int[] newMarkers = new int[count * 2];
+				System.arraycopy(markers, 0, newMarkers, 0, count);
+				markers = newMarkers;
+			}
+			System.arraycopy(markers, i, markers, i + 1, count - i);
+			markers[i] = marker;
+			count++;
+		}
+		
+		// drop the markers in [from, to), then move the ones after by delta
+		void move(int from, int to, int delta) {
+			int n = 0;
+			for(int i = 0; i < count; i++) {
+				int marker = markers[i];
+				if(marker >= from && marker < to)
+					continue;
+				markers[n++] = marker >= to ? marker + delta : marker;
+			}
+			count = n;
+		}
+	}
+	
+	private int[] starts = new int[64];
+	private int[] ends = new int[64];
+	private int[] parents = new int[64];
+	private int[] depths = new int[64];
+	private IWarlockStyle[] styles = new IWarlockStyle[64];
+	// the markers before head were dropped
+	private int head = 0;
+	private int size = 0;
+	// markers from shiftIndex on are shiftDelta past where starts and ends say
+	private int shiftIndex = 0;
+	private int shiftDelta = 0;
+	// characters dropped from the start, less those put before it, since the last compact()
+	private int base = 0;
+	private HashMap<String, Holders> components = new HashMap<String, Holders>();
+	
+	/**
+	 * @return the number of markers held
+	 */
+	public int size() {
+		return size - head;
+	}
+	
+	public int getStart(int marker) {
+		return start(head + marker);
+	}
+	
+	public int getEnd(int marker) {
+		return end(head + marker);
+	}
+	
+	public IWarlockStyle getStyle(int marker) {
+		return styles[head + marker];
+	}
+	
+	/**
+	 * @return the parent's number, or -1 for a top level marker
+	 */
+	public int getParent(int marker) {
+		int parent = parents[head + marker];
+		return parent < head ? -1 : parent - head;
+	}
+	
+	public int getDepth(int marker) {
+		return depths[head + marker];
+	}
+	
+	/**
+	 * @return the first marker that starts at or after offset, or size()
+	 *   if there is none
+	 */
+	public int indexOf(int offset) {
+		return search(offset) - head;
+	}
+	
+	/**
+	 * @return the first marker styled as the component, or -1
+	 */
+	public int findComponent(String name) {
+		Holders holders = components.get(name);
+		if(holders == null)
+			return -1;
+		if(holders.count > 0 && holders.markers[0] < head)
+			holders.move(0, head, 0);
+		if(holders.count == 0) {
+			components.remove(name);
+			return -1;
+		}
+		return holders.markers[0] - head;
+	}
+	
+	/**
+	 * The marker's style merged with those of the markers around it.
+	 * @param registry if not null, merged styles come from the registry's cache
+	 */
+	public IWarlockStyle getBaseStyle(int marker, StyleRegistry registry) {
+		int i = head + marker;
+		IWarlockStyle style = styles[i];
+		for(int parent = parents[i]; parent >= head; parent = parents[parent]) {
+			IWarlockStyle parentStyle = styles[parent];
+			if(parentStyle == null) {
+				continue;
+			} else if(style == null) {
+				style = parentStyle;
+			} else if(registry != null) {
+				style = registry.merge(style, parentStyle);
+			} else {
+				WarlockStyle mergedStyle = new WarlockStyle(style);
+				mergedStyle.mergeWith(parentStyle);
+				style = mergedStyle;
+			}
+		}
+		return style;
+	}
+	
+	/**
+	 * Add the styles of text as top level markers.
+	 * @param offset where text starts in the document
+	 * @return the number of the first marker added
+	 */
+	public int append(WarlockString text, int offset) {
+		ensureCapacity(text.getRunCount());
+		int first = size;
+		size += text.getRunCount();
+		addRuns(first, text, offset, -1);
+		return first - head;
+	}
+	
+	/**
+	 * Add a marker inside the innermost marker holding its start, after
+	 * the markers that start before it.
+	 * @return the number of the new marker
+	 */
+	public int insert(IWarlockStyle style, int start, int end) {
+		ensureCapacity(1);
+		int i = search(start + 1);
+		int parent = i - 1;
+		while(parent >= head && end(parent) <= start)
+			parent = parents[parent];
+		if(parent < head)
+			parent = -1;
+		move(i, i, i + 1);
+		parents[i] = parent;
+		depths[i] = parent < 0 ? 0 : depths[parent] + 1;
+		styles[i] = style;
+		setPosition(i, start, end);
+		addComponent(i);
+		return i - head;
+	}
+	
+	/**
+	 * Remove a marker and the markers inside it. The document isn't
+	 * changed, so nothing else moves.
+	 */
+	public void remove(int marker) {
+		int i = head + marker;
+		move(i, subtreeEnd(i), i);
+	}
+	
+	/**
+	 * Change the length of a marker after the text at its end changed
+	 * length. The markers around it stretch along and the ones after it move.
+	 */
+	public void resize(int marker, int delta) {
+		int i = head + marker;
+		for(int parent = i; parent >= head; parent = parents[parent])
+			ends[parent] += delta;
+		shift(subtreeEnd(i), delta);
+	}
+	
+	/**
+	 * The text of a marker was replaced with value: replace the markers
+	 * inside it with value's styles, and resize it.
+	 */
+	public void replace(int marker, WarlockString value) {
+		int added = value.getRunCount();
+		ensureCapacity(added);
+		int i = head + marker;
+		int start = start(i);
+		int delta = value.length() - (end(i) - start);
+		move(i + 1, subtreeEnd(i), i + 1 + added);
+		addRuns(i + 1, value, start, i);
+		resize(marker, delta);
+	}
+	
+	/**
+	 * The first length characters of the document were dropped: move
+	 * everything back, and drop the markers that were before them.
+	 */
+	public void removeBefore(int length) {
+		base += length;
+		while(head < size && ends[head] - base + (head >= shiftIndex ? shiftDelta : 0) < 0) {
+			styles[head] = null;
+			head++;
+		}
+		if(head == size)
+			clear();
+	}
+	
+	/**
+	 * length characters without markers were put before the document:
+	 * move everything on.
+	 */
+	public void insertBefore(int length) {
+		base -= length;
+	}
+
+	public void clear() {
+		for(int i = head; i < size; i++)
+			styles[i] = null;
+		head = 0;
+		size = 0;
+		shiftIndex = 0;
+		shiftDelta = 0;
+		base = 0;
+		components.clear();
+	}
+	
+	private int start(int i) {
+		int start = starts[i] - base;
+		if(i >= shiftIndex)
+			start += shiftDelta;
+		return start < 0 ? 0 : start;
+	}
+	
+	private int end(int i) {
+		int end = ends[i] - base;
+		if(i >= shiftIndex)
+			end += shiftDelta;
+		return end < 0 ? 0 : end;
+	}
+	
+	private void setPosition(int i, int start, int end) {
+		int delta = base - (i >= shiftIndex ? shiftDelta : 0);
+		starts[i] = start + delta;
+		ends[i] = end + delta;
+	}
+	
+	// the first marker at or after head that starts at or after offset
+	private int search(int offset) {
+		int low = head;
+		int high = size;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(start(mid) < offset)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+	
+	private int subtreeEnd(int i) {
+		int depth = depths[i];
+		int end = i + 1;
+		while(end < size && depths[end] > depth)
+			end++;
+		return end;
+	}
+	
+	/*
+	 * Fill in markers from at on with text's runs, moved by offset and
+	 * nested in parent.
+	 */
+	private void addRuns(int at, WarlockString text, int offset, int parent) {
+		for(int run = 0; run < text.getRunCount(); run++) {
+			int i = at + run;
+			int depth = text.getRunDepth(run);
+			int p = i - 1;
+			while(p >= at && text.getRunDepth(p - at) >= depth)
+				p = parents[p];
+			if(p < at)
+				p = parent;
+			parents[i] = p;
+			depths[i] = p < 0 ? 0 : depths[p] + 1;
+			styles[i] = text.getRunStyle(run);
+			setPosition(i, text.getRunStart(run) + offset, text.getRunEnd(run) + offset);
+			addComponent(i);
+		}
+	}
+	
+	private void addComponent(int i) {
+		IWarlockStyle style = styles[i];
+		String name = style == null ? null : style.getComponentName();
+		if(name == null)
+			return;
+		Holders holders = components.get(name);
+		if(holders == null) {
+			holders = new Holders();
+			components.put(name, holders);
+		}
+		holders.add(i);
+	}
+	
+	/*
+	 * Move the markers after a change by delta. Only the markers between
+	 * the last change and this one are touched.
+	 */
+	private void shift(int from, int delta) {
+		if(from < shiftIndex) {
+			for(int i = from; i < shiftIndex; i++) {
+				starts[i] -= shiftDelta;
+				ends[i] -= shiftDelta;
+			}
+		} else {
+			for(int i = shiftIndex; i < from; i++) {
+				starts[i] += shiftDelta;
+				ends[i] += shiftDelta;
+			}
+		}
+		shiftIndex = from;
+		shiftDelta += delta;
+	}
+	
+	/*
+	 * Drop the markers in [drop, from) and move the ones from from on to to,
+	 * leaving [drop, to) to fill in. There has to be room already. This
+	 * copies and renumbers every marker from from on.
+	 */
+	private void move(int drop, int from, int to) {
+		int delta = to - from;
+		shift(from, 0);
+		if(delta != 0) {
+			int count = size - from;
+			System.arraycopy(starts, from, starts, to, count);
+			System.arraycopy(ends, from, ends, to, count);
+			System.arraycopy(parents, from, parents, to, count);
+			System.arraycopy(depths, from, depths, to, count);
+			System.arraycopy(styles, from, styles, to, count);
+			for(int i = size + delta; i < size; i++)
+				styles[i] = null;
+			size += delta;
+			for(int i = to; i < size; i++) {
+				if(parents[i] >= from)
+					parents[i] += delta;
+			}
+		}
+		if(drop < from || delta != 0) {
+			for(Iterator<Holders> iter = components.values().iterator(); iter.hasNext(); ) {
+				Holders holders = iter.next();
+				holders.move(drop, from, delta);
+				if(holders.count == 0)
+					iter.remove();
+			}
+		}
+		shiftIndex = to;
+	}
+	
+	private void ensureCapacity(int extra) {
+		if(size + extra <= starts.length)
+			return;
+		if(head >= starts.length / 2) {
+			compact();
+			if(size + extra <= starts.length)
+				return;
+		}
+		int capacity = Math.max(size + extra, starts.length * 2);
+		int[] newStarts = new int[capacity];
+		int[] newEnds = new int[capacity];
+		int[] newParents = new int[capacity];
+		int[] newDepths = new int[capacity];
+		IWarlockStyle[] newStyles = new IWarlockStyle[capacity];
+		System.arraycopy(starts, 0, newStarts, 0, size);
+		System.arraycopy(ends, 0, newEnds, 0, size);
+		System.arraycopy(parents, 0, newParents, 0, size);
+		System.arraycopy(depths, 0, newDepths, 0, size);
+		System.arraycopy(styles, 0, newStyles, 0, size);
+		starts = newStarts;
+		ends = newEnds;
+		parents = newParents;
+		depths = newDepths;
+		styles = newStyles;
+	}
+	
+	// move the markers held down to index 0
+	private void compact() {
+		int count = size - head;
+		for(int i = head; i < size; i++) {
+			starts[i] -= base;
+			ends[i] -= base;
+			parents[i] = parents[i] < head ? -1 : parents[i] - head;
+		}
+		base = 0;
+		System.arraycopy(starts, head, starts, 0, count);
+		System.arraycopy(ends, head, ends, 0, count);
+		System.arraycopy(parents, head, parents, 0, count);
+		System.arraycopy(depths, head, depths, 0, count);
+		System.arraycopy(styles, head, styles, 0, count);
+		for(int i = count; i < size; i++)
+			styles[i] = null;
+		for(Iterator<Holders> iter = components.values().iterator(); iter.hasNext(); ) {
+			Holders holders = iter.next();
+			holders.move(0, head, -head);
+			if(holders.count == 0)
+				iter.remove();
+		}
+		shiftIndex = Math.max(0, shiftIndex - head);
+		size = count;
+		head = 0;
+	}
+}
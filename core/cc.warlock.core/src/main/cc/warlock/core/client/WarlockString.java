@@ -27,102 +27,431 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Text with nested styles.
+ * 
+ * The characters live in a buffer that strings made from one another by
+ * substring() and append() share where they can. Characters are only ever
+ * added past the used end of a buffer and never changed, so each string
+ * owns a range of one, and the string whose range ends where the buffer's
+ * used part does can keep appending in place. A string built from a
+ * java.lang.String just keeps that String until it is appended to.
+ * 
+ * Styles are a flat array of runs (start, end, depth, style) in the order
+ * they were opened. A run's parent is the closest run before it with a
+ * smaller depth. getStyles() builds the equivalent tree of
+ * WarlockStringMarkers for code that still wants one.
+ */
 public class WarlockString {
 
-	private StringBuffer text = new StringBuffer();
-	private LinkedList<WarlockStringMarker> styles = new LinkedList<WarlockStringMarker>();
+	private static final int RUN_SIZE = 3;
+	private static final int START = 0;
+	private static final int END = 1;
+	private static final int DEPTH = 2;
+	
+	private static class Chars {
+		final char[] data;
+		int used;
+		
+		Chars (int capacity) {
+			data = new char[capacity];
+		}
+	}
+	
+	// null while the text is empty or held in string
+	private Chars chars;
+	private int offset;
+	private int length;
+	private String string;
+	
+	private int runCount = 0;
+	private int[] runs;
+	private IWarlockStyle[] runStyles;
+	// whether runs and runStyles are shared with another string
+	private boolean runsShared = false;
+	private int openDepth = 0;
 	
 	public WarlockString() {
 	}
 	
 	public WarlockString(CharSequence text) {
-		this.text.append(text);
+		this(text.toString());
 	}
 	
 	public WarlockString(String text) {
-		this.text.append(text);
+		this.string = text;
+		this.length = text.length();
 	}
 	
 	public WarlockString(String text, IWarlockStyle style) {
-		this.text.append(text);
+		this(text);
 		addStyle(style);
 	}
 	
 	public String toString() {
-		return text.toString();
+		if(string == null)
+			string = chars == null ? "" : new String(chars.data, offset, length);
+		return string;
 	}
 	
 	public int indexOf(String str) {
-		return text.indexOf(str);
+		return toString().indexOf(str);
 	}
 	
 	public int indexOf(String str, int fromIndex) {
-		return text.indexOf(str, fromIndex);
+		return toString().indexOf(str, fromIndex);
 	}
 	
 	public int lastIndexOf(String str) {
-		return this.text.lastIndexOf(str);
+		return toString().lastIndexOf(str);
 	}
 	
-	public void append(String text) {
-		this.text.append(text);
+	public char charAt(int index) {
+		if(chars == null)
+			return string.charAt(index);
+		return chars.data[offset + index];
 	}
 	
-	public void append(WarlockString string) {
-		int charCount = text.length();
-		text.append(string.toString());
-		for(WarlockStringMarker marker : string.getStyles()) {
-			styles.add(marker.copy(charCount));
+	public void append(String text) {
+		int n = text.length();
+		if(n == 0)
+			return;
+		if(length == 0 && chars == null) {
+			string = text;
+			length = n;
+			return;
 		}
+		int pos = claim(n);
+		text.getChars(0, n, chars.data, pos);
 	}
 	
-	public void addStyle(IWarlockStyle style) {
-		WarlockStringMarker newMarker = new WarlockStringMarker(style, 0, text.length());
+	public void append(WarlockString string) {
+		if(string.length == 0 && string.runCount == 0)
+			return;
 		
-		for(WarlockStringMarker curMarker : styles) {
-			newMarker.addMarker(curMarker);
+		// share everything with an empty string
+		if(length == 0 && runCount == 0 && openDepth == 0) {
+			chars = string.chars;
+			offset = string.offset;
+			length = string.length;
+			this.string = string.string;
+			if(string.runCount > 0) {
+				runs = string.runs;
+				runStyles = string.runStyles;
+				runCount = string.runCount;
+				runsShared = string.runsShared = true;
+			}
+			return;
 		}
 		
-		styles.clear();
+		// read everything first, string may be this
+		Chars srcChars = string.chars;
+		int srcOffset = string.offset;
+		int srcLength = string.length;
+		String srcString = string.string;
+		int[] srcRuns = string.runs;
+		IWarlockStyle[] srcStyles = string.runStyles;
+		int srcRunCount = string.runCount;
 		
-		styles.add(newMarker);
+		int charCount = length;
+		if(srcLength > 0) {
+			int pos = claim(srcLength);
+			if(srcChars != null)
+				System.arraycopy(srcChars.data, srcOffset, chars.data, pos, srcLength);
+			else
+				srcString.getChars(0, srcLength, chars.data, pos);
+		}
+		
+		if(srcRunCount > 0) {
+			prepareRuns(srcRunCount);
+			for(int i = 0; i < srcRunCount; i++) {
+				int from = i * RUN_SIZE;
+				int to = runCount * RUN_SIZE;
+				runs[to + START] = srcRuns[from + START] + charCount;
+				runs[to + END] = srcRuns[from + END] + charCount;
+				runs[to + DEPTH] = srcRuns[from + DEPTH];
+				runStyles[runCount] = srcStyles[i];
+				runCount++;
+			}
+		}
 	}
 	
+	/*
+	 * Extend this string by n characters, returning the position in
+	 * chars.data to write them to.
+	 */
+	private int claim(int n) {
+		if(chars != null) {
+			synchronized(chars) {
+				if(chars.used == offset + length && chars.data.length - chars.used >= n) {
+					chars.used += n;
+					int pos = offset + length;
+					length += n;
+					string = null;
+					return pos;
+				}
+			}
+		}
+		
+		// copy into a buffer of our own, with room to grow
+		int newLength = length + n;
+		Chars own = new Chars(Math.max(16, newLength + (newLength >> 1)));
+		if(chars != null)
+			System.arraycopy(chars.data, offset, own.data, 0, length);
+		else if(length > 0)
+			string.getChars(0, length, own.data, 0);
+		own.used = newLength;
+		chars = own;
+		offset = 0;
+		int pos = length;
+		length = newLength;
+		string = null;
+		return pos;
+	}
+	
+	/*
+	 * Make sure the characters are in a buffer, so they can be shared.
+	 */
+	private void materialize() {
+		if(chars != null || length == 0)
+			return;
+		chars = new Chars(length);
+		string.getChars(0, length, chars.data, 0);
+		chars.used = length;
+		offset = 0;
+	}
+	
+	/*
+	 * Make the runs writable, with room for extra more.
+	 */
+	private void prepareRuns(int extra) {
+		int needed = runCount + extra;
+		if(runs != null && !runsShared && runStyles.length >= needed)
+			return;
+		int capacity = Math.max(4, needed + (needed >> 1));
+		int[] newRuns = new int[capacity * RUN_SIZE];
+		IWarlockStyle[] newStyles = new IWarlockStyle[capacity];
+		if(runCount > 0) {
+			System.arraycopy(runs, 0, newRuns, 0, runCount * RUN_SIZE);
+			System.arraycopy(runStyles, 0, newStyles, 0, runCount);
+		}
+		runs = newRuns;
+		runStyles = newStyles;
+		runsShared = false;
+	}
+	
+	/**
+	 * Style the whole string, around any styles it already has.
+	 */
+	public void addStyle(IWarlockStyle style) {
+		prepareRuns(1);
+		System.arraycopy(runs, 0, runs, RUN_SIZE, runCount * RUN_SIZE);
+		System.arraycopy(runStyles, 0, runStyles, 1, runCount);
+		runCount++;
+		for(int i = 1; i < runCount; i++)
+			runs[i * RUN_SIZE + DEPTH]++;
+		runs[START] = 0;
+		runs[END] = length;
+		runs[DEPTH] = 0;
+		runStyles[0] = style;
+	}
+	
+	/**
+	 * Start a style at the current end of the string, nested in any style
+	 * opened before and not closed yet. It stays empty until closed.
+	 * @return the run, to pass to closeStyle()
+	 */
+	public int openStyle(IWarlockStyle style) {
+		prepareRuns(1);
+		int i = runCount * RUN_SIZE;
+		runs[i + START] = length;
+		runs[i + END] = length;
+		runs[i + DEPTH] = openDepth++;
+		runStyles[runCount] = style;
+		return runCount++;
+	}
+	
+	/**
+	 * End a style opened with openStyle() at the current end of the string.
+	 */
+	public void closeStyle(int run) {
+		prepareRuns(0);
+		runs[run * RUN_SIZE + END] = length;
+		if(openDepth > 0)
+			openDepth--;
+	}
+	
+	/**
+	 * Remove a run, such as one opened and never closed, which covers no
+	 * text. The runs nested in it move up a level.
+	 */
+	public void removeRun(int run) {
+		prepareRuns(0);
+		int depth = runs[run * RUN_SIZE + DEPTH];
+		int after = run + 1;
+		while(after < runCount && runs[after * RUN_SIZE + DEPTH] > depth) {
+			runs[after * RUN_SIZE + DEPTH]--;
+			after++;
+		}
+		System.arraycopy(runs, (run + 1) * RUN_SIZE, runs, run * RUN_SIZE, (runCount - run - 1) * RUN_SIZE);
+		System.arraycopy(runStyles, run + 1, runStyles, run, runCount - run - 1);
+		runStyles[--runCount] = null;
+	}
+	
+	public int getRunCount() {
+		return runCount;
+	}
+	
+	public int getRunStart(int run) {
+		return runs[run * RUN_SIZE + START];
+	}
+	
+	public int getRunEnd(int run) {
+		return runs[run * RUN_SIZE + END];
+	}
+	
+	public int getRunDepth(int run) {
+		return runs[run * RUN_SIZE + DEPTH];
+	}
+	
+	public IWarlockStyle getRunStyle(int run) {
+		return runStyles[run];
+	}
+
+	/**
+	 * Add a run after the existing ones, as read back from getRunStart(),
+	 * getRunEnd() and getRunDepth(). Runs have to be added in that same order.
+	 */
+	public void addRun(IWarlockStyle style, int start, int end, int depth) {
+		prepareRuns(1);
+		int r = runCount * RUN_SIZE;
+		runs[r + START] = start;
+		runs[r + END] = end;
+		runs[r + DEPTH] = depth;
+		runStyles[runCount] = style;
+		runCount++;
+	}
+
+	/**
+	 * A new tree of markers equivalent to the style runs. It is a snapshot:
+	 * changing the list or the markers doesn't change the string.
+	 */
 	public List<WarlockStringMarker> getStyles() {
-		return styles;
+		LinkedList<WarlockStringMarker> roots = new LinkedList<WarlockStringMarker>();
+		WarlockStringMarker[] stack = new WarlockStringMarker[8];
+		int[] depths = new int[8];
+		int top = 0;
+		for(int i = 0; i < runCount; i++) {
+			int r = i * RUN_SIZE;
+			WarlockStringMarker marker = new WarlockStringMarker(runStyles[i], runs[r + START], runs[r + END]);
+			int depth = runs[r + DEPTH];
+			while(top > 0 && depths[top - 1] >= depth)
+				top--;
+			if(top == 0)
+				roots.add(marker);
+			else
+				stack[top - 1].addMarker(marker);
+			if(top == stack.length) {
+				WarlockStringMarker[] newStack = new WarlockStringMarker[top * 2];
+				System.arraycopy(stack, 0, newStack, 0, top);
+				stack = newStack;
+				int[] newDepths = new int[top * 2];
+				System.arraycopy(depths, 0, newDepths, 0, top);
+				depths = newDepths;
+			}
+			stack[top] = marker;
+			depths[top] = depth;
+			top++;
+		}
+		return roots;
 	}
 	
 	public boolean hasStyleNamed(String styleName) {
-		for(WarlockStringMarker marker : styles) {
-			if(marker.hasStyleNamed(styleName))
+		for(int i = 0; i < runCount; i++) {
+			IWarlockStyle style = runStyles[i];
+			String name = style == null ? null : style.getName();
+			if(name != null && name.equals(styleName))
 				return true;
 		}
 		return false;
 	}
 	
 	public int length() {
-		return text.length();
+		return length;
 	}
 	
 	public void clear() {
-		text.setLength(0);
-		styles.clear();
+		chars = null;
+		offset = 0;
+		length = 0;
+		string = null;
+		runCount = 0;
+		if(runsShared) {
+			runs = null;
+			runStyles = null;
+			runsShared = false;
+		}
+		openDepth = 0;
 	}
 	
 	public WarlockString substring(int start) {
-		return substring(start, text.length());
+		return substring(start, length);
 	}
 	
+	/**
+	 * Add a marker and its sub-markers as styles. The marker is copied, so
+	 * changing it afterwards doesn't change the string.
+	 */
 	public void addMarker(WarlockStringMarker marker) {
-		styles.add(marker);
+		addMarker(marker, 0);
+	}
+	
+	private void addMarker(WarlockStringMarker marker, int depth) {
+		prepareRuns(1);
+		int i = runCount * RUN_SIZE;
+		runs[i + START] = marker.getStart();
+		runs[i + END] = marker.getEnd();
+		runs[i + DEPTH] = depth;
+		runStyles[runCount] = marker.getStyle();
+		runCount++;
+		for(WarlockStringMarker subMarker : marker.getSubMarkers())
+			addMarker(subMarker, depth + 1);
 	}
 	
 	public WarlockString substring(int start, int end) {
-		WarlockString substring = new WarlockString(text.substring(start, end));
+		WarlockString substring = new WarlockString();
+		materialize();
+		if(end > start) {
+			substring.chars = chars;
+			substring.offset = offset + start;
+			substring.length = end - start;
+		}
 		
-		for(WarlockStringMarker marker : styles) {
-			if(marker.getEnd() >= start && marker.getStart() <= end)
-				substring.addMarker(marker.copy(-start, end - start));
+		// keep the runs touching the range, and their sub-runs that end in it
+		int newLength = end - start;
+		int skipDepth = -1;
+		for(int i = 0; i < runCount; i++) {
+			int r = i * RUN_SIZE;
+			int depth = runs[r + DEPTH];
+			if(skipDepth >= 0) {
+				if(depth > skipDepth)
+					continue;
+				skipDepth = -1;
+			}
+			int runStart = runs[r + START];
+			int runEnd = runs[r + END];
+			boolean keep = depth == 0 ? runEnd >= start && runStart <= end : runEnd > start;
+			if(!keep) {
+				skipDepth = depth;
+				continue;
+			}
+			substring.prepareRuns(1);
+			int s = substring.runCount * RUN_SIZE;
+			substring.runs[s + START] = Math.max(0, runStart - start);
+			substring.runs[s + END] = Math.min(newLength, runEnd - start);
+			substring.runs[s + DEPTH] = depth;
+			substring.runStyles[substring.runCount] = runStyles[i];
+			substring.runCount++;
 		}
 		
 		return substring;
@@ -162,7 +491,7 @@ public class WarlockString {
 	}
 	
 	public WarlockStringMarker getMarkerByComponent(String id) {
-		for(WarlockStringMarker marker : styles) {
+		for(WarlockStringMarker marker : getStyles()) {
 			WarlockStringMarker subMarker = marker.getMarkerByComponent(id);
 			if(subMarker != null)
 				return subMarker;
@@ -170,17 +499,100 @@ public class WarlockString {
 		return null;
 	}
 	
+	/**
+	 * Replace the text of the first run styled as component id, and the
+	 * styles inside it, with value. Styles after it move along with the text.
+	 * @return whether the component was found
+	 */
+	public boolean replaceComponent(String id, WarlockString value) {
+		int run = -1;
+		for(int i = 0; i < runCount; i++) {
+			IWarlockStyle style = runStyles[i];
+			if(style != null && id.equals(style.getComponentName())) {
+				run = i;
+				break;
+			}
+		}
+		if(run < 0)
+			return false;
+		
+		int start = runs[run * RUN_SIZE + START];
+		int end = runs[run * RUN_SIZE + END];
+		int depth = runs[run * RUN_SIZE + DEPTH];
+		int delta = value.length - (end - start);
+		
+		replace(start, end, value.toString());
+		
+		// the runs nested in the component go, value's come in their place
+		int after = run + 1;
+		while(after < runCount && runs[after * RUN_SIZE + DEPTH] > depth)
+			after++;
+		int removed = after - run - 1;
+		int added = value.runCount;
+		prepareRuns(Math.max(0, added - removed));
+		int tail = runCount - after;
+		System.arraycopy(runs, after * RUN_SIZE, runs, (run + 1 + added) * RUN_SIZE, tail * RUN_SIZE);
+		System.arraycopy(runStyles, after, runStyles, run + 1 + added, tail);
+		for(int i = 0; i < added; i++) {
+			int from = i * RUN_SIZE;
+			int to = (run + 1 + i) * RUN_SIZE;
+			runs[to + START] = value.runs[from + START] + start;
+			runs[to + END] = value.runs[from + END] + start;
+			runs[to + DEPTH] = value.runs[from + DEPTH] + depth + 1;
+			runStyles[run + 1 + i] = value.runStyles[i];
+		}
+		for(int i = runCount; i > run + 1 + added + tail; i--)
+			runStyles[i - 1] = null;
+		runCount = run + 1 + added + tail;
+		
+		// the component and the runs around it stretch, the ones after move
+		runs[run * RUN_SIZE + END] = start + value.length;
+		int want = depth;
+		for(int i = run - 1; i >= 0 && want > 0; i--) {
+			int r = i * RUN_SIZE;
+			if(runs[r + DEPTH] < want) {
+				runs[r + END] += delta;
+				want = runs[r + DEPTH];
+			}
+		}
+		for(int i = run + 1 + added; i < runCount; i++) {
+			int r = i * RUN_SIZE;
+			runs[r + START] = Math.max(0, runs[r + START] + delta);
+			runs[r + END] = Math.max(0, runs[r + END] + delta);
+		}
+		return true;
+	}
+	
+	/**
+	 * Replace characters, leaving the styles where they are.
+	 */
 	public void replace(int start, int end, String str) {
-		text.replace(start, end, str);
+		int newLength = length - (end - start) + str.length();
+		Chars own = new Chars(Math.max(16, newLength + (newLength >> 1)));
+		String text = toString();
+		text.getChars(0, start, own.data, 0);
+		str.getChars(0, str.length(), own.data, start);
+		text.getChars(end, length, own.data, start + str.length());
+		own.used = newLength;
+		chars = own;
+		offset = 0;
+		length = newLength;
+		string = null;
 	}
 	
 	public int getLineCount() {
-		int i = 0;
 		int count = 0;
-		while((i = text.indexOf("\n", i)) > 0) {
-			// start the next search after the previous index.
-			i++;
-			count++;
+		if(chars == null) {
+			for(int i = 0; i < length; i++) {
+				if(string.charAt(i) == '\n')
+					count++;
+			}
+		} else {
+			char[] data = chars.data;
+			for(int i = offset; i < offset + length; i++) {
+				if(data[i] == '\n')
+					count++;
+			}
 		}
 		return count;
 	}
@@ -4,6 +4,7 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
 
+import cc.warlock.core.client.internal.StyleRegistry;
 import cc.warlock.core.client.internal.WarlockStyle;
 
 
@@ -188,11 +189,21 @@ public class WarlockStringMarker {
 	}
 	
 	public IWarlockStyle getBaseStyle(WarlockStringMarker marker) {
+		return getBaseStyle(marker, null);
+	}
+	
+	/**
+	 * @param registry if not null, merged styles come from the registry's
+	 *   cache instead of being allocated for each call
+	 */
+	public IWarlockStyle getBaseStyle(WarlockStringMarker marker, StyleRegistry registry) {
 		if(this == marker)
 			return style;
 		for(WarlockStringMarker subMarker : subMarkers) {
-			IWarlockStyle baseStyle = subMarker.getBaseStyle(marker);
+			IWarlockStyle baseStyle = subMarker.getBaseStyle(marker, registry);
 			if(baseStyle != null) {
+				if(registry != null)
+					return registry.merge(baseStyle, style);
 				WarlockStyle mergedStyle = new WarlockStyle(baseStyle);
 				mergedStyle.mergeWith(style);
 				return mergedStyle;
@@ -21,15 +21,14 @@
  */
 package cc.warlock.core.client.internal;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import cc.warlock.core.client.ICharacterStatus;
-import cc.warlock.core.client.IPropertyListener;
 import cc.warlock.core.client.IWarlockClient;
 
 public class CharacterStatus extends Property<String> implements ICharacterStatus {
 	
-	protected HashMap<StatusType, Boolean> status = new HashMap<StatusType, Boolean>();
+	protected ConcurrentHashMap<StatusType, Boolean> status = new ConcurrentHashMap<StatusType, Boolean>();
 	
 	public CharacterStatus (IWarlockClient client) {
 		super(null);
@@ -44,9 +43,7 @@ public class CharacterStatus extends Property<String> implements ICharacterStatu
 		
 		if (statusType != null) {
 			status.put(statusType, true);
-			for (IPropertyListener<String> listener : listeners) {
-				listener.propertyChanged(this.get());
-			}
+			fireChanged(this.get());
 		}
 	}
 	
@@ -55,9 +52,7 @@ public class CharacterStatus extends Property<String> implements ICharacterStatu
 		
 		if (statusType != null) {
 			status.put(statusType, false);
-			for (IPropertyListener<String> listener : listeners) {
-				listener.propertyChanged(this.get());
-			}
+			fireChanged(this.get());
 		}
 	}
 	
@@ -0,0 +1,202 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.client.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import cc.warlock.core.client.IWarlockHighlight;
+import cc.warlock.core.client.IWarlockStyle;
+import cc.warlock.core.util.RegexLiterals;
+
+/**
+ * The highlights of a client compiled into one matcher.
+ * 
+ * Each highlight is compiled with a piece of text any match has to contain:
+ * the whole text of a literal highlight, and for an expression the text
+ * {@link RegexLiterals} finds it needs. One pass over the text finds which of
+ * those pieces it holds, ignoring case, and only their highlights and the
+ * ones without a piece have their patterns run.
+ * 
+ * An engine doesn't change once built, so it can be used on any thread.
+ */
+public class HighlightEngine {
+
+	/**
+	 * Where a highlight matched, taking in its whole line if its style is
+	 * a full line style.
+	 */
+	public static class Match {
+		private final int start;
+		private final int end;
+		private final IWarlockHighlight highlight;
+		
+		public Match(int start, int end, IWarlockHighlight highlight) {
+			this.start = start;
+			this.end = end;
+			this.highlight = highlight;
+		}
+		
+		public int getStart() {
+			return start;
+		}
+		
+		public int getEnd() {
+			return end;
+		}
+		
+		public IWarlockHighlight getHighlight() {
+			return highlight;
+		}
+	}
+	
+	private final IWarlockHighlight[] highlights;
+	private final Pattern[] patterns;
+	// the literal a highlight needs, or -1 to run it on all text
+	private final int[] literals;
+	private final LiteralMatcher matcher;
+	private final int literalCount;
+	
+	/**
+	 * @param highlights in the order they are drawn, each over those before
+	 */
+	public HighlightEngine(Iterator<? extends IWarlockHighlight> highlights) {
+		ArrayList<IWarlockHighlight> compiled = new ArrayList<IWarlockHighlight>();
+		ArrayList<Pattern> patterns = new ArrayList<Pattern>();
+		ArrayList<Integer> highlightLiterals = new ArrayList<Integer>();
+		HashMap<String, Integer> literalIds = new HashMap<String, Integer>();
+		ArrayList<String> literals = new ArrayList<String>();
+		
+		while(highlights.hasNext()) {
+			IWarlockHighlight highlight = highlights.next();
+			if(highlight == null)
+				continue;
+			Pattern pattern;
+			try {
+				pattern = highlight.getPattern();
+			} catch(PatternSyntaxException e) {
+				continue;
+			}
+			if(pattern == null)
+				continue;
+			
+			String literal = highlight.isLiteral() ? highlight.getText()
+					: RegexLiterals.getRequiredLiteral(highlight.getText());
+			Integer id = null;
+			if(literal != null && literal.length() > 0) {
+				literal = toLowerCase(literal);
+				id = literalIds.get(literal);
+				if(id == null) {
+					id = literals.size();
+					literals.add(literal);
+					literalIds.put(literal, id);
+				}
+			}
+			compiled.add(highlight);
+			patterns.add(pattern);
+			highlightLiterals.add(id == null ? -1 : id);
+		}
+		
+		this.highlights = compiled.toArray(new IWarlockHighlight[compiled.size()]);
+		this.patterns = patterns.toArray(new Pattern[patterns.size()]);
+		this.literals = new int[highlightLiterals.size()];
+		for(int i = 0; i < this.literals.length; i++)
+			this.literals[i] = highlightLiterals.get(i);
+		this.matcher = new LiteralMatcher(literals.toArray(new String[literals.size()]));
+		this.literalCount = literals.size();
+	}
+	
+	/**
+	 * @return whether none of the highlights has had its pattern changed
+	 *   since the engine was built
+	 */
+	public boolean isCurrent() {
+		for(int i = 0; i < highlights.length; i++) {
+			try {
+				if(highlights[i].getPattern() != patterns[i])
+					return false;
+			} catch(PatternSyntaxException e) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return the number of highlights with a pattern
+	 */
+	public int size() {
+		return highlights.length;
+	}
+	
+	/**
+	 * Find the highlights in text. Full lines are taken from text, so a
+	 * line it starts or ends part way through is cut there.
+	 * 
+	 * @return the matches of each highlight in turn, each highlight's in
+	 *   the order they are in text
+	 */
+	public List<Match> match(String text) {
+		ArrayList<Match> matches = new ArrayList<Match>();
+		if(highlights.length == 0 || text.length() == 0)
+			return matches;
+		
+		boolean[] found = new boolean[literalCount];
+		if(literalCount > 0)
+			matcher.find(toLowerCase(text), found);
+		
+		for(int i = 0; i < highlights.length; i++) {
+			if(literals[i] >= 0 && !found[literals[i]])
+				continue;
+			IWarlockStyle style = highlights[i].getStyle();
+			boolean fullLine = style != null && style.isFullLine();
+			Matcher m = patterns[i].matcher(text);
+			while(m.find()) {
+				int start = m.start();
+				int end = m.end();
+				if(fullLine) {
+					start = text.lastIndexOf('\n', start - 1) + 1;
+					int newline = text.indexOf('\n', m.start());
+					end = newline < 0 ? text.length() : newline + 1;
+				}
+				matches.add(new Match(start, end, highlights[i]));
+			}
+		}
+		return matches;
+	}
+	
+	/*
+	 * Lower case a character at a time, so offsets don't move. Anything
+	 * a pattern matches ignoring case is the same lowered.
+	 */
+	private static String toLowerCase(String text) {
+		char[] chars = text.toCharArray();
+		for(int i = 0; i < chars.length; i++)
+			chars[i] = Character.toLowerCase(chars[i]);
+		return new String(chars);
+	}
+}
@@ -0,0 +1,229 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.client.internal;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import cc.warlock.core.client.IWarlockStyle;
+import cc.warlock.core.client.WarlockString;
+
+/**
+ * Lines of text with their style runs, kept off the heap in direct buffers
+ * so a long scrollback doesn't weigh on the garbage collector.
+ * 
+ * Lines are numbered from the first line ever added. They are written into
+ * segments of about a megabyte, and past the byte limit the oldest segment
+ * is dropped whole, with all its lines. Only the styles, which are objects,
+ * stay on the heap, in a table per segment.
+ */
+public class LineStore {
+
+	public static final long DEFAULT_BYTE_LIMIT = 64L << 20;
+	private static final int SEGMENT_BYTES = 1 << 20;
+	
+	private static class Segment {
+		final ByteBuffer buffer;
+		final ArrayList<IWarlockStyle> styles = new ArrayList<IWarlockStyle>();
+		// style -> index in styles, while lines are written to the segment
+		IdentityHashMap<IWarlockStyle, Integer> styleIds = new IdentityHashMap<IWarlockStyle, Integer>();
+		final long firstLine;
+		int lineCount = 0;
+		
+		Segment(int capacity, long firstLine) {
+			buffer = ByteBuffer.allocateDirect(capacity);
+			this.firstLine = firstLine;
+		}
+		
+		int styleId(IWarlockStyle style) {
+			if(style == null)
+				return -1;
+			Integer id = styleIds.get(style);
+			if(id == null) {
+				id = styles.size();
+				styles.add(style);
+				styleIds.put(style, id);
+			}
+			return id;
+		}
+	}
+	
+	private long byteLimit;
+	// capacity of the segments held
+	private long bytes = 0;
+	private Segment[] segments = new Segment[8];
+	private int segmentHead = 0;
+	private int segmentCount = 0;
+	// where each line starts in its segment, oldest at lineHead
+	private int[] offsets = new int[1024];
+	private int lineHead = 0;
+	private int lineCount = 0;
+	private long firstLine = 0;
+	
+	public LineStore(long byteLimit) {
+		this.byteLimit = byteLimit;
+	}
+	
+	/**
+	 * @return the number of the line added
+	 */
+	public synchronized long append(WarlockString line) {
+		String text = line.toString();
+		int runCount = line.getRunCount();
+		int size = 8 + text.length() * 2 + runCount * 16;
+		
+		Segment segment = segmentCount == 0 ? null : segments[(segmentHead + segmentCount - 1) % segments.length];
+		if(segment == null || segment.buffer.remaining() < size)
+			segment = addSegment(Math.max(SEGMENT_BYTES, size));
+		
+		ByteBuffer buffer = segment.buffer;
+		int offset = buffer.position();
+		buffer.putInt(text.length());
+		for(int i = 0; i < text.length(); i++)
+			buffer.putChar(text.charAt(i));
+		buffer.putInt(runCount);
+		for(int run = 0; run < runCount; run++) {
+			buffer.putInt(line.getRunStart(run));
+			buffer.putInt(line.getRunEnd(run));
+			buffer.putInt(line.getRunDepth(run));
+			buffer.putInt(segment.styleId(line.getRunStyle(run)));
+		}
+		segment.lineCount++;
+		
+		if(lineCount == offsets.length) {
+			int[] newOffsets = new int[offsets.length * 2];
+			for(int i = 0; i < lineCount; i++)
+				newOffsets[i] = offsets[(lineHead + i) % offsets.length];
+			offsets = newOffsets;
+			lineHead = 0;
+		}
+		offsets[(lineHead + lineCount) % offsets.length] = offset;
+		lineCount++;
+		return firstLine + lineCount - 1;
+	}
+	
+	/**
+	 * @return the line, or null if it was dropped or not added yet
+	 */
+	public synchronized WarlockString getLine(long number) {
+		if(number < firstLine || number >= firstLine + lineCount)
+			return null;
+		int offset = offsets[(int)((lineHead + number - firstLine) % offsets.length)];
+		Segment segment = findSegment(number);
+		ByteBuffer buffer = segment.buffer;
+		
+		int length = buffer.getInt(offset);
+		offset += 4;
+		char[] chars = new char[length];
+		for(int i = 0; i < length; i++, offset += 2)
+			chars[i] = buffer.getChar(offset);
+		WarlockString line = new WarlockString(new String(chars));
+		
+		int runCount = buffer.getInt(offset);
+		offset += 4;
+		for(int run = 0; run < runCount; run++, offset += 16) {
+			int style = buffer.getInt(offset + 12);
+			line.addRun(style < 0 ? null : segment.styles.get(style),
+					buffer.getInt(offset), buffer.getInt(offset + 4), buffer.getInt(offset + 8));
+		}
+		return line;
+	}
+	
+	/**
+	 * @return the number of the oldest line held
+	 */
+	public synchronized long getFirstLineNumber() {
+		return firstLine;
+	}
+	
+	/**
+	 * @return the number the next line added will get
+	 */
+	public synchronized long getEndLineNumber() {
+		return firstLine + lineCount;
+	}
+	
+	/**
+	 * @return the bytes taken off the heap
+	 */
+	public synchronized long getBytesUsed() {
+		return bytes;
+	}
+	
+	public synchronized void setByteLimit(long limit) {
+		byteLimit = limit;
+		while(bytes > byteLimit && segmentCount > 1)
+			dropOldest();
+	}
+	
+	public synchronized void clear() {
+		while(segmentCount > 0)
+			dropOldest();
+	}
+	
+	private Segment addSegment(int capacity) {
+		if(segmentCount > 0) {
+			// the last segment is full, so its styles won't be looked up again
+			segments[(segmentHead + segmentCount - 1) % segments.length].styleIds = null;
+		}
+		if(segmentCount == segments.length) {
+			Segment[] newSegments = new Segment[segments.length * 2];
+			for(int i = 0; i < segmentCount; i++)
+				newSegments[i] = segments[(segmentHead + i) % segments.length];
+			segments = newSegments;
+			segmentHead = 0;
+		}
+		Segment segment = new Segment(capacity, firstLine + lineCount);
+		segments[(segmentHead + segmentCount) % segments.length] = segment;
+		segmentCount++;
+		bytes += capacity;
+		while(bytes > byteLimit && segmentCount > 1)
+			dropOldest();
+		return segment;
+	}
+	
+	private void dropOldest() {
+		Segment segment = segments[segmentHead];
+		segments[segmentHead] = null;
+		segmentHead = (segmentHead + 1) % segments.length;
+		segmentCount--;
+		bytes -= segment.buffer.capacity();
+		lineHead = (lineHead + segment.lineCount) % offsets.length;
+		lineCount -= segment.lineCount;
+		firstLine += segment.lineCount;
+	}
+	
+	// the segment holding a line that is held
+	private Segment findSegment(long number) {
+		int low = 0;
+		int high = segmentCount - 1;
+		while(low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if(segments[(segmentHead + mid) % segments.length].firstLine <= number)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return segments[(segmentHead + low) % segments.length];
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.client.internal;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds which of a set of strings a text contains, in one pass over the
+ * text (an Aho-Corasick automaton).
+ */
+public class LiteralMatcher {
+
+	// for each node, the characters it has edges on, sorted, and their targets
+	private char[][] keys;
+	private int[][] targets;
+	// where to go on from a node when there is no edge for a character
+	private int[] fail;
+	// the literals that end at each node, counting those reached through fail
+	private int[][] outputs;
+	
+	/**
+	 * @param literals the strings to look for. A string is reported by its
+	 *   index in literals.
+	 */
+	public LiteralMatcher(String[] literals) {
+		ArrayList<TreeMap<Character, Integer>> edges = new ArrayList<TreeMap<Character, Integer>>();
+		ArrayList<ArrayList<Integer>> ends = new ArrayList<ArrayList<Integer>>();
+		edges.add(new TreeMap<Character, Integer>());
+		ends.add(new ArrayList<Integer>());
+		for(int id = 0; id < literals.length; id++) {
+			int node = 0;
+			for(int i = 0; i < literals[id].length(); i++) {
+				Character c = literals[id].charAt(i);
+				Integer next = edges.get(node).get(c);
+				if(next == null) {
+					next = edges.size();
+					edges.get(node).put(c, next);
+					edges.add(new TreeMap<Character, Integer>());
+					ends.add(new ArrayList<Integer>());
+				}
+				node = next;
+			}
+			ends.get(node).add(id);
+		}
+		
+		int count = edges.size();
+		keys = new char[count][];
+		targets = new int[count][];
+		for(int node = 0; node < count; node++) {
+			TreeMap<Character, Integer> nodeEdges = edges.get(node);
+			keys[node] = new char[nodeEdges.size()];
+			targets[node] = new int[nodeEdges.size()];
+			int i = 0;
+			for(Map.Entry<Character, Integer> edge : nodeEdges.entrySet()) {
+				keys[node][i] = edge.getKey();
+				targets[node][i] = edge.getValue();
+				i++;
+			}
+		}
+		
+		// breadth first, so each node's fail target is done before it
+		fail = new int[count];
+		outputs = new int[count][];
+		outputs[0] = toArray(ends.get(0));
+		int[] queue = new int[count];
+		int head = 0;
+		int tail = 0;
+		for(int i = 0; i < targets[0].length; i++) {
+			int child = targets[0][i];
+			fail[child] = 0;
+			outputs[child] = concat(ends.get(child), outputs[0]);
+			queue[tail++] = child;
+		}
+		while(head < tail) {
+			int node = queue[head++];
+			for(int i = 0; i < keys[node].length; i++) {
+				char c = keys[node][i];
+				int child = targets[node][i];
+				int f = fail[node];
+				while(f != 0 && next(f, c) < 0)
+					f = fail[f];
+				int target = next(f, c);
+				fail[child] = target < 0 ? 0 : target;
+				outputs[child] = concat(ends.get(child), outputs[fail[child]]);
+				queue[tail++] = child;
+			}
+		}
+	}
+	
+	/**
+	 * Mark the literals text contains.
+	 * @param found set to true at the index of each literal found, and
+	 *   left as it was for the others
+	 */
+	public void find(CharSequence text, boolean[] found) {
+		int node = 0;
+		int length = text.length();
+		for(int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			int next = next(node, c);
+			while(next < 0 && node != 0) {
+				node = fail[node];
+				next = next(node, c);
+			}
+			node = next < 0 ? 0 : next;
+			for(int id : outputs[node])
+				found[id] = true;
+		}
+	}
+	
+	private int next(int node, char c) {
+		char[] nodeKeys = keys[node];
+		int low = 0;
+		int high = nodeKeys.length - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			if(nodeKeys[mid] < c)
+				low = mid + 1;
+			else if(nodeKeys[mid] > c)
+				high = mid - 1;
+			else
+				return targets[node][mid];
+		}
+		return -1;
+	}
+	
+	private static int[] toArray(ArrayList<Integer> list) {
+		int[] array = new int[list.size()];
+		for(int i = 0; i < array.length; i++)
+			array[i] = list.get(i);
+		return array;
+	}
+	
+	private static int[] concat(ArrayList<Integer> list, int[] more) {
+		int[] array = new int[list.size() + more.length];
+		for(int i = 0; i < list.size(); i++)
+			array[i] = list.get(i);
+		System.arraycopy(more, 0, array, list.size(), more.length);
+		return array;
+	}
+}
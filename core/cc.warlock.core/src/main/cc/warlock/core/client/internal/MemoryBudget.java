@@ -0,0 +1,260 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.client.internal;
+
+import java.util.ArrayList;
+
+/**
+ * A limit on the bytes held by a group of consumers, such as the histories
+ * of one client's streams. Budgets nest: each client's budget is part of
+ * the global one. When a budget goes over its limit, the consumers under it
+ * are trimmed starting with the one used least recently.
+ * 
+ * Sizes are the consumers' own estimates of what they hold, not heap
+ * measurements.
+ */
+public class MemoryBudget {
+
+	public static final long DEFAULT_GLOBAL_LIMIT = 32L << 20;
+	public static final long DEFAULT_CLIENT_LIMIT = 8L << 20;
+	
+	public interface IConsumer {
+		/**
+		 * @return the bytes held
+		 */
+		public long getMemoryUsed();
+		
+		/**
+		 * Free at least bytes, or as much as there is.
+		 */
+		public void trimMemory(long bytes);
+	}
+	
+	private static class Entry {
+		final IConsumer consumer;
+		long used = 0;
+		long lastUsed = 0;
+		
+		Entry(IConsumer consumer) {
+			this.consumer = consumer;
+		}
+	}
+	
+	// guards every budget, which is cheap since they only do sums under it
+	private static final Object lock = new Object();
+	private static final MemoryBudget globalBudget = new MemoryBudget(null, DEFAULT_GLOBAL_LIMIT);
+	// counts updates, to order consumers by when they were last used
+	private static long clock = 0;
+	
+	private MemoryBudget parent;
+	private long limit;
+	private long used = 0;
+	private boolean disposed = false;
+	private ArrayList<MemoryBudget> children = new ArrayList<MemoryBudget>();
+	private ArrayList<Entry> entries = new ArrayList<Entry>();
+	
+	protected MemoryBudget(MemoryBudget parent, long limit) {
+		this.parent = parent;
+		this.limit = limit;
+	}
+	
+	/**
+	 * @return the budget every other budget is part of
+	 */
+	public static MemoryBudget getGlobalBudget() {
+		return globalBudget;
+	}
+	
+	/**
+	 * @return a new budget that is part of this one
+	 */
+	public MemoryBudget createBudget(long limit) {
+		MemoryBudget budget = new MemoryBudget(this, limit);
+		synchronized(lock) {
+			if(disposed)
+				budget.disposed = true;
+			else
+				children.add(budget);
+		}
+		return budget;
+	}
+	
+	/**
+	 * Stop counting this budget and its consumers as part of its parent.
+	 * The consumers and the budgets under this one are dropped, and later
+	 * updates to them are ignored.
+	 */
+	public void dispose() {
+		synchronized(lock) {
+			if(disposed)
+				return;
+			for(MemoryBudget budget = parent; budget != null; budget = budget.parent)
+				budget.used -= used;
+			if(parent != null)
+				parent.children.remove(this);
+			parent = null;
+			drop();
+		}
+	}
+	
+	private void drop() {
+		disposed = true;
+		used = 0;
+		entries.clear();
+		for(MemoryBudget child : children)
+			child.drop();
+		children.clear();
+	}
+	
+	public long getLimit() {
+		synchronized(lock) {
+			return limit;
+		}
+	}
+	
+	public void setLimit(long limit) {
+		synchronized(lock) {
+			this.limit = limit;
+		}
+		trim();
+	}
+	
+	/**
+	 * @return the bytes held by the consumers under this budget
+	 */
+	public long getUsed() {
+		synchronized(lock) {
+			return used;
+		}
+	}
+	
+	public void addConsumer(IConsumer consumer) {
+		synchronized(lock) {
+			if(!disposed && find(consumer) == null)
+				entries.add(new Entry(consumer));
+		}
+		update(consumer);
+	}
+	
+	public void removeConsumer(IConsumer consumer) {
+		synchronized(lock) {
+			Entry entry = find(consumer);
+			if(entry == null)
+				return;
+			setUsed(entry, 0);
+			entries.remove(entry);
+		}
+	}
+	
+	/**
+	 * Recount a consumer after it changed, and mark it as just used. Call
+	 * it without holding the consumer's locks, since it may have to trim
+	 * other consumers.
+	 */
+	public void update(IConsumer consumer) {
+		long bytes = consumer.getMemoryUsed();
+		synchronized(lock) {
+			Entry entry = find(consumer);
+			if(entry == null)
+				return;
+			setUsed(entry, bytes);
+			entry.lastUsed = ++clock;
+		}
+		trim();
+	}
+	
+	private Entry find(IConsumer consumer) {
+		for(Entry entry : entries) {
+			if(entry.consumer == consumer)
+				return entry;
+		}
+		return null;
+	}
+	
+	private void setUsed(Entry entry, long bytes) {
+		if(disposed)
+			return;
+		long delta = bytes - entry.used;
+		entry.used = bytes;
+		for(MemoryBudget budget = this; budget != null; budget = budget.parent)
+			budget.used += delta;
+	}
+	
+	/*
+	 * Trim consumers, least recently used first, until this budget and the
+	 * ones it is part of are back under their limits. Each consumer is
+	 * trimmed once at most, so one that can't free anything isn't retried.
+	 */
+	private void trim() {
+		long after = -1;
+		while(true) {
+			MemoryBudget owner = null;
+			Entry victim = null;
+			long excess = 0;
+			synchronized(lock) {
+				for(MemoryBudget budget = this; budget != null && victim == null; budget = budget.parent) {
+					if(budget.used > budget.limit) {
+						excess = budget.used - budget.limit;
+						victim = budget.leastRecentlyUsed(after);
+						if(victim != null)
+							owner = budget.ownerOf(victim);
+					}
+				}
+				if(victim == null)
+					return;
+				after = victim.lastUsed;
+			}
+			victim.consumer.trimMemory(excess);
+			long bytes = victim.consumer.getMemoryUsed();
+			synchronized(lock) {
+				if(owner != null && owner.entries.contains(victim))
+					owner.setUsed(victim, bytes);
+			}
+		}
+	}
+	
+	// the entry under this budget used longest ago, but after after
+	private Entry leastRecentlyUsed(long after) {
+		Entry oldest = null;
+		for(Entry entry : entries) {
+			if(entry.lastUsed > after && entry.used > 0 && (oldest == null || entry.lastUsed < oldest.lastUsed))
+				oldest = entry;
+		}
+		for(MemoryBudget child : children) {
+			Entry entry = child.leastRecentlyUsed(after);
+			if(entry != null && (oldest == null || entry.lastUsed < oldest.lastUsed))
+				oldest = entry;
+		}
+		return oldest;
+	}
+	
+	private MemoryBudget ownerOf(Entry entry) {
+		if(entries.contains(entry))
+			return this;
+		for(MemoryBudget child : children) {
+			MemoryBudget owner = child.ownerOf(entry);
+			if(owner != null)
+				return owner;
+		}
+		return null;
+	}
+}
@@ -21,15 +21,16 @@
  */
 package cc.warlock.core.client.internal;
 
-import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import cc.warlock.core.client.IProperty;
 import cc.warlock.core.client.IPropertyListener;
 
 public class Property<T> implements IProperty<T> {
 
-	protected T data;
-	protected ArrayList<IPropertyListener<T>> listeners = new ArrayList<IPropertyListener<T>>();
+	protected volatile T data;
+	// copied when changed, so listeners are called without a lock
+	protected CopyOnWriteArrayList<IPropertyListener<T>> listeners = new CopyOnWriteArrayList<IPropertyListener<T>>();
 	
 	public Property() {}
 	
@@ -39,6 +40,10 @@ public class Property<T> implements IProperty<T> {
 	
 	public void set(T data) {
 		this.data = data;
+		fireChanged(data);
+	}
+	
+	protected void fireChanged(T data) {
 		for(IPropertyListener<T> listener : listeners) {
 			listener.propertyChanged(data);
 		}
@@ -51,7 +56,7 @@ public class Property<T> implements IProperty<T> {
 	public void addListener(IPropertyListener<T> listener) {
 		if(listener == null)
 			return;
-		listeners.add(listener);
+		listeners.addIfAbsent(listener);
 	}
 	
 	public boolean removeListener(IPropertyListener<T> listener) {
@@ -24,13 +24,18 @@
  */
 package cc.warlock.core.client.internal;
 
-import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import cc.warlock.core.client.ICommand;
 import cc.warlock.core.client.IStream;
 import cc.warlock.core.client.IStreamListener;
 import cc.warlock.core.client.IWarlockClient;
+import cc.warlock.core.client.MemoryReport;
 import cc.warlock.core.client.WarlockString;
+import cc.warlock.core.client.logging.IClientLogger;
+import cc.warlock.core.client.logging.IStreamLogger;
 
 
 /**
@@ -44,107 +49,161 @@ public class Stream implements IStream {
 	
 	protected String title;
 	protected String subtitle;
-	private ArrayList<IStreamListener> listeners = new ArrayList<IStreamListener>();
+	// listeners by the consumer that delivers to them. Registering copies
+	// a consumer's list, so events are delivered without taking a lock.
+	private ConcurrentHashMap<String, CopyOnWriteArrayList<IStreamListener>> listeners
+		= new ConcurrentHashMap<String, CopyOnWriteArrayList<IStreamListener>>();
 	private String closedStyle;
 	private String closedTarget = "main";
 	private String streamName;
 	protected boolean isLogging = false;
 	private String location = "right";
 	private StreamHistory history = null;
+	private IStreamListener logListener = null;
+	// whether text was put since the last flush
+	private AtomicBoolean dirty = new AtomicBoolean(false);
+	// where events go, or null to deliver them on the calling thread
+	private StreamEventRing events = null;
 	
 	
 	public Stream (IWarlockClient client, String streamName) {
 		this.client = client;
 		this.streamName = streamName;
+		if(client instanceof WarlockClient)
+			events = ((WarlockClient)client).getEventRing();
 		if(!streamName.equalsIgnoreCase("main")) {
 			history = new StreamHistory();
-			this.addStreamListener(history);
+			if(client instanceof WarlockClient)
+				history.setBudget(((WarlockClient)client).getMemoryBudget());
+			this.addStreamListener(history, HISTORY_CONSUMER);
 		}
 	}
 
-	public synchronized void addStreamListener(IStreamListener listener) {
-		if (!listeners.contains(listener))
-			listeners.add(listener);
+	public void addStreamListener(IStreamListener listener) {
+		addStreamListener(listener, UI_CONSUMER);
 	}
 	
-	public synchronized void removeStreamListener(IStreamListener listener) {
-		listeners.remove(listener);
-	}
-
-	/*
-	 * this function should be called when the stream is first created, after
-	 * the initial listeners are added.
-	 */
-	public synchronized void create() {
-		for(IStreamListener listener : listeners) {
-			listener.streamCreated(this);
+	public void addStreamListener(IStreamListener listener, String consumer) {
+		CopyOnWriteArrayList<IStreamListener> group = listeners.get(consumer);
+		if(group == null) {
+			group = new CopyOnWriteArrayList<IStreamListener>();
+			CopyOnWriteArrayList<IStreamListener> existing = listeners.putIfAbsent(consumer, group);
+			if(existing != null)
+				group = existing;
 		}
+		group.addIfAbsent(listener);
+		if(events != null)
+			((WarlockClient)client).getEventConsumer(consumer);
 	}
 	
-	public synchronized void clear() {
-		for(IStreamListener listener : listeners) {
-			listener.streamCleared(this);
-		}
+	public void removeStreamListener(IStreamListener listener) {
+		for(CopyOnWriteArrayList<IStreamListener> group : listeners.values())
+			group.remove(listener);
 	}
 	
-	public synchronized void flush() {
-		for(IStreamListener listener : listeners) {
-			listener.streamFlush(this);
-		}
-	}
-	
-	public synchronized void put(WarlockString text) {
-		if (isLogging && client.getLogger() != null) {
-			client.getLogger().logText(text);
-		}
-
-		for(IStreamListener listener : listeners) {
+	/*
+	 * Deliver an event to the listeners of one consumer. Called on that
+	 * consumer's thread.
+	 */
+	void dispatch(StreamEvent event, String consumer) {
+		CopyOnWriteArrayList<IStreamListener> group = listeners.get(consumer);
+		if(group == null)
+			return;
+		for(IStreamListener listener : group) {
 			try {
-				listener.streamReceivedText(this, text);
+				deliver(listener, event);
 			} catch (Throwable t) {
-				// TODO Auto-generated catch block
 				t.printStackTrace();
 			}
 		}
 	}
 	
-	public synchronized void prompt(String prompt) {
-		if (isLogging && client.getLogger() != null) {
-			client.getLogger().logPrompt(prompt);
-		}
-
-		for (IStreamListener listener : listeners)
-		{
-			try {
-				listener.streamPrompted(this, prompt);
-			} catch (Throwable t) {
-				t.printStackTrace();
-			}
+	private void deliver(IStreamListener listener, StreamEvent event) {
+		switch(event.getType()) {
+		case CREATED:
+			listener.streamCreated(this);
+			break;
+		case CLEARED:
+			listener.streamCleared(this);
+			break;
+		case FLUSH:
+			listener.streamFlush(this);
+			break;
+		case TEXT:
+			listener.streamReceivedText(this, event.getText());
+			break;
+		case ECHO:
+			listener.streamFlush(this);
+			listener.streamReceivedText(this, event.getText());
+			listener.streamFlush(this);
+			break;
+		case PROMPT:
+			listener.streamPrompted(this, event.getString());
+			break;
+		case COMMAND:
+			listener.streamReceivedCommand(this, event.getCommand());
+			break;
+		case COMPONENT:
+			listener.componentUpdated(this, event.getString(), event.getText());
+			break;
+		case TITLE:
+			listener.streamTitleChanged(this, event.getString());
+			break;
 		}
 	}
 	
-	public synchronized void sendCommand(ICommand command) {
-		if (isLogging && client.getLogger() != null) {
-			client.getLogger().logEcho(command.getText());
+	private void publish(StreamEvent.Type type, WarlockString text, String string, ICommand command) {
+		StreamEvent event = new StreamEvent(type, this, text, string, command);
+		if(events != null) {
+			events.publish(event);
+			return;
 		}
-
-		for (IStreamListener listener : listeners)
-		{
-			listener.streamReceivedCommand(this, command);
+		
+		for(String consumer : listeners.keySet()) {
+			dispatch(event, consumer);
 		}
 	}
+
+	/*
+	 * this function should be called when the stream is first created, after
+	 * the initial listeners are added.
+	 */
+	public void create() {
+		publish(StreamEvent.Type.CREATED, null, null, null);
+	}
+	
+	public void clear() {
+		publish(StreamEvent.Type.CLEARED, null, null, null);
+	}
+	
+	public void flush() {
+		dirty.set(false);
+		publish(StreamEvent.Type.FLUSH, null, null, null);
+	}
+	
+	public boolean flushIfDirty() {
+		if(!dirty.getAndSet(false))
+			return false;
+		publish(StreamEvent.Type.FLUSH, null, null, null);
+		return true;
+	}
+	
+	public void put(WarlockString text) {
+		publish(StreamEvent.Type.TEXT, text, null, null);
+		// only after publishing, so a flush that sees the flag comes after the text
+		dirty.set(true);
+	}
+	
+	public void prompt(String prompt) {
+		publish(StreamEvent.Type.PROMPT, null, prompt, null);
+	}
+	
+	public void sendCommand(ICommand command) {
+		publish(StreamEvent.Type.COMMAND, null, null, command);
+	}
 	
 	public void echo(WarlockString text) {
-		for (IStreamListener listener : listeners)
-		{
-			try {
-				listener.streamFlush(this);
-				listener.streamReceivedText(this, text);
-				listener.streamFlush(this);
-			} catch (Throwable t) {
-				t.printStackTrace();
-			}
-		}
+		publish(StreamEvent.Type.ECHO, text, null, null);
 	}
 	
 	public String getName() {
@@ -158,10 +217,7 @@ public class Stream implements IStream {
 
 	public void setTitle(String title) {
 		this.title = title;
-		
-		for(IStreamListener listener : listeners) {
-			listener.streamTitleChanged(this, title);
-		}
+		publish(StreamEvent.Type.TITLE, null, title, null);
 	}
 	
 	public void setSubtitle(String subtitle) {
@@ -192,19 +248,57 @@ public class Stream implements IStream {
 		return closedStyle;
 	}
 	
-	public synchronized void updateComponent(String id, WarlockString text) {
-		for (IStreamListener listener : listeners)
-		{
-			try {
-				listener.componentUpdated(this, id, text);
-			} catch (Throwable t) {
-				t.printStackTrace();
-			}
-		}
+	public void updateComponent(String id, WarlockString text) {
+		publish(StreamEvent.Type.COMPONENT, text, id, null);
 	}
 	
 	public void setLogging (boolean logging) {
+		if(logging == isLogging)
+			return;
 		this.isLogging = logging;
+		if(logging) {
+			if(logListener == null)
+				logListener = new StreamLogListener();
+			addStreamListener(logListener, LOGGER_CONSUMER);
+		} else if(logListener != null) {
+			removeStreamListener(logListener);
+		}
+	}
+	
+	private class StreamLogListener implements IStreamListener {
+		private IClientLogger getLogger() {
+			return client == null ? null : client.getLogger();
+		}
+		
+		public void streamReceivedText(IStream stream, WarlockString text) {
+			IClientLogger logger = getLogger();
+			if(logger instanceof IStreamLogger)
+				((IStreamLogger)logger).logText(stream.getName(), text);
+			else if(logger != null)
+				logger.logText(text);
+		}
+		
+		public void streamPrompted(IStream stream, String prompt) {
+			IClientLogger logger = getLogger();
+			if(logger instanceof IStreamLogger)
+				((IStreamLogger)logger).logPrompt(stream.getName(), prompt);
+			else if(logger != null)
+				logger.logPrompt(prompt);
+		}
+		
+		public void streamReceivedCommand(IStream stream, ICommand command) {
+			IClientLogger logger = getLogger();
+			if(logger instanceof IStreamLogger)
+				((IStreamLogger)logger).logEcho(stream.getName(), command.getText());
+			else if(logger != null)
+				logger.logEcho(command.getText());
+		}
+		
+		public void streamCreated(IStream stream) {}
+		public void streamCleared(IStream stream) {}
+		public void streamFlush(IStream stream) {}
+		public void componentUpdated(IStream stream, String id, WarlockString value) {}
+		public void streamTitleChanged(IStream stream, String title) {}
 	}
 	
 	public void setLocation(String location) {
@@ -220,4 +314,10 @@ public class Stream implements IStream {
 			return null;
 		return history.getHistory();
 	}
+	
+	public MemoryReport getMemoryReport() {
+		if(history == null)
+			return new MemoryReport(streamName, 0, 0, 0, 0, 0);
+		return history.getMemoryReport(streamName);
+	}
 }
@@ -0,0 +1,78 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.client.internal;
+
+import cc.warlock.core.client.ICommand;
+import cc.warlock.core.client.IStream;
+import cc.warlock.core.client.WarlockString;
+
+/**
+ * One change to a stream, as published on a client's StreamEventRing.
+ * Events are immutable once published, so every consumer can read them
+ * without locking.
+ */
+public class StreamEvent {
+
+	public static enum Type {
+		CREATED, CLEARED, FLUSH, TEXT, ECHO, PROMPT, COMMAND, COMPONENT, TITLE
+	}
+	
+	private final Type type;
+	private final IStream stream;
+	private final WarlockString text;
+	private final String string;
+	private final ICommand command;
+	
+	public StreamEvent (Type type, IStream stream, WarlockString text, String string, ICommand command) {
+		this.type = type;
+		this.stream = stream;
+		this.text = text;
+		this.string = string;
+		this.command = command;
+	}
+	
+	public Type getType() {
+		return type;
+	}
+	
+	public IStream getStream() {
+		return stream;
+	}
+	
+	/**
+	 * @return the text of a TEXT, ECHO or COMPONENT event
+	 */
+	public WarlockString getText() {
+		return text;
+	}
+	
+	/**
+	 * @return the prompt, the component id or the title
+	 */
+	public String getString() {
+		return string;
+	}
+	
+	public ICommand getCommand() {
+		return command;
+	}
+}
@@ -0,0 +1,316 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.client.internal;
+
+import java.util.HashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Carries stream events from the threads that produce them (mostly the
+ * connection's parser thread) to the stream listeners, without the
+ * producer ever waiting on a listener.
+ * 
+ * Events go into a sequence of fixed-size segments. Publishing claims a
+ * sequence number with a single atomic increment and stores the event in
+ * its slot; no lock is taken. Each consumer (the UI, scripts, the logger,
+ * the stream history) reads the same sequence on its own thread, at its own
+ * pace, and segments are reclaimed by the garbage collector once every
+ * consumer has moved past them.
+ * 
+ * A LOSSLESS consumer sees every event, buffering as far behind as it falls
+ * up to the ring's lossless limit. Only a stalled consumer gets that far, and
+ * past it the consumer skips ahead like a DROP_OLDEST one rather than hold on
+ * to every event published since it stalled. A DROP_OLDEST consumer that
+ * falls more than its backlog limit behind skips ahead to the newest events.
+ * Either way the skipped events are counted.
+ */
+public class StreamEventRing {
+
+	public static enum Policy { LOSSLESS, DROP_OLDEST }
+	
+	public static interface IEventHandler {
+		public void handleEvent(StreamEvent event);
+	}
+	
+	private static final int SEGMENT_SIZE = 256;
+	public static final int DEFAULT_LOSSLESS_LIMIT = 1 << 20;
+	
+	private static class Segment {
+		final long base;
+		final AtomicReferenceArray<StreamEvent> events = new AtomicReferenceArray<StreamEvent>(SEGMENT_SIZE);
+		final AtomicReference<Segment> next = new AtomicReference<Segment>();
+		
+		Segment (long base) {
+			this.base = base;
+		}
+	}
+	
+	private static class PolicySetting {
+		Policy policy;
+		int maxBacklog;
+		
+		PolicySetting (Policy policy, int maxBacklog) {
+			this.policy = policy;
+			this.maxBacklog = maxBacklog;
+		}
+	}
+	
+	public class Consumer implements Runnable {
+		private final String name;
+		private final IEventHandler handler;
+		private volatile Policy policy;
+		private volatile int maxBacklog;
+		
+		private Thread thread;
+		private Segment segment;
+		private volatile long cursor;
+		private volatile long dropped = 0;
+		private final long start;
+		private volatile boolean waiting = false;
+		private volatile boolean running = true;
+		
+		private Consumer (String name, IEventHandler handler, PolicySetting setting) {
+			this.name = name;
+			this.handler = handler;
+			this.policy = setting.policy;
+			this.maxBacklog = setting.maxBacklog;
+			// read the tail before the sequence, see publish()
+			this.segment = tail.get();
+			this.cursor = sequence.get();
+			this.start = cursor;
+		}
+		
+		public void run() {
+			while (true) {
+				segment = segmentFor(segment, cursor);
+				int index = (int)(cursor - segment.base);
+				StreamEvent event = segment.events.get(index);
+				if (event == null) {
+					if (!running)
+						break;
+					waiting = true;
+					// recheck, a producer may have missed the flag
+					if (segment.events.get(index) == null && running)
+						LockSupport.park(this);
+					waiting = false;
+					continue;
+				}
+				cursor++;
+				try {
+					handler.handleEvent(event);
+				} catch (Throwable t) {
+					t.printStackTrace();
+				}
+				
+				long behind = sequence.get() - cursor
+					- (policy == Policy.DROP_OLDEST ? maxBacklog : losslessLimit);
+				if (behind > 0) {
+					dropped += behind;
+					cursor += behind;
+				}
+			}
+		}
+		
+		private void wake() {
+			if (waiting)
+				LockSupport.unpark(thread);
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		public Policy getPolicy() {
+			return policy;
+		}
+		
+		/**
+		 * @return how many published events this consumer has yet to handle
+		 */
+		public long getBacklog() {
+			return Math.max(0, sequence.get() - cursor);
+		}
+		
+		public long getHandled() {
+			return cursor - start - dropped;
+		}
+		
+		public long getDropped() {
+			return dropped;
+		}
+		
+		public String toString() {
+			return name + ": " + getHandled() + " handled, " + dropped + " dropped, "
+				+ getBacklog() + " behind (" + policy + ")";
+		}
+	}
+	
+	private final String name;
+	private final AtomicLong sequence = new AtomicLong();
+	private final AtomicReference<Segment> tail = new AtomicReference<Segment>(new Segment(0));
+	private final CopyOnWriteArrayList<Consumer> consumers = new CopyOnWriteArrayList<Consumer>();
+	private final HashMap<String, PolicySetting> policies = new HashMap<String, PolicySetting>();
+	private volatile int losslessLimit = DEFAULT_LOSSLESS_LIMIT;
+	
+	public StreamEventRing (String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * Publish an event to every consumer. Never blocks.
+	 */
+	public void publish(StreamEvent event) {
+		// The tail is read before claiming, so it can't have moved past the
+		// segment of the claimed sequence.
+		Segment last = tail.get();
+		long seq = sequence.getAndIncrement();
+		Segment segment = segmentFor(last, seq);
+		segment.events.set((int)(seq - segment.base), event);
+		if (segment != last)
+			tail.compareAndSet(last, segment);
+		
+		for (Consumer consumer : consumers) {
+			consumer.wake();
+		}
+	}
+	
+	private static Segment segmentFor(Segment segment, long seq) {
+		while (seq >= segment.base + SEGMENT_SIZE) {
+			Segment next = segment.next.get();
+			if (next == null) {
+				next = new Segment(segment.base + SEGMENT_SIZE);
+				if (!segment.next.compareAndSet(null, next))
+					next = segment.next.get();
+			}
+			segment = next;
+		}
+		return segment;
+	}
+	
+	/**
+	 * @return the consumer registered under name, or null
+	 */
+	public Consumer getConsumer(String name) {
+		for (Consumer consumer : consumers) {
+			if (consumer.name.equals(name))
+				return consumer;
+		}
+		return null;
+	}
+	
+	/**
+	 * Start a consumer, which will handle every event published from now on
+	 * on its own thread. If a consumer is already registered under name, that
+	 * one is returned instead.
+	 */
+	public synchronized Consumer addConsumer(String name, IEventHandler handler) {
+		Consumer consumer = getConsumer(name);
+		if (consumer != null)
+			return consumer;
+		
+		PolicySetting setting = policies.get(name);
+		if (setting == null)
+			setting = new PolicySetting(Policy.LOSSLESS, 0);
+		consumer = new Consumer(name, handler, setting);
+		consumer.thread = new Thread(consumer, this.name + " " + name + " events");
+		consumer.thread.setDaemon(true);
+		consumers.add(consumer);
+		consumer.thread.start();
+		return consumer;
+	}
+	
+	/**
+	 * Set how the named consumer keeps up, now or when it gets started.
+	 * @param maxBacklog for DROP_OLDEST, how many events it may fall behind
+	 */
+	public synchronized void setPolicy(String name, Policy policy, int maxBacklog) {
+		policies.put(name, new PolicySetting(policy, maxBacklog));
+		Consumer consumer = getConsumer(name);
+		if (consumer != null) {
+			consumer.maxBacklog = maxBacklog;
+			consumer.policy = policy;
+		}
+	}
+	
+	/**
+	 * Set how far behind a LOSSLESS consumer may fall before it skips ahead.
+	 */
+	public void setLosslessLimit(int limit) {
+		losslessLimit = limit;
+	}
+	
+	public long getPublished() {
+		return sequence.get();
+	}
+	
+	public Consumer[] getConsumers() {
+		return consumers.toArray(new Consumer[0]);
+	}
+	
+	/**
+	 * Stop every consumer once it has handled what was published so far.
+	 * Doesn't wait for them to get there.
+	 */
+	public void shutdown() {
+		stop();
+	}
+	
+	/**
+	 * Stop every consumer, and wait for the LOSSLESS ones to handle what was
+	 * published so far.
+	 * 
+	 * @return whether they finished within timeout milliseconds
+	 */
+	public boolean shutdownAndJoin(long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		for (Consumer consumer : stop()) {
+			if (consumer.policy != Policy.LOSSLESS || consumer.thread == Thread.currentThread())
+				continue;
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0)
+				return false;
+			try {
+				consumer.thread.join(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			if (consumer.thread.isAlive())
+				return false;
+		}
+		return true;
+	}
+	
+	private synchronized Consumer[] stop() {
+		Consumer[] stopped = getConsumers();
+		for (Consumer consumer : stopped) {
+			consumer.running = false;
+			LockSupport.unpark(consumer.thread);
+		}
+		consumers.clear();
+		return stopped;
+	}
+}
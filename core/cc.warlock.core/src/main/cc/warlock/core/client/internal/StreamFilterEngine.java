@@ -0,0 +1,263 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.client.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import cc.warlock.core.client.ICommand;
+import cc.warlock.core.client.IStream;
+import cc.warlock.core.client.IStreamFilter;
+import cc.warlock.core.client.IStreamListener;
+import cc.warlock.core.client.WarlockString;
+import cc.warlock.core.util.RegexLiterals;
+
+/**
+ * Copies the lines of a client's main stream that match user filters into
+ * other streams, such as the Events and Conversations windows.
+ * 
+ * Each line is looked at once however many streams subscribe. The filters
+ * of every subscription are compiled together, each with a piece of text
+ * any match has to contain. One pass over the line finds which of those
+ * pieces it holds, and only the filters they belong to, and the filters
+ * without one, have their expressions run.
+ * 
+ * Filters are compiled from their type and content, so an IStreamFilter
+ * that overrides match() isn't asked.
+ */
+public class StreamFilterEngine implements IStreamListener {
+
+	private static class Subscription {
+		final IStream stream;
+		final IStreamFilter[] filters;
+		final String[] styles;
+		// indices of the compiled filters
+		int[] compiled;
+		// lines matched from the text being handled
+		WarlockString text = null;
+		
+		Subscription(IStream stream, IStreamFilter[] filters, String[] styles) {
+			this.stream = stream;
+			this.filters = filters;
+			this.styles = styles;
+		}
+	}
+	
+	// the filters of all the subscriptions, compiled. Replaced when they change.
+	private static class FilterSet {
+		Subscription[] subscriptions;
+		// null for a plain text filter
+		Pattern[] patterns;
+		// the literal a filter needs, or -1 to run it on every line
+		int[] literals;
+		LiteralMatcher matcher;
+		// the literals found in the line being matched
+		boolean[] found;
+	}
+	
+	private ArrayList<Subscription> subscriptions = new ArrayList<Subscription>();
+	private volatile FilterSet filterSet;
+	// the last line, until its newline comes. Only used on the consumer's thread.
+	private WarlockString openLine = new WarlockString();
+	
+	public StreamFilterEngine() {
+		filterSet = compile(new Subscription[0]);
+	}
+	
+	/**
+	 * Put the lines matching any of filters, or having any of styles, into
+	 * stream. It replaces what stream was subscribed with before.
+	 * @param styles names of styles, or null
+	 */
+	public synchronized void subscribe(IStream stream, IStreamFilter[] filters, String[] styles) {
+		removeSubscription(stream);
+		subscriptions.add(new Subscription(stream,
+				filters == null ? new IStreamFilter[0] : filters.clone(),
+				styles == null ? new String[0] : styles.clone()));
+		filterSet = compile(subscriptions.toArray(new Subscription[subscriptions.size()]));
+	}
+	
+	public synchronized void unsubscribe(IStream stream) {
+		if(removeSubscription(stream))
+			filterSet = compile(subscriptions.toArray(new Subscription[subscriptions.size()]));
+	}
+	
+	private boolean removeSubscription(IStream stream) {
+		for(int i = 0; i < subscriptions.size(); i++) {
+			if(subscriptions.get(i).stream == stream) {
+				subscriptions.remove(i);
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static FilterSet compile(Subscription[] subscriptions) {
+		ArrayList<Pattern> patterns = new ArrayList<Pattern>();
+		ArrayList<Integer> filterLiterals = new ArrayList<Integer>();
+		HashMap<String, Integer> literalIds = new HashMap<String, Integer>();
+		ArrayList<String> literals = new ArrayList<String>();
+		
+		for(Subscription subscription : subscriptions) {
+			int[] compiled = new int[subscription.filters.length];
+			int n = 0;
+			for(IStreamFilter filter : subscription.filters) {
+				if(filter == null)
+					continue;
+				String content = filter.getContent();
+				Pattern pattern = null;
+				String literal;
+				if(filter.getType() == IStreamFilter.type.regex) {
+					try {
+						pattern = Pattern.compile(content);
+					} catch(PatternSyntaxException e) {
+						continue;
+					}
+					literal = RegexLiterals.getRequiredLiteral(content);
+				} else {
+					literal = content;
+				}
+				
+				Integer id = null;
+				if(literal != null && literal.length() > 0) {
+					id = literalIds.get(literal);
+					if(id == null) {
+						id = literals.size();
+						literals.add(literal);
+						literalIds.put(literal, id);
+					}
+				}
+				compiled[n++] = patterns.size();
+				patterns.add(pattern);
+				filterLiterals.add(id == null ? -1 : id);
+			}
+			subscription.compiled = Arrays.copyOf(compiled, n);
+		}
+		
+		FilterSet set = new FilterSet();
+		set.subscriptions = subscriptions;
+		set.patterns = patterns.toArray(new Pattern[patterns.size()]);
+		set.literals = new int[filterLiterals.size()];
+		for(int i = 0; i < set.literals.length; i++)
+			set.literals[i] = filterLiterals.get(i);
+		set.matcher = new LiteralMatcher(literals.toArray(new String[literals.size()]));
+		set.found = new boolean[literals.size()];
+		return set;
+	}
+	
+	public void streamReceivedText(IStream stream, WarlockString text) {
+		FilterSet set = filterSet;
+		if(set.subscriptions.length == 0) {
+			openLine = new WarlockString();
+			return;
+		}
+		int pos = 0;
+		int length = text.length();
+		while(pos < length) {
+			int newline = text.indexOf("\n", pos);
+			if(newline < 0) {
+				openLine.append(pos == 0 ? text : text.substring(pos));
+				break;
+			}
+			openLine.append(text.substring(pos, newline));
+			endLine(set);
+			pos = newline + 1;
+		}
+		putLines(set);
+	}
+	
+	public void streamPrompted(IStream stream, String prompt) {
+		// a prompt comes after whole lines, so what is left is one
+		FilterSet set = filterSet;
+		endLine(set);
+		putLines(set);
+	}
+	
+	public void streamFlush(IStream stream) {
+		for(Subscription subscription : filterSet.subscriptions)
+			subscription.stream.flushIfDirty();
+	}
+	
+	public void streamCleared(IStream stream) {
+		openLine = new WarlockString();
+	}
+	
+	public void streamCreated(IStream stream) {}
+	
+	public void streamReceivedCommand(IStream stream, ICommand command) {}
+	
+	public void componentUpdated(IStream stream, String id, WarlockString value) {}
+	
+	public void streamTitleChanged(IStream stream, String title) {}
+	
+	private void endLine(FilterSet set) {
+		WarlockString line = openLine;
+		openLine = new WarlockString();
+		int length = line.length();
+		if(length > 0 && line.charAt(length - 1) == '\r')
+			line = line.substring(0, --length);
+		if(length == 0)
+			return;
+		
+		String string = line.toString();
+		Arrays.fill(set.found, false);
+		set.matcher.find(string, set.found);
+		
+		lineLoop: for(Subscription subscription : set.subscriptions) {
+			for(String style : subscription.styles) {
+				if(line.hasStyleNamed(style)) {
+					addLine(subscription, line);
+					continue lineLoop;
+				}
+			}
+			for(int filter : subscription.compiled) {
+				int literal = set.literals[filter];
+				if(literal >= 0 && !set.found[literal])
+					continue;
+				Pattern pattern = set.patterns[filter];
+				if(pattern == null || pattern.matcher(string).find()) {
+					addLine(subscription, line);
+					continue lineLoop;
+				}
+			}
+		}
+	}
+	
+	private static void addLine(Subscription subscription, WarlockString line) {
+		if(subscription.text == null)
+			subscription.text = new WarlockString();
+		subscription.text.append(line);
+		subscription.text.append("\n");
+	}
+	
+	private static void putLines(FilterSet set) {
+		for(Subscription subscription : set.subscriptions) {
+			if(subscription.text != null) {
+				subscription.stream.put(subscription.text);
+				subscription.text = null;
+			}
+		}
+	}
+}
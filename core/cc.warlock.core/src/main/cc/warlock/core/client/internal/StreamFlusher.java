@@ -0,0 +1,186 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.client.internal;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Decides when a client's streams get flushed to their views.
+ * 
+ * The connection asks for a flush whenever its input runs dry, which can be
+ * after every packet. The first request after a quiet period is flushed
+ * right away; any further requests within the flush window are coalesced
+ * into one flush at the end of the window. A prompt always flushes at once.
+ * Only streams that received text since their last flush are flushed.
+ * 
+ * The window defaults to the "warlock.flushWindow" system property, in
+ * milliseconds. A window of 0 flushes on every request.
+ */
+public class StreamFlusher {
+
+	public static final String FLUSH_WINDOW_PROPERTY = "warlock.flushWindow";
+	public static final long DEFAULT_FLUSH_WINDOW = 25;
+	
+	static private Timer timer = new Timer("Warlock stream flusher", true);
+	
+	private WarlockClient client;
+	private long window = Long.getLong(FLUSH_WINDOW_PROPERTY, DEFAULT_FLUSH_WINDOW);
+	private boolean flushOnPrompt = true;
+	
+	private long lastFlush = 0;
+	// when the oldest unanswered request came in, or -1 if there is none
+	private long pendingSince = -1;
+	private boolean scheduled = false;
+	
+	// metrics
+	private long requests = 0;
+	private long flushes = 0;
+	private long streamFlushes = 0;
+	private long latencySamples = 0;
+	private long totalLatency = 0;
+	private long maxLatency = 0;
+	
+	private class FlushTask extends TimerTask {
+		public void run() {
+			synchronized (StreamFlusher.this) {
+				scheduled = false;
+				if (pendingSince < 0)
+					return;
+			}
+			flush();
+		}
+	}
+	
+	public StreamFlusher (WarlockClient client) {
+		this.client = client;
+	}
+	
+	/**
+	 * Ask for the streams to be flushed, according to the policy.
+	 */
+	public void requestFlush() {
+		synchronized (this) {
+			requests++;
+			long now = System.currentTimeMillis();
+			if (pendingSince < 0)
+				pendingSince = now;
+			
+			long due = lastFlush + window;
+			if (window > 0 && now < due) {
+				if (!scheduled) {
+					scheduled = true;
+					timer.schedule(new FlushTask(), due - now);
+				}
+				return;
+			}
+		}
+		flush();
+	}
+	
+	/**
+	 * A prompt ends a burst of output, so flush without waiting for the window.
+	 */
+	public void promptReceived() {
+		if (flushOnPrompt)
+			flush();
+	}
+	
+	/**
+	 * Flush every stream that has received text since it was last flushed.
+	 */
+	public void flush() {
+		int flushed = client.flushDirtyStreams();
+		
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			flushes++;
+			streamFlushes += flushed;
+			if (pendingSince >= 0) {
+				long latency = now - pendingSince;
+				latencySamples++;
+				totalLatency += latency;
+				if (latency > maxLatency)
+					maxLatency = latency;
+				pendingSince = -1;
+			}
+			lastFlush = now;
+		}
+	}
+	
+	public synchronized long getWindow() {
+		return window;
+	}
+	
+	public synchronized void setWindow(long window) {
+		this.window = window;
+	}
+	
+	public synchronized boolean getFlushOnPrompt() {
+		return flushOnPrompt;
+	}
+	
+	public synchronized void setFlushOnPrompt(boolean flushOnPrompt) {
+		this.flushOnPrompt = flushOnPrompt;
+	}
+	
+	/**
+	 * @return how many times a flush was asked for
+	 */
+	public synchronized long getRequestCount() {
+		return requests;
+	}
+	
+	/**
+	 * @return how many flushes were done
+	 */
+	public synchronized long getFlushCount() {
+		return flushes;
+	}
+	
+	/**
+	 * @return how many streams were flushed, over all flushes
+	 */
+	public synchronized long getStreamFlushCount() {
+		return streamFlushes;
+	}
+	
+	/**
+	 * @return the mean time in milliseconds from a request to its flush
+	 */
+	public synchronized double getAverageLatency() {
+		return latencySamples == 0 ? 0 : (double)totalLatency / latencySamples;
+	}
+	
+	/**
+	 * @return the longest time in milliseconds from a request to its flush
+	 */
+	public synchronized long getMaxLatency() {
+		return maxLatency;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return "requests=" + requests + " flushes=" + flushes + " streamFlushes=" + streamFlushes
+			+ " avgLatency=" + String.format("%.1f", getAverageLatency()) + "ms maxLatency=" + maxLatency + "ms";
+	}
+}
@@ -1,70 +1,321 @@
-package cc.warlock.core.client.internal;
-
-import cc.warlock.core.client.ICommand;
-import cc.warlock.core.client.IStream;
-import cc.warlock.core.client.IStreamListener;
-import cc.warlock.core.client.WarlockString;
-import cc.warlock.core.client.WarlockStringMarker;
-
-public class StreamHistory implements IStreamListener {
-	
-	private WarlockString buffer = new WarlockString();
-	private int lineLimit = 5000;
-
-	public void streamCleared(IStream stream) {
-		buffer.clear();
-	}
-
-	public void streamCreated(IStream stream) {}
-
-	public void streamFlush(IStream stream) {}
-
-	public void streamPrompted(IStream stream, String prompt) {}
-
-	public void streamReceivedCommand(IStream stream, ICommand command) {}
-
-	public void streamReceivedText(IStream stream, WarlockString text) {
-		buffer.append(text);
-		constrainLines();
-	}
-
-	public void componentUpdated(IStream stream, String id, WarlockString value) {
-		WarlockStringMarker marker = buffer.getMarkerByComponent(id);
-		if(marker == null)
-			return;
-		marker.clear();
-		int start = marker.getStart();
-		int end = marker.getEnd();
-		int length = end - start;
-		int newLength = value.length();
-		buffer.replace(start, end, value.toString());
-		marker.setEnd(start + newLength);
-		WarlockStringMarker.updateMarkers(newLength - length, marker, buffer.getStyles());
-		
-		for(WarlockStringMarker newMarker : value.getStyles()) {
-			marker.addMarker(newMarker.copy(start));
-		}
-		constrainLines();
-	}
-
-	public void streamTitleChanged(IStream stream, String title) {}
-	
-	public WarlockString getHistory() {
-		return buffer;
-	}
-	
-	private void constrainLines() {
-		// if we have fewer characters, we certainly have fewer newlines
-		if(buffer.length() <= lineLimit)
-			return;
-		int lines = buffer.getLineCount();
-		if(lines <= lineLimit)
-			return;
-		int pos = 0;
-		while(lines > lineLimit) {
-			lines--;
-			pos = buffer.indexOf("\n", pos) + 1;
-		}
-		buffer = buffer.substring(pos);
-	}
-}
+package cc.warlock.core.client.internal;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import cc.warlock.core.client.ICommand;
+import cc.warlock.core.client.IStream;
+import cc.warlock.core.client.IStreamListener;
+import cc.warlock.core.client.IWarlockStyle;
+import cc.warlock.core.client.MemoryReport;
+import cc.warlock.core.client.WarlockString;
+
+/**
+ * The last lines of a stream, kept as a ring of lines so adding a line and
+ * dropping the oldest one don't touch the rest of the history.
+ *
+ * Lines are numbered from the first line the stream ever received, so a
+ * number stays valid until its line is dropped.
+ *
+ * The oldest lines are dropped past a line limit or a byte limit, and when
+ * the MemoryBudget the history is counted in needs room.
+ */
+public class StreamHistory implements IStreamListener, MemoryBudget.IConsumer {
+
+	public static final long DEFAULT_BYTE_LIMIT = 2L << 20;
+	// estimated bytes of a line's objects, and of each style run in it
+	private static final int LINE_BYTES = 64;
+	private static final int RUN_BYTES = 16;
+	
+	private int lineLimit = 5000;
+	private long byteLimit = DEFAULT_BYTE_LIMIT;
+	// estimated bytes of the finished lines
+	private long bytes = 0;
+	private volatile MemoryBudget budget = null;
+	// finished lines, each ending in a newline, oldest at head
+	private WarlockString[] lines = new WarlockString[16];
+	// where each line in lines starts, counted from the first character received
+	private long[] starts = new long[16];
+	private int head = 0;
+	private int count = 0;
+	// number of the line at head
+	private long firstLine = 0;
+	// the last line, not finished by a newline yet
+	private WarlockString openLine = new WarlockString();
+	private long openStart = 0;
+	// component id -> numbers of the lines holding it, oldest first
+	private HashMap<String, LinkedList<Long>> components = new HashMap<String, LinkedList<Long>>();
+
+	public void streamCleared(IStream stream) {
+		synchronized(this) {
+			for(int i = 0; i < count; i++)
+				lines[(head + i) % lines.length] = null;
+			firstLine += count;
+			head = 0;
+			count = 0;
+			bytes = 0;
+			openLine = new WarlockString();
+			components.clear();
+		}
+		updateBudget();
+	}
+
+	public void streamCreated(IStream stream) {}
+
+	public void streamFlush(IStream stream) {}
+
+	public void streamPrompted(IStream stream, String prompt) {}
+
+	public void streamReceivedCommand(IStream stream, ICommand command) {}
+
+	public void streamReceivedText(IStream stream, WarlockString text) {
+		if(addText(text))
+			updateBudget();
+	}
+	
+	// returns whether a line was finished
+	private synchronized boolean addText(WarlockString text) {
+		boolean finished = false;
+		int pos = 0;
+		int length = text.length();
+		while(pos < length) {
+			int newline = text.indexOf("\n", pos);
+			if(newline < 0) {
+				openLine.append(pos == 0 ? text : text.substring(pos));
+				break;
+			}
+			openLine.append(text.substring(pos, newline + 1));
+			finishLine();
+			finished = true;
+			pos = newline + 1;
+		}
+		return finished;
+	}
+
+	public void componentUpdated(IStream stream, String id, WarlockString value) {
+		replaceComponent(id, value);
+		updateBudget();
+	}
+	
+	private synchronized void replaceComponent(String id, WarlockString value) {
+		// the oldest line still holding the component gets the update
+		LinkedList<Long> holders = components.get(id);
+		while(holders != null && !holders.isEmpty()) {
+			long number = holders.getFirst();
+			if(number >= firstLine) {
+				int index = (int)(number - firstLine);
+				WarlockString line = lines[(head + index) % lines.length];
+				int oldLength = line.length();
+				long oldBytes = lineBytes(line);
+				if(line.replaceComponent(id, value)) {
+					bytes += lineBytes(line) - oldBytes;
+					moveLines(index + 1, line.length() - oldLength);
+					return;
+				}
+			}
+			holders.removeFirst();
+		}
+		if(holders != null)
+			components.remove(id);
+		openLine.replaceComponent(id, value);
+	}
+
+	public void streamTitleChanged(IStream stream, String title) {}
+
+	/**
+	 * @return a copy of the whole history
+	 */
+	public synchronized WarlockString getHistory() {
+		WarlockString history = new WarlockString();
+		for(int i = 0; i < count; i++)
+			history.append(lines[(head + i) % lines.length]);
+		history.append(openLine);
+		return history;
+	}
+
+	/**
+	 * @return the number of lines held, counting the unfinished last line
+	 */
+	public synchronized int getLineCount() {
+		return count + 1;
+	}
+
+	/**
+	 * @param index from 0, the oldest line held
+	 * @return the line, with its newline if it has one
+	 */
+	public synchronized WarlockString getLine(int index) {
+		if(index == count)
+			return openLine;
+		return lines[(head + index) % lines.length];
+	}
+
+	/**
+	 * @param index from 0, the oldest line held
+	 * @return where the line starts in getHistory()
+	 */
+	public synchronized int getLineOffset(int index) {
+		long start = index == count ? openStart : starts[(head + index) % lines.length];
+		return (int)(start - (count == 0 ? openStart : starts[head]));
+	}
+
+	/**
+	 * @return how many components the lines held are known to have
+	 */
+	public synchronized int getComponentCount() {
+		return components.size();
+	}
+	
+	/**
+	 * @return the number of the oldest line held, see getLine()
+	 */
+	public synchronized long getFirstLineNumber() {
+		return firstLine;
+	}
+
+	/**
+	 * @param limit the most bytes the finished lines may take, estimated
+	 */
+	public synchronized void setByteLimit(long limit) {
+		byteLimit = limit;
+		while(bytes > byteLimit && count > 1)
+			dropOldest();
+	}
+	
+	public synchronized long getByteLimit() {
+		return byteLimit;
+	}
+	
+	/**
+	 * Count the history in a budget, leaving the one it was in.
+	 */
+	public void setBudget(MemoryBudget budget) {
+		MemoryBudget oldBudget = this.budget;
+		this.budget = budget;
+		if(oldBudget != null)
+			oldBudget.removeConsumer(this);
+		if(budget != null)
+			budget.addConsumer(this);
+	}
+	
+	public synchronized long getMemoryUsed() {
+		return bytes + lineBytes(openLine) + lines.length * 12;
+	}
+	
+	public synchronized void trimMemory(long amount) {
+		long target = bytes - amount;
+		while(count > 0 && bytes > target)
+			dropOldest();
+	}
+	
+	public synchronized MemoryReport getMemoryReport(String name) {
+		long chars = openLine.length();
+		int runs = openLine.getRunCount();
+		for(int i = 0; i < count; i++) {
+			WarlockString line = lines[(head + i) % lines.length];
+			chars += line.length();
+			runs += line.getRunCount();
+		}
+		// only the entries for lines still held
+		int markers = 0;
+		for(LinkedList<Long> holders : components.values()) {
+			for(long number : holders) {
+				if(number >= firstLine)
+					markers++;
+			}
+		}
+		return new MemoryReport(name, count + 1, chars * 2, runs, markers, getMemoryUsed());
+	}
+	
+	private void updateBudget() {
+		MemoryBudget budget = this.budget;
+		if(budget != null)
+			budget.update(this);
+	}
+	
+	private static long lineBytes(WarlockString line) {
+		return LINE_BYTES + line.length() * 2L + line.getRunCount() * RUN_BYTES;
+	}
+	
+	private void dropOldest() {
+		WarlockString line = lines[head];
+		bytes -= lineBytes(line);
+		// the line is the oldest holder of each component in it
+		for(int i = 0; i < line.getRunCount(); i++) {
+			IWarlockStyle style = line.getRunStyle(i);
+			String id = style == null ? null : style.getComponentName();
+			if(id == null)
+				continue;
+			LinkedList<Long> holders = components.get(id);
+			if(holders == null)
+				continue;
+			while(!holders.isEmpty() && holders.getFirst() <= firstLine)
+				holders.removeFirst();
+			if(holders.isEmpty())
+				components.remove(id);
+		}
+		lines[head] = null;
+		head = (head + 1) % lines.length;
+		count--;
+		firstLine++;
+	}
+	
+	private void finishLine() {
+		if(count == lineLimit) {
+			dropOldest();
+		} else if(count == lines.length) {
+			grow();
+		}
+
+		int slot = (head + count) % lines.length;
+		long number = firstLine + count;
+		lines[slot] = openLine;
+		starts[slot] = openStart;
+		count++;
+		bytes += lineBytes(openLine);
+
+		for(int i = 0; i < openLine.getRunCount(); i++) {
+			IWarlockStyle style = openLine.getRunStyle(i);
+			String id = style == null ? null : style.getComponentName();
+			if(id == null || openLine.getRunEnd(i) <= openLine.getRunStart(i))
+				continue;
+			LinkedList<Long> holders = components.get(id);
+			if(holders == null) {
+				holders = new LinkedList<Long>();
+				components.put(id, holders);
+			}
+			if(holders.isEmpty() || holders.getLast() != number)
+				holders.add(number);
+		}
+
+		openStart += openLine.length();
+		openLine = new WarlockString();
+		
+		while(bytes > byteLimit && count > 1)
+			dropOldest();
+	}
+
+	private void grow() {
+		int capacity = Math.min(lineLimit, lines.length * 2);
+		WarlockString[] newLines = new WarlockString[capacity];
+		long[] newStarts = new long[capacity];
+		for(int i = 0; i < count; i++) {
+			newLines[i] = lines[(head + i) % lines.length];
+			newStarts[i] = starts[(head + i) % lines.length];
+		}
+		lines = newLines;
+		starts = newStarts;
+		head = 0;
+	}
+
+	/*
+	 * Shift the lines from index on after a line before them changed length.
+	 */
+	private void moveLines(int index, int delta) {
+		if(delta == 0)
+			return;
+		for(int i = index; i < count; i++)
+			starts[(head + i) % lines.length] += delta;
+		openStart += delta;
+	}
+}
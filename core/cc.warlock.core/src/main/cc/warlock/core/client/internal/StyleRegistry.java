@@ -0,0 +1,122 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.client.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import cc.warlock.core.client.IWarlockStyle;
+
+/**
+ * A client's shared styles. Named styles (presets, output classes, style
+ * ids from the server) are created once and then reused for every tag that
+ * names them, and every style the registry hands out has a small integer id
+ * so styles can be compared and indexed without looking at their names.
+ * 
+ * Merged styles, a style combined with the one it's nested in, are cached
+ * by the pair of ids they were made from.
+ * 
+ * Styles from the registry are shared, so they must not be changed.
+ */
+public class StyleRegistry {
+
+	private HashMap<String, WarlockStyle> named = new HashMap<String, WarlockStyle>();
+	private HashMap<Long, WarlockStyle> merged = new HashMap<Long, WarlockStyle>();
+	// by id, id 0 means unregistered
+	private ArrayList<IWarlockStyle> styles = new ArrayList<IWarlockStyle>();
+	
+	public StyleRegistry () {
+		styles.add(null);
+	}
+	
+	/**
+	 * @return the style with this name, created the first time it's asked for
+	 */
+	public synchronized IWarlockStyle getStyle(String name) {
+		WarlockStyle style = named.get(name);
+		if(style == null) {
+			style = new WarlockStyle(name);
+			register(style);
+			named.put(name, style);
+		}
+		return style;
+	}
+	
+	/**
+	 * @return the style with this name, monospaced
+	 */
+	public synchronized IWarlockStyle getMonospaceStyle(String name) {
+		String key = name + "\0mono";
+		WarlockStyle style = named.get(key);
+		if(style == null) {
+			style = new WarlockStyle(name);
+			style.setMonospace(true);
+			register(style);
+			named.put(key, style);
+		}
+		return style;
+	}
+	
+	/**
+	 * @return the style with this id, or null
+	 */
+	public synchronized IWarlockStyle getStyle(int id) {
+		if(id <= 0 || id >= styles.size())
+			return null;
+		return styles.get(id);
+	}
+	
+	public synchronized int getStyleCount() {
+		return styles.size() - 1;
+	}
+	
+	/**
+	 * @return base with style merged into it. The result is cached when both
+	 *   styles are registered, so it must not be changed.
+	 */
+	public synchronized IWarlockStyle merge(IWarlockStyle base, IWarlockStyle style) {
+		int baseId = base.getId();
+		int styleId = style.getId();
+		if(baseId <= 0 || styleId <= 0 || getStyle(baseId) != base || getStyle(styleId) != style)
+			return mergeStyles(base, style);
+		
+		Long key = Long.valueOf(((long)baseId << 32) | styleId);
+		WarlockStyle result = merged.get(key);
+		if(result == null) {
+			result = mergeStyles(base, style);
+			register(result);
+			merged.put(key, result);
+		}
+		return result;
+	}
+	
+	private static WarlockStyle mergeStyles(IWarlockStyle base, IWarlockStyle style) {
+		WarlockStyle result = new WarlockStyle(base);
+		result.mergeWith(style);
+		return result;
+	}
+	
+	private void register(WarlockStyle style) {
+		style.setId(styles.size());
+		styles.add(style);
+	}
+}
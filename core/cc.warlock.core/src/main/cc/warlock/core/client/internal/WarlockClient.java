@@ -28,10 +28,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import cc.warlock.core.client.ICharacterStatus;
 import cc.warlock.core.client.IClientSettings;
@@ -46,15 +46,19 @@ import cc.warlock.core.client.IWarlockClientListener;
 import cc.warlock.core.client.IWarlockClientViewer;
 import cc.warlock.core.client.IWarlockHighlight;
 import cc.warlock.core.client.IWarlockStyle;
+import cc.warlock.core.client.MemoryReport;
 import cc.warlock.core.client.WarlockClientRegistry;
 import cc.warlock.core.client.WarlockString;
 import cc.warlock.core.client.WarlockTimer;
+import cc.warlock.core.client.logging.AsyncLogger;
+import cc.warlock.core.client.logging.BinaryLogger;
 import cc.warlock.core.client.logging.IClientLogger;
-import cc.warlock.core.client.logging.SimpleLogger;
+import cc.warlock.core.client.logging.LoggingConfiguration;
 import cc.warlock.core.client.settings.ClientSettings;
 import cc.warlock.core.client.settings.HighlightConfigurationProvider;
 import cc.warlock.core.network.IConnection;
-import cc.warlock.core.util.Pair;
+import cc.warlock.core.settings.IWarlockSetting;
+import cc.warlock.core.settings.IWarlockSettingListener;
 
 
 /**
@@ -62,18 +66,22 @@ import cc.warlock.core.util.Pair;
  */
 public abstract class WarlockClient implements IWarlockClient {
 
+	// how long dispose() waits for the event consumers to catch up
+	protected static final long SHUTDOWN_TIMEOUT = 5000;
+	
 	protected IConnection connection;
 	protected IWarlockClientViewer viewer;
 	protected IWarlockClientListener listener;
 	private String lastCommand;
 	//protected ICommandHistory commandHistory = new CommandHistory();
 	protected String streamPrefix;
-	private Collection<IRoomListener> roomListeners = Collections.synchronizedCollection(new ArrayList<IRoomListener>());
+	private CopyOnWriteArrayList<IRoomListener> roomListeners = new CopyOnWriteArrayList<IRoomListener>();
 	protected Property<ICompass> compass = new Property<ICompass>(null);
 	protected IClientLogger logger;
 	protected HashMap<String, IStream> streams = new HashMap<String, IStream>();
 	protected final IStream mainStream;
-	protected ArrayList<Pair<String, IStreamListener>> streamListeners = new ArrayList<Pair<String, IStreamListener>>();
+	// listeners of streams not created yet, guarded by streams
+	protected ArrayList<PendingListener> streamListeners = new ArrayList<PendingListener>();
 	private ArrayList<Collection<? extends IWarlockHighlight>> highlightLists = new ArrayList<Collection<? extends IWarlockHighlight>>();
 	private ICharacterStatus status;
 	private HashMap<String, WarlockTimer> timers = new HashMap<String, WarlockTimer>();
@@ -82,10 +90,35 @@ public abstract class WarlockClient implements IWarlockClient {
 	private HashMap<String, WarlockDialog> dialogs = new HashMap<String, WarlockDialog>();
 	private HashMap<String, IProperty<String>> properties = new HashMap<String, IProperty<String>>();
 	protected ClientSettings clientSettings;
+	protected StreamFlusher flusher = new StreamFlusher(this);
+	protected StreamEventRing eventRing;
+	protected StyleRegistry styleRegistry = new StyleRegistry();
+	protected MemoryBudget memoryBudget = MemoryBudget.getGlobalBudget().createBudget(MemoryBudget.DEFAULT_CLIENT_LIMIT);
+	private StreamFilterEngine filterEngine;
+	// rebuilt when next asked for after the highlights change
+	private volatile HighlightEngine highlightEngine;
+	private final IWarlockSettingListener highlightSettingListener = new IWarlockSettingListener() {
+		public void settingChanged(IWarlockSetting setting) {
+			highlightEngine = null;
+		}
+	};
 	//private int minCommandSize;
 	
+	protected static class PendingListener {
+		public final String streamName;
+		public final IStreamListener listener;
+		public final String consumer;
+		
+		public PendingListener (String streamName, IStreamListener listener, String consumer) {
+			this.streamName = streamName;
+			this.listener = listener;
+			this.consumer = consumer;
+		}
+	}
+	
 	public WarlockClient () {
 		streamPrefix = "client:" + hashCode() + ":";
+		eventRing = new StreamEventRing("Warlock client " + hashCode());
 		mainStream = createStream(IWarlockClient.MAIN_STREAM_NAME);
 		
 		status = new CharacterStatus(this);
@@ -103,9 +136,18 @@ public abstract class WarlockClient implements IWarlockClient {
 			public void clientConnected(IWarlockClient client) {}
 			@Override
 			public void clientSettingsLoaded(IWarlockClient client) {
-				// if (getClientSettings().getLoggingSettings().getLogFormat().equals(LoggingConfiguration.LOG_FORMAT_TEXT))
-					logger = new SimpleLogger(WarlockClient.this);
-					highlightLists.add(HighlightConfigurationProvider.getHighlights(getClientSettings()));
+				if(logger != null)
+					logger.close();
+				String format = LoggingConfiguration.getProvider(getClientSettings()).getLogFormat();
+				if(LoggingConfiguration.LOG_FORMAT_BINARY.equals(format))
+					logger = new BinaryLogger(WarlockClient.this);
+				else
+					logger = new AsyncLogger(WarlockClient.this);
+				highlightLists.add(HighlightConfigurationProvider.getHighlights(getClientSettings()));
+				HighlightConfigurationProvider provider = HighlightConfigurationProvider.getProvider(getClientSettings());
+				provider.removeListener(highlightSettingListener);
+				provider.addListener(highlightSettingListener);
+				highlightEngine = null;
 			}
 		};
 		WarlockClientRegistry.addWarlockClientListener(listener);
@@ -122,8 +164,13 @@ public abstract class WarlockClient implements IWarlockClient {
 				e.printStackTrace();
 			}
 		}
-		// Flush Logger
-		logger.flush();
+		// Let the consumers finish what's been published, so the log gets it all
+		eventRing.shutdownAndJoin(SHUTDOWN_TIMEOUT);
+		// Write out and close the log
+		if(logger != null)
+			logger.close();
+		// Stop counting our streams against the global budget
+		memoryBudget.dispose();
 		// Remove ourselves from the list of active clients.
 		WarlockClientRegistry.removeWarlockClientListener(listener);
 	}
@@ -175,31 +222,43 @@ public abstract class WarlockClient implements IWarlockClient {
 		return connection;
 	}
 	
+	/**
+	 * Ask for the streams to be flushed. Requests are coalesced by the
+	 * client's StreamFlusher.
+	 */
 	public void flushStreams() {
+		flusher.requestFlush();
+	}
+	
+	public StreamFlusher getStreamFlusher() {
+		return flusher;
+	}
+	
+	/*
+	 * Flush the streams that received text since their last flush.
+	 */
+	int flushDirtyStreams() {
+		int flushed = 0;
 		synchronized(streams) {
 			for(IStream stream : streams.values()) {
-				stream.flush();
+				if(stream.flushIfDirty())
+					flushed++;
 			}
 		}
+		return flushed;
 	}
 	
 	public void addRoomListener(IRoomListener roomListener) {
-		synchronized(roomListeners) {
-			roomListeners.add(roomListener);
-		}
+		roomListeners.addIfAbsent(roomListener);
 	}
 	
 	public void removeRoomListener(IRoomListener roomListener) {
-		synchronized(roomListeners) {
-			roomListeners.remove(roomListener);
-		}
+		roomListeners.remove(roomListener);
 	}
 	
 	public void nextRoom() {
-		synchronized(roomListeners) {
-			for(IRoomListener listener : roomListeners)
-				listener.nextRoom();
-		}
+		for(IRoomListener listener : roomListeners)
+			listener.nextRoom();
 	}
 	
 	public IProperty<ICompass> getCompass() {
@@ -257,18 +316,30 @@ public abstract class WarlockClient implements IWarlockClient {
 	
 	public void addHighlights(Collection<IWarlockHighlight> highlights) {
 		highlightLists.add(highlights);
+		highlightEngine = null;
 	}
 	
 	public boolean removeHighlights(Collection<IWarlockHighlight> highlights) {
+		highlightEngine = null;
 		return highlightLists.remove(highlights);
 	}
 	
+	public HighlightEngine getHighlightEngine() {
+		HighlightEngine engine = highlightEngine;
+		if(engine == null || !engine.isCurrent()) {
+			engine = new HighlightEngine(getHighlightsIterator());
+			highlightEngine = engine;
+		}
+		return engine;
+	}
+	
 	public IClientLogger getLogger() {
 		return logger;
 	}
 	
 	public void playSound(InputStream stream) {
-		viewer.playSound(stream);
+		if (viewer != null)
+			viewer.playSound(stream);
 	}
 	
 	@Override
@@ -278,11 +349,11 @@ public abstract class WarlockClient implements IWarlockClient {
 			if(stream == null) {
 				stream = new Stream(this, streamName);
 				streams.put(streamName, stream);
-				for(Iterator<Pair<String, IStreamListener>> iter = streamListeners.iterator();
+				for(Iterator<PendingListener> iter = streamListeners.iterator();
 						iter.hasNext(); ) {
-					Pair<String, IStreamListener> pair = iter.next();
-					if(pair.first().equals(streamName)) {
-						stream.addStreamListener(pair.second());
+					PendingListener pending = iter.next();
+					if(pending.streamName.equals(streamName)) {
+						stream.addStreamListener(pending.listener, pending.consumer);
 						iter.remove();
 					}
 				}
@@ -294,25 +365,83 @@ public abstract class WarlockClient implements IWarlockClient {
 	}
 	
 	public void addStreamListener(String streamName, IStreamListener listener) {
-		IStream stream = streams.get(streamName);
-		if(stream != null)
-			stream.addStreamListener(listener);
-		else
-			streamListeners.add(new Pair<String, IStreamListener>(streamName, listener));
+		addStreamListener(streamName, listener, IStream.UI_CONSUMER);
+	}
+	
+	public void addStreamListener(String streamName, IStreamListener listener, String consumer) {
+		synchronized(streams) {
+			IStream stream = streams.get(streamName);
+			if(stream != null)
+				stream.addStreamListener(listener, consumer);
+			else
+				streamListeners.add(new PendingListener(streamName, listener, consumer));
+		}
+	}
+	
+	public StyleRegistry getStyleRegistry() {
+		return styleRegistry;
+	}
+	
+	/**
+	 * @return the budget this client's stream histories are counted in
+	 */
+	public MemoryBudget getMemoryBudget() {
+		return memoryBudget;
+	}
+	
+	public Collection<MemoryReport> getMemoryReports() {
+		ArrayList<MemoryReport> reports = new ArrayList<MemoryReport>();
+		synchronized(streams) {
+			for(IStream stream : streams.values())
+				reports.add(stream.getMemoryReport());
+		}
+		return reports;
+	}
+	
+	public synchronized StreamFilterEngine getFilterEngine() {
+		if(filterEngine == null) {
+			filterEngine = new StreamFilterEngine();
+			mainStream.addStreamListener(filterEngine, IStream.FILTER_CONSUMER);
+		}
+		return filterEngine;
+	}
+	
+	/**
+	 * @return the ring carrying this client's stream events to their listeners
+	 */
+	public StreamEventRing getEventRing() {
+		return eventRing;
+	}
+	
+	/**
+	 * @return the named consumer of this client's stream events, started
+	 *   if it wasn't running yet
+	 */
+	public StreamEventRing.Consumer getEventConsumer(final String name) {
+		StreamEventRing.Consumer consumer = eventRing.getConsumer(name);
+		if(consumer != null)
+			return consumer;
+		return eventRing.addConsumer(name, new StreamEventRing.IEventHandler() {
+			public void handleEvent(StreamEvent event) {
+				((Stream)event.getStream()).dispatch(event, name);
+			}
+		});
 	}
 	
 	public void removeStreamListener(String streamName, IStreamListener listener) {
-		IStream stream = streams.get(streamName);
-		if(stream != null) {
-			stream.removeStreamListener(listener);
-		} else {
-			for(Iterator<Pair<String, IStreamListener>> iter = streamListeners.iterator();
-			iter.hasNext(); ) {
-				Pair<String, IStreamListener> pair = iter.next();
-				
-				if(pair.first().equals(streamName) && pair.second() == listener) {
-					iter.remove();
-					break;
+		synchronized(streams) {
+			IStream stream = streams.get(streamName);
+			if(stream != null) {
+				stream.removeStreamListener(listener);
+			} else {
+				for(Iterator<PendingListener> iter = streamListeners.iterator();
+				iter.hasNext(); ) {
+					PendingListener pending = iter.next();
+					
+					if(pending.streamName.equals(streamName) && pending.listener == listener) {
+						iter.remove();
+						break;
+					}
 				}
 			}
 		}
@@ -412,7 +541,7 @@ public abstract class WarlockClient implements IWarlockClient {
 		}
 		stream.put(text);
 		String closedTarget = stream.getClosedTarget();
-		if(!viewer.isStreamOpen(streamName) && !closedTarget.equals("")) {
+		if((viewer == null || !viewer.isStreamOpen(streamName)) && !closedTarget.equals("")) {
 			String closedStyle = stream.getClosedStyle();
 			WarlockString closedText = new WarlockString(text.toString(), new WarlockStyle(closedStyle));
 			IStream targetStream = streams.get(closedTarget);
@@ -422,6 +551,7 @@ public abstract class WarlockClient implements IWarlockClient {
 	
 	public synchronized void prompt(String prompt) {
 		mainStream.prompt(prompt);
+		flusher.promptReceived();
 	}
 	
 	// TODO flush buffer before and after echo
@@ -450,7 +580,7 @@ public abstract class WarlockClient implements IWarlockClient {
 		}
 		stream.echo(string);
 		String closedTarget = stream.getClosedTarget();
-		if(!viewer.isStreamOpen(streamName) && !closedTarget.equals("")) {
+		if((viewer == null || !viewer.isStreamOpen(streamName)) && !closedTarget.equals("")) {
 			String closedStyle = stream.getClosedStyle();
 			WarlockString closedText = new WarlockString(text, new WarlockStyle(closedStyle));
 			IStream targetStream = streams.get(closedTarget);
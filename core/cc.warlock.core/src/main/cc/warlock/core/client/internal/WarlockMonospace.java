@@ -66,6 +66,11 @@ public class WarlockMonospace implements IWarlockStyle {
 		return "monospace";
 	}
 
+	@Override
+	public int getId() {
+		return 0;
+	}
+
 	@Override
 	public String getComponentName() {
 		// TODO Auto-generated method stub
@@ -42,6 +42,8 @@ public class WarlockStyle implements IWarlockStyle {
 	private boolean italic;
 	private boolean underline;
 	private boolean monospace;
+	// set by the StyleRegistry that created this style
+	private int id = 0;
 	
 	public WarlockStyle(String name) {
 		this.name = name;
@@ -66,6 +68,14 @@ public class WarlockStyle implements IWarlockStyle {
 		this.setSound(other.getSound());
 	}
 	
+	public int getId() {
+		return id;
+	}
+	
+	void setId(int id) {
+		this.id = id;
+	}
+	
 	public Runnable getAction() {
 		return action;
 	}
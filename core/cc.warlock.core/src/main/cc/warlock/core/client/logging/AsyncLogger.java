@@ -0,0 +1,441 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.client.logging;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.zip.GZIPOutputStream;
+
+import cc.warlock.core.client.IWarlockClient;
+import cc.warlock.core.client.WarlockString;
+
+/**
+ * A text logger that does its formatting and writing on its own thread.
+ * Logging only queues the text, with the time it arrived. The writer thread
+ * adds the timestamps and appends to a log file it keeps open, starting a
+ * new file each day and whenever the current one passes the configured size.
+ * Rolled over files can be gzipped.
+ * 
+ * If the writer falls too far behind, new text is dropped and counted
+ * instead of queued, and the log notes how much is missing. Text that
+ * comes while the log can't be written is counted the same way: after an
+ * error the writer reports it once and leaves the log alone for a while.
+ */
+public class AsyncLogger implements IClientLogger, Runnable {
+
+	// characters queued before new text is dropped
+	protected static final int MAX_PENDING = 1024 * 1024;
+	// characters queued that wake the writer before the interval is up
+	protected static final int BATCH_SIZE = 8 * 1024;
+	protected static final long WRITE_INTERVAL = 1000;
+	protected static final long FLUSH_TIMEOUT = 5000;
+	// how long to wait before opening the log again after an error
+	protected static final long RETRY_INTERVAL = 60000;
+	protected static final Charset charset = Charset.forName("UTF-8");
+	
+	private static class Entry {
+		final String text;
+		final long time;
+		
+		Entry (String text, long time) {
+			this.text = text;
+			this.time = time;
+		}
+	}
+	
+	protected IWarlockClient client;
+	
+	// guarded by this
+	private ArrayList<Entry> pending = new ArrayList<Entry>();
+	private int pendingChars = 0;
+	private long droppedChars = 0;
+	private int droppedSinceWrite = 0;
+	private long flushRequests = 0;
+	private long flushes = 0;
+	private boolean closed = false;
+	private Thread writer;
+	
+	private volatile long writtenBytes = 0;
+	
+	// only used by the writer thread
+	private Calendar calendar = Calendar.getInstance();
+	private StringBuilder out = new StringBuilder();
+	private boolean atLineStart = true;
+	private long stampSecond = -1;
+	private String stamp;
+	private File logFile;
+	private FileChannel channel;
+	private long fileSize;
+	private int fileDay;
+	private String fileCharacter;
+	private long maxSize;
+	private boolean compress;
+	// nothing is written before this time, 0 if the last write worked
+	private long retryTime = 0;
+	private boolean errorReported = false;
+	
+	public AsyncLogger (IWarlockClient client)
+	{
+		this.client = client;
+	}
+	
+	public void logEcho(String command) {
+		log(command + "\n");
+	}
+
+	public void logPrompt(String prompt) {
+		log(prompt);
+	}
+
+	public void logText(WarlockString text) {
+		log(text.toString());
+	}
+	
+	protected synchronized void log(String text) {
+		int length = text.length();
+		if(closed || length == 0)
+			return;
+		if(pendingChars + length > MAX_PENDING) {
+			droppedChars += length;
+			droppedSinceWrite += length;
+			return;
+		}
+		
+		pending.add(new Entry(text, System.currentTimeMillis()));
+		pendingChars += length;
+		if(writer == null) {
+			writer = new Thread(this, "Warlock log writer");
+			writer.setDaemon(true);
+			writer.start();
+		}
+		// the writer sleeps until there is something, then waits for a batch
+		if(pending.size() == 1 || pendingChars >= BATCH_SIZE)
+			notifyAll();
+	}
+	
+	/**
+	 * Wait for everything logged so far to be written.
+	 */
+	public synchronized void flush() {
+		if(writer == null)
+			return;
+		long request = ++flushRequests;
+		notifyAll();
+		long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT;
+		while(flushes < request && writer.isAlive()) {
+			long remaining = deadline - System.currentTimeMillis();
+			if(remaining <= 0)
+				break;
+			try {
+				wait(remaining);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+	}
+	
+	public void close() {
+		Thread thread;
+		synchronized(this) {
+			if(closed)
+				return;
+			closed = true;
+			thread = writer;
+			notifyAll();
+		}
+		if(thread == null)
+			return;
+		try {
+			thread.join(FLUSH_TIMEOUT);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * @return characters not logged because the writer was behind
+	 */
+	public synchronized long getDroppedChars() {
+		return droppedChars;
+	}
+	
+	public synchronized int getPendingChars() {
+		return pendingChars;
+	}
+	
+	public long getWrittenBytes() {
+		return writtenBytes;
+	}
+	
+	public void run() {
+		ArrayList<Entry> batch = new ArrayList<Entry>();
+		while(true) {
+			int dropped;
+			long flushed;
+			boolean done;
+			synchronized(this) {
+				boolean waited = false;
+				try {
+					while(!closed && flushes == flushRequests) {
+						if(pending.isEmpty())
+							wait();
+						else if(!waited && pendingChars < BATCH_SIZE) {
+							wait(WRITE_INTERVAL);
+							waited = true;
+						} else
+							break;
+					}
+				} catch(InterruptedException e) {
+					closed = true;
+				}
+				ArrayList<Entry> swap = batch;
+				batch = pending;
+				pending = swap;
+				pendingChars = 0;
+				dropped = droppedSinceWrite;
+				droppedSinceWrite = 0;
+				flushed = flushRequests;
+				done = closed;
+			}
+			
+			write(batch, dropped);
+			batch.clear();
+			
+			synchronized(this) {
+				flushes = flushed;
+				notifyAll();
+			}
+			if(done) {
+				closeFile();
+				return;
+			}
+		}
+	}
+	
+	private void write(ArrayList<Entry> batch, int dropped) {
+		if(batch.isEmpty() && dropped == 0)
+			return;
+		
+		if(retryTime != 0 && System.currentTimeMillis() < retryTime) {
+			skip(batch, dropped);
+			return;
+		}
+		
+		if(dropped > 0) {
+			long now = System.currentTimeMillis();
+			if(!atLineStart)
+				append("\n", now);
+			append("[" + dropped + " characters were not logged]\n", now);
+		}
+		for(Entry entry : batch)
+			append(entry.text, entry.time);
+		
+		try {
+			openFile();
+			ByteBuffer bytes = charset.encode(CharBuffer.wrap(out));
+			while(bytes.hasRemaining()) {
+				int n = channel.write(bytes);
+				fileSize += n;
+				writtenBytes += n;
+			}
+			if(retryTime != 0) {
+				retryTime = 0;
+				errorReported = false;
+			}
+			if(maxSize > 0 && fileSize >= maxSize)
+				rollFile();
+		} catch(IOException e) {
+			report(e);
+			closeFile();
+			retryTime = System.currentTimeMillis() + RETRY_INTERVAL;
+			skip(batch, dropped);
+		}
+		out.setLength(0);
+	}
+	
+	// count a batch that wasn't written as dropped, for the next write to note
+	private void skip(ArrayList<Entry> batch, int dropped) {
+		int chars = dropped;
+		for(Entry entry : batch)
+			chars += entry.text.length();
+		synchronized(this) {
+			droppedChars += chars - dropped;
+			droppedSinceWrite += chars;
+		}
+	}
+	
+	/*
+	 * Only the first error since the log was last written is reported, so
+	 * a full disk doesn't print one for every batch.
+	 */
+	private void report(IOException e) {
+		if(!errorReported) {
+			e.printStackTrace();
+			errorReported = true;
+		}
+	}
+	
+	/*
+	 * Add text to out, with a timestamp at the start of each line that isn't empty.
+	 */
+	private void append(String text, long time) {
+		int length = text.length();
+		int pos = 0;
+		while(pos < length) {
+			if(atLineStart && text.charAt(pos) != '\n') {
+				out.append(getStamp(time));
+				atLineStart = false;
+			}
+			int newline = text.indexOf('\n', pos);
+			int end = newline < 0 ? length : newline + 1;
+			out.append(text, pos, end);
+			if(newline >= 0)
+				atLineStart = true;
+			pos = end;
+		}
+	}
+	
+	private String getStamp(long time) {
+		long second = time / 1000;
+		if(second != stampSecond) {
+			calendar.setTimeInMillis(time);
+			stamp = "[" + calendar.get(Calendar.HOUR_OF_DAY) + ":" + calendar.get(Calendar.MINUTE)
+				+ ":" + calendar.get(Calendar.SECOND) + "] ";
+			stampSecond = second;
+		}
+		return stamp;
+	}
+	
+	/*
+	 * Make sure the file for today and the current character is open.
+	 */
+	private void openFile() throws IOException {
+		calendar.setTimeInMillis(System.currentTimeMillis());
+		int day = calendar.get(Calendar.YEAR) * 1000 + calendar.get(Calendar.DAY_OF_YEAR);
+		String character = client.getCharacterName();
+		if(channel != null && day == fileDay && String.valueOf(character).equals(fileCharacter))
+			return;
+		
+		File previous = logFile;
+		boolean newDay = fileDay != 0 && day != fileDay;
+		closeFile();
+		if(newDay && compress && previous != null)
+			compress(previous);
+		
+		maxSize = getMaxLogSize();
+		compress = isCompressLogs();
+		logFile = new File(getLogDirectory(), LoggingConfiguration.getLogName(character, calendar) + ".txt");
+		channel = new FileOutputStream(logFile, true).getChannel();
+		fileSize = channel.size();
+		fileDay = day;
+		fileCharacter = String.valueOf(character);
+		// logs finished since the last time are ready to index
+		LogIndex.getIndex(logFile.getParentFile()).update();
+	}
+	
+	protected File getLogDirectory() {
+		return LoggingConfiguration.getProvider(client.getClientSettings()).getLogDirectory();
+	}
+	
+	protected long getMaxLogSize() {
+		return LoggingConfiguration.getProvider(client.getClientSettings()).getMaxLogSize();
+	}
+	
+	protected boolean isCompressLogs() {
+		return LoggingConfiguration.getProvider(client.getClientSettings()).isCompressLogs();
+	}
+	
+	/*
+	 * Move the full log file aside, the next write starts a new one.
+	 */
+	private void rollFile() {
+		File full = logFile;
+		closeFile();
+		String path = full.getPath();
+		String base = path.substring(0, path.length() - ".txt".length());
+		File rolled;
+		int n = 1;
+		do {
+			rolled = new File(base + "-" + n++ + ".txt");
+		} while(rolled.exists() || new File(rolled.getPath() + ".gz").exists());
+		if(!full.renameTo(rolled)) {
+			report(new IOException("Couldn't roll over log file " + full));
+			return;
+		}
+		if(compress)
+			compress(rolled);
+		LogIndex.getIndex(rolled.getParentFile()).update();
+	}
+	
+	private void closeFile() {
+		if(channel == null)
+			return;
+		try {
+			channel.close();
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		channel = null;
+	}
+	
+	private void compress(File file) {
+		File gzip = new File(file.getPath() + ".gz");
+		InputStream in = null;
+		OutputStream gzipOut = null;
+		try {
+			in = new FileInputStream(file);
+			gzipOut = new GZIPOutputStream(new FileOutputStream(gzip));
+			byte[] buffer = new byte[8192];
+			int n;
+			while((n = in.read(buffer)) > 0)
+				gzipOut.write(buffer, 0, n);
+			gzipOut.close();
+			gzipOut = null;
+			in.close();
+			in = null;
+			file.delete();
+		} catch(IOException e) {
+			e.printStackTrace();
+			gzip.delete();
+		} finally {
+			try {
+				if(in != null)
+					in.close();
+				if(gzipOut != null)
+					gzipOut.close();
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
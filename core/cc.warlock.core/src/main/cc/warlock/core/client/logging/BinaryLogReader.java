@@ -0,0 +1,494 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.client.logging;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import cc.warlock.core.client.IWarlockStyle;
+import cc.warlock.core.client.WarlockColor;
+import cc.warlock.core.client.WarlockString;
+import cc.warlock.core.client.internal.WarlockStyle;
+
+/**
+ * Reads a log written by BinaryLogWriter. Only the blocks that overlap the
+ * requested time range are read and inflated, found through the log's index.
+ */
+public class BinaryLogReader {
+
+	static class Block {
+		final long offset;
+		final long firstTime;
+		final long lastTime;
+		final int length;
+		final int records;
+		
+		Block (long offset, long firstTime, long lastTime, int length, int records) {
+			this.offset = offset;
+			this.firstTime = firstTime;
+			this.lastTime = lastTime;
+			this.length = length;
+			this.records = records;
+		}
+		
+		long getEnd() {
+			return offset + BinaryLogWriter.HEADER_SIZE + length;
+		}
+	}
+	
+	private File file;
+	private List<Block> blocks;
+	
+	public BinaryLogReader (File file) throws IOException {
+		this.file = file;
+		this.blocks = loadBlocks(file);
+	}
+	
+	public File getFile() {
+		return file;
+	}
+	
+	public int getBlockCount() {
+		return blocks.size();
+	}
+	
+	public int getRecordCount() {
+		int count = 0;
+		for(Block block : blocks)
+			count += block.records;
+		return count;
+	}
+	
+	/**
+	 * @return the time of the first record, or -1 if the log is empty
+	 */
+	public long getStartTime() {
+		return blocks.isEmpty() ? -1 : blocks.get(0).firstTime;
+	}
+	
+	/**
+	 * @return the time of the last record, or -1 if the log is empty
+	 */
+	public long getEndTime() {
+		return blocks.isEmpty() ? -1 : blocks.get(blocks.size() - 1).lastTime;
+	}
+	
+	/**
+	 * Read the records logged from one time to another, inclusive.
+	 * @param streamName the stream to read, or null for all of them
+	 */
+	public void read(long from, long to, String streamName, ILogRecordHandler handler) throws IOException {
+		// the first block that ends at or after from
+		int low = 0, high = blocks.size();
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(blocks.get(mid).lastTime < from)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		Inflater inflater = new Inflater();
+		try {
+			FileChannel channel = in.getChannel();
+			for(int i = low; i < blocks.size(); i++) {
+				Block block = blocks.get(i);
+				if(block.firstTime > to)
+					break;
+				if(!readBlock(channel, inflater, block, from, to, streamName, handler))
+					break;
+			}
+		} finally {
+			inflater.end();
+			in.close();
+		}
+	}
+	
+	/**
+	 * Write the records as the text logger would have, without timestamps.
+	 */
+	public void exportText(long from, long to, String streamName, final Writer out) throws IOException {
+		final IOException[] error = new IOException[1];
+		read(from, to, streamName, new ILogRecordHandler() {
+			public void handleRecord(LogRecord record) {
+				if(error[0] != null)
+					return;
+				try {
+					out.write(record.getText().toString());
+					if(record.getType() == LogRecord.Type.COMMAND)
+						out.write("\n");
+				} catch(IOException e) {
+					error[0] = e;
+				}
+			}
+		});
+		if(error[0] != null)
+			throw error[0];
+	}
+	
+	/**
+	 * Write the records as an HTML page, styled text in spans classed by
+	 * style name.
+	 * @param presets styles to define those classes with, or null
+	 */
+	public void exportHtml(long from, long to, String streamName, Map<String, IWarlockStyle> presets,
+			final Writer out) throws IOException
+	{
+		out.write("<html>\n<head>\n<meta http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\">\n");
+		out.write("<title>");
+		writeEscaped(out, file.getName(), 0, file.getName().length());
+		out.write("</title>\n<style type=\"text/css\">\n");
+		if(presets != null) {
+			for(Map.Entry<String, IWarlockStyle> preset : presets.entrySet()) {
+				String css = getCss(preset.getValue());
+				if(css.length() > 0)
+					out.write("." + getClassName(preset.getKey()) + " { " + css + " }\n");
+			}
+		}
+		out.write("</style>\n</head>\n<body>\n<pre>");
+		
+		final IOException[] error = new IOException[1];
+		read(from, to, streamName, new ILogRecordHandler() {
+			public void handleRecord(LogRecord record) {
+				if(error[0] != null)
+					return;
+				try {
+					WarlockString text = record.getText();
+					switch(record.getType()) {
+					case TEXT:
+						writeHtml(out, text);
+						break;
+					case PROMPT:
+						out.write("<span class=\"prompt\">");
+						writeEscaped(out, text.toString(), 0, text.length());
+						out.write("</span>");
+						break;
+					case COMMAND:
+						out.write("<span class=\"command\">");
+						writeEscaped(out, text.toString(), 0, text.length());
+						out.write("</span>\n");
+						break;
+					}
+				} catch(IOException e) {
+					error[0] = e;
+				}
+			}
+		});
+		if(error[0] != null)
+			throw error[0];
+		out.write("</pre>\n</body>\n</html>\n");
+	}
+	
+	/*
+	 * Read the blocks from the index, checked against the log. Blocks the
+	 * index is missing, because the writer stopped before updating it, are
+	 * found by walking the block headers past the last indexed block.
+	 */
+	static List<Block> loadBlocks(File file) throws IOException {
+		ArrayList<Block> blocks = new ArrayList<Block>();
+		if(!file.exists())
+			return blocks;
+		
+		RandomAccessFile log = new RandomAccessFile(file, "r");
+		try {
+			long logLength = log.length();
+			File indexFile = new File(file.getPath() + BinaryLogWriter.INDEX_EXTENSION);
+			if(indexFile.exists()) {
+				RandomAccessFile index = new RandomAccessFile(indexFile, "r");
+				try {
+					long entries = index.length() / BinaryLogWriter.INDEX_ENTRY_SIZE;
+					ByteBuffer buffer = ByteBuffer.allocate((int)entries * BinaryLogWriter.INDEX_ENTRY_SIZE);
+					index.getChannel().read(buffer, 0);
+					buffer.flip();
+					long expected = 0;
+					for(long i = 0; i < entries; i++) {
+						Block block = new Block(buffer.getLong(), buffer.getLong(), buffer.getLong(),
+								buffer.getInt(), buffer.getInt());
+						if(block.offset != expected || block.getEnd() > logLength)
+							break;
+						blocks.add(block);
+						expected = block.getEnd();
+					}
+				} finally {
+					index.close();
+				}
+			}
+			
+			long pos = blocks.isEmpty() ? 0 : blocks.get(blocks.size() - 1).getEnd();
+			while(pos + BinaryLogWriter.HEADER_SIZE <= logLength) {
+				log.seek(pos);
+				if(log.readInt() != BinaryLogWriter.MAGIC)
+					break;
+				long firstTime = log.readLong();
+				long lastTime = log.readLong();
+				int records = log.readInt();
+				log.readInt();
+				int length = log.readInt();
+				Block block = new Block(pos, firstTime, lastTime, length, records);
+				if(length < 0 || block.getEnd() > logLength)
+					break;
+				blocks.add(block);
+				pos = block.getEnd();
+			}
+		} finally {
+			log.close();
+		}
+		return blocks;
+	}
+	
+	/*
+	 * @return false once past the end of the time range
+	 */
+	private boolean readBlock(FileChannel channel, Inflater inflater, Block block, long from, long to,
+			String streamName, ILogRecordHandler handler) throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(BinaryLogWriter.HEADER_SIZE);
+		readFully(channel, header, block.offset);
+		header.flip();
+		header.position(4 + 8 + 8 + 4);
+		int rawLength = header.getInt();
+		byte[] compressed = new byte[block.length];
+		readFully(channel, ByteBuffer.wrap(compressed), block.offset + BinaryLogWriter.HEADER_SIZE);
+		
+		byte[] raw = new byte[rawLength];
+		inflater.reset();
+		inflater.setInput(compressed);
+		try {
+			int n = 0;
+			while(n < rawLength && !inflater.finished()) {
+				int read = inflater.inflate(raw, n, rawLength - n);
+				if(read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					break;
+				n += read;
+			}
+			if(n < rawLength)
+				throw new IOException("Truncated block at " + block.offset + " in " + file);
+		} catch(DataFormatException e) {
+			throw new IOException("Corrupt block at " + block.offset + " in " + file + ": " + e.getMessage());
+		}
+		
+		DataInputStream data = new DataInputStream(new ByteArrayInputStream(raw));
+		ArrayList<String> streams = new ArrayList<String>();
+		ArrayList<IWarlockStyle> styles = new ArrayList<IWarlockStyle>();
+		for(int r = 0; r < block.records; r++) {
+			byte type = data.readByte();
+			long time = data.readLong();
+			int streamRef = data.readInt();
+			if(streamRef == streams.size())
+				streams.add(data.readUTF());
+			String stream = streams.get(streamRef);
+			byte[] bytes = new byte[data.readInt()];
+			data.readFully(bytes);
+			
+			if(time > to)
+				return false;
+			boolean wanted = time >= from && (streamName == null || streamName.equals(stream));
+			WarlockString text = wanted ? new WarlockString(new String(bytes, "UTF-8")) : null;
+			
+			if(type == BinaryLogWriter.RECORD_TEXT) {
+				int runCount = data.readInt();
+				for(int i = 0; i < runCount; i++) {
+					int start = data.readInt();
+					int end = data.readInt();
+					int depth = data.readInt();
+					IWarlockStyle style = readStyle(data, styles);
+					if(wanted)
+						text.addRun(style, start, end, depth);
+				}
+			}
+			
+			if(wanted)
+				handler.handleRecord(new LogRecord(getType(type), time, stream, text));
+		}
+		return true;
+	}
+	
+	private static LogRecord.Type getType(byte type) throws IOException {
+		switch(type) {
+		case BinaryLogWriter.RECORD_TEXT: return LogRecord.Type.TEXT;
+		case BinaryLogWriter.RECORD_PROMPT: return LogRecord.Type.PROMPT;
+		case BinaryLogWriter.RECORD_COMMAND: return LogRecord.Type.COMMAND;
+		default: throw new IOException("Unknown record type " + type);
+		}
+	}
+	
+	private static IWarlockStyle readStyle(DataInputStream data, ArrayList<IWarlockStyle> styles) throws IOException {
+		int ref = data.readInt();
+		if(ref < 0)
+			return null;
+		if(ref < styles.size())
+			return styles.get(ref);
+		
+		WarlockStyle style = new WarlockStyle(data.readBoolean() ? data.readUTF() : null);
+		if(data.readBoolean())
+			style.setComponentName(data.readUTF());
+		style.setForegroundColor(readColor(data));
+		style.setBackgroundColor(readColor(data));
+		int flags = data.readByte();
+		style.setBold((flags & BinaryLogWriter.BOLD) != 0);
+		style.setItalic((flags & BinaryLogWriter.ITALIC) != 0);
+		style.setUnderline((flags & BinaryLogWriter.UNDERLINE) != 0);
+		style.setFullLine((flags & BinaryLogWriter.FULL_LINE) != 0);
+		style.setMonospace((flags & BinaryLogWriter.MONOSPACE) != 0);
+		styles.add(style);
+		return style;
+	}
+	
+	private static WarlockColor readColor(DataInputStream data) throws IOException {
+		if(!data.readBoolean())
+			return null;
+		return new WarlockColor(data.readShort(), data.readShort(), data.readShort());
+	}
+	
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()) {
+			int n = channel.read(buffer, position);
+			if(n < 0)
+				throw new EOFException();
+			position += n;
+		}
+	}
+	
+	/*
+	 * Write text with a span for each run. Runs are nested, so a run ends
+	 * before the run it's nested in does.
+	 */
+	private static void writeHtml(Writer out, WarlockString text) throws IOException {
+		String str = text.toString();
+		int[] ends = new int[8];
+		int open = 0;
+		int pos = 0;
+		for(int i = 0; i < text.getRunCount(); i++) {
+			int start = Math.max(text.getRunStart(i), pos);
+			int end = text.getRunEnd(i);
+			while(open > 0 && ends[open - 1] <= start) {
+				writeEscaped(out, str, pos, ends[open - 1]);
+				pos = Math.max(pos, ends[--open]);
+				out.write("</span>");
+			}
+			if(open > 0)
+				end = Math.min(end, ends[open - 1]);
+			if(end <= start)
+				continue;
+			writeEscaped(out, str, pos, start);
+			pos = start;
+			writeSpan(out, text.getRunStyle(i));
+			if(open == ends.length) {
+				int[] bigger = new int[open * 2];
+				System.arraycopy(ends, 0, bigger, 0, open);
+				ends = bigger;
+			}
+			ends[open++] = end;
+		}
+		while(open > 0) {
+			writeEscaped(out, str, pos, ends[open - 1]);
+			pos = Math.max(pos, ends[--open]);
+			out.write("</span>");
+		}
+		writeEscaped(out, str, pos, str.length());
+	}
+	
+	private static void writeSpan(Writer out, IWarlockStyle style) throws IOException {
+		out.write("<span");
+		if(style != null) {
+			if(style.getName() != null) {
+				out.write(" class=\"" + getClassName(style.getName()) + "\"");
+			}
+			String css = getCss(style);
+			if(css.length() > 0)
+				out.write(" style=\"" + css + "\"");
+		}
+		out.write(">");
+	}
+	
+	/**
+	 * The style name as a class name that is safe both in the class
+	 * attribute and in a selector: anything but letters, digits, '-' and '_'
+	 * becomes '_', and names that can't start a selector get a '_' first.
+	 */
+	private static String getClassName(String name) {
+		StringBuilder className = new StringBuilder(name.length() + 1);
+		if(name.length() == 0 || Character.isDigit(name.charAt(0)) || name.charAt(0) == '-')
+			className.append('_');
+		for(int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+					|| c == '-' || c == '_')
+				className.append(c);
+			else
+				className.append('_');
+		}
+		return className.toString();
+	}
+	
+	private static String getCss(IWarlockStyle style) {
+		StringBuilder css = new StringBuilder();
+		WarlockColor foreground = style.getForegroundColor();
+		if(foreground != null && !foreground.isDefault())
+			css.append("color: ").append(foreground).append("; ");
+		WarlockColor background = style.getBackgroundColor();
+		if(background != null && !background.isDefault())
+			css.append("background-color: ").append(background).append("; ");
+		if(style.isBold())
+			css.append("font-weight: bold; ");
+		if(style.isItalic())
+			css.append("font-style: italic; ");
+		if(style.isUnderline())
+			css.append("text-decoration: underline; ");
+		if(style.isMonospace())
+			css.append("font-family: monospace; ");
+		return css.toString().trim();
+	}
+	
+	private static void writeEscaped(Writer out, String str, int start, int end) throws IOException {
+		if(end <= start)
+			return;
+		int from = start;
+		for(int i = start; i < end; i++) {
+			String entity;
+			switch(str.charAt(i)) {
+			case '&': entity = "&amp;"; break;
+			case '<': entity = "&lt;"; break;
+			case '>': entity = "&gt;"; break;
+			case '"': entity = "&quot;"; break;
+			default: continue;
+			}
+			out.write(str, from, i - from);
+			out.write(entity);
+			from = i + 1;
+		}
+		out.write(str, from, end - from);
+	}
+}
@@ -0,0 +1,288 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.client.logging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import cc.warlock.core.client.IWarlockStyle;
+import cc.warlock.core.client.WarlockColor;
+import cc.warlock.core.client.WarlockString;
+
+/**
+ * Appends records to a binary log file.
+ * 
+ * The file is a series of blocks, each a header followed by up to
+ * BLOCK_SIZE bytes of records, deflated. A block can be read on its own:
+ * the stream names and styles its records use are defined in the block.
+ * Next to the log, a .idx file has an entry for each block with its
+ * offset and time range, so readers can seek by time.
+ * 
+ * Record times never go backwards within a file, even if the clock does.
+ */
+public class BinaryLogWriter {
+
+	public static final String EXTENSION = ".wlog";
+	public static final String INDEX_EXTENSION = ".idx";
+	
+	protected static final int MAGIC = 0x574c4f47; // "WLOG"
+	// magic, first time, last time, record count, raw length, compressed length
+	protected static final int HEADER_SIZE = 4 + 8 + 8 + 4 + 4 + 4;
+	// offset, first time, last time, compressed length, record count
+	protected static final int INDEX_ENTRY_SIZE = 8 + 8 + 8 + 4 + 4;
+	protected static final int BLOCK_SIZE = 64 * 1024;
+	
+	protected static final byte RECORD_TEXT = 1;
+	protected static final byte RECORD_PROMPT = 2;
+	protected static final byte RECORD_COMMAND = 3;
+	
+	protected static final int BOLD = 1;
+	protected static final int ITALIC = 2;
+	protected static final int UNDERLINE = 4;
+	protected static final int FULL_LINE = 8;
+	protected static final int MONOSPACE = 16;
+	
+	private File file;
+	private FileChannel log;
+	private FileChannel index;
+	private long logLength;
+	private long lastTime = Long.MIN_VALUE;
+	
+	private ByteArrayOutputStream raw = new ByteArrayOutputStream(BLOCK_SIZE + 4096);
+	private DataOutputStream data = new DataOutputStream(raw);
+	private HashMap<String, Integer> blockStreams = new HashMap<String, Integer>();
+	private IdentityHashMap<IWarlockStyle, Integer> blockStyles = new IdentityHashMap<IWarlockStyle, Integer>();
+	private long blockFirstTime;
+	private int blockRecords = 0;
+	private Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private byte[] compressed = new byte[BLOCK_SIZE];
+	
+	/**
+	 * Open a log to append to. A block left half written, by a crash for
+	 * example, is cut off, and the index is brought up to date with the log.
+	 */
+	public BinaryLogWriter (File file) throws IOException {
+		this.file = file;
+		File indexFile = new File(file.getPath() + INDEX_EXTENSION);
+		List<BinaryLogReader.Block> blocks = BinaryLogReader.loadBlocks(file);
+		
+		log = new RandomAccessFile(file, "rw").getChannel();
+		index = new RandomAccessFile(indexFile, "rw").getChannel();
+		
+		logLength = 0;
+		if(!blocks.isEmpty()) {
+			BinaryLogReader.Block last = blocks.get(blocks.size() - 1);
+			logLength = last.getEnd();
+			lastTime = last.lastTime;
+		}
+		if(log.size() > logLength)
+			log.truncate(logLength);
+		log.position(logLength);
+		
+		if(index.size() != (long)blocks.size() * INDEX_ENTRY_SIZE) {
+			index.truncate(0);
+			index.position(0);
+			for(BinaryLogReader.Block block : blocks)
+				writeIndexEntry(block.offset, block.firstTime, block.lastTime, block.length, block.records);
+		}
+		index.position(index.size());
+	}
+	
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	 * @return the time the next record will get, never before the last one
+	 */
+	public long checkTime(long time) {
+		return Math.max(time, lastTime);
+	}
+	
+	public void writeText(long time, String stream, WarlockString text) throws IOException {
+		startRecord(RECORD_TEXT, time, stream, text.toString());
+		int runCount = text.getRunCount();
+		data.writeInt(runCount);
+		for(int i = 0; i < runCount; i++) {
+			data.writeInt(text.getRunStart(i));
+			data.writeInt(text.getRunEnd(i));
+			data.writeInt(text.getRunDepth(i));
+			writeStyle(text.getRunStyle(i));
+		}
+		endRecord();
+	}
+	
+	public void writePrompt(long time, String stream, String prompt) throws IOException {
+		startRecord(RECORD_PROMPT, time, stream, prompt);
+		endRecord();
+	}
+	
+	public void writeCommand(long time, String stream, String command) throws IOException {
+		startRecord(RECORD_COMMAND, time, stream, command);
+		endRecord();
+	}
+	
+	/**
+	 * Write out the records not in a block yet.
+	 */
+	public void flush() throws IOException {
+		if(blockRecords == 0)
+			return;
+		
+		byte[] bytes = raw.toByteArray();
+		deflater.reset();
+		deflater.setInput(bytes);
+		deflater.finish();
+		int length = 0;
+		while(!deflater.finished()) {
+			if(length == compressed.length) {
+				byte[] bigger = new byte[compressed.length * 2];
+				System.arraycopy(compressed, 0, bigger, 0, length);
+				compressed = bigger;
+			}
+			length += deflater.deflate(compressed, length, compressed.length - length);
+		}
+		
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.putLong(blockFirstTime);
+		header.putLong(lastTime);
+		header.putInt(blockRecords);
+		header.putInt(bytes.length);
+		header.putInt(length);
+		header.flip();
+		writeFully(log, header);
+		writeFully(log, ByteBuffer.wrap(compressed, 0, length));
+		writeIndexEntry(logLength, blockFirstTime, lastTime, length, blockRecords);
+		logLength += HEADER_SIZE + length;
+		
+		raw.reset();
+		blockStreams.clear();
+		blockStyles.clear();
+		blockRecords = 0;
+	}
+	
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			deflater.end();
+			log.close();
+			index.close();
+		}
+	}
+	
+	/**
+	 * @return when the oldest record not written out yet was logged, or -1
+	 */
+	public long getPendingSince() {
+		return blockRecords == 0 ? -1 : blockFirstTime;
+	}
+	
+	private void startRecord(byte type, long time, String stream, String text) throws IOException {
+		time = checkTime(time);
+		if(blockRecords == 0)
+			blockFirstTime = time;
+		lastTime = time;
+		
+		data.writeByte(type);
+		data.writeLong(time);
+		Integer ref = blockStreams.get(stream);
+		if(ref == null) {
+			data.writeInt(blockStreams.size());
+			data.writeUTF(stream);
+			blockStreams.put(stream, blockStreams.size());
+		} else {
+			data.writeInt(ref);
+		}
+		byte[] bytes = text.getBytes("UTF-8");
+		data.writeInt(bytes.length);
+		data.write(bytes);
+	}
+	
+	private void endRecord() throws IOException {
+		blockRecords++;
+		if(raw.size() >= BLOCK_SIZE)
+			flush();
+	}
+	
+	private void writeStyle(IWarlockStyle style) throws IOException {
+		if(style == null) {
+			data.writeInt(-1);
+			return;
+		}
+		Integer ref = blockStyles.get(style);
+		if(ref != null) {
+			data.writeInt(ref);
+			return;
+		}
+		data.writeInt(blockStyles.size());
+		blockStyles.put(style, blockStyles.size());
+		writeNullable(style.getName());
+		writeNullable(style.getComponentName());
+		writeColor(style.getForegroundColor());
+		writeColor(style.getBackgroundColor());
+		data.writeByte((style.isBold() ? BOLD : 0) | (style.isItalic() ? ITALIC : 0)
+				| (style.isUnderline() ? UNDERLINE : 0) | (style.isFullLine() ? FULL_LINE : 0)
+				| (style.isMonospace() ? MONOSPACE : 0));
+	}
+	
+	private void writeNullable(String str) throws IOException {
+		data.writeBoolean(str != null);
+		if(str != null)
+			data.writeUTF(str);
+	}
+	
+	private void writeColor(WarlockColor color) throws IOException {
+		data.writeBoolean(color != null);
+		if(color != null) {
+			data.writeShort(color.getRed());
+			data.writeShort(color.getGreen());
+			data.writeShort(color.getBlue());
+		}
+	}
+	
+	private void writeIndexEntry(long offset, long firstTime, long lastTime, int length, int records) throws IOException {
+		ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+		entry.putLong(offset);
+		entry.putLong(firstTime);
+		entry.putLong(lastTime);
+		entry.putInt(length);
+		entry.putInt(records);
+		entry.flip();
+		writeFully(index, entry);
+	}
+	
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+	}
+}
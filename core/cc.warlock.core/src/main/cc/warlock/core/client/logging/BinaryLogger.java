@@ -0,0 +1,245 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.client.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Calendar;
+
+import cc.warlock.core.client.IWarlockClient;
+import cc.warlock.core.client.WarlockString;
+
+/**
+ * Logs each stream's text with its styles, prompts and commands to a binary
+ * log, one file per character per day. See BinaryLogWriter for the format
+ * and BinaryLogReader to read it back.
+ * 
+ * Times come from a monotonic clock started with the logger, so they keep
+ * their order if the system clock is changed.
+ * 
+ * Records are written out in blocks. A thread of the logger's own writes
+ * out a block that has waited too long when no new record comes to do it.
+ * If the log can't be opened or written, logging stops for a while and
+ * the error is reported once.
+ */
+public class BinaryLogger implements IStreamLogger {
+
+	// records waiting longer than this are written out with the next one
+	protected static final long MAX_PENDING_TIME = 10000;
+	// how long to wait before opening the log again after an error
+	protected static final long RETRY_INTERVAL = 60000;
+	
+	protected IWarlockClient client;
+	private final long baseTime = System.currentTimeMillis();
+	private final long baseNanos = System.nanoTime();
+	private Calendar calendar = Calendar.getInstance();
+	private BinaryLogWriter writer;
+	private int fileDay;
+	private String fileCharacter;
+	private boolean closed = false;
+	private Thread flusher;
+	// no log is opened before this time
+	private long retryTime = 0;
+	private boolean errorReported = false;
+	
+	public BinaryLogger (IWarlockClient client)
+	{
+		this.client = client;
+	}
+	
+	public void logEcho(String command) {
+		logEcho(IWarlockClient.MAIN_STREAM_NAME, command);
+	}
+
+	public void logPrompt(String prompt) {
+		logPrompt(IWarlockClient.MAIN_STREAM_NAME, prompt);
+	}
+
+	public void logText(WarlockString text) {
+		logText(IWarlockClient.MAIN_STREAM_NAME, text);
+	}
+	
+	public synchronized void logEcho(String streamName, String command) {
+		long time = now();
+		BinaryLogWriter writer = getWriter(time);
+		if(writer == null)
+			return;
+		try {
+			writer.writeCommand(time, streamName, command);
+			checkPending(time);
+		} catch(IOException e) {
+			failed(e);
+		}
+	}
+
+	public synchronized void logPrompt(String streamName, String prompt) {
+		long time = now();
+		BinaryLogWriter writer = getWriter(time);
+		if(writer == null)
+			return;
+		try {
+			writer.writePrompt(time, streamName, prompt);
+			checkPending(time);
+		} catch(IOException e) {
+			failed(e);
+		}
+	}
+
+	public synchronized void logText(String streamName, WarlockString text) {
+		long time = now();
+		BinaryLogWriter writer = getWriter(time);
+		if(writer == null)
+			return;
+		try {
+			writer.writeText(time, streamName, text);
+			checkPending(time);
+		} catch(IOException e) {
+			failed(e);
+		}
+	}
+	
+	public synchronized void flush() {
+		if(writer == null)
+			return;
+		try {
+			writer.flush();
+		} catch(IOException e) {
+			failed(e);
+		}
+	}
+	
+	public synchronized void close() {
+		closeWriter();
+		closed = true;
+		notifyAll();
+	}
+	
+	/**
+	 * @return the log being written to, or null
+	 */
+	public synchronized File getLogFile() {
+		return writer == null ? null : writer.getFile();
+	}
+	
+	protected File getLogDirectory() {
+		return LoggingConfiguration.getProvider(client.getClientSettings()).getLogDirectory();
+	}
+	
+	private long now() {
+		return baseTime + (System.nanoTime() - baseNanos) / 1000000;
+	}
+	
+	private void checkPending(long time) throws IOException {
+		long since = writer.getPendingSince();
+		if(since >= 0 && time - since >= MAX_PENDING_TIME)
+			writer.flush();
+	}
+	
+	/*
+	 * Runs on the flusher thread until the logger is closed.
+	 */
+	private synchronized void flushPending() {
+		while(!closed) {
+			long wait = MAX_PENDING_TIME;
+			long since = writer == null ? -1 : writer.getPendingSince();
+			if(since >= 0)
+				wait = Math.max(1, since + MAX_PENDING_TIME - now());
+			try {
+				wait(wait);
+			} catch(InterruptedException e) {
+				return;
+			}
+			if(writer == null)
+				continue;
+			try {
+				checkPending(now());
+			} catch(IOException e) {
+				failed(e);
+			}
+		}
+	}
+	
+	/*
+	 * The writer for the day of time and the current character.
+	 */
+	private BinaryLogWriter getWriter(long time) {
+		if(closed)
+			return null;
+		calendar.setTimeInMillis(time);
+		int day = calendar.get(Calendar.YEAR) * 1000 + calendar.get(Calendar.DAY_OF_YEAR);
+		String character = String.valueOf(client.getCharacterName());
+		if(writer != null && day == fileDay && character.equals(fileCharacter))
+			return writer;
+		
+		if(writer == null && time < retryTime)
+			return null;
+		
+		closeWriter();
+		File file = new File(getLogDirectory(),
+				LoggingConfiguration.getLogName(character, calendar) + BinaryLogWriter.EXTENSION);
+		try {
+			writer = new BinaryLogWriter(file);
+		} catch(IOException e) {
+			failed(e);
+			return null;
+		}
+		fileDay = day;
+		fileCharacter = character;
+		errorReported = false;
+		if(flusher == null) {
+			flusher = new Thread(new Runnable() {
+				public void run() {
+					flushPending();
+				}
+			}, "Warlock binary log flusher");
+			flusher.setDaemon(true);
+			flusher.start();
+		}
+		// logs finished since the last time are ready to index
+		LogIndex.getIndex(file.getParentFile()).update();
+		return writer;
+	}
+	
+	/*
+	 * Stop logging for a while. Only the first error since the log was last
+	 * opened is reported, so a full disk doesn't print one for every line.
+	 */
+	private void failed(IOException e) {
+		closeWriter();
+		retryTime = now() + RETRY_INTERVAL;
+		if(!errorReported) {
+			e.printStackTrace();
+			errorReported = true;
+		}
+	}
+	
+	private void closeWriter() {
+		if(writer == null)
+			return;
+		try {
+			writer.close();
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		writer = null;
+	}
+}
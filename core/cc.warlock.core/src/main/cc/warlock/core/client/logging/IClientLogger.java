@@ -34,4 +34,9 @@ public interface IClientLogger {
 	public void logEcho (String command);
 	
 	public void flush();
+	
+	/**
+	 * Flush and release the log file. Nothing is logged after this.
+	 */
+	public void close();
 }
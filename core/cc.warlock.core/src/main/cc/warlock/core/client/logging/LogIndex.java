@@ -0,0 +1,740 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.client.logging;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import cc.warlock.core.client.IWarlockClient;
+import cc.warlock.core.util.RegexLiterals;
+
+/**
+ * A full-text index over the finished logs in a log directory, kept in the
+ * directory's .index folder.
+ * 
+ * The index is a list of LogIndexSegments, each covering the logs that
+ * were new when it was built. update() indexes logs finished since the last
+ * update on a background thread: logs from before today, and logs rolled
+ * over for size. Logs that change or go away after being indexed are
+ * dropped from the index (and indexed again if they changed), and small
+ * neighbouring segments are merged so searches don't have to look at too
+ * many.
+ * 
+ * Searches read the segments through memory maps, so only the parts of the
+ * index and the log lines they look at are read in.
+ */
+public class LogIndex {
+
+	public static final String INDEX_DIRECTORY = ".index";
+	protected static final String MANIFEST = "manifest";
+	protected static final String MANIFEST_HEADER = "warlock-log-index 1";
+	protected static final String SEGMENT_EXTENSION = ".lix";
+	// segments past this are merged with their neighbours
+	protected static final int MAX_SEGMENTS = 32;
+	
+	// rolled over logs are finished, whatever day they're from
+	protected static final Pattern ROLLED_LOG = Pattern.compile(".*-\\d\\d-\\d\\d-\\d{4}-\\d+\\.txt(\\.gz)?");
+	
+	private static HashMap<File, LogIndex> indexes = new HashMap<File, LogIndex>();
+	private static ExecutorService indexer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Warlock log indexer");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	});
+	
+	// a log, and where its lines are in the index
+	private static class IndexedFile {
+		final String name;
+		final long length;
+		final long modified;
+		// segment id and file index in that segment, for each piece of the log
+		final ArrayList<int[]> pieces = new ArrayList<int[]>();
+		
+		IndexedFile (String name, long length, long modified) {
+			this.name = name;
+			this.length = length;
+			this.modified = modified;
+		}
+	}
+	
+	// a segment and which of its files are still in the index
+	private static class SegmentView {
+		final LogIndexSegment segment;
+		final boolean[] live;
+		
+		SegmentView (LogIndexSegment segment, boolean[] live) {
+			this.segment = segment;
+			this.live = live;
+		}
+	}
+	
+	private interface LineMatcher {
+		public boolean matches(String line);
+	}
+	
+	private File directory;
+	private File indexDirectory;
+	private boolean updatePending = false;
+	// what searches see, replaced whole after each change
+	private volatile List<SegmentView> views = Collections.emptyList();
+	
+	// only used by the indexer thread, once loaded
+	private ArrayList<LogIndexSegment> segments = new ArrayList<LogIndexSegment>();
+	private LinkedHashMap<String, IndexedFile> files = new LinkedHashMap<String, IndexedFile>();
+	private int nextSegment = 1;
+	private LogIndexSegment.Builder builder;
+	private int builderId;
+	// logs read into the builder, waiting for it to be written out
+	private ArrayList<IndexedFile> builderFiles = new ArrayList<IndexedFile>();
+	
+	protected LogIndex (File directory) {
+		this.directory = directory;
+		this.indexDirectory = new File(directory, INDEX_DIRECTORY);
+		try {
+			loadManifest();
+		} catch(IOException e) {
+			e.printStackTrace();
+			segments.clear();
+			files.clear();
+		}
+		publish();
+	}
+	
+	/**
+	 * @return the index for a log directory, shared by everything using the directory
+	 */
+	public static synchronized LogIndex getIndex(File directory) {
+		File key = directory.getAbsoluteFile();
+		LogIndex index = indexes.get(key);
+		if(index == null) {
+			index = new LogIndex(key);
+			indexes.put(key, index);
+		}
+		return index;
+	}
+	
+	/**
+	 * @return the index for the client's log directory
+	 */
+	public static LogIndex getIndex(IWarlockClient client) {
+		return getIndex(LoggingConfiguration.getProvider(client.getClientSettings()).getLogDirectory());
+	}
+	
+	public File getDirectory() {
+		return directory;
+	}
+	
+	/**
+	 * Index the logs finished since the last update, in the background.
+	 */
+	public void update() {
+		synchronized(this) {
+			if(updatePending)
+				return;
+			updatePending = true;
+		}
+		indexer.execute(new Runnable() {
+			public void run() {
+				synchronized(LogIndex.this) {
+					updatePending = false;
+				}
+				try {
+					updateIndex();
+				} catch(IOException e) {
+					e.printStackTrace();
+					builder = null;
+					builderFiles.clear();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Wait for the updates asked for so far to finish.
+	 * @return false if they didn't finish in time
+	 */
+	public boolean waitForUpdate(long timeout) {
+		Future<?> done = indexer.submit(new Runnable() {
+			public void run() {}
+		});
+		try {
+			done.get(timeout, TimeUnit.MILLISECONDS);
+			return true;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch(ExecutionException e) {
+			e.printStackTrace();
+		} catch(TimeoutException e) {
+		}
+		return false;
+	}
+	
+	public int getSegmentCount() {
+		return views.size();
+	}
+	
+	public int getLineCount() {
+		int count = 0;
+		for(SegmentView view : views)
+			count += view.segment.getLineCount();
+		return count;
+	}
+	
+	/**
+	 * Find lines with a phrase in them, ignoring case. Every word of the
+	 * phrase has to be in the index, so the phrase needs at least one.
+	 * @return up to limit lines, the most recent first
+	 */
+	public List<LogSearchHit> search(String phrase, int limit) throws IOException {
+		ArrayList<String> terms = new ArrayList<String>();
+		LogIndexSegment.tokenize(phrase, terms);
+		if(terms.isEmpty())
+			return new ArrayList<LogSearchHit>();
+		
+		final String needle = phrase.toLowerCase();
+		return find(getBytes(terms), null, new LineMatcher() {
+			public boolean matches(String line) {
+				return line.toLowerCase().contains(needle);
+			}
+		}, limit);
+	}
+	
+	/**
+	 * Find lines matching a regular expression. Only lines with the words
+	 * the expression needs in them are checked, if it needs any. Otherwise
+	 * every line is.
+	 * @return up to limit lines, the most recent first
+	 */
+	public List<LogSearchHit> searchRegex(String regex, int limit) throws IOException {
+		final Pattern pattern = Pattern.compile(regex);
+		return find(null, getBytes(getRequiredParts(regex)), new LineMatcher() {
+			public boolean matches(String line) {
+				return pattern.matcher(line).find();
+			}
+		}, limit);
+	}
+	
+	private List<LogSearchHit> find(List<byte[]> terms, List<byte[]> parts, LineMatcher matcher, int limit)
+		throws IOException
+	{
+		ArrayList<LogSearchHit> hits = new ArrayList<LogSearchHit>();
+		HashMap<String, RandomAccessFile> logs = new HashMap<String, RandomAccessFile>();
+		List<SegmentView> views = this.views;
+		try {
+			for(int v = views.size() - 1; v >= 0 && hits.size() < limit; v--) {
+				LogIndexSegment segment = views.get(v).segment;
+				boolean[] live = views.get(v).live;
+				BitSet lines = getCandidates(segment, terms, parts);
+				
+				int[] ids = new int[lines.cardinality()];
+				int n = 0;
+				for(int line = lines.nextSetBit(0); line >= 0; line = lines.nextSetBit(line + 1))
+					ids[n++] = line;
+				for(int i = n - 1; i >= 0 && hits.size() < limit; i--) {
+					int file = segment.getLineFile(ids[i]);
+					if(!live[file])
+						continue;
+					String text = segment.getLineText(ids[i], directory, logs);
+					if(text == null || !matcher.matches(text))
+						continue;
+					hits.add(new LogSearchHit(new File(directory, segment.getFileName(file)),
+							segment.getLineNumber(ids[i]), text));
+				}
+			}
+		} finally {
+			for(RandomAccessFile log : logs.values())
+				log.close();
+		}
+		return hits;
+	}
+	
+	/*
+	 * The lines in a segment with all the terms, and words containing all
+	 * the parts. With neither, every line.
+	 */
+	private static BitSet getCandidates(LogIndexSegment segment, List<byte[]> terms, List<byte[]> parts) {
+		BitSet lines = null;
+		if(terms != null) {
+			for(byte[] key : terms) {
+				int term = segment.findTerm(key);
+				if(term < 0)
+					return new BitSet();
+				BitSet termLines = new BitSet(segment.getLineCount());
+				segment.getPostings(term, termLines);
+				if(lines == null)
+					lines = termLines;
+				else
+					lines.and(termLines);
+			}
+		}
+		if(parts != null) {
+			for(byte[] part : parts) {
+				BitSet partLines = new BitSet(segment.getLineCount());
+				segment.getPostingsContaining(part, partLines);
+				if(lines == null)
+					lines = partLines;
+				else
+					lines.and(partLines);
+			}
+		}
+		if(lines == null) {
+			lines = new BitSet(segment.getLineCount());
+			lines.set(0, segment.getLineCount());
+		}
+		return lines;
+	}
+	
+	/*
+	 * Pieces of words, lower-cased, that every match of regex has in it.
+	 * Short pieces don't narrow things down enough to be worth it.
+	 */
+	protected static List<String> getRequiredParts(String regex) {
+		ArrayList<String> parts = new ArrayList<String>();
+		List<String> literals = RegexLiterals.getRequiredLiterals(regex);
+		if(literals == null)
+			return parts;
+		
+		ArrayList<String> words = new ArrayList<String>();
+		for(String literal : literals) {
+			words.clear();
+			LogIndexSegment.tokenize(literal, words);
+			for(String word : words) {
+				if(word.length() >= 3)
+					parts.add(word);
+			}
+		}
+		return parts;
+	}
+	
+	private static List<byte[]> getBytes(List<String> strings) throws IOException {
+		ArrayList<byte[]> bytes = new ArrayList<byte[]>();
+		for(String str : strings)
+			bytes.add(str.getBytes("UTF-8"));
+		return bytes;
+	}
+	
+	/*
+	 * Runs on the indexer thread.
+	 */
+	private void updateIndex() throws IOException {
+		File[] list = directory.listFiles();
+		if(list == null)
+			return;
+		indexDirectory.mkdirs();
+		
+		// forget logs that changed or went away, changed ones are indexed again
+		boolean changed = false;
+		for(IndexedFile indexed : new ArrayList<IndexedFile>(files.values())) {
+			File file = new File(directory, indexed.name);
+			if(!file.exists() || file.length() != indexed.length || file.lastModified() != indexed.modified) {
+				files.remove(indexed.name);
+				changed = true;
+			}
+		}
+		if(changed) {
+			removeDeadSegments();
+			saveManifest();
+			publish();
+		}
+		
+		Calendar today = Calendar.getInstance();
+		today.set(Calendar.HOUR_OF_DAY, 0);
+		today.set(Calendar.MINUTE, 0);
+		today.set(Calendar.SECOND, 0);
+		today.set(Calendar.MILLISECOND, 0);
+		ArrayList<File> finished = new ArrayList<File>();
+		for(File file : list) {
+			String name = file.getName();
+			if(!file.isFile() || files.containsKey(name))
+				continue;
+			if(!name.endsWith(".txt") && !name.endsWith(".txt.gz") && !name.endsWith(BinaryLogWriter.EXTENSION))
+				continue;
+			if(file.lastModified() < today.getTimeInMillis() || ROLLED_LOG.matcher(name).matches())
+				finished.add(file);
+		}
+		// oldest first, so the segments are in order
+		Collections.sort(finished, new Comparator<File>() {
+			public int compare(File a, File b) {
+				long diff = a.lastModified() - b.lastModified();
+				return diff < 0 ? -1 : diff > 0 ? 1 : a.getName().compareTo(b.getName());
+			}
+		});
+		
+		for(File file : finished)
+			indexFile(file);
+		if(builder != null)
+			finishSegment();
+		
+		mergeSegments();
+		deleteStrayFiles();
+	}
+	
+	private void indexFile(File file) throws IOException {
+		final IndexedFile indexed = new IndexedFile(file.getName(), file.length(), file.lastModified());
+		String name = indexed.name;
+		
+		if(name.endsWith(BinaryLogWriter.EXTENSION)) {
+			// the text of a binary log goes into the index, split into lines
+			final int[] lineNumber = { 0 };
+			Writer lines = new Writer() {
+				private StringBuilder line = new StringBuilder();
+				
+				public void write(char[] chars, int offset, int length) throws IOException {
+					for(int i = offset; i < offset + length; i++) {
+						if(chars[i] == '\n') {
+							byte[] bytes = line.toString().getBytes("UTF-8");
+							addLine(indexed, true, ++lineNumber[0], 0, bytes, bytes.length);
+							line.setLength(0);
+						} else {
+							line.append(chars[i]);
+						}
+					}
+				}
+				
+				public void flush() {}
+				
+				public void close() throws IOException {
+					if(line.length() > 0)
+						write(new char[] { '\n' }, 0, 1);
+				}
+			};
+			new BinaryLogReader(file).exportText(Long.MIN_VALUE, Long.MAX_VALUE, null, lines);
+			lines.close();
+		} else {
+			boolean stored = name.endsWith(".gz");
+			InputStream in = new BufferedInputStream(new FileInputStream(file), 65536);
+			try {
+				if(stored)
+					in = new GZIPInputStream(in);
+				byte[] line = new byte[256];
+				int length = 0;
+				long offset = 0;
+				long lineStart = 0;
+				int lineNumber = 0;
+				int b;
+				while((b = in.read()) >= 0) {
+					offset++;
+					if(b == '\n') {
+						int end = length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+						addLine(indexed, stored, ++lineNumber, lineStart, line, end);
+						length = 0;
+						lineStart = offset;
+						continue;
+					}
+					if(length == line.length)
+						line = Arrays.copyOf(line, length * 2);
+					line[length++] = (byte)b;
+				}
+				if(length > 0)
+					addLine(indexed, stored, ++lineNumber, lineStart, line, length);
+			} finally {
+				in.close();
+			}
+		}
+		
+		if(indexed.pieces.isEmpty()) {
+			// nothing to search in it, but no need to read it again
+			files.put(indexed.name, indexed);
+		} else {
+			builderFiles.add(indexed);
+		}
+	}
+	
+	private void addLine(IndexedFile indexed, boolean stored, int lineNumber, long offset, byte[] bytes, int length)
+		throws IOException
+	{
+		if(builder != null && builder.isFull())
+			finishSegment();
+		if(builder == null) {
+			builder = new LogIndexSegment.Builder();
+			builderId = nextSegment++;
+		}
+		int[] piece = indexed.pieces.isEmpty() ? null : indexed.pieces.get(indexed.pieces.size() - 1);
+		if(piece == null || piece[0] != builderId) {
+			piece = new int[] { builderId, builder.addFile(indexed.name, stored) };
+			indexed.pieces.add(piece);
+		}
+		builder.addLine(piece[1], lineNumber, offset, bytes, length);
+	}
+	
+	/*
+	 * Write out the builder as a segment. The logs read into it completely
+	 * are in the index from now on.
+	 */
+	private void finishSegment() throws IOException {
+		LogIndexSegment.Builder built = builder;
+		builder = null;
+		segments.add(writeSegment(built, builderId));
+		for(IndexedFile indexed : builderFiles)
+			files.put(indexed.name, indexed);
+		builderFiles.clear();
+		saveManifest();
+		publish();
+	}
+	
+	private LogIndexSegment writeSegment(LogIndexSegment.Builder built, int id) throws IOException {
+		File file = getSegmentFile(id);
+		File temp = new File(file.getPath() + ".tmp");
+		built.write(temp);
+		file.delete();
+		if(!temp.renameTo(file))
+			throw new IOException("Couldn't rename " + temp + " to " + file);
+		return new LogIndexSegment(id, file);
+	}
+	
+	/*
+	 * Merge the neighbouring segments with the fewest lines between them
+	 * while there are too many.
+	 */
+	private void mergeSegments() throws IOException {
+		while(segments.size() > MAX_SEGMENTS) {
+			int best = -1;
+			int bestLines = LogIndexSegment.Builder.LINE_LIMIT;
+			for(int i = 0; i + 1 < segments.size(); i++) {
+				int lines = segments.get(i).getLineCount() + segments.get(i + 1).getLineCount();
+				if(lines <= bestLines) {
+					best = i;
+					bestLines = lines;
+				}
+			}
+			if(best < 0)
+				return;
+			
+			LogIndexSegment first = segments.get(best);
+			LogIndexSegment second = segments.get(best + 1);
+			Map<Integer, boolean[]> live = getLiveFiles();
+			LogIndexSegment.Builder merged = new LogIndexSegment.Builder();
+			int id = nextSegment++;
+			// old segment id and file index -> file index in the merged segment
+			HashMap<Long, Integer> moved = new HashMap<Long, Integer>();
+			HashMap<String, RandomAccessFile> logs = new HashMap<String, RandomAccessFile>();
+			try {
+				for(LogIndexSegment segment : new LogIndexSegment[] { first, second }) {
+					boolean[] segmentLive = live.get(segment.getId());
+					int[] files = new int[segment.getFileCount()];
+					for(int f = 0; f < files.length; f++) {
+						files[f] = -1;
+						if(segmentLive != null && segmentLive[f]) {
+							files[f] = merged.addFile(segment.getFileName(f), segment.isStored(f));
+							moved.put(((long)segment.getId() << 32) | f, files[f]);
+						}
+					}
+					for(int line = 0; line < segment.getLineCount(); line++) {
+						int f = files[segment.getLineFile(line)];
+						if(f < 0)
+							continue;
+						byte[] bytes = segment.getLineBytes(line, directory, logs);
+						if(bytes != null)
+							merged.addLine(f, segment.getLineNumber(line), segment.getLineOffset(line), bytes, bytes.length);
+					}
+				}
+			} finally {
+				for(RandomAccessFile log : logs.values())
+					log.close();
+			}
+			
+			segments.set(best, writeSegment(merged, id));
+			segments.remove(best + 1);
+			for(IndexedFile indexed : files.values()) {
+				for(int[] piece : indexed.pieces) {
+					Integer file = moved.get(((long)piece[0] << 32) | piece[1]);
+					if(file != null) {
+						piece[0] = id;
+						piece[1] = file;
+					}
+				}
+			}
+			saveManifest();
+			publish();
+			first.getFile().delete();
+			second.getFile().delete();
+		}
+	}
+	
+	private void removeDeadSegments() {
+		Map<Integer, boolean[]> live = getLiveFiles();
+		for(int i = segments.size() - 1; i >= 0; i--) {
+			if(!live.containsKey(segments.get(i).getId()))
+				segments.remove(i);
+		}
+	}
+	
+	/*
+	 * Delete segments the manifest doesn't list, left by merges or failed updates.
+	 * Some may still be mapped and not deletable until later.
+	 */
+	private void deleteStrayFiles() {
+		File[] list = indexDirectory.listFiles();
+		if(list == null)
+			return;
+		HashMap<String, Boolean> listed = new HashMap<String, Boolean>();
+		for(LogIndexSegment segment : segments)
+			listed.put(segment.getFile().getName(), true);
+		for(File file : list) {
+			String name = file.getName();
+			if((name.endsWith(SEGMENT_EXTENSION) || name.endsWith(".tmp")) && !listed.containsKey(name))
+				file.delete();
+		}
+	}
+	
+	/*
+	 * Segment id -> whether each of its files is still in the index.
+	 */
+	private Map<Integer, boolean[]> getLiveFiles() {
+		HashMap<Integer, LogIndexSegment> byId = new HashMap<Integer, LogIndexSegment>();
+		for(LogIndexSegment segment : segments)
+			byId.put(segment.getId(), segment);
+		HashMap<Integer, boolean[]> live = new HashMap<Integer, boolean[]>();
+		for(IndexedFile indexed : files.values()) {
+			for(int[] piece : indexed.pieces) {
+				LogIndexSegment segment = byId.get(piece[0]);
+				if(segment == null)
+					continue;
+				boolean[] segmentLive = live.get(piece[0]);
+				if(segmentLive == null) {
+					segmentLive = new boolean[segment.getFileCount()];
+					live.put(piece[0], segmentLive);
+				}
+				segmentLive[piece[1]] = true;
+			}
+		}
+		return live;
+	}
+	
+	private void publish() {
+		Map<Integer, boolean[]> live = getLiveFiles();
+		ArrayList<SegmentView> views = new ArrayList<SegmentView>();
+		for(LogIndexSegment segment : segments) {
+			boolean[] segmentLive = live.get(segment.getId());
+			if(segmentLive != null)
+				views.add(new SegmentView(segment, segmentLive));
+		}
+		this.views = Collections.unmodifiableList(views);
+	}
+	
+	private File getSegmentFile(int id) {
+		return new File(indexDirectory, "segment-" + id + SEGMENT_EXTENSION);
+	}
+	
+	/*
+	 * The manifest lists the segments in order, then the indexed logs:
+	 *   next <next segment id>
+	 *   segment <id>
+	 *   file <length> <modified> <segment>:<file>,... <name>
+	 */
+	private void saveManifest() throws IOException {
+		File manifest = new File(indexDirectory, MANIFEST);
+		File temp = new File(indexDirectory, MANIFEST + ".tmp");
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(temp), "UTF-8"));
+		try {
+			out.println(MANIFEST_HEADER);
+			out.println("next " + nextSegment);
+			for(LogIndexSegment segment : segments)
+				out.println("segment " + segment.getId());
+			for(IndexedFile indexed : files.values()) {
+				StringBuilder pieces = new StringBuilder();
+				for(int[] piece : indexed.pieces) {
+					if(pieces.length() > 0)
+						pieces.append(',');
+					pieces.append(piece[0]).append(':').append(piece[1]);
+				}
+				if(pieces.length() == 0)
+					pieces.append('-');
+				out.println("file " + indexed.length + " " + indexed.modified + " " + pieces + " " + indexed.name);
+			}
+		} finally {
+			out.close();
+		}
+		if(out.checkError())
+			throw new IOException("Couldn't write " + temp);
+		manifest.delete();
+		if(!temp.renameTo(manifest))
+			throw new IOException("Couldn't rename " + temp + " to " + manifest);
+	}
+	
+	private void loadManifest() throws IOException {
+		File manifest = new File(indexDirectory, MANIFEST);
+		if(!manifest.exists())
+			return;
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), "UTF-8"));
+		try {
+			if(!MANIFEST_HEADER.equals(in.readLine()))
+				throw new IOException("Unknown log index format in " + manifest);
+			String line;
+			while((line = in.readLine()) != null) {
+				String[] fields = line.split(" ", 5);
+				if(fields[0].equals("next")) {
+					nextSegment = Integer.parseInt(fields[1]);
+				} else if(fields[0].equals("segment")) {
+					int id = Integer.parseInt(fields[1]);
+					segments.add(new LogIndexSegment(id, getSegmentFile(id)));
+				} else if(fields[0].equals("file") && fields.length == 5) {
+					IndexedFile indexed = new IndexedFile(fields[4], Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+					if(!fields[3].equals("-")) {
+						for(String piece : fields[3].split(",")) {
+							int colon = piece.indexOf(':');
+							indexed.pieces.add(new int[] { Integer.parseInt(piece.substring(0, colon)),
+									Integer.parseInt(piece.substring(colon + 1)) });
+						}
+					}
+					files.put(indexed.name, indexed);
+				}
+			}
+		} catch(NumberFormatException e) {
+			throw new IOException("Bad log index manifest " + manifest + ": " + e.getMessage());
+		} finally {
+			in.close();
+		}
+	}
+}
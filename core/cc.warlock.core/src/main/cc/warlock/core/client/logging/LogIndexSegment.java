@@ -0,0 +1,506 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.client.logging;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One immutable piece of a LogIndex, read through a memory map.
+ * 
+ * A segment lists the log files it covers, a table of their lines, a
+ * sorted dictionary of the lower-cased words in those lines, and for each
+ * word the lines it's in. Lines point back into their log file, except for
+ * logs that can't be read at an offset (compressed and binary logs), whose
+ * lines are stored in the segment.
+ */
+public class LogIndexSegment {
+
+	protected static final int MAGIC = 0x574c4958; // "WLIX"
+	protected static final int VERSION = 1;
+	// magic, version, file, line and term counts, six section offsets
+	protected static final int HEADER_SIZE = 4 * 11;
+	// file, line number, offset, length
+	protected static final int LINE_SIZE = 4 + 4 + 8 + 4;
+	// key offset, key length, postings offset, postings count
+	protected static final int TERM_SIZE = 4 * 4;
+	// longer words are left out of the index
+	protected static final int MAX_TERM_LENGTH = 64;
+	
+	private int id;
+	private File file;
+	private MappedByteBuffer buffer;
+	private int lineCount;
+	private int termCount;
+	private int linesOffset;
+	private int termsOffset;
+	private int keysOffset;
+	private int postingsOffset;
+	private int textOffset;
+	private String[] fileNames;
+	private boolean[] stored;
+	
+	public LogIndexSegment (int id, File file) throws IOException {
+		this.id = id;
+		this.file = file;
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+		} finally {
+			in.close();
+		}
+		
+		if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+			throw new IOException("Not a log index segment: " + file);
+		int fileCount = buffer.getInt(8);
+		lineCount = buffer.getInt(12);
+		termCount = buffer.getInt(16);
+		int filesOffset = buffer.getInt(20);
+		linesOffset = buffer.getInt(24);
+		termsOffset = buffer.getInt(28);
+		keysOffset = buffer.getInt(32);
+		postingsOffset = buffer.getInt(36);
+		textOffset = buffer.getInt(40);
+		
+		fileNames = new String[fileCount];
+		stored = new boolean[fileCount];
+		int pos = filesOffset;
+		for(int i = 0; i < fileCount; i++) {
+			// written by writeUTF(), which isn't quite UTF-8
+			int length = buffer.getShort(pos) & 0xffff;
+			byte[] name = new byte[2 + length];
+			for(int j = 0; j < name.length; j++)
+				name[j] = buffer.get(pos + j);
+			fileNames[i] = new DataInputStream(new ByteArrayInputStream(name)).readUTF();
+			stored[i] = buffer.get(pos + 2 + length) != 0;
+			pos += 2 + length + 1;
+		}
+	}
+	
+	public int getId() {
+		return id;
+	}
+	
+	public File getFile() {
+		return file;
+	}
+	
+	public int getFileCount() {
+		return fileNames.length;
+	}
+	
+	public String getFileName(int file) {
+		return fileNames[file];
+	}
+	
+	public boolean isStored(int file) {
+		return stored[file];
+	}
+	
+	public int getLineCount() {
+		return lineCount;
+	}
+	
+	public int getTermCount() {
+		return termCount;
+	}
+	
+	public int getLineFile(int line) {
+		return buffer.getInt(linesOffset + line * LINE_SIZE);
+	}
+	
+	/**
+	 * @return the line's number in its file, from 1
+	 */
+	public int getLineNumber(int line) {
+		return buffer.getInt(linesOffset + line * LINE_SIZE + 4);
+	}
+	
+	/**
+	 * @return where the line starts, in its log file or in this segment's stored text
+	 */
+	public long getLineOffset(int line) {
+		return buffer.getLong(linesOffset + line * LINE_SIZE + 8);
+	}
+	
+	public int getLineLength(int line) {
+		return buffer.getInt(linesOffset + line * LINE_SIZE + 16);
+	}
+	
+	/**
+	 * @param logs open log files by name, added to as needed. The caller closes them.
+	 * @return the line's text, or null if its log file can't be read
+	 */
+	public String getLineText(int line, File directory, Map<String, RandomAccessFile> logs) throws IOException {
+		byte[] bytes = getLineBytes(line, directory, logs);
+		return bytes == null ? null : new String(bytes, "UTF-8");
+	}
+	
+	/**
+	 * @see #getLineText(int, File, Map)
+	 * @return the line in UTF-8, or null if its log file can't be read
+	 */
+	public byte[] getLineBytes(int line, File directory, Map<String, RandomAccessFile> logs) throws IOException {
+		int file = getLineFile(line);
+		long offset = getLineOffset(line);
+		byte[] bytes = new byte[getLineLength(line)];
+		if(stored[file]) {
+			for(int i = 0; i < bytes.length; i++)
+				bytes[i] = buffer.get(textOffset + (int)offset + i);
+		} else {
+			RandomAccessFile log = logs.get(fileNames[file]);
+			if(log == null) {
+				File logFile = new File(directory, fileNames[file]);
+				if(!logFile.exists())
+					return null;
+				log = new RandomAccessFile(logFile, "r");
+				logs.put(fileNames[file], log);
+			}
+			if(offset + bytes.length > log.length())
+				return null;
+			log.seek(offset);
+			log.readFully(bytes);
+		}
+		return bytes;
+	}
+	
+	public String getTerm(int term) {
+		byte[] key = getKey(term);
+		try {
+			return new String(key, "UTF-8");
+		} catch(java.io.UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * @return the term's index, or -1 if no line has it
+	 */
+	public int findTerm(byte[] key) {
+		int low = 0, high = termCount - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			int entry = termsOffset + mid * TERM_SIZE;
+			int cmp = compareKey(keysOffset + buffer.getInt(entry), buffer.getInt(entry + 4), key);
+			if(cmp < 0)
+				low = mid + 1;
+			else if(cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Add the lines that have the term to lines.
+	 */
+	public void getPostings(int term, BitSet lines) {
+		int entry = termsOffset + term * TERM_SIZE;
+		int pos = postingsOffset + buffer.getInt(entry + 8);
+		int count = buffer.getInt(entry + 12);
+		int line = 0;
+		for(int i = 0; i < count; i++) {
+			int delta = 0;
+			int shift = 0;
+			int b;
+			do {
+				b = buffer.get(pos++);
+				delta |= (b & 0x7f) << shift;
+				shift += 7;
+			} while((b & 0x80) != 0);
+			line += delta;
+			lines.set(line);
+		}
+	}
+	
+	/**
+	 * Add the lines with a word containing part to lines. This looks at
+	 * every word in the segment.
+	 */
+	public void getPostingsContaining(byte[] part, BitSet lines) {
+		for(int term = 0; term < termCount; term++) {
+			int entry = termsOffset + term * TERM_SIZE;
+			if(containsKey(keysOffset + buffer.getInt(entry), buffer.getInt(entry + 4), part))
+				getPostings(term, lines);
+		}
+	}
+	
+	private byte[] getKey(int term) {
+		int entry = termsOffset + term * TERM_SIZE;
+		int offset = keysOffset + buffer.getInt(entry);
+		byte[] key = new byte[buffer.getInt(entry + 4)];
+		for(int i = 0; i < key.length; i++)
+			key[i] = buffer.get(offset + i);
+		return key;
+	}
+	
+	private int compareKey(int offset, int length, byte[] key) {
+		int n = Math.min(length, key.length);
+		for(int i = 0; i < n; i++) {
+			int a = buffer.get(offset + i) & 0xff;
+			int b = key[i] & 0xff;
+			if(a != b)
+				return a - b;
+		}
+		return length - key.length;
+	}
+	
+	private boolean containsKey(int offset, int length, byte[] part) {
+		outer:
+		for(int i = 0; i <= length - part.length; i++) {
+			for(int j = 0; j < part.length; j++) {
+				if(buffer.get(offset + i + j) != part[j])
+					continue outer;
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Split text into lower-cased words, starting after a text log's
+	 * timestamp if it has one.
+	 */
+	public static void tokenize(String text, List<String> terms) {
+		int length = text.length();
+		int start = -1;
+		for(int i = skipTimestamp(text); i <= length; i++) {
+			boolean word = i < length && Character.isLetterOrDigit(text.charAt(i));
+			if(word && start < 0) {
+				start = i;
+			} else if(!word && start >= 0) {
+				if(i - start <= MAX_TERM_LENGTH)
+					terms.add(text.substring(start, i).toLowerCase());
+				start = -1;
+			}
+		}
+	}
+	
+	/*
+	 * @return the length of a "[H:m:s] " timestamp at the start of the line, or 0
+	 */
+	private static int skipTimestamp(String text) {
+		if(text.length() == 0 || text.charAt(0) != '[')
+			return 0;
+		int colons = 0;
+		for(int i = 1; i < text.length() && i < 12; i++) {
+			char c = text.charAt(i);
+			if(c == ':')
+				colons++;
+			else if(c == ']')
+				return colons == 2 && i + 1 < text.length() && text.charAt(i + 1) == ' ' ? i + 2 : 0;
+			else if(c < '0' || c > '9')
+				return 0;
+		}
+		return 0;
+	}
+	
+	/**
+	 * Collects lines in memory and writes them out as a segment.
+	 */
+	public static class Builder {
+		// lines and stored text a segment is kept under
+		public static final int LINE_LIMIT = 1 << 20;
+		public static final int TEXT_LIMIT = 128 * 1024 * 1024;
+		
+		private static class Postings {
+			int[] lines = new int[2];
+			int count = 0;
+		}
+		
+		private ArrayList<String> fileNames = new ArrayList<String>();
+		private ArrayList<Boolean> stored = new ArrayList<Boolean>();
+		private int lineCount = 0;
+		private int[] lineFiles = new int[1024];
+		private int[] lineNumbers = new int[1024];
+		private long[] lineOffsets = new long[1024];
+		private int[] lineLengths = new int[1024];
+		private HashMap<String, Postings> terms = new HashMap<String, Postings>();
+		private ByteArrayOutputStream text = new ByteArrayOutputStream();
+		private ArrayList<String> lineTerms = new ArrayList<String>();
+		
+		/**
+		 * @param stored whether the file's lines will be kept in the segment
+		 * @return the index to add the file's lines with
+		 */
+		public int addFile(String name, boolean stored) {
+			fileNames.add(name);
+			this.stored.add(stored);
+			return fileNames.size() - 1;
+		}
+		
+		/**
+		 * @param offset where the line starts in its log file, ignored if the file is stored
+		 * @param bytes the line in UTF-8, from 0 to length
+		 */
+		public void addLine(int file, int lineNumber, long offset, byte[] bytes, int length) throws IOException {
+			if(lineCount == lineFiles.length) {
+				int capacity = lineCount * 2;
+				lineFiles = Arrays.copyOf(lineFiles, capacity);
+				lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+				lineOffsets = Arrays.copyOf(lineOffsets, capacity);
+				lineLengths = Arrays.copyOf(lineLengths, capacity);
+			}
+			if(stored.get(file)) {
+				offset = text.size();
+				text.write(bytes, 0, length);
+			}
+			int line = lineCount++;
+			lineFiles[line] = file;
+			lineNumbers[line] = lineNumber;
+			lineOffsets[line] = offset;
+			lineLengths[line] = length;
+			
+			lineTerms.clear();
+			tokenize(new String(bytes, 0, length, "UTF-8"), lineTerms);
+			for(String term : lineTerms) {
+				Postings postings = terms.get(term);
+				if(postings == null) {
+					postings = new Postings();
+					terms.put(term, postings);
+				}
+				if(postings.count > 0 && postings.lines[postings.count - 1] == line)
+					continue;
+				if(postings.count == postings.lines.length)
+					postings.lines = Arrays.copyOf(postings.lines, postings.count * 2);
+				postings.lines[postings.count++] = line;
+			}
+		}
+		
+		public int getLineCount() {
+			return lineCount;
+		}
+		
+		public boolean isFull() {
+			return lineCount >= LINE_LIMIT || text.size() >= TEXT_LIMIT;
+		}
+		
+		public void write(File file) throws IOException {
+			// sort the words as UTF-8 bytes, the order findTerm() searches in
+			int termCount = terms.size();
+			final byte[][] keys = new byte[termCount][];
+			Postings[] postings = new Postings[termCount];
+			Integer[] order = new Integer[termCount];
+			int i = 0;
+			for(Map.Entry<String, Postings> entry : terms.entrySet()) {
+				keys[i] = entry.getKey().getBytes("UTF-8");
+				postings[i] = entry.getValue();
+				order[i] = i;
+				i++;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					byte[] x = keys[a], y = keys[b];
+					int n = Math.min(x.length, y.length);
+					for(int j = 0; j < n; j++) {
+						if(x[j] != y[j])
+							return (x[j] & 0xff) - (y[j] & 0xff);
+					}
+					return x.length - y.length;
+				}
+			});
+			
+			ByteArrayOutputStream files = new ByteArrayOutputStream();
+			DataOutputStream filesOut = new DataOutputStream(files);
+			for(int f = 0; f < fileNames.size(); f++) {
+				filesOut.writeUTF(fileNames.get(f));
+				filesOut.writeBoolean(stored.get(f));
+			}
+			
+			ByteArrayOutputStream keyBytes = new ByteArrayOutputStream();
+			ByteArrayOutputStream postingBytes = new ByteArrayOutputStream();
+			int[] termEntries = new int[termCount * 4];
+			for(int t = 0; t < termCount; t++) {
+				byte[] key = keys[order[t]];
+				Postings p = postings[order[t]];
+				termEntries[t * 4] = keyBytes.size();
+				termEntries[t * 4 + 1] = key.length;
+				termEntries[t * 4 + 2] = postingBytes.size();
+				termEntries[t * 4 + 3] = p.count;
+				keyBytes.write(key);
+				int last = 0;
+				for(int n = 0; n < p.count; n++) {
+					int delta = p.lines[n] - last;
+					last = p.lines[n];
+					while(delta >= 0x80) {
+						postingBytes.write((delta & 0x7f) | 0x80);
+						delta >>>= 7;
+					}
+					postingBytes.write(delta);
+				}
+			}
+			
+			int filesOffset = HEADER_SIZE;
+			int linesOffset = filesOffset + files.size();
+			int termsOffset = linesOffset + lineCount * LINE_SIZE;
+			int keysOffset = termsOffset + termCount * TERM_SIZE;
+			int postingsOffset = keysOffset + keyBytes.size();
+			int textOffset = postingsOffset + postingBytes.size();
+			
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(fileNames.size());
+				out.writeInt(lineCount);
+				out.writeInt(termCount);
+				out.writeInt(filesOffset);
+				out.writeInt(linesOffset);
+				out.writeInt(termsOffset);
+				out.writeInt(keysOffset);
+				out.writeInt(postingsOffset);
+				out.writeInt(textOffset);
+				files.writeTo(out);
+				for(int line = 0; line < lineCount; line++) {
+					out.writeInt(lineFiles[line]);
+					out.writeInt(lineNumbers[line]);
+					out.writeLong(lineOffsets[line]);
+					out.writeInt(lineLengths[line]);
+				}
+				for(int n = 0; n < termEntries.length; n++)
+					out.writeInt(termEntries[n]);
+				keyBytes.writeTo(out);
+				postingBytes.writeTo(out);
+				text.writeTo(out);
+			} finally {
+				out.close();
+			}
+		}
+	}
+}
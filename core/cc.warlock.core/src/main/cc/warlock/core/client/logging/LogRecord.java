@@ -0,0 +1,66 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.client.logging;
+
+import cc.warlock.core.client.WarlockString;
+
+/**
+ * One event read from a binary log.
+ */
+public class LogRecord {
+
+	public enum Type { TEXT, PROMPT, COMMAND };
+	
+	private Type type;
+	private long time;
+	private String stream;
+	private WarlockString text;
+	
+	public LogRecord (Type type, long time, String stream, WarlockString text) {
+		this.type = type;
+		this.time = time;
+		this.stream = stream;
+		this.text = text;
+	}
+	
+	public Type getType() {
+		return type;
+	}
+	
+	/**
+	 * @return when the record was logged, in milliseconds since the epoch
+	 */
+	public long getTime() {
+		return time;
+	}
+	
+	public String getStream() {
+		return stream;
+	}
+	
+	/**
+	 * @return the text with its styles, or the prompt or command
+	 */
+	public WarlockString getText() {
+		return text;
+	}
+}
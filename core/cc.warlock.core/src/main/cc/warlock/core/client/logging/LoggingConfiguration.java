@@ -22,6 +22,7 @@
 package cc.warlock.core.client.logging;
 
 import java.io.File;
+import java.util.Calendar;
 
 import cc.warlock.core.client.IClientSettings;
 import cc.warlock.core.settings.ConfigurationUtil;
@@ -34,10 +35,14 @@ public class LoggingConfiguration extends WarlockSetting
 	public static final String ID = "logs";
 	public static final String LOG_FORMAT_TEXT = "text";
 	public static final String LOG_FORMAT_HTML = "html";
+	public static final String LOG_FORMAT_BINARY = "binary";
 	
 	protected String logFormat;
 	protected boolean enableLogging;
 	protected File logDirectory;
+	// bytes before a log file is rolled over, 0 for no limit
+	protected long maxLogSize;
+	protected boolean compressLogs;
 	
 	public LoggingConfiguration (IWarlockSetting parent) {
 		super(parent, ID);
@@ -48,6 +53,8 @@ public class LoggingConfiguration extends WarlockSetting
 			logDirectory = ConfigurationUtil.getConfigurationDirectory("logs", true);
 		else
 			logDirectory =  new File(dirName.trim());
+		maxLogSize = getNode().getLong("maxSize", 10 * 1024 * 1024);
+		compressLogs = getNode().getBoolean("compress", false);
 	}
 
 	public String getLogFormat() {
@@ -77,6 +84,36 @@ public class LoggingConfiguration extends WarlockSetting
 		this.logDirectory = logDirectory;
 	}
 
+	public long getMaxLogSize() {
+		return maxLogSize;
+	}
+
+	public void setMaxLogSize(long maxLogSize) {
+		getNode().putLong("maxSize", maxLogSize);
+		this.maxLogSize = maxLogSize;
+	}
+
+	public boolean isCompressLogs() {
+		return compressLogs;
+	}
+
+	public void setCompressLogs(boolean compressLogs) {
+		getNode().putBoolean("compress", compressLogs);
+		this.compressLogs = compressLogs;
+	}
+
+	/**
+	 * @return the name, without extension, of a character's log for a day
+	 */
+	public static String getLogName(String characterName, Calendar day) {
+		return characterName + "-" + pad(day.get(Calendar.MONTH) + 1) + "-" + pad(day.get(Calendar.DAY_OF_MONTH))
+			+ "-" + day.get(Calendar.YEAR);
+	}
+	
+	private static String pad(int n) {
+		return n < 10 ? "0" + n : String.valueOf(n);
+	}
+
 	public static LoggingConfiguration getProvider(IClientSettings clientSettings) {
 		return (LoggingConfiguration)clientSettings.getProvider(ID);
 	}
@@ -45,8 +45,9 @@ public class SimpleLogger implements IClientLogger {
 	protected int maxBufferSize = 2000;
 	protected boolean nextlineStamp = false;
 	
-	protected static final DateFormat dateFormat = new SimpleDateFormat("MM-dd-yyyy");
-	protected static final DateFormat timeFormat = new SimpleDateFormat("[H:m:s] ");
+	// DateFormat isn't thread safe, so each logger has its own
+	protected final DateFormat dateFormat = new SimpleDateFormat("MM-dd-yyyy");
+	protected final DateFormat timeFormat = new SimpleDateFormat("[H:m:s] ");
 	
 	public SimpleLogger (IWarlockClient client)
 	{
@@ -104,6 +105,10 @@ public class SimpleLogger implements IClientLogger {
 		dumpBuffer();
 	}
 	
+	public void close() {
+		dumpBuffer();
+	}
+	
 	protected void dumpBuffer ()
 	{
 		try {
@@ -0,0 +1,123 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.network;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/**
+ * A Reader that is fed decoded characters by the connection engine, for
+ * consumers that want to pull from a blocking stream. The characters are
+ * held in a growable ring buffer, so appending never blocks the I/O thread.
+ */
+public class ChannelReader extends Reader {
+
+	private char[] buffer;
+	private int head = 0;
+	private int count = 0;
+	private boolean finished = false;
+	
+	public ChannelReader () {
+		this(8192);
+	}
+	
+	public ChannelReader (int initialCapacity) {
+		buffer = new char[initialCapacity];
+	}
+	
+	public void append (CharBuffer chars) {
+		synchronized (lock) {
+			int length = chars.remaining();
+			ensureCapacity(count + length);
+			
+			int tail = (head + count) % buffer.length;
+			int firstPart = Math.min(length, buffer.length - tail);
+			chars.get(buffer, tail, firstPart);
+			chars.get(buffer, 0, length - firstPart);
+			count += length;
+			
+			lock.notifyAll();
+		}
+	}
+	
+	/**
+	 * Signal end of stream. Readers get -1 once the remaining characters are consumed.
+	 */
+	public void finish () {
+		synchronized (lock) {
+			finished = true;
+			lock.notifyAll();
+		}
+	}
+	
+	private void ensureCapacity (int capacity) {
+		if (capacity <= buffer.length)
+			return;
+		
+		char[] newBuffer = new char[Math.max(capacity, buffer.length * 2)];
+		int firstPart = Math.min(count, buffer.length - head);
+		System.arraycopy(buffer, head, newBuffer, 0, firstPart);
+		System.arraycopy(buffer, 0, newBuffer, firstPart, count - firstPart);
+		buffer = newBuffer;
+		head = 0;
+	}
+	
+	@Override
+	public int read (char[] cbuf, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		
+		synchronized (lock) {
+			while (count == 0 && !finished) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+			}
+			if (count == 0)
+				return -1;
+			
+			int n = Math.min(len, count);
+			int firstPart = Math.min(n, buffer.length - head);
+			System.arraycopy(buffer, head, cbuf, off, firstPart);
+			System.arraycopy(buffer, 0, cbuf, off + firstPart, n - firstPart);
+			head = (head + n) % buffer.length;
+			count -= n;
+			return n;
+		}
+	}
+	
+	@Override
+	public boolean ready () {
+		synchronized (lock) {
+			return count > 0;
+		}
+	}
+	
+	@Override
+	public void close () {
+		finish();
+	}
+}
@@ -22,11 +22,14 @@
 package cc.warlock.core.network;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.net.ConnectException;
-import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.ArrayList;
 
 import cc.warlock.core.client.IWarlockClient;
@@ -34,35 +37,72 @@ import cc.warlock.core.client.IWarlockClient;
 /**
  * @author marshall
  */
-public class Connection implements IConnection {
+public class Connection implements IConnection, IChannelHandler {
 
-	protected Socket socket;
+	// set on the I/O thread once connected, which can be before connect() returns
+	protected volatile EngineChannel channel;
 	protected ArrayList<IConnectionListener> connectionListeners = new ArrayList<IConnectionListener>();
-	protected boolean connected = false;
+	protected volatile boolean connected = false;
 	
 	protected String host = null;
 	protected int port = -1;
+	protected SessionRecorder recorder;
+	
+	// the encoding of everything sent and received
+	private Charset charset = Charset.defaultCharset();
+	protected OutboundWriter outbound = new OutboundWriter(this, charset);
+	
+	// bytes that didn't decode yet (a multi-byte sequence split across reads)
+	private ByteBuffer undecoded = ByteBuffer.allocate(ConnectionEngine.READ_BUFFER_SIZE);
+	private CharBuffer decoded = CharBuffer.allocate(ConnectionEngine.READ_BUFFER_SIZE);
+	private CharsetDecoder decoder = newDecoder(charset);
+	
+	private static CharsetDecoder newDecoder (Charset charset) {
+		return charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+	
+	/**
+	 * Set the encoding used to send and receive. Defaults to the platform's.
+	 */
+	public void setCharset (Charset charset) {
+		this.charset = charset;
+		decoder = newDecoder(charset);
+		outbound.setCharset(charset);
+	}
+	
+	public Charset getCharset () {
+		return charset;
+	}
+	
+	public OutboundWriter getOutboundWriter () {
+		return outbound;
+	}
+	
+	/**
+	 * @return how many commands and socket writes are waiting to go out
+	 */
+	public int getSendQueueDepth () {
+		int depth = outbound.getPendingCommands();
+		if (channel != null)
+			depth += channel.getQueuedWrites();
+		return depth;
+	}
 	
 	public void connect (String host, int port)
 		throws IOException
 	{
+		this.host = host;
+		this.port = port;
+		
 		try {
-			socket = new Socket(host, port);
-			
-			new Thread(createPollingRunnable(socket)).start();
-		} catch (ConnectException e) {
-			if (e.getMessage().contains("refused")) {
-				connectionError(ErrorType.ConnectionRefused);
-			}
+			channel = ConnectionEngine.getInstance().connect(host, port, this);
 		} catch(UnknownHostException e) {
 			connectionError(ErrorType.UnknownHost);
 		}
 	}
 	
-	protected Runnable createPollingRunnable (Socket socket) throws IOException {
-		return new EventPollThread(socket);
-	}
-	
 	protected void connectionError (ErrorType errorType)
 	{
 		for (IConnectionListener listener : connectionListeners)
@@ -86,7 +126,10 @@ public class Connection implements IConnection {
 	public void disconnect()
 		throws IOException
 	{
-		socket.shutdownOutput();
+		if (channel != null) {
+			outbound.flush();
+			channel.close();
+		}
 	}
 	
 	public void addConnectionListener (IConnectionListener listener)
@@ -101,112 +144,146 @@ public class Connection implements IConnection {
 	public void send (String toSend)
 		throws IOException
 	{
-		socket.getOutputStream().write(toSend.getBytes());
+		outbound.send(toSend);
 		listenersDataSent(toSend);
 	}
 	
 	public void send (byte[] bytes)
 		throws IOException
 	{
-		socket.getOutputStream().write(bytes);
-		listenersDataSent(bytes.toString());
+		outbound.send(bytes);
+		if (!connectionListeners.isEmpty())
+			listenersDataSent(new String(bytes, charset));
 	}
 	
 	public void sendLine (String line)
 		throws IOException
 	{
-		send (line + "\n");
+		synchronized (outbound) {
+			outbound.append(line);
+			outbound.append("\n");
+			outbound.endCommand();
+		}
+		if (!connectionListeners.isEmpty())
+			listenersDataSent(line + "\n");
+	}
+	
+	protected void write (ByteBuffer buffer)
+		throws IOException
+	{
+		if (channel == null)
+			throw new IOException("Not connected");
+		channel.write(buffer);
 	}
 	
 	public IWarlockClient getClient() {
 		return null;
 	}
 	
-	private void listenersDataSent (String data) {
-		for (IConnectionListener listener : connectionListeners) {
-			listener.dataSent(this, data);
+	/**
+	 * Tee everything received from now on into the given recorder. The
+	 * recorder is closed when the connection closes.
+	 */
+	public void setRecorder (SessionRecorder recorder) {
+		this.recorder = recorder;
+	}
+	
+	protected void stopRecording () {
+		if (recorder != null) {
+			recorder.close();
+			recorder = null;
 		}
 	}
 	
-	protected class EventPollThread implements Runnable
-	{
-		protected Reader reader;
+	// IChannelHandler methods, called on the engine's I/O thread
+	
+	public void channelConnected (EngineChannel channel) {
+		this.channel = channel;
+		connected = true;
+		listenersConnected();
+	}
+	
+	public void channelRead (EngineChannel channel, ByteBuffer data) {
+		if (recorder != null)
+			recorder.record(data);
 		
-		public EventPollThread(Socket socket) throws IOException {
-			reader = createReader(socket);
+		if (undecoded.remaining() < data.remaining()) {
+			ByteBuffer larger = ByteBuffer.allocate(undecoded.position() + data.remaining());
+			undecoded.flip();
+			larger.put(undecoded);
+			undecoded = larger;
 		}
+		undecoded.put(data);
+		undecoded.flip();
 		
-		public void run ()
-		{
-			while (true)
-			{
-				if (!connected) {
-					if (isSocketActive()) {
-						connected = true;
-						listenersConnected();
-					}
-				} else {
-					if (!isSocketActive()) {
-						connected = false;
-						listenersDisconnected();
-						break;
-					} else {
-						try {
-							readData(reader);
-						} catch(Exception e) {
-							e.printStackTrace();
-							break;
-						}
-					}
-				}
-			}
-		}
+		CoderResult result;
+		do {
+			decoded.clear();
+			result = decoder.decode(undecoded, decoded, false);
+			decoded.flip();
+			if (decoded.hasRemaining())
+				dataReceived(decoded);
+		} while (result.isOverflow());
 		
-		protected Reader createReader (Socket socket)
-		throws IOException
-		{
-			return new InputStreamReader(socket.getInputStream());
-		}
-
-		protected void readData (Reader reader) throws IOException {
-			char cbuf[] = new char[1024];
-
-			int charsRead = reader.read(cbuf);
-			listenersGotData(new String(cbuf, 0, charsRead));
+		undecoded.compact();
+	}
+	
+	public void channelClosed (EngineChannel channel) {
+		stopRecording();
+		connected = false;
+		listenersDisconnected();
+	}
+	
+	/*
+	 * A failed connect is only reported here. A channel that was connected
+	 * is closed after its error, and channelClosed() reports that.
+	 */
+	public void channelError (EngineChannel channel, IOException e) {
+		if (connected) {
+			e.printStackTrace();
+		} else if (e instanceof UnknownHostException) {
+			connectionError(ErrorType.UnknownHost);
+		} else if (e instanceof ConnectException && e.getMessage() != null
+				&& e.getMessage().contains("refused")) {
+			connectionError(ErrorType.ConnectionRefused);
+		} else {
+			e.printStackTrace();
+			connectionError(ErrorType.ConnectionFailed);
 		}
-		
-		private void listenersDisconnected ()
-		{
-			for (IConnectionListener listener : connectionListeners) {
-				listener.disconnected(Connection.this);
-			}
+	}
+	
+	/**
+	 * Called with each run of decoded characters. The buffer is reused, so
+	 * subclasses must copy out anything they want to keep.
+	 */
+	protected void dataReceived (CharBuffer data) {
+		listenersGotData(data.toString());
+	}
+	
+	protected void listenersDataSent (String data) {
+		for (IConnectionListener listener : connectionListeners) {
+			listener.dataSent(this, data);
 		}
-		
-		private void listenersConnected ()
-		{
-			for (IConnectionListener listener : connectionListeners) {
-				listener.connected(Connection.this);
-			}
+	}
+	
+	protected void listenersDisconnected ()
+	{
+		for (IConnectionListener listener : connectionListeners) {
+			listener.disconnected(this);
 		}
-		
-		private void listenersGotData (String data)
-		{
-			for (IConnectionListener listener : connectionListeners) {
-				listener.dataReady(Connection.this, data);
-			}
+	}
+	
+	protected void listenersConnected ()
+	{
+		for (IConnectionListener listener : connectionListeners) {
+			listener.connected(this);
 		}
-		
-		private boolean isSocketActive() {
-			if (!socket.isConnected())
-				return false;
-			if (socket.isClosed())
-				return false;
-			if (socket.isInputShutdown())
-				return false;
-			if (socket.isOutputShutdown())
-				return false;
-			
-			return true; // If we reach here... we're most likely still connected
+	}
+	
+	protected void listenersGotData (String data)
+	{
+		for (IConnectionListener listener : connectionListeners) {
+			listener.dataReady(this, data);
 		}
 	}
-}
\ No newline at end of file
+}
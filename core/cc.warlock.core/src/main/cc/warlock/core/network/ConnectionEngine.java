@@ -0,0 +1,140 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The connection engine services every network connection in the client
+ * from a small, fixed pool of selector threads. Each channel is
+ * non-blocking and pinned to one I/O thread, and each I/O thread reads
+ * into a single reusable direct buffer.
+ */
+public class ConnectionEngine {
+
+	public static final int MAX_IO_THREADS = 2;
+	public static final int READ_BUFFER_SIZE = 16 * 1024;
+	
+	private static ConnectionEngine instance;
+	
+	private final IOThread[] ioThreads;
+	private final AtomicInteger nextThread = new AtomicInteger();
+	
+	public static synchronized ConnectionEngine getInstance() throws IOException {
+		if (instance == null) {
+			int threads = Math.min(MAX_IO_THREADS, Runtime.getRuntime().availableProcessors());
+			instance = new ConnectionEngine(threads);
+		}
+		return instance;
+	}
+	
+	public ConnectionEngine (int threadCount) throws IOException {
+		ioThreads = new IOThread[Math.max(1, threadCount)];
+		for (int i = 0; i < ioThreads.length; i++) {
+			ioThreads[i] = new IOThread("Warlock I/O " + i);
+			ioThreads[i].start();
+		}
+	}
+	
+	/**
+	 * Start connecting to host:port. The connection completes asynchronously,
+	 * and the handler is told through channelConnected or channelError.
+	 * 
+	 * @throws UnknownHostException if the host could not be resolved
+	 */
+	public EngineChannel connect (String host, int port, IChannelHandler handler)
+		throws IOException
+	{
+		InetSocketAddress address = new InetSocketAddress(host, port);
+		if (address.isUnresolved())
+			throw new UnknownHostException(host);
+		
+		SocketChannel socketChannel = SocketChannel.open();
+		socketChannel.configureBlocking(false);
+		socketChannel.connect(address);
+		
+		IOThread thread = ioThreads[(nextThread.getAndIncrement() & Integer.MAX_VALUE) % ioThreads.length];
+		EngineChannel channel = new EngineChannel(thread, socketChannel, handler);
+		thread.update(channel);
+		return channel;
+	}
+	
+	public int getThreadCount() {
+		return ioThreads.length;
+	}
+	
+	static class IOThread extends Thread {
+		private final Selector selector;
+		private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+		private final ConcurrentLinkedQueue<EngineChannel> updates = new ConcurrentLinkedQueue<EngineChannel>();
+		
+		public IOThread (String name) throws IOException {
+			super(name);
+			setDaemon(true);
+			selector = Selector.open();
+		}
+		
+		/*
+		 * Channels may only be registered or have their interest changed
+		 * from the selector's own thread, so other threads queue the channel
+		 * here and wake the selector up.
+		 */
+		void update (EngineChannel channel) {
+			updates.add(channel);
+			if (Thread.currentThread() != this)
+				selector.wakeup();
+		}
+		
+		@Override
+		public void run() {
+			while (true) {
+				try {
+					selector.select();
+					
+					EngineChannel channel;
+					while ((channel = updates.poll()) != null) {
+						channel.update(selector);
+					}
+					
+					for (Iterator<SelectionKey> iter = selector.selectedKeys().iterator(); iter.hasNext(); ) {
+						SelectionKey key = iter.next();
+						iter.remove();
+						
+						((EngineChannel)key.attachment()).ready(key, readBuffer);
+					}
+				} catch (Throwable t) {
+					// Never let one bad channel take down every connection on this thread
+					t.printStackTrace();
+				}
+			}
+		}
+	}
+}
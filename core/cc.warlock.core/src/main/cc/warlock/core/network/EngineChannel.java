@@ -0,0 +1,207 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A non-blocking socket registered with the ConnectionEngine.
+ * 
+ * write() and close() are safe to call from any thread; everything else
+ * happens on the I/O thread that owns the channel.
+ */
+public class EngineChannel {
+
+	private final ConnectionEngine.IOThread ioThread;
+	private final SocketChannel channel;
+	private final IChannelHandler handler;
+	private final ConcurrentLinkedQueue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+	private final AtomicInteger queuedWrites = new AtomicInteger();
+	private SelectionKey key;
+	private volatile boolean connected = false;
+	private volatile boolean closeRequested = false;
+	private volatile boolean closed = false;
+	
+	EngineChannel (ConnectionEngine.IOThread ioThread, SocketChannel channel, IChannelHandler handler) {
+		this.ioThread = ioThread;
+		this.channel = channel;
+		this.handler = handler;
+	}
+	
+	/**
+	 * Queue bytes to be written. The buffer must not be modified afterwards.
+	 */
+	public void write (ByteBuffer buffer) throws IOException {
+		if (!isOpen())
+			throw new IOException("Channel is closed");
+		
+		writeQueue.add(buffer);
+		queuedWrites.incrementAndGet();
+		ioThread.update(this);
+	}
+	
+	/**
+	 * Close the channel once everything queued so far has been written.
+	 */
+	public void close () {
+		closeRequested = true;
+		ioThread.update(this);
+	}
+	
+	/**
+	 * @return how many buffers are queued but not completely written yet
+	 */
+	public int getQueuedWrites () {
+		return queuedWrites.get();
+	}
+	
+	public boolean isOpen () {
+		return !closed && !closeRequested;
+	}
+	
+	public boolean isConnected () {
+		return connected;
+	}
+	
+	public SocketChannel getSocketChannel () {
+		return channel;
+	}
+	
+	/*
+	 * Everything below runs on the I/O thread.
+	 */
+	
+	void update (Selector selector) {
+		if (closed)
+			return;
+		
+		try {
+			if (key == null) {
+				if (channel.isConnectionPending()) {
+					key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+				} else {
+					// the connection completed immediately (usually localhost)
+					key = channel.register(selector, interestOps(), this);
+					finishConnect();
+				}
+			} else if (connected) {
+				if (closeRequested && writeQueue.isEmpty())
+					doClose();
+				else
+					key.interestOps(interestOps());
+			} else if (closeRequested) {
+				doClose();
+			}
+		} catch (IOException e) {
+			error(e);
+		}
+	}
+	
+	void ready (SelectionKey key, ByteBuffer readBuffer) {
+		try {
+			if (key.isValid() && key.isConnectable()) {
+				if (channel.finishConnect()) {
+					key.interestOps(interestOps());
+					finishConnect();
+				}
+			}
+			if (key.isValid() && key.isWritable())
+				flushWrites();
+			if (key.isValid() && key.isReadable())
+				read(readBuffer);
+		} catch (IOException e) {
+			error(e);
+		}
+	}
+	
+	private int interestOps () {
+		return writeQueue.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+	}
+	
+	private void finishConnect () {
+		connected = true;
+		handler.channelConnected(this);
+	}
+	
+	private void flushWrites () throws IOException {
+		ByteBuffer buffer;
+		while ((buffer = writeQueue.peek()) != null) {
+			channel.write(buffer);
+			// the socket buffer is full, wait for the next OP_WRITE
+			if (buffer.hasRemaining())
+				return;
+			writeQueue.poll();
+			queuedWrites.decrementAndGet();
+		}
+		
+		if (closeRequested)
+			doClose();
+		else
+			key.interestOps(SelectionKey.OP_READ);
+	}
+	
+	private void read (ByteBuffer readBuffer) throws IOException {
+		readBuffer.clear();
+		int count = channel.read(readBuffer);
+		if (count < 0) {
+			doClose();
+		} else if (count > 0) {
+			readBuffer.flip();
+			handler.channelRead(this, readBuffer);
+		}
+	}
+	
+	private void error (IOException e) {
+		boolean wasConnected = connected;
+		closeChannel();
+		handler.channelError(this, e);
+		if (wasConnected)
+			handler.channelClosed(this);
+	}
+	
+	private void doClose () {
+		boolean wasConnected = connected;
+		closeChannel();
+		if (wasConnected)
+			handler.channelClosed(this);
+	}
+	
+	private void closeChannel () {
+		closed = true;
+		connected = false;
+		writeQueue.clear();
+		queuedWrites.set(0);
+		if (key != null)
+			key.cancel();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
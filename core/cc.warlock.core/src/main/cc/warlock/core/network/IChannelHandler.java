@@ -0,0 +1,46 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the events of a channel registered with the ConnectionEngine.
+ * All callbacks are made on one of the engine's I/O threads, so
+ * implementations should hand off anything slow rather than block.
+ */
+public interface IChannelHandler {
+
+	public void channelConnected (EngineChannel channel);
+	
+	/**
+	 * @param channel The channel that received the data
+	 * @param data The bytes that were read. The buffer is owned by the engine and
+	 *   reused for the next read, so it is only valid for the duration of the call.
+	 */
+	public void channelRead (EngineChannel channel, ByteBuffer data);
+	
+	public void channelClosed (EngineChannel channel);
+	
+	public void channelError (EngineChannel channel, IOException e);
+}
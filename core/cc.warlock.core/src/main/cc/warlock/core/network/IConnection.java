@@ -40,7 +40,7 @@ import cc.warlock.core.client.IWarlockClient;
 public interface IConnection {
 	
 	public static enum ErrorType {
-		ConnectionRefused, UnknownHost
+		ConnectionRefused, UnknownHost, ConnectionFailed
 	};
 	
 	public void connect(String host, int port) throws IOException;
@@ -24,48 +24,38 @@
  */
 package cc.warlock.core.network;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.net.Socket;
+import java.nio.CharBuffer;
 
 /**
  * @author marshall
  */
 public class LineConnection extends Connection {
 	
+	private StringBuilder currentLine = new StringBuilder();
+	
 	@Override
-	protected Runnable createPollingRunnable(Socket socket) throws IOException {
-		return new LineEventPollThread(socket);
+	protected void dataReceived(CharBuffer data) {
+		while (data.hasRemaining()) {
+			char c = data.get();
+			if (c == '\n') {
+				int length = currentLine.length();
+				if (length > 0 && currentLine.charAt(length - 1) == '\r')
+					currentLine.setLength(length - 1);
+				
+				listenersGotLine(currentLine.toString());
+				currentLine.setLength(0);
+			} else {
+				currentLine.append(c);
+			}
+		}
 	}
 	
-	protected class LineEventPollThread extends Connection.EventPollThread {
-		protected BufferedReader bufferedReader;
-		
-		public LineEventPollThread(Socket socket) throws IOException {
-			super(socket);
-		}
-		
-		@Override
-		protected Reader createReader(Socket socket) throws IOException {
-			bufferedReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-			return bufferedReader;
-		}
-		
-		@Override
-		protected void readData(Reader reader) throws IOException {
-			String line = bufferedReader.readLine();
-			listenersGotLine(line);
-		}
-		
-		private void listenersGotLine (String line)
-		{
-			for (IConnectionListener listener : connectionListeners) {
-				if (listener instanceof ILineConnectionListener) {
-					((ILineConnectionListener)listener).lineReady(LineConnection.this, line);
-				}
+	private void listenersGotLine (String line)
+	{
+		for (IConnectionListener listener : connectionListeners) {
+			if (listener instanceof ILineConnectionListener) {
+				((ILineConnectionListener)listener).lineReady(LineConnection.this, line);
 			}
 		}
 	}
-}
\ No newline at end of file
+}
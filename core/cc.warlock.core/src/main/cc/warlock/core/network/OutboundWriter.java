@@ -0,0 +1,225 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Encodes and buffers what a connection sends, coalescing bursts of small
+ * commands (script loops, repeated macros) into fewer socket writes.
+ * 
+ * Like Nagle's algorithm, a command sent after a quiet period is written
+ * right away, and commands that follow within the send latency are held and
+ * written together at the end of it, or as soon as about a segment's worth
+ * has built up. No command waits longer than the send latency.
+ * 
+ * The latency defaults to the "warlock.sendLatency" system property, in
+ * milliseconds. A latency of 0 writes every command as it is sent.
+ */
+public class OutboundWriter {
+
+	public static final String SEND_LATENCY_PROPERTY = "warlock.sendLatency";
+	public static final long DEFAULT_SEND_LATENCY = 10;
+	// about one TCP segment
+	public static final int COALESCE_LIMIT = 1400;
+	
+	private static final int INITIAL_BUFFER_SIZE = 256;
+	
+	static private Timer timer = new Timer("Warlock outbound writer", true);
+	
+	private Connection connection;
+	private CharsetEncoder encoder;
+	private long latency = Long.getLong(SEND_LATENCY_PROPERTY, DEFAULT_SEND_LATENCY);
+	
+	private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+	private int pendingCommands = 0;
+	// when the oldest pending command was sent, or -1 if there is none
+	private long pendingSince = -1;
+	private long lastWrite = 0;
+	private boolean scheduled = false;
+	
+	// metrics
+	private long commands = 0;
+	private long bytes = 0;
+	private long writes = 0;
+	private long totalLatency = 0;
+	private long maxLatency = 0;
+	
+	private class FlushTask extends TimerTask {
+		public void run() {
+			synchronized (OutboundWriter.this) {
+				scheduled = false;
+				try {
+					flush();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+	
+	public OutboundWriter (Connection connection, Charset charset) {
+		this.connection = connection;
+		setCharset(charset);
+	}
+	
+	public synchronized void setCharset (Charset charset) {
+		encoder = charset.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+	
+	public synchronized void setLatency (long latency) {
+		this.latency = latency;
+	}
+	
+	public synchronized long getLatency () {
+		return latency;
+	}
+	
+	/**
+	 * Encode text onto the command being built.
+	 */
+	public synchronized void append (CharSequence text) {
+		CharBuffer in = CharBuffer.wrap(text);
+		encoder.reset();
+		while (encoder.encode(in, pending, true).isOverflow())
+			grow();
+		while (encoder.flush(pending).isOverflow())
+			grow();
+	}
+	
+	/**
+	 * Add raw bytes to the command being built.
+	 */
+	public synchronized void append (byte[] data) {
+		while (pending.remaining() < data.length)
+			grow();
+		pending.put(data);
+	}
+	
+	/**
+	 * Finish the command being built, and write it now or later according
+	 * to the send latency.
+	 */
+	public synchronized void endCommand () throws IOException {
+		long now = System.currentTimeMillis();
+		commands++;
+		pendingCommands++;
+		if (pendingSince < 0)
+			pendingSince = now;
+		
+		long wait = lastWrite + latency - now;
+		if (wait <= 0 || pending.position() >= COALESCE_LIMIT) {
+			flush();
+		} else if (!scheduled) {
+			scheduled = true;
+			timer.schedule(new FlushTask(), wait);
+		}
+	}
+	
+	public synchronized void send (CharSequence text) throws IOException {
+		append(text);
+		endCommand();
+	}
+	
+	public synchronized void send (byte[] data) throws IOException {
+		append(data);
+		endCommand();
+	}
+	
+	/**
+	 * Write every pending command now.
+	 */
+	public synchronized void flush () throws IOException {
+		if (pendingCommands == 0)
+			return;
+		
+		long now = System.currentTimeMillis();
+		long waited = now - pendingSince;
+		totalLatency += waited;
+		if (waited > maxLatency)
+			maxLatency = waited;
+		writes++;
+		bytes += pending.position();
+		lastWrite = now;
+		pendingSince = -1;
+		pendingCommands = 0;
+		
+		// the channel keeps the buffer, so start a new one
+		pending.flip();
+		ByteBuffer buffer = pending;
+		pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+		connection.write(buffer);
+	}
+	
+	private void grow () {
+		ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2);
+		pending.flip();
+		larger.put(pending);
+		pending = larger;
+	}
+	
+	/**
+	 * @return how many commands are waiting to be handed to the socket
+	 */
+	public synchronized int getPendingCommands () {
+		return pendingCommands;
+	}
+	
+	public synchronized long getCommands () {
+		return commands;
+	}
+	
+	public synchronized long getWrites () {
+		return writes;
+	}
+	
+	public synchronized long getBytes () {
+		return bytes;
+	}
+	
+	/**
+	 * @return the average time, in milliseconds, the oldest command of each
+	 *   write was held before being written
+	 */
+	public synchronized double getAverageLatency () {
+		return writes == 0 ? 0 : (double)totalLatency / writes;
+	}
+	
+	public synchronized long getMaxLatency () {
+		return maxLatency;
+	}
+	
+	public synchronized String toString () {
+		return commands + " commands in " + writes + " writes (" + bytes + " bytes), "
+			+ pendingCommands + " pending, latency avg " + getAverageLatency()
+			+ "ms max " + maxLatency + "ms";
+	}
+}
@@ -0,0 +1,104 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.network;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Tees the raw bytes a connection receives into a session recording, so the
+ * session can be played back later through a SessionRecording.
+ * 
+ * A recording starts with a small header (magic, version, wall clock start
+ * time) followed by one record per read: the milliseconds since the previous
+ * read and the byte count, both as variable-length ints, then the bytes.
+ */
+public class SessionRecorder {
+
+	public static final int MAGIC = 0x574C5243; // "WLRC"
+	public static final int VERSION = 1;
+	
+	private DataOutputStream out;
+	private byte[] bytes = new byte[ConnectionEngine.READ_BUFFER_SIZE];
+	private long lastTime;
+	
+	public SessionRecorder (File file) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.exists())
+			parent.mkdirs();
+		
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		lastTime = System.currentTimeMillis();
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeLong(lastTime);
+	}
+	
+	/**
+	 * Append one read to the recording. The buffer's position is not changed.
+	 */
+	public synchronized void record (ByteBuffer data) {
+		if (out == null)
+			return;
+		
+		int length = data.remaining();
+		if (bytes.length < length)
+			bytes = new byte[length];
+		data.duplicate().get(bytes, 0, length);
+		
+		long now = System.currentTimeMillis();
+		try {
+			writeVarInt(out, (int)Math.max(0, now - lastTime));
+			writeVarInt(out, length);
+			out.write(bytes, 0, length);
+		} catch (IOException e) {
+			e.printStackTrace();
+			close();
+		}
+		lastTime = now;
+	}
+	
+	public synchronized void close () {
+		if (out == null)
+			return;
+		
+		try {
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		out = null;
+	}
+	
+	static void writeVarInt (OutputStream out, int value) throws IOException {
+		while ((value & ~0x7f) != 0) {
+			out.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+}
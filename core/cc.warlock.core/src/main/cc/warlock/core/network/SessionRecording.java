@@ -0,0 +1,122 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.network;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads back a session written by SessionRecorder, one read at a time.
+ */
+public class SessionRecording {
+
+	private DataInputStream in;
+	private long startTime;
+	private long time = 0;
+	private byte[] bytes = new byte[ConnectionEngine.READ_BUFFER_SIZE];
+	private ByteBuffer data = ByteBuffer.wrap(bytes, 0, 0);
+	
+	public SessionRecording (File file) throws IOException {
+		in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		if (in.readInt() != SessionRecorder.MAGIC) {
+			in.close();
+			throw new IOException(file.getName() + " is not a session recording");
+		}
+		int version = in.readShort();
+		if (version != SessionRecorder.VERSION) {
+			in.close();
+			throw new IOException("Unsupported session recording version " + version);
+		}
+		startTime = in.readLong();
+	}
+	
+	/**
+	 * Advance to the next recorded read.
+	 * 
+	 * @return false at the end of the recording
+	 */
+	public boolean next () throws IOException {
+		int delay, length;
+		try {
+			delay = readVarInt(in);
+			length = readVarInt(in);
+			if (bytes.length < length)
+				bytes = new byte[length];
+			in.readFully(bytes, 0, length);
+		} catch (EOFException e) {
+			// the end, or a recording cut off mid-read
+			return false;
+		}
+		
+		time += delay;
+		data = ByteBuffer.wrap(bytes, 0, length);
+		return true;
+	}
+	
+	/**
+	 * @return the wall clock time the session was recorded at
+	 */
+	public long getStartTime () {
+		return startTime;
+	}
+	
+	/**
+	 * @return milliseconds from the start of the session to the current read
+	 */
+	public long getTime () {
+		return time;
+	}
+	
+	/**
+	 * @return the bytes of the current read. The buffer is reused by next().
+	 */
+	public ByteBuffer getData () {
+		return data;
+	}
+	
+	public void close () {
+		try {
+			in.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	static int readVarInt (InputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.read();
+			if (b < 0)
+				throw new EOFException();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed session recording");
+	}
+}
@@ -99,6 +99,10 @@ public class StyleSetting extends WarlockSetting implements IWarlockStyle {
 	public String getName() {
 		return name;
 	}
+	
+	public int getId() {
+		return 0;
+	}
 
 	public String getComponentName() {
 		return "";
@@ -0,0 +1,168 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the plain text that every match of a regular expression has to
+ * contain, so a cheap substring or index lookup can rule lines out before
+ * the expression is run.
+ * 
+ * Only text outside groups is used. Nothing at all is returned for
+ * expressions with alternatives outside groups, with flags, or with
+ * escapes whose meaning depends on what follows them.
+ */
+public final class RegexLiterals {
+
+	// escaped letters that stand for one character, or for none
+	private static final String SIMPLE_ESCAPES = "wWsSdDbBAzZGhHvVRXntrfae";
+	
+	private RegexLiterals() {
+	}
+	
+	/**
+	 * The pieces of plain text every match of regex contains, in order.
+	 * 
+	 * @return the pieces, or null if none can be relied on
+	 */
+	public static List<String> getRequiredLiterals(String regex) {
+		ArrayList<String> literals = new ArrayList<String>();
+		StringBuilder literal = new StringBuilder();
+		int depth = 0;
+		int length = regex.length();
+		for(int i = 0; i < length; i++) {
+			char c = regex.charAt(i);
+			if(depth > 0) {
+				if(c == '\\') {
+					// quoted text could hold the parentheses
+					if(++i < length && regex.charAt(i) == 'Q')
+						return null;
+				} else if(c == '[') {
+					i = skipClass(regex, i);
+				} else if(c == '(') {
+					depth++;
+				} else if(c == ')') {
+					depth--;
+				}
+				continue;
+			}
+			switch(c) {
+			case '\\':
+				if(++i == length)
+					return null;
+				c = regex.charAt(i);
+				if(!Character.isLetterOrDigit(c))
+					literal.append(c);
+				else if(SIMPLE_ESCAPES.indexOf(c) >= 0)
+					end(literal, literals);
+				else
+					// character codes, control characters, properties, quoting
+					// and back references take more than the one letter
+					return null;
+				break;
+			case '[':
+				end(literal, literals);
+				i = skipClass(regex, i);
+				break;
+			case '(':
+				if(i + 2 < length && regex.charAt(i + 1) == '?' && "idmsuxU-".indexOf(regex.charAt(i + 2)) >= 0)
+					return null;
+				end(literal, literals);
+				depth++;
+				break;
+			case '|':
+				return null;
+			case '?':
+			case '*':
+			case '{':
+				// the character before may not be there
+				if(literal.length() > 0)
+					literal.setLength(literal.length() - 1);
+				end(literal, literals);
+				if(c == '{') {
+					while(i < length && regex.charAt(i) != '}')
+						i++;
+				}
+				break;
+			case '+':
+			case '.':
+			case '^':
+			case '$':
+				end(literal, literals);
+				break;
+			default:
+				literal.append(c);
+			}
+		}
+		end(literal, literals);
+		return literals;
+	}
+	
+	/**
+	 * The longest piece of plain text every match of regex contains.
+	 * 
+	 * @return the piece, or null if there is none that can be relied on
+	 */
+	public static String getRequiredLiteral(String regex) {
+		List<String> literals = getRequiredLiterals(regex);
+		if(literals == null)
+			return null;
+		String best = null;
+		for(String literal : literals) {
+			if(best == null || literal.length() > best.length())
+				best = literal;
+		}
+		return best;
+	}
+	
+	// adds literal to literals if it isn't empty, and empties it
+	private static void end(StringBuilder literal, List<String> literals) {
+		if(literal.length() > 0)
+			literals.add(literal.toString());
+		literal.setLength(0);
+	}
+	
+	// the index of the ] closing the class that starts at start
+	private static int skipClass(String regex, int start) {
+		int depth = 0;
+		int i = start;
+		while(i < regex.length()) {
+			char c = regex.charAt(i);
+			if(c == '\\') {
+				i++;
+			} else if(c == '[') {
+				depth++;
+				if(i + 1 < regex.length() && regex.charAt(i + 1) == '^')
+					i++;
+				// a ] first in a class is a character
+				if(i + 1 < regex.length() && regex.charAt(i + 1) == ']')
+					i++;
+			} else if(c == ']' && --depth == 0) {
+				return i;
+			}
+			i++;
+		}
+		return i;
+	}
+}
@@ -0,0 +1,340 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.rcp.ui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.SWTError;
+import org.eclipse.swt.custom.StyleRange;
+import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+
+/**
+ * Times styling appended chunks the way WarlockText used to, merging the
+ * highlights into a linked list and setting each range on its own, against
+ * StyleRangeMerger and one replaceStyleRanges.
+ * 
+ * Without a display only the merges are timed, and the ranges each way
+ * hands to the widget are counted. With one, the chunks are also appended
+ * to a StyledText kept at 5000 lines, the default line limit of a
+ * WarlockText.
+ * 
+ * Usage: StyleRangeBenchmark [appends] [-widget]
+ */
+public class StyleRangeBenchmark {
+
+	private static final int LINES = 5000;
+	private static final String[] WORDS = { "You", "see", "a", "goblin", "the", "sword",
+		"swings", "at", "you", "and", "misses", "Obvious", "exits:", "north,", "east." };
+	
+	/*
+	 * The text, styles and highlights of one append. Merging changes the
+	 * ranges it is given, so each way gets a copy.
+	 */
+	protected static class Chunk {
+		public String text;
+		public List<StyleRange> styles;
+		public List<StyleRange> highlights;
+		
+		public List<StyleRange> copyStyles (int offset) {
+			return copy(styles, offset);
+		}
+		
+		public List<StyleRange> copyHighlights (int offset) {
+			return copy(highlights, offset);
+		}
+		
+		private static List<StyleRange> copy (List<StyleRange> ranges, int offset) {
+			ArrayList<StyleRange> copy = new ArrayList<StyleRange>(ranges.size());
+			for (StyleRange range : ranges) {
+				StyleRangeWithData clone = (StyleRangeWithData)range.clone();
+				clone.data = new HashMap<String, String>(clone.data);
+				clone.start += offset;
+				copy.add(clone);
+			}
+			return copy;
+		}
+	}
+	
+	private Random random;
+	
+	public StyleRangeBenchmark (long seed) {
+		random = new Random(seed);
+	}
+	
+	private String makeLine () {
+		StringBuilder line = new StringBuilder();
+		int words = 4 + random.nextInt(10);
+		for (int i = 0; i < words; i++) {
+			if (i > 0) line.append(' ');
+			line.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return line.append('\n').toString();
+	}
+	
+	// colors need a display, so ranges differ by font style, underline and data
+	private StyleRange makeRange (int start, int length) {
+		StyleRangeWithData range = new StyleRangeWithData();
+		range.start = start;
+		range.length = length;
+		if (random.nextBoolean())
+			range.fontStyle = SWT.BOLD;
+		range.underline = random.nextInt(4) == 0;
+		range.data.put("name", "style" + random.nextInt(5));
+		return range;
+	}
+	
+	/**
+	 * Three lines, with base styles like those of nested markers and a few
+	 * highlights of a word here and there, some overlapping the styles.
+	 * Ranges start at 0.
+	 */
+	public Chunk makeChunk () {
+		Chunk chunk = new Chunk();
+		chunk.text = makeLine() + makeLine() + makeLine();
+		chunk.styles = new ArrayList<StyleRange>();
+		int pos = 0;
+		while (pos < chunk.text.length()) {
+			int length = Math.min(1 + random.nextInt(15), chunk.text.length() - pos);
+			if (random.nextBoolean())
+				chunk.styles.add(makeRange(pos, length));
+			pos += length;
+		}
+		chunk.highlights = new ArrayList<StyleRange>();
+		for (int i = 0; i < 3; i++) {
+			pos = random.nextInt(chunk.text.length());
+			int length = Math.min(2 + random.nextInt(8), chunk.text.length() - pos);
+			chunk.highlights.add(makeRange(pos, length));
+		}
+		return chunk;
+	}
+	
+	public Chunk[] makeChunks (int count) {
+		Chunk[] chunks = new Chunk[count];
+		for (int i = 0; i < count; i++)
+			chunks[i] = makeChunk();
+		return chunks;
+	}
+	
+	/**
+	 * @return the time of each merge in nanoseconds, followed by the number
+	 *   of ranges the widget is handed
+	 */
+	public static long[] timeMerges (Chunk[] chunks, boolean batched) {
+		long[] times = new long[chunks.length + 1];
+		long ranges = 0;
+		for (int i = 0; i < chunks.length; i++) {
+			Chunk chunk = chunks[i];
+			List<StyleRange> styles = chunk.copyStyles(0);
+			List<StyleRange> highlights = chunk.copyHighlights(0);
+			long start = System.nanoTime();
+			if (batched)
+				ranges += StyleRangeMerger.merge(styles, highlights, 0, chunk.text.length()).length;
+			else
+				ranges += mergeStyleRangeLists(styles, highlights).size();
+			times[i] = System.nanoTime() - start;
+		}
+		times[chunks.length] = ranges;
+		return times;
+	}
+	
+	/**
+	 * @return the time of each append in nanoseconds
+	 */
+	public static long[] timeAppends (Display display, StyledText text, Chunk[] fill, Chunk[] chunks, boolean batched) {
+		StringBuilder all = new StringBuilder();
+		ArrayList<StyleRange> styles = new ArrayList<StyleRange>();
+		// chunks are three lines each
+		for (int i = 0; i < LINES / 3; i++) {
+			Chunk chunk = fill[i % fill.length];
+			styles.addAll(chunk.copyStyles(all.length()));
+			all.append(chunk.text);
+		}
+		text.setText(all.toString());
+		text.replaceStyleRanges(0, all.length(),
+				StyleRangeMerger.merge(styles, new ArrayList<StyleRange>(), 0, all.length()));
+		
+		long[] times = new long[chunks.length];
+		for (int i = 0; i < chunks.length; i++) {
+			Chunk chunk = chunks[i];
+			long start = System.nanoTime();
+			
+			int offset = text.getCharCount();
+			text.append(chunk.text);
+			List<StyleRange> chunkStyles = chunk.copyStyles(offset);
+			List<StyleRange> highlights = chunk.copyHighlights(offset);
+			if (batched) {
+				text.replaceStyleRanges(offset, chunk.text.length(),
+						StyleRangeMerger.merge(chunkStyles, highlights, offset, offset + chunk.text.length()));
+			} else {
+				for (StyleRange style : mergeStyleRangeLists(chunkStyles, highlights))
+					text.setStyleRange(style);
+			}
+			// keep to the line limit
+			int excess = text.getLineCount() - LINES;
+			if (excess > 0)
+				text.replaceTextRange(0, text.getOffsetAtLine(excess), "");
+			
+			times[i] = System.nanoTime() - start;
+			while (display.readAndDispatch());
+		}
+		return times;
+	}
+	
+	/**
+	 * How WarlockText merged highlights into the styles before
+	 * StyleRangeMerger. Later ranges win where the result overlaps, as they
+	 * did when set on the widget one by one.
+	 */
+	static List<StyleRange> mergeStyleRangeLists (List<StyleRange> list1, List<StyleRange> list2) {
+		LinkedList<StyleRange> resultList = new LinkedList<StyleRange>(list1);
+		
+		mergeLoop: for (StyleRange mergingStyle : list2) {
+			for (ListIterator<StyleRange> iter = resultList.listIterator(); iter.hasNext(); ) {
+				StyleRange style = iter.next();
+				if (style.start >= mergingStyle.start + mergingStyle.length) {
+					iter.previous();
+					iter.add(mergingStyle);
+					continue mergeLoop;
+				}
+				if (mergingStyle.start >= style.start + style.length)
+					continue;
+				
+				iter.remove();
+				int subStart;
+				if (style.start < mergingStyle.start) {
+					StyleRange newStyle = (StyleRange)style.clone();
+					newStyle.length = mergingStyle.start - style.start;
+					iter.add(newStyle);
+					subStart = mergingStyle.start;
+				} else if (mergingStyle.start < style.start) {
+					StyleRange newStyle = (StyleRange)mergingStyle.clone();
+					newStyle.length = style.start - mergingStyle.start;
+					iter.add(newStyle);
+					subStart = style.start;
+				} else {
+					subStart = style.start;
+				}
+				int subEnd = Math.min(style.start + style.length, mergingStyle.start + mergingStyle.length);
+				
+				StyleRange newStyle = StyleRangeMerger.mergeStyles(style, mergingStyle);
+				newStyle.start = subStart;
+				newStyle.length = subEnd - subStart;
+				iter.add(newStyle);
+				
+				if (style.start + style.length < mergingStyle.start + mergingStyle.length) {
+					int length = mergingStyle.start + mergingStyle.length - subEnd;
+					mergingStyle.start = subEnd;
+					mergingStyle.length = length;
+					continue;
+				} else if (mergingStyle.start + mergingStyle.length < style.start + style.length) {
+					StyleRange endStyle = (StyleRange)style.clone();
+					endStyle.start = subEnd;
+					endStyle.length = style.start + style.length - subEnd;
+					iter.add(endStyle);
+				}
+				continue mergeLoop;
+			}
+			resultList.add(mergingStyle);
+		}
+		return resultList;
+	}
+	
+	private static String report (String name, long[] times, int count) {
+		long[] sorted = new long[count];
+		System.arraycopy(times, 0, sorted, 0, count);
+		Arrays.sort(sorted);
+		long total = 0;
+		for (long time : sorted)
+			total += time;
+		return name + ": " + (total / count) + "ns mean, "
+			+ sorted[count / 2] + "ns median, "
+			+ sorted[count * 95 / 100] + "ns 95th percentile";
+	}
+	
+	public static void main (String[] args) {
+		int appends = 20000;
+		boolean widget = false;
+		for (String arg : args) {
+			if (arg.equals("-widget"))
+				widget = true;
+			else
+				appends = Integer.parseInt(arg);
+		}
+		
+		StyleRangeBenchmark benchmark = new StyleRangeBenchmark(0);
+		Chunk[] chunks = benchmark.makeChunks(appends);
+		
+		// once each to warm up
+		timeMerges(chunks, false);
+		timeMerges(chunks, true);
+		
+		long[] linked = timeMerges(chunks, false);
+		long[] merged = timeMerges(chunks, true);
+		System.out.println(report("linked list merge", linked, appends)
+				+ ", " + linked[appends] + " setStyleRange calls");
+		System.out.println(report("StyleRangeMerger", merged, appends)
+				+ ", " + appends + " replaceStyleRanges calls of " + merged[appends] + " ranges");
+		
+		if (!widget)
+			return;
+		
+		Display display;
+		try {
+			display = new Display();
+		} catch (SWTError e) {
+			System.err.println("No display to append to: " + e.getMessage());
+			return;
+		} catch (UnsatisfiedLinkError e) {
+			System.err.println("No SWT libraries to append with: " + e.getMessage());
+			return;
+		}
+		Shell shell = new Shell(display);
+		shell.setLayout(new FillLayout());
+		StyledText text = new StyledText(shell, SWT.V_SCROLL);
+		text.setWordWrap(true);
+		shell.setSize(800, 600);
+		shell.open();
+		
+		Chunk[] fill = new StyleRangeBenchmark(1).makeChunks(1000);
+		int count = Math.min(appends, 2000);
+		Chunk[] appended = new Chunk[count];
+		System.arraycopy(chunks, 0, appended, 0, count);
+		timeAppends(display, text, fill, appended, false);
+		timeAppends(display, text, fill, appended, true);
+		
+		System.out.println(report("setStyleRange per range", timeAppends(display, text, fill, appended, false), count));
+		System.out.println(report("replaceStyleRanges", timeAppends(display, text, fill, appended, true), count));
+		
+		shell.dispose();
+		display.dispose();
+	}
+}
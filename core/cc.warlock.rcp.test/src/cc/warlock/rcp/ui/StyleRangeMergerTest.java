@@ -0,0 +1,63 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.rcp.ui;
+
+import java.util.List;
+
+import org.eclipse.swt.custom.StyleRange;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StyleRangeMergerTest {
+
+	// the style of each character, with later ranges drawn over earlier ones
+	protected static String describe(StyleRange[] ranges, int length) {
+		String[] chars = new String[length];
+		for(StyleRange range : ranges) {
+			String name = ((StyleRangeWithData)range).data.get("name");
+			for(int i = range.start; i < range.start + range.length; i++)
+				chars[i] = range.fontStyle + (range.underline ? "_" : "") + name;
+		}
+		StringBuilder description = new StringBuilder();
+		for(String c : chars)
+			description.append(c).append(' ');
+		return description.toString();
+	}
+	
+	@Test
+	public void testSameAsLinkedListMerge() {
+		StyleRangeBenchmark benchmark = new StyleRangeBenchmark(0);
+		for(int i = 0; i < 2000; i++) {
+			StyleRangeBenchmark.Chunk chunk = benchmark.makeChunk();
+			int length = chunk.text.length();
+			
+			List<StyleRange> linked = StyleRangeBenchmark.mergeStyleRangeLists(chunk.copyStyles(0), chunk.copyHighlights(0));
+			StyleRange[] merged = StyleRangeMerger.merge(chunk.copyStyles(0), chunk.copyHighlights(0), 0, length);
+			Assert.assertEquals(describe(linked.toArray(new StyleRange[linked.size()]), length),
+					describe(merged, length));
+			
+			// sorted and apart, as replaceStyleRanges wants them
+			for(int r = 1; r < merged.length; r++)
+				Assert.assertTrue(merged[r - 1].start + merged[r - 1].length <= merged[r].start);
+		}
+	}
+}
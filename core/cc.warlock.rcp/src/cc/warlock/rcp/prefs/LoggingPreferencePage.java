@@ -61,13 +61,14 @@ public class LoggingPreferencePage extends PreferencePageUtils implements
 		Composite main = new Composite(parent, SWT.NONE);
 		main.setLayout(new GridLayout(2, false));
 		
-		// Logging Output Type (text/html)
+		// Logging Output Type (text/html/binary)
 		Label loggingTypeLabel = new Label(main, SWT.NONE);
 		loggingTypeLabel.setText("Logging Output Type: ");
 		loggingType = new Combo(main, SWT.BORDER | SWT.READ_ONLY);
 		loggingType.setItems(new String[] {
 			LoggingConfiguration.LOG_FORMAT_TEXT,
-			LoggingConfiguration.LOG_FORMAT_HTML
+			LoggingConfiguration.LOG_FORMAT_HTML,
+			LoggingConfiguration.LOG_FORMAT_BINARY
 		});
 		
 		// Log To Directory
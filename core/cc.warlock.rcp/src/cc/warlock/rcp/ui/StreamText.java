@@ -1,10 +1,8 @@
 package cc.warlock.rcp.ui;
 
 import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.Color;
-import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.FontData;
 import org.eclipse.swt.widgets.Composite;
-import org.eclipse.swt.widgets.Display;
 
 import cc.warlock.core.client.IClientSettings;
 import cc.warlock.core.client.ICommand;
@@ -14,6 +12,7 @@ import cc.warlock.core.client.IWarlockClient;
 import cc.warlock.core.client.IWarlockClientListener;
 import cc.warlock.core.client.IWarlockFont;
 import cc.warlock.core.client.WarlockClientRegistry;
+import cc.warlock.core.client.WarlockColor;
 import cc.warlock.core.client.WarlockString;
 import cc.warlock.core.client.internal.Property;
 import cc.warlock.core.client.internal.WarlockStyle;
@@ -22,10 +21,9 @@ import cc.warlock.core.settings.IWarlockSetting;
 import cc.warlock.core.settings.IWarlockSettingListener;
 import cc.warlock.core.settings.IWindowSettings;
 import cc.warlock.rcp.configuration.GameViewConfiguration;
-import cc.warlock.rcp.ui.client.SWTStreamListener;
+import cc.warlock.rcp.ui.client.SWTRenderQueue;
 import cc.warlock.rcp.ui.client.SWTWarlockClientListener;
 import cc.warlock.rcp.ui.client.SWTWarlockSettingListener;
-import cc.warlock.rcp.util.ColorUtil;
 import cc.warlock.rcp.util.FontUtil;
 import cc.warlock.rcp.views.GameView;
 
@@ -35,7 +33,7 @@ public class StreamText extends WarlockText implements IStreamListener {
 	protected boolean isPrompting = false;
 	protected String prompt = null;
 	protected Property<String> title = new Property<String>();
-	private IStreamListener streamListener = new SWTStreamListener(this);
+	private SWTRenderQueue streamListener = new SWTRenderQueue(this);
 	private WindowSettingsListener settingListener;
 	private IWarlockClientListener clientListener = new SWTWarlockClientListener(new IWarlockClientListener() {
 		@Override
@@ -109,12 +107,13 @@ public class StreamText extends WarlockText implements IStreamListener {
 	
 	private void showPrompt(String prompt) {
 		if(!GameViewConfiguration.getProvider(client.getClientSettings()).getSuppressPrompt()) {
-			append(new WarlockString(prompt));
+			bufferText(prompt);
 		}
 	}
 	
+	// Prompts and commands are buffered with the text around them, so the
+	// widget is only updated when the stream is flushed
 	public void streamPrompted(IStream stream, String prompt) {
-		flushBuffer();
 		if(!isPrompting) {
 			isPrompting = true;
 			if(prompt != null)
@@ -133,14 +132,12 @@ public class StreamText extends WarlockText implements IStreamListener {
 	}
 
 	public void streamReceivedCommand(IStream stream, ICommand command) {
-		flushBuffer();
-		
 		WarlockString string = new WarlockString(command.getText(), WarlockStyle.commandStyle);
 		
 		if(!isPrompting && prompt != null)
-			append(new WarlockString(prompt));
+			bufferText(prompt);
 		
-		append(string);
+		bufferText(string);
 		isPrompting = false;
 	}
 
@@ -220,32 +217,38 @@ public class StreamText extends WarlockText implements IStreamListener {
 		settingListener = new WindowSettingsListener(provider);
 		
 		// Set to defaults first, then try window settings later
-		Color background = ColorUtil.warlockColorToColor(provider.getWindowBackground(streamName));
-		Color foreground = ColorUtil.warlockColorToColor(provider.getWindowForeground(streamName));
 		IWarlockFont font = provider.getWindowFont(streamName);
 		
-		this.setBackground(background);
-		this.setForeground(foreground);
+		setColors(provider.getWindowBackground(streamName), provider.getWindowForeground(streamName));
 
 		if (font.isDefaultFont()) {
 			String defaultFontFace = GameViewConfiguration.getProvider(settings).getDefaultFontFace();
 			int defaultFontSize = GameViewConfiguration.getProvider(settings).getDefaultFontSize();
-			this.setFont(new Font(Display.getDefault(), defaultFontFace, defaultFontSize, SWT.NORMAL));
+			this.setFont(resources.getFont("font", defaultFontFace, defaultFontSize, SWT.NORMAL));
 		} else {
-			this.setFont(FontUtil.warlockFontToFont(font));
+			this.setFont(resources.getFont("font", new FontData[] { FontUtil.warlockFontToFontData(font) }));
 		}
 		
 		IWindowSettings mainWindow = WindowConfigurationProvider.getProvider(settings).getMainWindowSettings();
 		IWarlockFont columnFont = mainWindow.getColumnFont();
 		if(columnFont == null || columnFont.isDefaultFont()) {
 			this.setColumnFont(null);
+			resources.release("columnFont");
 		} else {
 			String fontFace = columnFont.getFamilyName();
 			int fontSize = columnFont.getSize();
-			this.setColumnFont(new Font(getTextWidget().getDisplay(), fontFace, fontSize, SWT.NORMAL));
+			this.setColumnFont(resources.getFont("columnFont", fontFace, fontSize, SWT.NORMAL));
 		}
 	}
 	
+	/**
+	 * Set the background and foreground, releasing the colors set before.
+	 */
+	public void setColors(WarlockColor background, WarlockColor foreground) {
+		this.setBackground(resources.getColor("background", background));
+		this.setForeground(resources.getColor("foreground", foreground));
+	}
+	
 	public void dispose() {
 		setClient(null);
 	}
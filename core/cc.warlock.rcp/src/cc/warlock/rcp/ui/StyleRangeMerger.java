@@ -0,0 +1,225 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.rcp.ui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.StyleRange;
+
+/**
+ * Flattens layers of styles into the one style per character StyledText
+ * allows.
+ */
+class StyleRangeMerger {
+
+	/**
+	 * Merge the styles of a piece of text.
+	 * 
+	 * @param base sorted ranges that don't overlap
+	 * @param layers ranges in any order, each drawn over the base and the
+	 *   layers before it where they overlap
+	 * @return sorted ranges, without overlaps, within start and end, ready
+	 *   for StyledText.replaceStyleRanges(start, end - start, ranges). The
+	 *   ranges given may be used in it, and are changed.
+	 */
+	public static StyleRange[] merge(List<StyleRange> base, List<StyleRange> layers, int start, int end) {
+		ArrayList<StyleRange> result = new ArrayList<StyleRange>(base.size() + layers.size() * 2);
+		
+		if(layers.isEmpty()) {
+			for(StyleRange range : base) {
+				if(clip(range, start, end))
+					result.add(range);
+			}
+			return result.toArray(new StyleRange[result.size()]);
+		}
+		
+		// the layers by where they start, then by their order
+		int[] order = new int[layers.size()];
+		long[] keys = new long[order.length];
+		for(int i = 0; i < order.length; i++)
+			keys[i] = ((long)startOf(layers.get(i)) << 32) | i;
+		Arrays.sort(keys);
+		for(int i = 0; i < order.length; i++)
+			order[i] = (int)keys[i];
+		
+		// every place a range starts or ends. The base's are in order already,
+		// so only the layers' are sorted, and then merged in
+		int[] layerBounds = new int[layers.size() * 2 + 2];
+		int layerCount = 0;
+		layerBounds[layerCount++] = start;
+		layerBounds[layerCount++] = end;
+		for(StyleRange range : layers) {
+			if(range == null)
+				continue;
+			layerBounds[layerCount++] = range.start;
+			layerBounds[layerCount++] = range.start + range.length;
+		}
+		Arrays.sort(layerBounds, 0, layerCount);
+		int[] bounds = new int[base.size() * 2 + layerCount];
+		int count = 0;
+		int nextBound = 0;
+		for(StyleRange range : base) {
+			if(range == null)
+				continue;
+			while(nextBound < layerCount && layerBounds[nextBound] <= range.start)
+				bounds[count++] = layerBounds[nextBound++];
+			bounds[count++] = range.start;
+			while(nextBound < layerCount && layerBounds[nextBound] <= range.start + range.length)
+				bounds[count++] = layerBounds[nextBound++];
+			bounds[count++] = range.start + range.length;
+		}
+		while(nextBound < layerCount)
+			bounds[count++] = layerBounds[nextBound++];
+		
+		// the layers over the current piece, in their order
+		int[] active = new int[order.length];
+		int activeCount = 0;
+		int nextBase = 0;
+		int nextLayer = 0;
+		int pieceStart = start;
+		for(int b = 0; b < count; b++) {
+			int pieceEnd = Math.min(bounds[b], end);
+			if(pieceEnd <= pieceStart)
+				continue;
+			
+			// the base range over the piece
+			StyleRange baseRange = null;
+			while(nextBase < base.size()) {
+				StyleRange range = base.get(nextBase);
+				if(range != null && range.start + range.length > pieceStart) {
+					if(range.start <= pieceStart)
+						baseRange = range;
+					break;
+				}
+				nextBase++;
+			}
+			
+			// the layers over the piece
+			int kept = 0;
+			for(int i = 0; i < activeCount; i++) {
+				StyleRange range = layers.get(active[i]);
+				if(range.start + range.length > pieceStart)
+					active[kept++] = active[i];
+			}
+			activeCount = kept;
+			while(nextLayer < order.length) {
+				StyleRange range = layers.get(order[nextLayer]);
+				if(range != null && range.start > pieceStart)
+					break;
+				if(range != null && range.start + range.length > pieceStart) {
+					int index = activeCount;
+					while(index > 0 && active[index - 1] > order[nextLayer]) {
+						active[index] = active[index - 1];
+						index--;
+					}
+					active[index] = order[nextLayer];
+					activeCount++;
+				}
+				nextLayer++;
+			}
+			
+			StyleRange style = baseRange;
+			for(int i = 0; i < activeCount; i++)
+				style = mergeStyles(style, layers.get(active[i]));
+			if(style != null) {
+				// a range only cut by this piece can be used as it is
+				if(style.start != pieceStart || style.length != pieceEnd - pieceStart) {
+					if(style == baseRange || (activeCount == 1 && style == layers.get(active[0])))
+						style = (StyleRange)style.clone();
+					style.start = pieceStart;
+					style.length = pieceEnd - pieceStart;
+				}
+				result.add(style);
+			}
+			pieceStart = pieceEnd;
+		}
+		
+		return result.toArray(new StyleRange[result.size()]);
+	}
+	
+	private static int startOf(StyleRange range) {
+		return range == null ? Integer.MAX_VALUE : range.start;
+	}
+	
+	// cut range to start and end, returns whether anything is left
+	private static boolean clip(StyleRange range, int start, int end) {
+		if(range == null)
+			return false;
+		int rangeEnd = Math.min(range.start + range.length, end);
+		if(range.start < start)
+			range.start = start;
+		range.length = rangeEnd - range.start;
+		return range.length > 0;
+	}
+	
+	/**
+	 * @return style1 with what style2 sets drawn over it, at the place of style2
+	 */
+	public static StyleRange mergeStyles(StyleRange style1, StyleRange style2) {
+		if(style1 == null)
+			return style2;
+		if(style2 == null)
+			return style1;
+		
+		StyleRange newStyle;
+		// start with a cloned style1, unless style2 has data, but style1 doesn't
+		if(style2 instanceof StyleRangeWithData && !(style1 instanceof StyleRangeWithData)) {
+			newStyle = new StyleRangeWithData(style1);
+		} else {
+			newStyle = (StyleRange)style1.clone();
+			if(newStyle instanceof StyleRangeWithData) {
+				StyleRangeWithData _newStyle = (StyleRangeWithData)newStyle;
+				_newStyle.data = new HashMap<String, String>(_newStyle.data);
+			}
+		}
+		
+		newStyle.start = style2.start;
+		newStyle.length = style2.length;
+		if(style2.font != null)
+			newStyle.font = style2.font;
+		if(style2.background != null)
+			newStyle.background = style2.background;
+		if(style2.foreground != null)
+			newStyle.foreground = style2.foreground;
+		if(style2.fontStyle != SWT.NORMAL)
+			newStyle.fontStyle = style2.fontStyle;
+		if(style2.strikeout) newStyle.strikeout = true;
+		if(style2.underline) newStyle.underline = true;
+		
+		if(style2 instanceof StyleRangeWithData) {
+			StyleRangeWithData _newStyle = (StyleRangeWithData)newStyle;
+			StyleRangeWithData _style2 = (StyleRangeWithData)style2;
+			
+			_newStyle.data.putAll(_style2.data);
+			if(_style2.action != null)
+				_newStyle.action = _style2.action;
+			if(_style2.tooltip != null)
+				_newStyle.tooltip = _style2.tooltip;
+		}
+		
+		return newStyle;
+	}
+}
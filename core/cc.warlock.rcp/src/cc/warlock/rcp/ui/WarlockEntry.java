@@ -29,10 +29,11 @@ import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.ST;
 import org.eclipse.swt.custom.StyledText;
 import org.eclipse.swt.custom.VerifyKeyListener;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.events.KeyEvent;
 import org.eclipse.swt.events.KeyListener;
 import org.eclipse.swt.events.VerifyEvent;
-import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.ui.PlatformUI;
 
@@ -59,13 +60,14 @@ import cc.warlock.rcp.ui.client.SWTWarlockClientListener;
 import cc.warlock.rcp.ui.client.SWTWarlockClientViewerListener;
 import cc.warlock.rcp.ui.client.SWTWarlockSettingListener;
 import cc.warlock.rcp.ui.macros.MacroRegistry;
-import cc.warlock.rcp.util.ColorUtil;
+import cc.warlock.rcp.util.ResourceCache;
 import cc.warlock.rcp.views.GameView;
 
 abstract public class WarlockEntry implements IWarlockEntry {
 	
 	protected StyledText widget;
 	private IWarlockClientViewer viewer;
+	private ResourceCache.Holder resources;
 	private boolean searchMode = false;
 	private StringBuffer searchText = new StringBuffer();
 	private String searchCommand = "";
@@ -122,11 +124,15 @@ abstract public class WarlockEntry implements IWarlockEntry {
 		widget.addVerifyKeyListener(verifyKeyListener);
 		PlatformUI.getWorkbench().getActiveWorkbenchWindow().getShell().addKeyListener(keyListener);
 		
-		Color background = ColorUtil.warlockColorToColor(GameViewConfiguration.defaultDefaultBgColor);
-		Color foreground = ColorUtil.warlockColorToColor(GameViewConfiguration.defaultDefaultFgColor);
+		resources = new ResourceCache.Holder(widget.getDisplay());
+		widget.addDisposeListener(new DisposeListener() {
+			public void widgetDisposed(DisposeEvent e) {
+				resources.dispose();
+			}
+		});
 		
-		widget.setBackground(background);
-		widget.setForeground(foreground);
+		widget.setBackground(resources.getColor("background", GameViewConfiguration.defaultDefaultBgColor));
+		widget.setForeground(resources.getColor("foreground", GameViewConfiguration.defaultDefaultFgColor));
 		
 		WarlockClientRegistry.addWarlockClientListener(new SWTWarlockClientListener(new IWarlockClientListener() {
 			@Override
@@ -158,8 +164,8 @@ abstract public class WarlockEntry implements IWarlockEntry {
 		WarlockColor bg = WindowConfigurationProvider.getProvider(settings).getDefaultBackground();
 		WarlockColor fg = WindowConfigurationProvider.getProvider(settings).getDefaultForeground();
 		
-		widget.setBackground(ColorUtil.warlockColorToColor(bg));
-		widget.setForeground(ColorUtil.warlockColorToColor(fg));
+		widget.setBackground(resources.getColor("background", bg));
+		widget.setForeground(resources.getColor("foreground", fg));
 		minCommandSize = settings.getMinCommandSize();
 		settings.getNode().addPreferenceChangeListener(new IPreferenceChangeListener() {
 			@Override
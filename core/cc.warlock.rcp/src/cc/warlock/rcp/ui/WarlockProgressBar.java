@@ -25,6 +25,8 @@
 package cc.warlock.rcp.ui;
 
 import org.eclipse.jface.resource.JFaceResources;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.events.PaintEvent;
 import org.eclipse.swt.events.PaintListener;
 import org.eclipse.swt.graphics.Color;
@@ -35,6 +37,8 @@ import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.widgets.Canvas;
 import org.eclipse.swt.widgets.Composite;
 
+import cc.warlock.rcp.util.ResourceCache;
+
 /**
  * @author Marshall
  * 
@@ -50,6 +54,7 @@ public class WarlockProgressBar extends Canvas
 	protected int width, height;
 	protected int borderWidth;
 	protected boolean showText;
+	protected ResourceCache.Holder resources;
 	
 	public WarlockProgressBar (Composite composite, int style)
 	{
@@ -63,11 +68,18 @@ public class WarlockProgressBar extends Canvas
 		FontData textData = textFont.getFontData()[0];
 		int minHeight = 8;
 		
-		progressFont = new Font(getShell().getDisplay(),
+		resources = new ResourceCache.Holder(getDisplay());
+		addDisposeListener(new DisposeListener() {
+			public void widgetDisposed(DisposeEvent e) {
+				resources.dispose();
+			}
+		});
+		
+		progressFont = resources.getFont(
 			textData.getName(), (int)Math.max(minHeight,textData.getHeight()), textData.getStyle());
-		foreground = new Color(getShell().getDisplay(), 255, 255, 255);
-		background = new Color(getShell().getDisplay(), 0, 0, 0);
-		borderColor = new Color(getShell().getDisplay(), 25, 25, 25);
+		foreground = resources.getColor(255, 255, 255);
+		background = resources.getColor(0, 0, 0);
+		borderColor = resources.getColor(25, 25, 25);
 		
 		borderWidth = 1;
 		
@@ -133,7 +145,7 @@ public class WarlockProgressBar extends Canvas
 			blue = background.getRed() > factor ? background.getRed() - factor : 0;
 		}
 		
-		return new Color(getShell().getDisplay(), red, green, blue);
+		return resources.getColor(red, green, blue);
 	}
 	
 	public void setSize(int width, int height) {
@@ -193,14 +205,6 @@ public class WarlockProgressBar extends Canvas
 		redraw();
 	}
 	
-	public void dispose() {
-		background.dispose();
-		foreground.dispose();
-		progressFont.dispose();
-		
-		super.dispose();
-	}
-
 	public Color getBorderColor() {
 		return borderColor;
 	}
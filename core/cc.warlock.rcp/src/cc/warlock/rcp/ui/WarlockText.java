@@ -22,19 +22,22 @@
 package cc.warlock.rcp.ui;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.ListIterator;
-import java.util.regex.MatchResult;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.ExtendedModifyEvent;
+import org.eclipse.swt.custom.ExtendedModifyListener;
 import org.eclipse.swt.custom.ST;
 import org.eclipse.swt.custom.StyleRange;
 import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.events.MouseEvent;
 import org.eclipse.swt.events.MouseListener;
 import org.eclipse.swt.events.MouseMoveListener;
@@ -47,22 +50,27 @@ import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Menu;
 import org.eclipse.swt.widgets.MenuItem;
+import org.eclipse.swt.widgets.ScrollBar;
 import org.eclipse.ui.ISharedImages;
 import org.eclipse.ui.PlatformUI;
 
 import cc.warlock.core.client.IClientSettings;
 import cc.warlock.core.client.IWarlockClient;
-import cc.warlock.core.client.IWarlockHighlight;
 import cc.warlock.core.client.IWarlockStyle;
 import cc.warlock.core.client.WarlockColor;
+import cc.warlock.core.client.WarlockMarkerTree;
 import cc.warlock.core.client.WarlockString;
-import cc.warlock.core.client.WarlockStringMarker;
+import cc.warlock.core.client.internal.HighlightEngine;
+import cc.warlock.core.client.internal.LineStore;
+import cc.warlock.core.client.internal.StyleRegistry;
 import cc.warlock.core.client.internal.WarlockStyle;
 import cc.warlock.core.client.settings.ClientSettings;
 import cc.warlock.core.client.settings.PresetStyleConfigurationProvider;
-import cc.warlock.rcp.util.ColorUtil;
+import cc.warlock.rcp.util.ResourceCache;
 import cc.warlock.rcp.util.SoundPlayer;
 
 /**
@@ -76,11 +84,96 @@ public class WarlockText {
 	private StyledText textWidget;
 	private Cursor handCursor, defaultCursor;
 	private int lineLimit = 5000;
+	// about 4MB of characters
+	private int charLimit = 2 << 20;
 	private int doScrollDirection = SWT.DOWN;
 	private Menu contextMenu;
 	private boolean ignoreEmptyLines = true;
 	private Font monoFont = null;
-	private LinkedList<WarlockStringMarker> markers = new LinkedList<WarlockStringMarker>();
+	// colors and fonts of the text, released when the widget goes
+	protected ResourceCache.Holder resources;
+	private WarlockMarkerTree markers = new WarlockMarkerTree();
+	// the lines dropped from the top, if scrollback is kept
+	private LineStore scrollback = null;
+	// lines at the top of the widget paged back in, the last ones in scrollback
+	private int pagedLines = 0;
+	// lines paged in at a time
+	private static final int PAGE_LINES = 200;
+	// what the widget may hold past its limits until scrolled to the bottom: what was paged in
+	private int extraLines = 0;
+	private int extraChars = 0;
+	// marks where an empty line was taken out
+	private static final IWarlockStyle NEWLINE_STYLE = new WarlockStyle("newline");
+	// finds highlights off the UI thread
+	private static ExecutorService highlighter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Warlock highlights");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	// text waiting for its highlights, oldest first
+	private ArrayList<HighlightJob> pendingHighlights = new ArrayList<HighlightJob>();
+	
+	/*
+	 * A piece of the text having its highlights found. Its place is kept
+	 * up to date as the text changes, on the UI thread.
+	 */
+	private class HighlightJob implements Runnable {
+		int start;
+		int end;
+		// whether its text changed since it was taken
+		boolean changed = false;
+		final HighlightEngine engine;
+		final boolean playSounds;
+		final Display display;
+		String text;
+		List<HighlightEngine.Match> matches;
+		
+		HighlightJob(int start, int end, HighlightEngine engine, boolean playSounds) {
+			this.start = start;
+			this.end = end;
+			this.engine = engine;
+			this.playSounds = playSounds;
+			this.display = textWidget.getDisplay();
+		}
+		
+		// on the UI thread
+		void submit() {
+			text = textWidget.getTextRange(start, end - start);
+			changed = false;
+			highlighter.execute(this);
+		}
+		
+		public void run() {
+			try {
+				matches = engine.match(text);
+			} catch(Exception e) {
+				e.printStackTrace();
+				return;
+			}
+			if(!display.isDisposed()) {
+				display.asyncExec(new Runnable() {
+					public void run() {
+						showHighlights(HighlightJob.this);
+					}
+				});
+			}
+		}
+		
+		void textChanged(int pos, int removed, int inserted) {
+			if(pos >= end)
+				return;
+			if(pos + removed <= start) {
+				start += inserted - removed;
+				end += inserted - removed;
+			} else {
+				start = Math.min(start, pos);
+				end = Math.max(end, pos + removed) + inserted - removed;
+				changed = true;
+			}
+		}
+	}
 	
 	public WarlockText(Composite parent) {
 		textWidget = new StyledText(parent, SWT.V_SCROLL);
@@ -96,6 +189,39 @@ public class WarlockText {
 		Display display = parent.getDisplay();
 		handCursor = new Cursor(display, SWT.CURSOR_HAND);
 		defaultCursor = parent.getCursor();
+		resources = new ResourceCache.Holder(display);
+		textWidget.addDisposeListener(new DisposeListener() {
+			public void widgetDisposed(DisposeEvent e) {
+				resources.dispose();
+				handCursor.dispose();
+			}
+		});
+		textWidget.addExtendedModifyListener(new ExtendedModifyListener() {
+			public void modifyText(ExtendedModifyEvent event) {
+				for(HighlightJob job : pendingHighlights)
+					job.textChanged(event.start, event.replacedText.length(), event.length);
+			}
+		});
+		// page scrollback in when scrolled to the top
+		ScrollBar verticalBar = textWidget.getVerticalBar();
+		if(verticalBar != null) {
+			verticalBar.addSelectionListener(new SelectionAdapter() {
+				public void widgetSelected(SelectionEvent e) {
+					pageInIfAtTop();
+				}
+			});
+		}
+		textWidget.addListener(SWT.MouseWheel, new Listener() {
+			public void handleEvent(Event event) {
+				// the widget scrolls after its listeners are told
+				textWidget.getDisplay().asyncExec(new Runnable() {
+					public void run() {
+						if(!textWidget.isDisposed())
+							pageInIfAtTop();
+					}
+				});
+			}
+		});
 
 		contextMenu = new Menu(textWidget);
 		MenuItem itemCopy = new MenuItem(contextMenu, SWT.PUSH);
@@ -109,7 +235,7 @@ public class WarlockText {
 		MenuItem itemClear = new MenuItem(contextMenu, SWT.PUSH);
 		itemClear.addSelectionListener(new SelectionAdapter() {
 			public void widgetSelected(SelectionEvent arg0) {
-				textWidget.setText("");
+				clearText();
 			}
 		});
 		itemClear.setText("Clear");
@@ -181,6 +307,7 @@ public class WarlockText {
 			textWidget.setCaretOffset(textWidget.getCharCount());
 		}
 		textWidget.invokeAction(ST.PAGE_UP);
+		pageInIfAtTop();
 	}
 	
 	public void pageDown() {
@@ -206,12 +333,42 @@ public class WarlockText {
 	public void clearText() {
 		textWidget.setText("");
 		markers.clear();
+		if(scrollback != null)
+			scrollback.clear();
+		pagedLines = 0;
+		extraLines = 0;
+		extraChars = 0;
 	}
 	
 	public void setLineLimit(int limit) {
 		lineLimit = limit;
 	}
 	
+	/**
+	 * @param limit the most characters to keep, or 0 for no limit. Lines
+	 *   are dropped whole, so a single longer line is still kept.
+	 */
+	public void setCharLimit(int limit) {
+		charLimit = limit;
+	}
+	
+	/**
+	 * Keep the lines dropped past the limits off the heap, and page them
+	 * back in when the text is scrolled to the top. The widget then only
+	 * holds about the line limit, however long the scrollback.
+	 */
+	public void setScrollback(boolean keep) {
+		if(keep && scrollback == null) {
+			scrollback = new LineStore(LineStore.DEFAULT_BYTE_LIMIT);
+		} else if(!keep && scrollback != null) {
+			scrollback.clear();
+			scrollback = null;
+			pagedLines = 0;
+			extraLines = 0;
+			extraChars = 0;
+		}
+	}
+	
 	public void appendRaw(String string) {
 		boolean atBottom = isAtBottom();
 		
@@ -236,17 +393,14 @@ public class WarlockText {
 			if(lineStart == m.start()) {
 				int matchPos = start + m.start();
 				int matchLen = m.end() - m.start();
-				// Add the newline marker. We give it an initial length of 1
+				// Add the newline marker. We give it the newline's length
 				//   so it gets added correctly into the tree of markers
-				WarlockStringMarker marker = new WarlockStringMarker(
-						new WarlockStyle("newline"), matchPos, matchPos + matchLen);
-				this.addInternalMarker(marker, markers);
+				int marker = markers.insert(NEWLINE_STYLE, matchPos, matchPos + matchLen);
 				
 				// then remove the newline from the text
 				textWidget.replaceTextRange(matchPos, matchLen, "");
 				// and shrink down the newline marker because the actual newline is no longer there.
-				marker.setEnd(matchPos);
-				WarlockStringMarker.updateMarkers(-matchLen, marker, markers);
+				markers.resize(marker, -matchLen);
 				// Recursive call. if this could be a tail call, that would be awesome.
 				removeEmptyLines(start);
 				break;
@@ -256,217 +410,139 @@ public class WarlockText {
 		}
 	}
 	
-	private void restoreNewlines(int offset, Collection<WarlockStringMarker> markerList) {
-		for(Iterator<WarlockStringMarker> iter = markerList.iterator();
-		iter.hasNext(); )
-		{
-			WarlockStringMarker marker = iter.next();
-		
-			Collection<WarlockStringMarker> subList = marker.getSubMarkers();
-			if(subList != null)
-				restoreNewlines(offset, subList);
-			
-			// check to make sure we're a newline in the appropriate area
-			if(marker.getStart() < offset)
+	private void restoreNewlines(int offset) {
+		int marker = markers.indexOf(offset);
+		while(marker < markers.size()) {
+			int start = markers.getStart(marker);
+			// check to make sure we're a newline, and not an empty line
+			if(markers.getStyle(marker) != NEWLINE_STYLE || start == 0
+					|| textWidget.getTextRange(start - 1, 1).equals("\n")) {
+				marker++;
 				continue;
-			String name = marker.getName();
-			if(name == null || !name.equals("newline"))
-				continue;
-			
-			// check if we're an empty line
-			if(marker.getStart() == 0 || textWidget.getTextRange(marker.getStart() - 1, 1).equals("\n"))
-				continue;
-			
-			// we're not an empty line, put us back into action
-			textWidget.replaceTextRange(marker.getStart(), 0, "\n");
-			// TODO: this should actually just affect markers after us... oh well.
-			WarlockStringMarker.updateMarkers(1, marker, markers);
-			iter.remove();
-		}
-	}
-	
-	private Collection<StyleRange> mergeStyleRangeLists(Collection<StyleRange> list1, Collection<StyleRange> list2) {
-		LinkedList<StyleRange> resultList = new LinkedList<StyleRange>();
-		for(StyleRange style : list1) {
-			resultList.add(style);
-		}
-		
-		mergeLoop: for(StyleRange mergingStyle : list2) {
-			if(mergingStyle == null)
-				continue;
-			for(ListIterator<StyleRange> iter = resultList.listIterator();
-			iter.hasNext(); )
-			{
-				StyleRange style = iter.next();
-				if(style == null)
-					continue;
-				
-				// if the mergeStyle came before the current style, add the
-				//   mergeStyle before it and go to the next mergeStyle
-				if(style.start >= mergingStyle.start + mergingStyle.length) {
-					iter.previous();
-					iter.add(mergingStyle);
-					continue mergeLoop;
-				}
-				
-				// If the mergeStyle came after the current style, continue on
-				if(mergingStyle.start >= style.start + style.length)
-					continue;
-				
-				iter.remove();
-				
-				int subStart;
-				
-				if(style.start < mergingStyle.start) {
-					// Add the style before they overlap
-					StyleRange newStyle = (StyleRange)style.clone();
-					newStyle.length = mergingStyle.start - style.start;
-					iter.add(newStyle);
-					
-					subStart = mergingStyle.start;
-				} else if(mergingStyle.start < style.start) {
-					// Add the style before they overlap
-					StyleRange newStyle = (StyleRange)mergingStyle.clone();
-					newStyle.length = style.start - mergingStyle.start;
-					iter.add(newStyle);
-					
-					subStart = style.start;
-				} else {
-					subStart = style.start;
-				}
-				
-				int subEnd;
-				if(style.start + style.length < mergingStyle.start + mergingStyle.length) {
-					subEnd = style.start + style.length;
-				} else {
-					subEnd = mergingStyle.start + mergingStyle.length;
-				}
-				
-				StyleRange newStyle = this.mergeStyleRanges(style, mergingStyle);
-				newStyle.start = subStart;
-				newStyle.length = subEnd - subStart;
-				iter.add(newStyle);
-				
-				if(style.start + style.length < mergingStyle.start + mergingStyle.length) {
-					int length = mergingStyle.start + mergingStyle.length - subEnd;
-					mergingStyle.start = subEnd;
-					mergingStyle.length = length;
-					continue;
-				} else if(mergingStyle.start + mergingStyle.length < style.start + style.length) {
-					StyleRange endStyle = (StyleRange)style.clone();
-					endStyle.start = subEnd;
-					endStyle.length = style.start + style.length - subEnd;
-					iter.add(endStyle);
-				}
-				// else both styles end at the same time
-				
-				// We matched a style and inserted the new style, so we're done
-				continue mergeLoop;
 			}
 			
-			resultList.add(mergingStyle);
+			// we're not an empty line, put us back into action
+			textWidget.replaceTextRange(start, 0, "\n");
+			markers.resize(marker, 1);
+			markers.remove(marker);
 		}
-		
-		return resultList;
 	}
 	
-	private void showStyles(Collection<StyleRange> styles, int start, int end) {
+	/*
+	 * Show the styles of the text from start to end, in one change to the
+	 * widget.
+	 */
+	private void showStyles(List<StyleRange> styles, int start, int end) {
 
 		try {
-			Collection<StyleRange> finalList = mergeStyleRangeLists(styles, getHighlights(start, end));
-			
-			for(StyleRange style : finalList) {
-				textWidget.setStyleRange(style);
-			}
+			StyleRange[] ranges = StyleRangeMerger.merge(styles, new ArrayList<StyleRange>(), start, end);
+			textWidget.replaceStyleRanges(start, end - start, ranges);
 		} catch(Exception e) {
 			e.printStackTrace();
 		}
 	}
 	
-	private Collection<StyleRange> getHighlights(int start, int end) {
-		ArrayList<StyleRange> highlightList = new ArrayList<StyleRange>();
-		if(client == null)
-			return highlightList;
-		
-		String text = textWidget.getTextRange(start, end - start);
-		
+	/*
+	 * Start finding the highlights of the text from start to end. Changes
+	 * made to the text before the UI thread is let go are matched too.
+	 */
+	private void findHighlights(int start, int end, boolean playSounds) {
+		if(client == null || end <= start)
+			return;
+		HighlightEngine engine = client.getHighlightEngine();
+		if(engine.size() == 0)
+			return;
+		final HighlightJob job = new HighlightJob(start, end, engine, playSounds);
+		pendingHighlights.add(job);
+		textWidget.getDisplay().asyncExec(new Runnable() {
+			public void run() {
+				if(!textWidget.isDisposed() && job.end > job.start)
+					job.submit();
+				else
+					pendingHighlights.remove(job);
+			}
+		});
+	}
+	
+	/*
+	 * Draw the highlights found over the styles of their text, unless the
+	 * text changed under them, when they are found again.
+	 */
+	private void showHighlights(HighlightJob job) {
+		if(textWidget.isDisposed() || !pendingHighlights.contains(job))
+			return;
+		if(job.end <= job.start) {
+			pendingHighlights.remove(job);
+			return;
+		}
+		if(job.changed) {
+			job.submit();
+			return;
+		}
+		pendingHighlights.remove(job);
 		
-		for (Iterator<? extends IWarlockHighlight> iter = client.getHighlightsIterator();
-				iter.hasNext(); ) {
-			IWarlockHighlight highlight = iter.next();
-			if(highlight == null)
-				continue;
-			Pattern p;
-			try {
-				p = highlight.getPattern();
-			} catch(PatternSyntaxException e) {
+		ArrayList<StyleRange> highlightList = new ArrayList<StyleRange>();
+		for(HighlightEngine.Match match : job.matches) {
+			IWarlockStyle style = match.getHighlight().getStyle();
+			if(style == null)
 				continue;
-			}
-			if(p == null)
+			StyleRangeWithData styleRange = warlockStyleToStyleRange(style,
+					job.start + match.getStart(), match.getEnd() - match.getStart());
+			if(styleRange == null)
 				continue;
-			Matcher matcher = p.matcher(text);
+			highlightList.add(styleRange);
 			
-			while (matcher.find())
-			{
-				MatchResult result = matcher.toMatchResult();
-				
-				IWarlockStyle style = highlight.getStyle();
-				int highlightStart = result.start() + start;
-				int highlightLength = result.end() - result.start();
-				if(style.isFullLine()) {
-					int lineNum = textWidget.getLineAtOffset(highlightStart);
-					highlightStart = textWidget.getOffsetAtLine(lineNum);
-					if(lineNum + 1 >= textWidget.getLineCount())
-						highlightLength = end - highlightStart;
-					else
-						highlightLength = textWidget.getOffsetAtLine(lineNum + 1) - highlightStart;
-				}
-				
-				StyleRangeWithData styleRange = warlockStyleToStyleRange(style,
-						highlightStart, highlightLength);
-				if(styleRange == null)
-					continue;
-				highlightList.add(styleRange);
-				
-				try{
-					if (style.getSound() != null && !style.getSound().equals("")){
-						//System.out.println("Playing sound " + style.getSound());
-						SoundPlayer.play(style.getSound());
-						//InputStream soundStream = new FileInputStream(style.getSound());
-						//RCPUtil.playSound(soundStream);
-					}
-				} catch(Exception e) {
-					e.printStackTrace();
+			try{
+				if (job.playSounds && style.getSound() != null && !style.getSound().equals("")){
+					SoundPlayer.play(style.getSound());
 				}
+			} catch(Exception e) {
+				e.printStackTrace();
 			}
 		}
+		if(highlightList.isEmpty())
+			return;
 		
-		return highlightList;
+		try {
+			int length = job.end - job.start;
+			List<StyleRange> styles = Arrays.asList(textWidget.getStyleRanges(job.start, length));
+			StyleRange[] ranges = StyleRangeMerger.merge(styles, highlightList, job.start, job.end);
+			textWidget.replaceStyleRanges(job.start, length, ranges);
+		} catch(Exception e) {
+			e.printStackTrace();
+		}
 	}
 	
-	private void getMarkerStyles(WarlockStringMarker marker,
-			StyleRange baseStyle, Collection<StyleRange> resultStyles) {
-		int pos = marker.getStart();
-		for(WarlockStringMarker subMarker : marker.getSubMarkers()) {
-			
-			int nextPos = subMarker.getStart();
+	/*
+	 * Styles for a marker of tree, shown in style, and the markers inside
+	 * it. Returns the marker after them.
+	 */
+	private int getMarkerStyles(WarlockMarkerTree tree, int marker, IWarlockStyle style,
+			StyleRange baseStyle, List<StyleRange> resultStyles) {
+		int pos = tree.getStart(marker);
+		int next = marker + 1;
+		while(next < tree.size() && tree.getParent(next) == marker) {
+			int subMarker = next;
+			int nextPos = tree.getStart(subMarker);
 			
-			StyleRange styleRange = mergeStyleRanges(baseStyle,
-					warlockStyleToStyleRange(marker.getStyle(), pos, nextPos - pos));
+			StyleRange styleRange = StyleRangeMerger.mergeStyles(baseStyle,
+					warlockStyleToStyleRange(style, pos, nextPos - pos));
 			
 			if(nextPos > pos)
 				resultStyles.add(styleRange);
 			
-			getMarkerStyles(subMarker, styleRange, resultStyles);
+			next = getMarkerStyles(tree, subMarker, tree.getStyle(subMarker), styleRange, resultStyles);
 
-			pos = subMarker.getEnd();
+			pos = tree.getEnd(subMarker);
 		}
 		
-		if(marker.getEnd() > pos) {
-			StyleRange styleRange = mergeStyleRanges(baseStyle,
-					warlockStyleToStyleRange(marker.getStyle(), pos, marker.getEnd() - pos));
+		int end = tree.getEnd(marker);
+		if(end > pos) {
+			StyleRange styleRange = StyleRangeMerger.mergeStyles(baseStyle,
+					warlockStyleToStyleRange(style, pos, end - pos));
 			resultStyles.add(styleRange);
 		}
+		return next;
 	}
 	
 	public void append(WarlockString wstring) {
@@ -477,30 +553,16 @@ public class WarlockText {
 		/* Break up the ranges and merge overlapping styles because SWT only
 		 * allows 1 style per section
 		 */
-		LinkedList<StyleRange> finishedStyles = new LinkedList<StyleRange>();
-		for(WarlockStringMarker strMarker : wstring.getStyles()) {
-			WarlockStringMarker marker = strMarker.copy(offset);
-			addComponentMarker(marker, marker);
-			getMarkerStyles(marker, new StyleRangeWithData(), finishedStyles);
-		}
+		ArrayList<StyleRange> finishedStyles = new ArrayList<StyleRange>();
+		int marker = markers.append(wstring, offset);
+		while(marker < markers.size())
+			marker = getMarkerStyles(markers, marker, markers.getStyle(marker), new StyleRangeWithData(), finishedStyles);
 		showStyles(finishedStyles, offset, textWidget.getCharCount());
+		findHighlights(offset, textWidget.getCharCount(), true);
 
 		postTextChange(atBottom, offset);
 	}
 	
-	private void addComponentMarker(WarlockStringMarker marker, WarlockStringMarker topLevel) {
-		if(marker.getComponentName() != null) {
-			this.addMarker(marker);
-			IWarlockStyle baseStyle = topLevel.getBaseStyle(marker);
-			if(baseStyle != null)
-				marker.setStyle(baseStyle);
-		} else {
-			for(WarlockStringMarker subMarker : marker.getSubMarkers()) {
-				addComponentMarker(subMarker, topLevel);
-			}
-		}
-	}
-	
 	private StyleRangeWithData warlockStyleToStyleRange(IWarlockStyle style, int start, int length) {
 		StyleRangeWithData styleRange = new StyleRangeWithData();
 		
@@ -537,9 +599,9 @@ public class WarlockText {
 		styleRange.underline = underline;
 		
 		if (foreground != null && !foreground.isDefault())
-			styleRange.foreground = ColorUtil.warlockColorToColor(foreground);
+			styleRange.foreground = resources.getColor(foreground);
 		if (background != null && !background.isDefault())
-			styleRange.background = ColorUtil.warlockColorToColor(background);
+			styleRange.background = resources.getColor(background);
 
 		styleRange.start = start;
 		styleRange.length = length;
@@ -554,46 +616,6 @@ public class WarlockText {
 		return styleRange;
 	}
 	
-	private StyleRange mergeStyleRanges(StyleRange style1, StyleRange style2) {
-		if(style1 == null)
-			return style2;
-		if(style2 == null)
-			return style1;
-		
-		StyleRange newStyle;
-		// start with a cloned style1, unless style2 has data, but style1 doesn't
-		if(style2 instanceof StyleRangeWithData && !(style1 instanceof StyleRangeWithData))
-			newStyle = new StyleRangeWithData(style1);
-		else
-			newStyle = (StyleRange)style1.clone();
-		
-		newStyle.start = style2.start;
-		newStyle.length = style2.length;
-		if(style2.font != null)
-			newStyle.font = style2.font;
-		if(style2.background != null)
-			newStyle.background = style2.background;
-		if(style2.foreground != null)
-			newStyle.foreground = style2.foreground;
-		if(style2.fontStyle != SWT.NORMAL)
-			newStyle.fontStyle = style2.fontStyle;
-		if(style2.strikeout) newStyle.strikeout = true;
-		if(style2.underline) newStyle.underline = true;
-		
-		if(style2 instanceof StyleRangeWithData) {
-			StyleRangeWithData _newStyle = (StyleRangeWithData)newStyle;
-			StyleRangeWithData _style2 = (StyleRangeWithData)style2;
-			
-			_newStyle.data.putAll(_style2.data);
-			if(_style2.action != null)
-				_newStyle.action = _style2.action;
-			if(_style2.tooltip != null)
-				_newStyle.tooltip = _style2.tooltip;
-		}
-		
-		return newStyle;
-	}
-	
 	public boolean isAtBottom() {
 		return textWidget.getLinePixel(textWidget.getLineCount()) <= textWidget.getClientArea().height;
 	}
@@ -602,7 +624,7 @@ public class WarlockText {
 		
 		if(ignoreEmptyLines) {
 			removeEmptyLines(offset);
-			restoreNewlines(offset, markers);
+			restoreNewlines(offset);
 		}
 		
 		constrainLineLimit(atBottom);
@@ -617,148 +639,137 @@ public class WarlockText {
 					+ textWidget.getLinePixel(textWidget.getLineCount()));
 	}
 	
-	// this function removes the first "delta" amount of characters
-	private void updateMarkers(int delta) {
-		for(Iterator<WarlockStringMarker> iter = markers.iterator();
-		iter.hasNext(); )
-		{
-			WarlockStringMarker marker = iter.next();
-			
-			// If the marker is moved off the beginning, remove it
-			if(marker.getEnd() + delta < 0) {
-				iter.remove();
-				continue;
-			}
-			// move us accordingly
-			marker.move(delta);
-		}
-	}
-	
-	public void addInternalMarker(WarlockStringMarker marker,
-			LinkedList<WarlockStringMarker> markerList) {
-		ListIterator<WarlockStringMarker> iter = markerList.listIterator();
-		try {
-			while(true) {
-				if(!iter.hasNext()) {
-					iter.add(marker);
-					break;
-				}
-				WarlockStringMarker cur = iter.next();
-				if(cur.getEnd() > marker.getStart()) {
-					if(marker.getEnd() > cur.getStart()) {
-						addInternalMarker(marker, cur.getSubMarkers());
-						return;
-					}
-
-					iter.previous();
-					iter.add(marker);
-					break;
-				}
-			}
-		} catch(Exception e) {
-			System.out.println(e.getMessage());
-			e.printStackTrace();
-		}
-	}
-	
-	public void addMarker(WarlockStringMarker marker) {
-		ListIterator<WarlockStringMarker> iter = markers.listIterator();
-		try {
-			while(true) {
-				if(!iter.hasNext()) {
-					iter.add(marker);
-					break;
-				}
-				WarlockStringMarker cur = iter.next();
-				if(cur.getEnd() > marker.getStart()) {
-					if(marker.getEnd() > cur.getStart()) {
-						throw new Exception("Bad marker!");
-					}
-
-					iter.previous();
-					iter.add(marker);
-					break;
-				}
-			}
-		} catch(Exception e) {
-			System.out.println(e.getMessage());
-			e.printStackTrace();
-		}
+	private StyleRegistry getStyleRegistry() {
+		return client == null ? null : client.getStyleRegistry();
 	}
 	
 	public void replaceMarker(String name, WarlockString text) {
-		WarlockStringMarker marker = null;
-		IWarlockStyle baseStyle = null;
-		for(WarlockStringMarker subMarker : markers) {
-			marker = getMarkerByComponent(name, subMarker);
-			if(marker != null) {
-				baseStyle = subMarker.getBaseStyle(marker);
-				break;
-			}
-		}
-		if(marker == null)
+		int marker = markers.findComponent(name);
+		if(marker < 0)
 			return;
+		IWarlockStyle baseStyle = markers.getBaseStyle(marker, getStyleRegistry());
 		
-		int start = marker.getStart();
-		int length = marker.getEnd() - start;
+		int start = markers.getStart(marker);
+		int length = markers.getEnd(marker) - start;
 		boolean atBottom = isAtBottom();
 		textWidget.replaceTextRange(start, length, text.toString());
-		marker.clear();
-		int newLength = text.length();
-		marker.setEnd(start + newLength);
-		WarlockStringMarker.updateMarkers(newLength - length, marker, markers);
-		
-		// Add the new styles to the existing marker
-		for(WarlockStringMarker newMarker : text.getStyles()) {
-			marker.addMarker(newMarker.copy(start));
-		}
+		// Put the new styles in the marker, and move the markers after it
+		markers.replace(marker, text);
 		
 		/* Break up the ranges and merge overlapping styles because SWT only
 		 * allows 1 style per section
 		 */
-		WarlockStringMarker markerWithStyle = marker.clone();
-		markerWithStyle.setStyle(baseStyle);
-		LinkedList<StyleRange> newStyles = new LinkedList<StyleRange>();
-		getMarkerStyles(markerWithStyle, new StyleRangeWithData(), newStyles);
-		showStyles(newStyles, marker.getStart(), marker.getEnd());
+		ArrayList<StyleRange> newStyles = new ArrayList<StyleRange>();
+		getMarkerStyles(markers, marker, baseStyle, new StyleRangeWithData(), newStyles);
+		showStyles(newStyles, start, markers.getEnd(marker));
+		findHighlights(start, markers.getEnd(marker), true);
 		
 		postTextChange(atBottom, start);
 	}
 	
-	private WarlockStringMarker getMarkerByComponent(String componentName,
-			WarlockStringMarker marker) {
-		String myName = marker.getComponentName();
-		if(myName != null && myName.equals(componentName))
-			return marker;
-		
-		for(WarlockStringMarker subMarker : marker.getSubMarkers()) {
-			WarlockStringMarker result = getMarkerByComponent(componentName, subMarker);
-			if(result != null)
-				return result;
+	private void constrainLineLimit(boolean atBottom) {
+		int lines = textWidget.getLineCount();
+		if(atBottom) {
+			extraLines = 0;
+			extraChars = 0;
+		}
+		int linesToRemove = 0;
+		if (lineLimit > 0 && lines > lineLimit + extraLines)
+			linesToRemove = lines - lineLimit - extraLines;
+		if (charLimit > 0) {
+			int excess = textWidget.getCharCount() - charLimit - extraChars;
+			if (excess > 0) {
+				// the lines up to and including the one the excess ends in
+				int line = Math.min(textWidget.getLineAtOffset(excess - 1) + 1, lines - 1);
+				linesToRemove = Math.max(linesToRemove, line);
+			}
+		}
+		if (linesToRemove > 0 && scrollback != null) {
+			// the lines aren't lost, so drop more of them at a time
+			linesToRemove = Math.min(linesToRemove + lineLimit / 8, lines - 1);
+		}
+		if (linesToRemove > 0) {
+			int charsToRemove = textWidget.getOffsetAtLine(linesToRemove);
+			if(scrollback != null)
+				keepScrollback(linesToRemove, charsToRemove);
+			if(atBottom) {
+				textWidget.replaceTextRange(0, charsToRemove, "");
+				markers.removeBefore(charsToRemove);
+			} else {
+				int pixelsToRemove = textWidget.getLinePixel(linesToRemove);
+				textWidget.replaceTextRange(0, charsToRemove, "");
+				markers.removeBefore(charsToRemove);
+				if(pixelsToRemove < 0)
+					textWidget.setTopPixel(-pixelsToRemove);
+			}
 		}
-		return null;
 	}
 	
-	private void constrainLineLimit(boolean atBottom) {
-		// 'status' is a pointer that allows us to change the object in our parent..
-		// in this method... it is intentional.
-		if (lineLimit > 0) {
-			int lines = textWidget.getLineCount();
-			if (lines > lineLimit) {
-				int linesToRemove = lines - lineLimit;
-				int charsToRemove = textWidget.getOffsetAtLine(linesToRemove);
-				if(atBottom) {
-					textWidget.replaceTextRange(0, charsToRemove, "");
-					updateMarkers(-charsToRemove);
-				} else {
-					int pixelsToRemove = textWidget.getLinePixel(linesToRemove);
-					textWidget.replaceTextRange(0, charsToRemove, "");
-					updateMarkers(-charsToRemove);
-					if(pixelsToRemove < 0)
-						textWidget.setTopPixel(-pixelsToRemove);
-				}
-			}
+	/*
+	 * Put the lines from the top of the widget to chars into scrollback,
+	 * but for those paged in from it.
+	 */
+	private void keepScrollback(int lines, int chars) {
+		int paged = Math.min(lines, pagedLines);
+		pagedLines -= paged;
+		int start = textWidget.getOffsetAtLine(paged);
+		if(start >= chars)
+			return;
+		
+		WarlockString text = new WarlockString(textWidget.getTextRange(start, chars - start));
+		for(int marker = 0; marker < markers.size() && markers.getStart(marker) < chars; marker++) {
+			IWarlockStyle style = markers.getStyle(marker);
+			int runStart = Math.max(markers.getStart(marker), start) - start;
+			int runEnd = Math.min(markers.getEnd(marker), chars) - start;
+			if(style == null || style == NEWLINE_STYLE || runEnd <= runStart)
+				continue;
+			text.addRun(style, runStart, runEnd, markers.getDepth(marker));
 		}
+		
+		int pos = 0;
+		int length = text.length();
+		while(pos < length) {
+			int newline = text.indexOf("\n", pos);
+			int end = newline < 0 ? length : newline + 1;
+			scrollback.append(text.substring(pos, end));
+			pos = end;
+		}
+	}
+	
+	private void pageInIfAtTop() {
+		if(scrollback != null && textWidget.getTopIndex() == 0)
+			pageIn();
+	}
+	
+	/*
+	 * Put the lines of scrollback before the top of the widget back in,
+	 * keeping the view where it was.
+	 */
+	private void pageIn() {
+		long end = scrollback.getEndLineNumber() - pagedLines;
+		long first = Math.max(scrollback.getFirstLineNumber(), end - PAGE_LINES);
+		if(first >= end)
+			return;
+		
+		WarlockString text = new WarlockString();
+		for(long number = first; number < end; number++)
+			text.append(scrollback.getLine(number));
+		WarlockMarkerTree lineMarkers = new WarlockMarkerTree();
+		ArrayList<StyleRange> styles = new ArrayList<StyleRange>();
+		int marker = lineMarkers.append(text, 0);
+		while(marker < lineMarkers.size())
+			marker = getMarkerStyles(lineMarkers, marker, lineMarkers.getStyle(marker), new StyleRangeWithData(), styles);
+		
+		int length = text.length();
+		int topIndex = textWidget.getTopIndex();
+		textWidget.replaceTextRange(0, 0, text.toString());
+		markers.insertBefore(length);
+		showStyles(styles, 0, length);
+		findHighlights(0, length, false);
+		pagedLines += (int)(end - first);
+		extraLines += (int)(end - first);
+		extraChars += length;
+		textWidget.setTopIndex(topIndex + (int)(end - first));
 	}
 	
 	public void setScrollDirection(int dir) {
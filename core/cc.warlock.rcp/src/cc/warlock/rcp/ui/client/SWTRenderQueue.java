@@ -0,0 +1,243 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.rcp.ui.client;
+
+import java.util.ArrayList;
+
+import org.eclipse.swt.widgets.Display;
+
+import cc.warlock.core.client.ICommand;
+import cc.warlock.core.client.IStream;
+import cc.warlock.core.client.IStreamListener;
+import cc.warlock.core.client.WarlockString;
+import cc.warlock.core.client.internal.StreamEvent;
+
+/**
+ * Passes stream events to a listener on the UI thread a frame at a time.
+ * 
+ * Events are queued as they come and the queue is drained at most once per
+ * frame, so a burst of text costs one trip to the UI thread rather than one
+ * per event. Flushes are held to the end of the frame and sent once, which
+ * lets a listener that buffers text until a flush update its widget once per
+ * frame. A frame with a prompt or a command in it ends with a flush too.
+ */
+public class SWTRenderQueue implements IStreamListener {
+
+	public static final int FRAME_MILLIS = 20;
+	
+	private static final Object statsLock = new Object();
+	private static int maxQueueDepth = 0;
+	private static long lastFrameNanos = 0;
+	private static long maxFrameNanos = 0;
+	private static long frames = 0;
+	private static long frameNanos = 0;
+	// longest an event waited for its frame
+	private static long maxLagNanos = 0;
+	
+	private final IStreamListener listener;
+	private final Display display;
+	private ArrayList<StreamEvent> queue = new ArrayList<StreamEvent>();
+	// the queue of the frame being drawn, kept for reuse
+	private ArrayList<StreamEvent> drawing = new ArrayList<StreamEvent>();
+	private boolean scheduled = false;
+	// when the first event of the next frame came
+	private long queuedAt = 0;
+	private long lastFrame = 0;
+	
+	private final Runnable scheduler = new Runnable() {
+		public void run() {
+			long wait = lastFrame + FRAME_MILLIS - System.currentTimeMillis();
+			if(wait > 0 && wait <= FRAME_MILLIS)
+				display.timerExec((int)wait, drainer);
+			else
+				drainer.run();
+		}
+	};
+	
+	private final Runnable drainer = new Runnable() {
+		public void run() {
+			drain();
+		}
+	};
+	
+	public SWTRenderQueue (IStreamListener listener)
+	{
+		this.listener = listener;
+		this.display = Display.getDefault();
+	}
+	
+	private void add(StreamEvent.Type type, IStream stream, WarlockString text, String string, ICommand command) {
+		boolean first;
+		synchronized(this) {
+			queue.add(new StreamEvent(type, stream, text, string, command));
+			first = !scheduled;
+			if(first) {
+				scheduled = true;
+				queuedAt = System.nanoTime();
+			}
+		}
+		if(first && !display.isDisposed())
+			display.asyncExec(scheduler);
+	}
+	
+	private void drain() {
+		lastFrame = System.currentTimeMillis();
+		ArrayList<StreamEvent> events;
+		long queued;
+		synchronized(this) {
+			queued = queuedAt;
+			events = queue;
+			queue = drawing;
+			drawing = events;
+			scheduled = false;
+		}
+		
+		long start = System.nanoTime();
+		IStream flushed = null;
+		for(StreamEvent event : events) {
+			StreamEvent.Type type = event.getType();
+			// prompts and commands are shown without waiting for the stream's flush
+			if(type == StreamEvent.Type.FLUSH || type == StreamEvent.Type.PROMPT
+					|| type == StreamEvent.Type.COMMAND)
+				flushed = event.getStream();
+			if(type != StreamEvent.Type.FLUSH)
+				deliver(event);
+		}
+		if(flushed != null) {
+			try {
+				listener.streamFlush(flushed);
+			} catch(Throwable t) {
+				t.printStackTrace();
+			}
+		}
+		int depth = events.size();
+		events.clear();
+		
+		long time = System.nanoTime() - start;
+		synchronized(statsLock) {
+			maxQueueDepth = Math.max(maxQueueDepth, depth);
+			maxLagNanos = Math.max(maxLagNanos, start - queued);
+			lastFrameNanos = time;
+			maxFrameNanos = Math.max(maxFrameNanos, time);
+			frameNanos += time;
+			frames++;
+		}
+	}
+	
+	private void deliver(StreamEvent event) {
+		IStream stream = event.getStream();
+		try {
+			switch(event.getType()) {
+			case CREATED:
+				listener.streamCreated(stream);
+				break;
+			case CLEARED:
+				listener.streamCleared(stream);
+				break;
+			case TEXT:
+				listener.streamReceivedText(stream, event.getText());
+				break;
+			case PROMPT:
+				listener.streamPrompted(stream, event.getString());
+				break;
+			case COMMAND:
+				listener.streamReceivedCommand(stream, event.getCommand());
+				break;
+			case COMPONENT:
+				listener.componentUpdated(stream, event.getString(), event.getText());
+				break;
+			case TITLE:
+				listener.streamTitleChanged(stream, event.getString());
+				break;
+			default:
+				break;
+			}
+		} catch(Throwable t) {
+			t.printStackTrace();
+		}
+	}
+	
+	/**
+	 * @return the number of events waiting for the next frame
+	 */
+	public synchronized int getQueueDepth() {
+		return queue.size();
+	}
+	
+	/**
+	 * @return the frames drawn by all queues so far, with the largest
+	 *   number of events in one frame, how long frames took to draw, and
+	 *   the longest an event waited for its frame
+	 */
+	public static String getStats() {
+		synchronized(statsLock) {
+			return frames + " frames, at most " + maxQueueDepth + " events in a frame, "
+				+ (frames == 0 ? 0 : frameNanos / frames / 1000) + "us per frame on average, "
+				+ lastFrameNanos / 1000 + "us last, " + maxFrameNanos / 1000 + "us at most, "
+				+ maxLagNanos / 1000000 + "ms longest wait";
+		}
+	}
+	
+	public void streamCreated(IStream stream) {
+		add(StreamEvent.Type.CREATED, stream, null, null, null);
+	}
+	
+	public void streamCleared(IStream stream) {
+		add(StreamEvent.Type.CLEARED, stream, null, null, null);
+	}
+
+	public void streamReceivedText(IStream stream, WarlockString text) {
+		add(StreamEvent.Type.TEXT, stream, text, null, null);
+	}
+	
+	public void streamTitleChanged(IStream stream, String title) {
+		add(StreamEvent.Type.TITLE, stream, null, title, null);
+	}
+	
+	public void streamPrompted(IStream stream, String prompt) {
+		add(StreamEvent.Type.PROMPT, stream, null, prompt, null);
+	}
+
+	public void streamReceivedCommand (IStream stream, ICommand command) {
+		add(StreamEvent.Type.COMMAND, stream, null, null, command);
+	}
+	
+	public void streamFlush(IStream stream) {
+		add(StreamEvent.Type.FLUSH, stream, null, null, null);
+	}
+	
+	public void componentUpdated(IStream stream, String id, WarlockString text) {
+		add(StreamEvent.Type.COMPONENT, stream, text, id, null);
+	}
+	
+	public boolean equals(Object obj) {
+		if(obj instanceof SWTRenderQueue) {
+			return this.listener.equals(((SWTRenderQueue)obj).listener);
+		} else {
+			return this.listener.equals(obj);
+		}
+	}
+	
+	public int hashCode() {
+		return listener.hashCode();
+	}
+}
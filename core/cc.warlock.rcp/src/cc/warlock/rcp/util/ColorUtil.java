@@ -23,7 +23,6 @@ package cc.warlock.rcp.util;
 
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.RGB;
-import org.eclipse.swt.widgets.Display;
 
 import cc.warlock.core.client.WarlockColor;
 
@@ -43,9 +42,4 @@ public class ColorUtil {
 	{
 			return new RGB(color.getRed(), color.getGreen(), color.getBlue());
 	}
-	
-	public static Color warlockColorToColor (WarlockColor color)
-	{
-			return new Color(Display.getDefault(), warlockColorToRGB(color));
-	}
 }
@@ -21,11 +21,8 @@
  */
 package cc.warlock.rcp.util;
 
-import java.util.HashMap;
-
 import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.graphics.FontData;
-import org.eclipse.swt.widgets.Display;
 
 import cc.warlock.core.client.IWarlockFont;
 import cc.warlock.core.client.internal.WarlockFont;
@@ -36,8 +33,6 @@ import cc.warlock.core.client.internal.WarlockFont;
  */
 public class FontUtil {
 
-	private static HashMap<String, Font> fonts = new HashMap<String, Font>();
-	
 	public static FontData warlockFontToFontData (IWarlockFont font)
 	{
 		FontData data = new FontData();
@@ -47,16 +42,6 @@ public class FontUtil {
 		return data;
 	}
 	
-	public static Font warlockFontToFont (IWarlockFont font)
-	{
-		Font f = fonts.get(font.toString());
-		if(f == null) {
-			f = new Font(Display.getDefault(), warlockFontToFontData(font));
-			fonts.put(font.toString(), f);
-		}
-		return f;
-	}
-	
 	public static IWarlockFont fontDataToWarlockFont (FontData data)
 	{
 		WarlockFont font = new WarlockFont();
@@ -0,0 +1,282 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.rcp.util;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.FontData;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.graphics.Resource;
+import org.eclipse.swt.widgets.Display;
+
+import cc.warlock.core.client.WarlockColor;
+
+/**
+ * Colors and fonts shared by everything drawn on one display. Each color is
+ * allocated once per RGB and each font once per font data, and disposed when
+ * the last user releases it.
+ * 
+ * Widgets don't usually acquire and release single resources, they get them
+ * through a Holder and dispose the holder with themselves.
+ * 
+ * Like the resources themselves, a cache is only used on its display's thread.
+ */
+public class ResourceCache {
+
+	private static class Entry {
+		final Object key;
+		final Resource resource;
+		int references = 0;
+		
+		Entry(Object key, Resource resource) {
+			this.key = key;
+			this.resource = resource;
+		}
+	}
+	
+	private static HashMap<Display, ResourceCache> caches = new HashMap<Display, ResourceCache>();
+	private static int liveHandles = 0;
+	
+	private final Display display;
+	// RGB or font data string -> entry
+	private HashMap<Object, Entry> entries = new HashMap<Object, Entry>();
+	private IdentityHashMap<Resource, Entry> byResource = new IdentityHashMap<Resource, Entry>();
+	
+	private ResourceCache(Display display) {
+		this.display = display;
+	}
+	
+	public static ResourceCache getCache(final Display display) {
+		synchronized(caches) {
+			ResourceCache cache = caches.get(display);
+			if(cache == null) {
+				final ResourceCache newCache = new ResourceCache(display);
+				caches.put(display, newCache);
+				display.disposeExec(new Runnable() {
+					public void run() {
+						newCache.disposeAll();
+					}
+				});
+				cache = newCache;
+			}
+			return cache;
+		}
+	}
+	
+	public static ResourceCache getDefault() {
+		return getCache(Display.getDefault());
+	}
+	
+	/**
+	 * @return the colors and fonts allocated through caches and not disposed yet
+	 */
+	public static synchronized int getLiveHandles() {
+		return liveHandles;
+	}
+	
+	private static synchronized void countHandles(int delta) {
+		liveHandles += delta;
+	}
+	
+	public Display getDisplay() {
+		return display;
+	}
+	
+	/**
+	 * The shared color for rgb. Release it when done.
+	 */
+	public Color getColor(RGB rgb) {
+		Entry entry = entries.get(rgb);
+		if(entry == null) {
+			entry = add(rgb, new Color(display, rgb));
+		}
+		entry.references++;
+		return (Color)entry.resource;
+	}
+	
+	/**
+	 * The shared font for data. Release it when done.
+	 */
+	public Font getFont(FontData[] data) {
+		StringBuilder key = new StringBuilder();
+		for(FontData d : data)
+			key.append(d.toString()).append(';');
+		Entry entry = entries.get(key.toString());
+		if(entry == null) {
+			entry = add(key.toString(), new Font(display, data));
+		}
+		entry.references++;
+		return (Font)entry.resource;
+	}
+	
+	/**
+	 * Give back a color or font from this cache. Anything else is left alone.
+	 */
+	public void release(Resource resource) {
+		Entry entry = byResource.get(resource);
+		if(entry == null)
+			return;
+		if(--entry.references <= 0) {
+			entries.remove(entry.key);
+			byResource.remove(resource);
+			resource.dispose();
+			countHandles(-1);
+		}
+	}
+	
+	/**
+	 * @return the number of colors and fonts this cache holds
+	 */
+	public int size() {
+		return entries.size();
+	}
+	
+	private Entry add(Object key, Resource resource) {
+		Entry entry = new Entry(key, resource);
+		entries.put(key, entry);
+		byResource.put(resource, entry);
+		countHandles(1);
+		return entry;
+	}
+	
+	private void disposeAll() {
+		synchronized(caches) {
+			caches.remove(display);
+		}
+		for(Entry entry : entries.values())
+			entry.resource.dispose();
+		countHandles(-entries.size());
+		entries.clear();
+		byResource.clear();
+	}
+	
+	/**
+	 * The colors and fonts one owner uses. Each is acquired from the cache
+	 * once however often the owner asks for it, and all of them are released
+	 * when the holder is disposed.
+	 * 
+	 * Anything that changes with the settings, like a widget's background or
+	 * font, is held under a role instead. Setting a role releases what it held
+	 * before, so reloading settings doesn't keep every old color and font.
+	 */
+	public static class Holder {
+		private final ResourceCache cache;
+		private HashMap<Object, Resource> held = new HashMap<Object, Resource>();
+		// role -> the resource it holds now
+		private HashMap<String, Resource> roles = new HashMap<String, Resource>();
+		
+		public Holder(Display display) {
+			cache = getCache(display);
+		}
+		
+		public Display getDisplay() {
+			return cache.display;
+		}
+		
+		public Color getColor(RGB rgb) {
+			Color color = (Color)held.get(rgb);
+			if(color == null || color.isDisposed()) {
+				color = cache.getColor(rgb);
+				held.put(rgb, color);
+			}
+			return color;
+		}
+		
+		public Color getColor(int red, int green, int blue) {
+			return getColor(new RGB(red, green, blue));
+		}
+		
+		public Color getColor(WarlockColor color) {
+			return getColor(ColorUtil.warlockColorToRGB(color));
+		}
+		
+		public Font getFont(FontData... data) {
+			StringBuilder key = new StringBuilder("font:");
+			for(FontData d : data)
+				key.append(d.toString()).append(';');
+			Font font = (Font)held.get(key.toString());
+			if(font == null || font.isDisposed()) {
+				font = cache.getFont(data);
+				held.put(key.toString(), font);
+			}
+			return font;
+		}
+		
+		public Font getFont(String name, int height, int style) {
+			return getFont(new FontData(name, height, style));
+		}
+		
+		/**
+		 * The color for role, releasing the one the role held before. Set the
+		 * new color on the widget before it next paints.
+		 */
+		public Color getColor(String role, RGB rgb) {
+			Color color = cache.getColor(rgb);
+			replace(role, color);
+			return color;
+		}
+		
+		public Color getColor(String role, WarlockColor color) {
+			return getColor(role, ColorUtil.warlockColorToRGB(color));
+		}
+		
+		/**
+		 * The font for role, releasing the one the role held before.
+		 */
+		public Font getFont(String role, FontData[] data) {
+			Font font = cache.getFont(data);
+			replace(role, font);
+			return font;
+		}
+		
+		public Font getFont(String role, String name, int height, int style) {
+			return getFont(role, new FontData[] { new FontData(name, height, style) });
+		}
+		
+		/**
+		 * Release whatever role holds, once nothing uses it anymore.
+		 */
+		public void release(String role) {
+			replace(role, null);
+		}
+		
+		private void replace(String role, Resource resource) {
+			Resource old = resource == null ? roles.remove(role) : roles.put(role, resource);
+			if(old != null && !cache.display.isDisposed())
+				cache.release(old);
+		}
+		
+		public void dispose() {
+			if(cache.display.isDisposed())
+				return;
+			for(Resource resource : held.values())
+				cache.release(resource);
+			held.clear();
+			for(Resource resource : roles.values())
+				cache.release(resource);
+			roles.clear();
+		}
+	}
+}
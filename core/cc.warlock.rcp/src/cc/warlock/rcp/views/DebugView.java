@@ -47,14 +47,16 @@ import cc.warlock.core.network.IConnection;
 import cc.warlock.core.network.IConnection.ErrorType;
 import cc.warlock.core.network.IConnectionListener;
 import cc.warlock.rcp.ui.WarlockText;
+import cc.warlock.rcp.ui.client.SWTRenderQueue;
 import cc.warlock.rcp.ui.client.SWTWarlockClientListener;
 import cc.warlock.rcp.ui.network.SWTConnectionListenerAdapter;
+import cc.warlock.rcp.util.ResourceCache;
 
 public class DebugView extends WarlockView implements IConnectionListener, IGameViewFocusListener {
 
 	protected PageBook book;
 	protected Text entry;
-	protected Button copyAll;
+	protected Button copyAll, resources;
 	private HashMap<IWarlockClient, WarlockText> clientStreams = new HashMap<IWarlockClient, WarlockText>();
 	private IWarlockClient activeClient;
 	private WarlockText activeText;
@@ -127,6 +129,16 @@ public class DebugView extends WarlockView implements IConnectionListener, IGame
 
 		copyAll = new Button(main, SWT.PUSH);
 		copyAll.setText("Copy All");
+		resources = new Button(main, SWT.PUSH);
+		resources.setText("UI Stats");
+		resources.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				if (activeClient != null) {
+					debug(activeClient, "{" + ResourceCache.getLiveHandles() + " colors and fonts allocated}");
+					debug(activeClient, "{" + SWTRenderQueue.getStats() + "}");
+				}
+			}
+		});
 		
 		book = new PageBook(main, SWT.NONE);
 		book.setLayoutData(new GridData(GridData.FILL, GridData.FILL, true, true));
@@ -172,6 +172,7 @@ public abstract class GameView extends WarlockView implements IWarlockClientView
 		streamText = new StreamText(mainComposite, IWarlockClient.MAIN_STREAM_NAME);
 		streamText.getTextWidget().setLayout(new GridLayout(1, false));
 		streamText.setIgnoreEmptyLines(false);
+		streamText.setScrollback(true);
 		
 		openViews.add(this);
 		this.setFocus();
@@ -45,7 +45,7 @@ import cc.warlock.core.client.settings.WindowConfigurationProvider;
 import cc.warlock.rcp.configuration.GameViewConfiguration;
 import cc.warlock.rcp.ui.StreamText;
 import cc.warlock.rcp.ui.client.SWTWarlockClientListener;
-import cc.warlock.rcp.util.ColorUtil;
+import cc.warlock.rcp.util.ResourceCache;
 
 public class StreamView extends WarlockView implements IGameViewFocusListener, IWarlockClientListener {
 	
@@ -67,6 +67,7 @@ public class StreamView extends WarlockView implements IGameViewFocusListener, I
 		new HashMap<IWarlockClient, StreamText>();
 	
 	private StyledText nullTextWidget;
+	private ResourceCache.Holder resources;
 
 	public StreamView() {
 		super();
@@ -124,8 +125,9 @@ public class StreamView extends WarlockView implements IGameViewFocusListener, I
 		nullTextWidget.setEditable(false);
 		nullTextWidget.setWordWrap(true);
 		nullTextWidget.setIndent(1);
-		Color background = ColorUtil.warlockColorToColor(GameViewConfiguration.defaultDefaultBgColor);
-		Color foreground = ColorUtil.warlockColorToColor(GameViewConfiguration.defaultDefaultFgColor);
+		resources = new ResourceCache.Holder(parent.getDisplay());
+		Color background = resources.getColor(GameViewConfiguration.defaultDefaultBgColor);
+		Color foreground = resources.getColor(GameViewConfiguration.defaultDefaultFgColor);
 		
 		nullTextWidget.setBackground(background);
 		nullTextWidget.setForeground(foreground);
@@ -217,6 +219,8 @@ public class StreamView extends WarlockView implements IGameViewFocusListener, I
 		for(StreamText stream : streams.values()) {
 			stream.dispose();
 		}
+		if(resources != null)
+			resources.dispose();
 		super.dispose();
 	}
 	
@@ -276,8 +280,9 @@ public class StreamView extends WarlockView implements IGameViewFocusListener, I
 		WarlockColor bg = WindowConfigurationProvider.getProvider(client.getClientSettings()).getWindowBackground(streamName);
 		WarlockColor fg = WindowConfigurationProvider.getProvider(client.getClientSettings()).getWindowForeground(streamName);
 		
-		this.setBackground(client, ColorUtil.warlockColorToColor(bg));
-		this.setForeground(client, ColorUtil.warlockColorToColor(fg));
+		StreamText stream = streams.get(client);
+		if(stream != null)
+			stream.setColors(bg, fg);
 	}
 	
 	public StreamText getStreamTextForClient(IWarlockClient client) {
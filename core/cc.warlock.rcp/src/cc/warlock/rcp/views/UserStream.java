@@ -33,7 +33,6 @@ import org.eclipse.ui.PlatformUI;
 
 import cc.warlock.core.client.IStreamFilter;
 import cc.warlock.core.client.IWarlockClient;
-import cc.warlock.core.client.WarlockString;
 import cc.warlock.core.client.internal.StreamFilter;
 import cc.warlock.rcp.ui.StreamText;
 
@@ -44,6 +43,7 @@ import cc.warlock.rcp.ui.StreamText;
  */
 public class UserStream extends StreamView {
 	public static final String VIEW_ID = "cc.warlock.rcp.views.rightView.userStream";
+	public static final String USER_STREAM_PREFIX = "user:";
 	protected static ArrayList<UserStream> openStreams = new ArrayList<UserStream>();
 	private IStreamFilter[] filters = null;
 	private String name;
@@ -60,40 +60,25 @@ public class UserStream extends StreamView {
 		}
 		
 		@Override
-		public void append (WarlockString string) {
-			// Process filters on the complete lines
-			WarlockString ret = new WarlockString();
-			bufferLoop: for (WarlockString buffer : string.split("\\r?\\n")) {
-				if(styles != null)
-					for(String style : styles) {
-						if(buffer.hasStyleNamed(style)) {
-							ret.append(buffer);
-							ret.append("\n");
-							continue bufferLoop;
-						}
-					}
-				for (IStreamFilter filter : filters) {
-					if (filter == null)
-						continue;
-					if (filter.match(buffer)) {
-						// If a filter matches, we go ahead and display the chunk
-						ret.append(buffer);
-						ret.append("\n");
-						continue bufferLoop;
-					}
-				}
-			}
-			if (ret.length() > 0) {
-				super.append(ret);
-			}
+		public void setClient(IWarlockClient client) {
+			if (this.client == client)
+				return;
+			
+			// The client's filter engine puts the matching lines of the main
+			// stream into this view's own stream
+			if (this.client != null)
+				this.client.getFilterEngine().unsubscribe(this.client.getStream(streamName));
+			if (client != null)
+				client.getFilterEngine().subscribe(client.createStream(streamName), filters,
+						styles == null ? null : styles.toArray(new String[styles.size()]));
+			
+			super.setClient(client);
 		}
 	}
 	
 	@Override
 	public void createPartControl(Composite parent) {
 		name = getViewSite().getSecondaryId().substring(getViewSite().getSecondaryId().lastIndexOf('.')+1);
-		setStreamName(IWarlockClient.MAIN_STREAM_NAME);
-		super.createPartControl(parent);
 		if (name.equals("Events")) {
 			this.filters = getEventsFilters();
 		} else if (name.equals("Conversations")) {
@@ -106,6 +91,8 @@ public class UserStream extends StreamView {
 		} else {
 			System.err.println("Not a UserStream name we recognize! ("+name+")");
 		}
+		setStreamName(USER_STREAM_PREFIX + name);
+		super.createPartControl(parent);
 		setViewTitle(name);
 	}
 	
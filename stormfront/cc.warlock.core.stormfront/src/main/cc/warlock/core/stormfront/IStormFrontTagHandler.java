@@ -63,4 +63,10 @@ public interface IStormFrontTagHandler {
 	 * @param characters
 	 */
 	public boolean handleCharacters(String characters);
+	
+	/**
+	 * @return whether this handler (and everything nested inside its tags) needs
+	 *   the raw XML of each tag. The parser only builds it on request.
+	 */
+	public boolean needsRawXML();
 }
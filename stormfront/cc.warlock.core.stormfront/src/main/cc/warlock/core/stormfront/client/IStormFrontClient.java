@@ -27,6 +27,8 @@
  */
 package cc.warlock.core.stormfront.client;
 
+import java.io.File;
+
 import cc.warlock.core.client.IRoomListener;
 import cc.warlock.core.client.IWarlockClient;
 
@@ -53,7 +55,10 @@ public interface IStormFrontClient extends IWarlockClient, IRoomListener
 	
 	public void startedDownloadingServerSettings();
 	
-	public void finishedDownloadingServerSettings(String str);
+	/**
+	 * @param capture a temporary file holding the downloaded settings document
+	 */
+	public void finishedDownloadingServerSettings(File capture);
 	
 	public void receivedServerSetting(String setting);
 
@@ -22,13 +22,10 @@
 
 package cc.warlock.core.stormfront.client.internal;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
@@ -40,11 +37,14 @@ import cc.warlock.core.client.internal.WarlockClient;
 import cc.warlock.core.client.internal.WarlockMacro;
 import cc.warlock.core.client.settings.ClientSettings;
 import cc.warlock.core.client.settings.MacroConfigurationProvider;
+import cc.warlock.core.network.SessionRecorder;
 import cc.warlock.core.settings.ConfigurationUtil;
 import cc.warlock.core.settings.MacroSetting;
 import cc.warlock.core.settings.WarlockPreferencesScope;
 import cc.warlock.core.stormfront.client.IStormFrontClient;
 import cc.warlock.core.stormfront.network.StormFrontConnection;
+import cc.warlock.core.stormfront.network.StormFrontReplayConnection;
+import cc.warlock.core.stormfront.settings.ServerSettingsCapture;
 import cc.warlock.core.stormfront.xml.StormFrontDocument;
 import cc.warlock.core.stormfront.xml.StormFrontElement;
 
@@ -53,6 +53,9 @@ import cc.warlock.core.stormfront.xml.StormFrontElement;
  */
 public class StormFrontClient extends WarlockClient implements IStormFrontClient, IRoomListener {
 
+	/** Set this system property to true to record every game session */
+	public static final String RECORD_SESSIONS_PROPERTY = "warlock.recordSessions";
+
 	//protected StringBuffer buffer = new StringBuffer();
 	//protected Property<String> roomDescription = new Property<String>();
 	protected String gameCode, playerId;
@@ -70,12 +73,31 @@ public class StormFrontClient extends WarlockClient implements IStormFrontClient
 
 	@Override
 	public void connect(String server, int port, String key) throws IOException {
-		connection = new StormFrontConnection(this, key);
+		StormFrontConnection connection = new StormFrontConnection(this, key);
+		if (Boolean.getBoolean(RECORD_SESSIONS_PROPERTY)) {
+			File recording = new File(ConfigurationUtil.getConfigurationDirectory("recordings", true),
+					gameCode + "-" + System.currentTimeMillis() + ".wlrec");
+			connection.setRecorder(new SessionRecorder(recording));
+		}
+		this.connection = connection;
 		connection.connect(server, port);
 		
 		WarlockClientRegistry.clientConnected(this);
 	}
 	
+	/**
+	 * Play a recorded session into this client instead of connecting to a server.
+	 * 
+	 * @param originalPacing true to replay with the delays the session was
+	 * recorded with, false to replay as fast as the client can take it
+	 */
+	public void replay(File recording, boolean originalPacing) throws IOException {
+		connection = new StormFrontReplayConnection(this, recording, originalPacing);
+		connection.connect(recording.getName(), 0);
+		
+		WarlockClientRegistry.clientConnected(this);
+	}
+	
 
 	@Override
 	public String getPlayerId() {
@@ -192,31 +214,13 @@ public class StormFrontClient extends WarlockClient implements IStormFrontClient
 			//((IStormFrontClientViewer)viewer).startedDownloadingServerSettings();
 	}
 	
-	public void finishedDownloadingServerSettings(String str) {
-		File settingsFile = ConfigurationUtil.getConfigurationFile("serverSettings_" + getClientId() + ".xml");
-		InputStream inStream = new ByteArrayInputStream(str.getBytes());
+	public void finishedDownloadingServerSettings(File capture) {
+		File settingsFile = ConfigurationUtil.getConfigurationFile("serverSettings_" + getClientId() + ".xml", false);
 		
-		try {
-			FileWriter writer = new FileWriter(settingsFile);
-
-			StormFrontDocument document = new StormFrontDocument(inStream);
-			document.saveTo(writer, true);
-			
-			writer.close();
-			inStream.close();
-			//buffer.setLength(0);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		// parse, compare and save off the parser thread
+		ServerSettingsCapture.process(capture, settingsFile, null);
 		
-		try {
-			InputStream stream = new FileInputStream(settingsFile);
-			
-			//serverSettings.importServerSettings(stream, clientSettings);
-			stream.close();
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+		//serverSettings.importServerSettings(stream, clientSettings);
 		
 		//if (viewer instanceof IStormFrontClientViewer)
 			//((IStormFrontClientViewer)viewer).finishedDownloadingServerSettings();
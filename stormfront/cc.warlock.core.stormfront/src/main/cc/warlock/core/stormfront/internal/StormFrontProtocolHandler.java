@@ -29,11 +29,11 @@ package cc.warlock.core.stormfront.internal;
 
 import java.util.EmptyStackException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Stack;
 
 import cc.warlock.core.client.IWarlockStyle;
 import cc.warlock.core.client.WarlockString;
-import cc.warlock.core.client.WarlockStringMarker;
 import cc.warlock.core.client.internal.WarlockStyle;
 import cc.warlock.core.stormfront.IStormFrontProtocolHandler;
 import cc.warlock.core.stormfront.IStormFrontTagHandler;
@@ -76,6 +76,7 @@ import cc.warlock.core.stormfront.tags.StreamTagHandler;
 import cc.warlock.core.stormfront.tags.StreamWindowTagHandler;
 import cc.warlock.core.stormfront.tags.StubTagHandler;
 import cc.warlock.core.stormfront.tags.StyleTagHandler;
+import cc.warlock.core.stormfront.xml.IStormFrontRawXMLFilter;
 import cc.warlock.core.stormfront.xml.StormFrontAttributeList;
 
 
@@ -85,13 +86,16 @@ import cc.warlock.core.stormfront.xml.StormFrontAttributeList;
  * TODO To change the template for this generated type comment go to
  * Window - Preferences - Java - Code Style - Code Templates
  */
-public class StormFrontProtocolHandler implements IStormFrontProtocolHandler {
+public class StormFrontProtocolHandler implements IStormFrontProtocolHandler, IStormFrontRawXMLFilter {
 	
 	protected IStormFrontClient client;
 	protected HashMap<String, IStormFrontTagHandler> defaultTagHandlers = new HashMap<String, IStormFrontTagHandler>();
-	protected Stack<String> tagStack = new Stack<String>();
+	private TagDispatcher tagStack = new TagDispatcher(defaultTagHandlers);
+	// tags whose handlers want raw XML, and the stack depth where the outermost one was opened
+	private HashSet<String> rawXMLTags = new HashSet<String>();
+	private int rawXMLDepth = -1;
 	private Stack<String> streamStack = new Stack<String>();
-	protected Stack<WarlockStringMarker> styleStack = new Stack<WarlockStringMarker>();
+	protected Stack<OpenStyle> styleStack = new Stack<OpenStyle>();
 	private WarlockString buffer = new WarlockString();
 	protected int currentSpacing = 0;
 	protected int monsterCount = 0;
@@ -158,7 +162,10 @@ public class StormFrontProtocolHandler implements IStormFrontProtocolHandler {
 		for (String tagName : tagHandler.getTagNames())
 		{
 			defaultTagHandlers.put(tagName, tagHandler);
+			if (tagHandler.needsRawXML())
+				rawXMLTags.add(tagName);
 		}
+		tagStack.reset();
 	}
 	
 	/*
@@ -198,43 +205,45 @@ public class StormFrontProtocolHandler implements IStormFrontProtocolHandler {
 	 * @see org.xml.sax.ContentHandler#characters(char[], int, int)
 	 */
 	public void characters(String characters) {
+		int length = characters.length();
+		if(length == 0)
+			return;
+		
 		// if there was no handler or it couldn't handle the characters,
 		// take a default action
 		if(!handleCharacters(characters)) {
-			String str = characters;
 			// Suppress newlines following tags when the line is empty
+			int start = 0;
 			if(lineHasTag && !lineHasContent) {
-				if(str.startsWith("\n"))
-					str = str.substring(1);
-				else if(str.startsWith("\r\n"))
-					str = str.substring(2);
+				if(characters.charAt(0) == '\n')
+					start = 1;
+				else if(length > 1 && characters.charAt(0) == '\r' && characters.charAt(1) == '\n')
+					start = 2;
 			}
 			
 			// user the buffer
-			buffer.append(str);
-			if(styleStack.empty() && tagStack.empty())
+			if(start < length)
+				buffer.append(start == 0 ? characters : characters.substring(start));
+			if(styleStack.empty() && tagStack.isEmpty())
 				flushBuffer();
 			
-			if(characters.contains("\n"))
+			if(characters.indexOf('\n') >= 0)
 				lineHasTag = false;
 			
 			// I don't think we need to handle line endings with \n\r or \r
-			lineHasContent = !characters.endsWith("\n");
+			lineHasContent = characters.charAt(length - 1) != '\n';
 		}
 	}
 	
 	private boolean handleCharacters(String characters) {
-		// Start looking for handlers at the highest level tag
-		for(int pos = tagStack.size() - 1; pos >= 0; pos--) {
-			String tagName = tagStack.get(pos);
-		
-			IStormFrontTagHandler tagHandler = getTagHandlerForElement(tagName);
-			if(tagHandler != null) {
-				tagHandler.setCurrentTag(tagName);
-				// if the handler handled the characters, we're done
-				if(tagHandler.handleCharacters(characters))
-					return true;
-			}
+		// Start looking for handlers at the highest level tag, skipping tags without one
+		for(int pos = tagStack.getHandledBelow(tagStack.getDepth() - 1); pos >= 0;
+				pos = tagStack.getHandledBelow(pos - 1)) {
+			IStormFrontTagHandler tagHandler = tagStack.getHandler(pos);
+			tagHandler.setCurrentTag(tagStack.getTag(pos));
+			// if the handler handled the characters, we're done
+			if(tagHandler.handleCharacters(characters))
+				return true;
 		}
 		return false;
 	}
@@ -244,14 +253,17 @@ public class StormFrontProtocolHandler implements IStormFrontProtocolHandler {
 	 */
 	public void endElement(String name, String rawXML) {
 		// Get the tag name off the stack
-		if(tagStack.empty() || !name.equals(tagStack.peek())) {
+		int depth = tagStack.getDepth();
+		if(depth == 0 || !name.equals(tagStack.getTag(depth - 1))) {
 			System.err.println("Unexpected close tag \"" + name + "\".");
 		} else {
 			tagStack.pop();
+			if (tagStack.getDepth() <= rawXMLDepth)
+				rawXMLDepth = -1;
 		}
 		
 		// call the method for the object
-		IStormFrontTagHandler tagHandler = getTagHandlerForElement(name);
+		IStormFrontTagHandler tagHandler = tagStack.resolve(name);
 		if(tagHandler != null) {
 			tagHandler.setCurrentTag(name);
 			tagHandler.handleEnd(rawXML);
@@ -265,10 +277,11 @@ public class StormFrontProtocolHandler implements IStormFrontProtocolHandler {
 	 */
 	public void startElement(String name, StormFrontAttributeList attributes, String rawXML) {
 		
-		// call the method for the object
-		IStormFrontTagHandler tagHandler = getTagHandlerForElement(name);
+		if (rawXMLDepth < 0 && rawXMLTags.contains(name))
+			rawXMLDepth = tagStack.getDepth();
 		
-		tagStack.push(name);
+		// call the method for the object
+		IStormFrontTagHandler tagHandler = tagStack.push(name);
 		
 		if(tagHandler != null) {
 			tagHandler.setCurrentTag(name);
@@ -280,89 +293,56 @@ public class StormFrontProtocolHandler implements IStormFrontProtocolHandler {
 		lineHasTag = true;
 	}
 	
-	private IStormFrontTagHandler getTagHandlerForElement(String name) {
-		if(tagStack.empty())
-			return defaultTagHandlers.get(name);
-		
-		IStormFrontTagHandler rv = getTagHandlerForElementHelper(name, null, 0, false);
-		if(rv == null)
-			rv = defaultTagHandlers.get(name);
-		return rv;
+	public boolean needsRawXML(String name) {
+		return rawXMLDepth >= 0 || rawXMLTags.contains(name);
 	}
 	
-	private IStormFrontTagHandler getTagHandlerForElementHelper(String name,
-			IStormFrontTagHandler parentHandler, int stackPosition, boolean origParent) {
-		if(stackPosition < tagStack.size()) {
-			// Walk down the stack until we hit the bottom, then search for our tag out the way back out
-			String tagName = tagStack.get(stackPosition);
-			
-			// next handler is the child the parent
-			IStormFrontTagHandler nextHandler;
-			if(parentHandler != null)
-				nextHandler = parentHandler.getTagHandler(tagName);
-			else
-				nextHandler = defaultTagHandlers.get(tagName);
-			
-			// If we just searched for the tag we're looking for, return the result.
-			if(name.equals(tagName))
-				return nextHandler;
-			
-			// If we found a handler, then it's original
-			boolean nextIsOrig = nextHandler != null;
-			
-			// If there was no match, use the current parent (not original)
-			if(nextHandler == null) {
-				nextHandler = parentHandler;
-			}
-			
-			// see if there is a valid handler further down the tree.
-			IStormFrontTagHandler tagHandler = getTagHandlerForElementHelper(name,
-					nextHandler, stackPosition + 1, nextIsOrig);
-			if(tagHandler != null) {
-				return tagHandler;
-			} else {
-				if(origParent)
-					return parentHandler.getTagHandler(name);
-				else
-					return null;
-			}
-		} else {
-			if(origParent)
-				return parentHandler.getTagHandler(name);
-			else
-				return null;
+	/*
+	 * A style run opened in a buffer and not closed yet. The buffer may have
+	 * been flushed since, in which case the run is left as it was.
+	 */
+	protected static class OpenStyle {
+		public final WarlockString string;
+		public final int run;
+		public final IWarlockStyle style;
+		
+		public OpenStyle(WarlockString string, int run, IWarlockStyle style) {
+			this.string = string;
+			this.run = run;
+			this.style = style;
+		}
+		
+		public void close() {
+			string.closeStyle(run);
 		}
 	}
 	
 	public void addStyle(IWarlockStyle style) {
-		WarlockStringMarker marker = new WarlockStringMarker(style,
-				buffer.length(), buffer.length());
-		
-		if(!styleStack.empty()) {
-			WarlockStringMarker lastStyle = styleStack.peek();
-			lastStyle.addMarker(marker);
-		} else {
-			buffer.addMarker(marker);
-		}
-		
-		styleStack.push(marker);
+		styleStack.push(new OpenStyle(buffer, buffer.openStyle(style), style));
 		
 		lineHasContent = true;
 	}
 	
 	public void removeStyle(IWarlockStyle style) {
-		if(styleStack.empty() || styleStack.peek().getStyle() != style)
+		if(styleStack.empty() || styleStack.peek().style != style)
 			return;
 		
-		WarlockStringMarker marker = styleStack.pop();
-		marker.setEnd(buffer.length());
+		OpenStyle open = styleStack.pop();
+		if(open.string == buffer)
+			open.close();
 		
-		if(styleStack.empty() && tagStack.empty()) {
+		if(styleStack.empty() && tagStack.isEmpty()) {
 			flushBuffer();
 		}
 	}
 	
 	public void flushBuffer() {	
+		// a style still open has no text in this buffer, leave its run out
+		for(int i = styleStack.size() - 1; i >= 0; i--) {
+			OpenStyle open = styleStack.get(i);
+			if(open.string == buffer && buffer.getRunStart(open.run) == buffer.getRunEnd(open.run))
+				buffer.removeRun(open.run);
+		}
 		put(buffer);
 		buffer = new WarlockString();
 	}
@@ -377,8 +357,9 @@ public class StormFrontProtocolHandler implements IStormFrontProtocolHandler {
 	
 	public void clearStyles() {
 		while(!styleStack.empty()) {
-			WarlockStringMarker marker = styleStack.pop();
-			marker.setEnd(buffer.length());
+			OpenStyle open = styleStack.pop();
+			if(open.string == buffer)
+				open.close();
 		}
 	}
 	
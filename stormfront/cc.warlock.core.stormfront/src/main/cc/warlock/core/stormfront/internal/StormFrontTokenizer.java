@@ -0,0 +1,530 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.stormfront.internal;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+import cc.warlock.core.stormfront.xml.IStormFrontRawXMLFilter;
+import cc.warlock.core.stormfront.xml.IStormFrontXMLHandler;
+import cc.warlock.core.stormfront.xml.StormFrontAttribute;
+import cc.warlock.core.stormfront.xml.StormFrontAttributeList;
+
+/**
+ * A hand-written, incremental tokenizer for the StormFront protocol. It
+ * accepts the same language as stormfront.jj and drives the same
+ * IStormFrontXMLHandler callbacks, but works directly on one reusable
+ * char[] instead of creating a Token and image String per lexeme.
+ * 
+ * Text is delivered in runs (entities already decoded) rather than a
+ * token at a time, tag and attribute names are interned, attribute objects
+ * are recycled from tag to tag, attribute values are slices of the buffer
+ * until they are read, and the raw text of a tag is only turned
+ * into a String when the handler asks for it.
+ * 
+ * @see IStormFrontRawXMLFilter
+ */
+public class StormFrontTokenizer {
+
+	private static final int DEFAULT = 0;
+	private static final int PASS_THRU = 1;
+	
+	private static final char[] MODE_TAG = "<mode".toCharArray();
+	
+	// returned by the tag scanners when the tag isn't complete yet
+	private static final int INCOMPLETE = -1;
+	private static final int MALFORMED = -2;
+	
+	protected IStormFrontXMLHandler handler;
+	protected IStormFrontRawXMLFilter rawXMLFilter;
+	
+	private Reader reader;
+	private char[] buf = new char[8192];
+	private int pos = 0;
+	private int end = 0;
+	private int state = DEFAULT;
+	
+	private StringBuilder text = new StringBuilder();
+	private NameTable names = new NameTable();
+	private StormFrontAttributeList attributes = new StormFrontAttributeList();
+	private ArrayList<StormFrontAttribute> attributePool = new ArrayList<StormFrontAttribute>();
+	private String tagName;
+	private boolean emptyTag = false;
+	
+	public StormFrontTokenizer (Reader reader)
+	{
+		this.reader = reader;
+	}
+	
+	public void setHandler (IStormFrontXMLHandler handler)
+	{
+		this.handler = handler;
+		this.rawXMLFilter = handler instanceof IStormFrontRawXMLFilter ? (IStormFrontRawXMLFilter)handler : null;
+	}
+	
+	/**
+	 * Pass everything through as text until the next &lt;mode tag.
+	 */
+	public void passThrough ()
+	{
+		state = PASS_THRU;
+	}
+	
+	/**
+	 * Tokenize the reader until end of stream. Text that is already in hand is
+	 * delivered before blocking for more input.
+	 */
+	public void parse () throws IOException
+	{
+		while (true) {
+			if (pos > 0) {
+				// keep only the unconsumed tail (a partial tag or entity)
+				System.arraycopy(buf, pos, buf, 0, end - pos);
+				end -= pos;
+				pos = 0;
+			}
+			if (end == buf.length) {
+				char[] larger = new char[buf.length * 2];
+				System.arraycopy(buf, 0, larger, 0, end);
+				buf = larger;
+			}
+			
+			int count = reader.read(buf, end, buf.length - end);
+			if (count < 0) {
+				tokenize(true);
+				return;
+			}
+			end += count;
+			tokenize(false);
+		}
+	}
+	
+	private void tokenize (boolean eof)
+	{
+		while (pos < end) {
+			if (state == PASS_THRU) {
+				if (!passThroughText(eof))
+					break;
+				continue;
+			}
+			
+			char c = buf[pos];
+			if (c == '<') {
+				if (pos + 1 >= end) {
+					if (!eof)
+						break;
+					text.append(c);
+					pos++;
+					continue;
+				}
+				
+				char next = buf[pos + 1];
+				int tagEnd;
+				if (next == '/') {
+					tagEnd = scanEndTag(pos + 2, eof);
+				} else if (isNameStart(next)) {
+					tagEnd = scanStartTag(pos + 1, eof);
+				} else {
+					// not a tag, the grammar treats "<" and the next character as text
+					text.append(c).append(next);
+					pos += 2;
+					continue;
+				}
+				
+				if (tagEnd == INCOMPLETE)
+					break;
+				if (tagEnd == MALFORMED) {
+					recover();
+					continue;
+				}
+				
+				int tagStart = pos;
+				pos = tagEnd;
+				if (next == '/')
+					endElement(tagStart, tagEnd);
+				else
+					startElement(tagStart, tagEnd);
+			} else if (c == '&') {
+				int entityEnd = scanEntity(eof);
+				if (entityEnd == INCOMPLETE)
+					break;
+				pos = entityEnd;
+			} else if (c == '\07') {
+				java.awt.Toolkit.getDefaultToolkit().beep();
+				pos++;
+			} else {
+				int start = pos;
+				while (pos < end && (c = buf[pos]) != '<' && c != '&' && c != '\07')
+					pos++;
+				text.append(buf, start, pos - start);
+			}
+		}
+		
+		flushText();
+	}
+	
+	private void flushText ()
+	{
+		if (text.length() > 0) {
+			String characters = text.toString();
+			text.setLength(0);
+			handler.characters(characters);
+		}
+	}
+	
+	/*
+	 * Deliver text up to the next "<mode" in one run. Returns false when more
+	 * input is needed to tell whether the tail of the buffer starts a <mode tag.
+	 */
+	private boolean passThroughText (boolean eof)
+	{
+		int start = pos;
+		int limit = end - MODE_TAG.length;
+		for (int i = pos; i <= limit; i++) {
+			if (buf[i] == '<' && regionMatches(i, MODE_TAG)) {
+				text.append(buf, start, i - start);
+				pos = i;
+				state = DEFAULT;
+				return true;
+			}
+		}
+		
+		// hold back a trailing '<' that could be the start of "<mode"
+		int safe = end;
+		if (!eof) {
+			for (int i = Math.max(pos, limit + 1); i < end; i++) {
+				if (buf[i] == '<') {
+					safe = i;
+					break;
+				}
+			}
+		}
+		text.append(buf, start, safe - start);
+		pos = safe;
+		return false;
+	}
+	
+	private boolean regionMatches (int offset, char[] chars)
+	{
+		for (int i = 0; i < chars.length; i++) {
+			if (buf[offset + i] != chars[i])
+				return false;
+		}
+		return true;
+	}
+	
+	private int scanEntity (boolean eof)
+	{
+		int p = pos + 1;
+		if (p < end && buf[p] == '#')
+			p++;
+		int nameStart = p;
+		while (p < end && isLetterOrDigit(buf[p]))
+			p++;
+		
+		if (p == end && !eof)
+			return INCOMPLETE;
+		
+		if (p > nameStart && p < end && buf[p] == ';') {
+			text.append(entityValue(nameStart, p));
+			return p + 1;
+		}
+		
+		// a lone ampersand is just text
+		text.append('&');
+		return pos + 1;
+	}
+	
+	private String entityValue (int start, int stop)
+	{
+		if (buf[start - 1] == '#')
+			return "?";
+		
+		int length = stop - start;
+		if (length == 2 && buf[start + 1] == 't') {
+			if (buf[start] == 'g') return ">";
+			if (buf[start] == 'l') return "<";
+		} else if (length == 3 && buf[start] == 'a' && buf[start + 1] == 'm' && buf[start + 2] == 'p') {
+			return "&";
+		} else if (length == 4) {
+			String entity = new String(buf, start, length);
+			if (entity.equals("apos")) return "'";
+			if (entity.equals("quot")) return "\"";
+		}
+		return "?";
+	}
+	
+	/*
+	 * Scans "<name attr="value" ...>" or "/>" starting at the name. On success
+	 * tagName and attributes are filled in and the offset after the tag is
+	 * returned.
+	 */
+	private int scanStartTag (int p, boolean eof)
+	{
+		int nameEnd = scanName(p);
+		if (nameEnd == end)
+			return eof ? MALFORMED : INCOMPLETE;
+		
+		releaseAttributes();
+		tagName = names.get(buf, p, nameEnd - p);
+		p = nameEnd;
+		
+		while (true) {
+			p = skipWhitespace(p);
+			if (p == end)
+				return eof ? MALFORMED : INCOMPLETE;
+			
+			char c = buf[p];
+			if (c == '>') {
+				return p + 1;
+			} else if (c == '/') {
+				if (p + 1 == end)
+					return eof ? MALFORMED : INCOMPLETE;
+				if (buf[p + 1] != '>')
+					return MALFORMED;
+				emptyTag = true;
+				return p + 2;
+			} else if (isNameStart(c)) {
+				int attrNameEnd = scanName(p);
+				int afterName = skipWhitespace(attrNameEnd);
+				if (afterName == end)
+					return eof ? MALFORMED : INCOMPLETE;
+				
+				String attrName = names.get(buf, p, attrNameEnd - p);
+				if (buf[afterName] != '=') {
+					// the grammar uses the name as the value of a bare attribute
+					addAttribute(attrName).setValue(attrName);
+					p = attrNameEnd;
+					continue;
+				}
+				
+				int valueStart = skipWhitespace(afterName + 1);
+				if (valueStart == end)
+					return eof ? MALFORMED : INCOMPLETE;
+				int valueEnd = scanAttributeValue(valueStart, eof);
+				if (valueEnd < 0)
+					return valueEnd;
+				
+				// the value stays a slice of buf until a handler reads it
+				addAttribute(attrName).setValue(buf, valueStart + 1, valueEnd - valueStart - 2);
+				p = valueEnd;
+			} else {
+				return MALFORMED;
+			}
+		}
+	}
+	
+	/*
+	 * Attribute values follow the grammar's rule for unescaped quotes: after the
+	 * first closing quote the value keeps extending to later quotes as long as
+	 * no '=' or '>' appears in between, and the last such quote closes it.
+	 */
+	private int scanAttributeValue (int p, boolean eof)
+	{
+		char quote = buf[p];
+		if (quote != '"' && quote != '\'')
+			return MALFORMED;
+		
+		int i = p + 1;
+		while (i < end && buf[i] != quote)
+			i++;
+		if (i == end)
+			return eof ? MALFORMED : INCOMPLETE;
+		
+		int lastQuote = i;
+		for (i = lastQuote + 1; i < end; i++) {
+			char c = buf[i];
+			if (c == quote)
+				lastQuote = i;
+			else if (c == '=' || c == '>')
+				return lastQuote + 1;
+		}
+		return eof ? lastQuote + 1 : INCOMPLETE;
+	}
+	
+	private int scanEndTag (int p, boolean eof)
+	{
+		p = skipWhitespace(p);
+		if (p == end)
+			return eof ? MALFORMED : INCOMPLETE;
+		if (!isNameStart(buf[p]))
+			return MALFORMED;
+		
+		int nameEnd = scanName(p);
+		int close = skipWhitespace(nameEnd);
+		if (close == end)
+			return eof ? MALFORMED : INCOMPLETE;
+		if (buf[close] != '>')
+			return MALFORMED;
+		
+		tagName = names.get(buf, p, nameEnd - p);
+		return close + 1;
+	}
+	
+	private void startElement (int tagStart, int tagEnd)
+	{
+		flushText();
+		
+		String name = tagName;
+		boolean empty = emptyTag;
+		emptyTag = false;
+		
+		handler.startElement(name, attributes, rawXML(name, tagStart, tagEnd));
+		if (empty)
+			handler.endElement(name, null);
+	}
+	
+	private void endElement (int tagStart, int tagEnd)
+	{
+		flushText();
+		
+		String name = tagName;
+		handler.endElement(name, rawXML(name, tagStart, tagEnd));
+	}
+	
+	private String rawXML (String name, int tagStart, int tagEnd)
+	{
+		if (rawXMLFilter != null && !rawXMLFilter.needsRawXML(name))
+			return null;
+		return new String(buf, tagStart, tagEnd - tagStart);
+	}
+	
+	private StormFrontAttribute addAttribute (String name)
+	{
+		int index = attributes.size();
+		StormFrontAttribute attribute;
+		if (index < attributePool.size()) {
+			attribute = attributePool.get(index);
+		} else {
+			attribute = new StormFrontAttribute();
+			attributePool.add(attribute);
+		}
+		attribute.setName(name);
+		attributes.add(attribute);
+		return attribute;
+	}
+	
+	private void releaseAttributes ()
+	{
+		attributes.clear();
+		emptyTag = false;
+	}
+	
+	/*
+	 * Mirror the JavaCC lexer's recovery: drop the rest of the line.
+	 */
+	private void recover ()
+	{
+		System.err.println("Malformed tag: " + new String(buf, pos, Math.min(end - pos, 80)));
+		flushText();
+		while (pos < end && buf[pos] != '\n')
+			pos++;
+		if (pos < end)
+			pos++;
+	}
+	
+	private int scanName (int p)
+	{
+		p++;
+		while (p < end && isNameChar(buf[p]))
+			p++;
+		return p;
+	}
+	
+	private int skipWhitespace (int p)
+	{
+		while (p < end) {
+			char c = buf[p];
+			if (c != ' ' && c != '\t' && c != '\r' && c != '\n')
+				break;
+			p++;
+		}
+		return p;
+	}
+	
+	private static boolean isLetter (char c)
+	{
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+	
+	private static boolean isLetterOrDigit (char c)
+	{
+		return isLetter(c) || (c >= '0' && c <= '9');
+	}
+	
+	private static boolean isNameStart (char c)
+	{
+		return isLetter(c) || c == '_';
+	}
+	
+	private static boolean isNameChar (char c)
+	{
+		return isLetterOrDigit(c) || c == '.' || c == '-' || c == '_' || c == ':';
+	}
+	
+	/**
+	 * Maps a run of characters to its interned String without allocating once
+	 * the name has been seen. The protocol only uses a few hundred distinct
+	 * names, so past a fixed size new names are simply not remembered.
+	 */
+	static class NameTable {
+		private static final int CAPACITY = 1024;
+		private static final int MAX_ENTRIES = CAPACITY / 2;
+		
+		private String[] table = new String[CAPACITY];
+		private int size = 0;
+		
+		public String get (char[] chars, int start, int length)
+		{
+			int hash = 0;
+			for (int i = 0; i < length; i++)
+				hash = 31 * hash + chars[start + i];
+			
+			int index = (hash ^ (hash >>> 16)) & (CAPACITY - 1);
+			String entry;
+			while ((entry = table[index]) != null) {
+				if (matches(entry, chars, start, length))
+					return entry;
+				index = (index + 1) & (CAPACITY - 1);
+			}
+			
+			String name = new String(chars, start, length).intern();
+			if (size < MAX_ENTRIES) {
+				table[index] = name;
+				size++;
+			}
+			return name;
+		}
+		
+		private static boolean matches (String entry, char[] chars, int start, int length)
+		{
+			if (entry.length() != length)
+				return false;
+			for (int i = 0; i < length; i++) {
+				if (entry.charAt(i) != chars[start + i])
+					return false;
+			}
+			return true;
+		}
+	}
+}
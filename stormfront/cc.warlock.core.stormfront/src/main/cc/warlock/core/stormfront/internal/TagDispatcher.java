@@ -0,0 +1,295 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.stormfront.internal;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import cc.warlock.core.stormfront.IStormFrontTagHandler;
+import cc.warlock.core.stormfront.tags.BaseTagHandler;
+
+/**
+ * The open tag stack of the protocol handler, and the table that decides
+ * which tag handler gets each event.
+ * 
+ * A tag is handled by the innermost open handler that has a child handler
+ * for it, falling back to the top level handlers. Tag names are given small
+ * integer ids, and each chain of open handlers (a context) remembers what it
+ * resolved every tag id to, so repeated children such as the progress bars
+ * of a dialogData cost an array lookup instead of a walk of the stack.
+ * 
+ * A handler's children may depend on the attributes it was started with
+ * (see SettingsTagHandler), so a context forgets what it resolved each time
+ * its handler is opened again, and so do the contexts inside it, which may
+ * have resolved tags through it.
+ */
+public class TagDispatcher {
+
+	private static final IStormFrontTagHandler UNRESOLVED = new UnresolvedHandler();
+	
+	private Map<String, IStormFrontTagHandler> defaultHandlers;
+	private HashMap<String, Integer> tagIds = new HashMap<String, Integer>();
+	private Context root;
+	
+	// the open tags, innermost last
+	private int depth = 0;
+	private int[] ids = new int[16];
+	private String[] names = new String[16];
+	// the handler each open tag was dispatched to
+	private IStormFrontTagHandler[] handlers = new IStormFrontTagHandler[16];
+	// the context children of each open tag resolve in
+	private Context[] contexts = new Context[16];
+	// the nearest open tag at or below each position that has a handler, or -1
+	private int[] handled = new int[16];
+	
+	public TagDispatcher (Map<String, IStormFrontTagHandler> defaultHandlers)
+	{
+		this.defaultHandlers = defaultHandlers;
+		root = new Context(null, null);
+	}
+	
+	/**
+	 * Forget everything that was resolved. Call this when the top level
+	 * handlers change.
+	 */
+	public void reset ()
+	{
+		root = new Context(null, null);
+		for (int pos = 0; pos < depth; pos++) {
+			IStormFrontTagHandler child = childHandler(contextBelow(pos), ids[pos], names[pos]);
+			contexts[pos] = child != null ? contextBelow(pos).child(child) : contextBelow(pos);
+		}
+	}
+	
+	private int tagId (String name)
+	{
+		Integer id = tagIds.get(name);
+		if (id == null) {
+			id = tagIds.size();
+			tagIds.put(name, id);
+		}
+		return id;
+	}
+	
+	private Context contextBelow (int pos)
+	{
+		return pos == 0 ? root : contexts[pos - 1];
+	}
+	
+	private int find (int id)
+	{
+		for (int pos = 0; pos < depth; pos++) {
+			if (ids[pos] == id)
+				return pos;
+		}
+		return depth;
+	}
+	
+	/**
+	 * @return the handler for an event of the named tag with the current stack
+	 */
+	public IStormFrontTagHandler resolve (String name)
+	{
+		int id = tagId(name);
+		return contextBelow(find(id)).resolve(id, name);
+	}
+	
+	/**
+	 * Open a tag.
+	 * 
+	 * @return the handler for it
+	 */
+	public IStormFrontTagHandler push (String name)
+	{
+		int id = tagId(name);
+		int first = find(id);
+		IStormFrontTagHandler handler = first < depth ? handlers[first] : contextBelow(depth).resolve(id, name);
+		
+		if (depth == ids.length) {
+			int size = depth * 2;
+			ids = Arrays.copyOf(ids, size);
+			names = Arrays.copyOf(names, size);
+			handlers = Arrays.copyOf(handlers, size);
+			contexts = Arrays.copyOf(contexts, size);
+			handled = Arrays.copyOf(handled, size);
+		}
+		
+		Context below = contextBelow(depth);
+		IStormFrontTagHandler child = childHandler(below, id, name);
+		Context context = below;
+		if (child != null) {
+			context = below.child(child);
+			context.forget();
+		}
+		
+		ids[depth] = id;
+		names[depth] = name;
+		handlers[depth] = handler;
+		contexts[depth] = context;
+		handled[depth] = handler != null ? depth : (depth > 0 ? handled[depth - 1] : -1);
+		depth++;
+		
+		return handler;
+	}
+	
+	public void pop ()
+	{
+		depth--;
+		names[depth] = null;
+		handlers[depth] = null;
+		contexts[depth] = null;
+	}
+	
+	public int getDepth ()
+	{
+		return depth;
+	}
+	
+	public boolean isEmpty ()
+	{
+		return depth == 0;
+	}
+	
+	public String getTag (int pos)
+	{
+		return names[pos];
+	}
+	
+	public IStormFrontTagHandler getHandler (int pos)
+	{
+		return handlers[pos];
+	}
+	
+	/**
+	 * @return the position of the nearest open tag at or below pos that has
+	 *   a handler, or -1 if there is none
+	 */
+	public int getHandledBelow (int pos)
+	{
+		return pos < 0 ? -1 : handled[pos];
+	}
+	
+	private IStormFrontTagHandler childHandler (Context context, int id, String name)
+	{
+		if (context.handler == null)
+			return context.resolve(id, name);
+		return context.local(id, name);
+	}
+	
+	/**
+	 * A chain of open handlers, and what each tag resolves to within it
+	 */
+	private class Context {
+		IStormFrontTagHandler handler;
+		Context parent;
+		IdentityHashMap<IStormFrontTagHandler, Context> children;
+		IStormFrontTagHandler[] locals;
+		IStormFrontTagHandler[] resolved;
+		
+		Context (IStormFrontTagHandler handler, Context parent)
+		{
+			this.handler = handler;
+			this.parent = parent;
+		}
+		
+		Context child (IStormFrontTagHandler childHandler)
+		{
+			if (children == null)
+				children = new IdentityHashMap<IStormFrontTagHandler, Context>();
+			Context context = children.get(childHandler);
+			if (context == null) {
+				context = new Context(childHandler, this);
+				children.put(childHandler, context);
+			}
+			return context;
+		}
+		
+		void forget ()
+		{
+			if (locals != null)
+				Arrays.fill(locals, UNRESOLVED);
+			forgetResolved();
+		}
+		
+		private void forgetResolved ()
+		{
+			if (resolved != null)
+				Arrays.fill(resolved, UNRESOLVED);
+			if (children != null) {
+				for (Context child : children.values())
+					child.forgetResolved();
+			}
+		}
+		
+		// this handler's own child handler for the tag
+		IStormFrontTagHandler local (int id, String name)
+		{
+			locals = ensureCapacity(locals, id);
+			IStormFrontTagHandler local = locals[id];
+			if (local == UNRESOLVED) {
+				local = handler.getTagHandler(name);
+				locals[id] = local;
+			}
+			return local;
+		}
+		
+		// the handler of the innermost handler in the chain that has one for the tag
+		IStormFrontTagHandler resolve (int id, String name)
+		{
+			resolved = ensureCapacity(resolved, id);
+			IStormFrontTagHandler result = resolved[id];
+			if (result == UNRESOLVED) {
+				if (handler == null) {
+					result = defaultHandlers.get(name);
+				} else {
+					result = local(id, name);
+					if (result == null)
+						result = parent.resolve(id, name);
+				}
+				resolved[id] = result;
+			}
+			return result;
+		}
+		
+		private IStormFrontTagHandler[] ensureCapacity (IStormFrontTagHandler[] table, int id)
+		{
+			if (table != null && id < table.length)
+				return table;
+			
+			int size = Math.max(32, Integer.highestOneBit(Math.max(id, tagIds.size())) * 2);
+			IStormFrontTagHandler[] larger = new IStormFrontTagHandler[size];
+			Arrays.fill(larger, UNRESOLVED);
+			if (table != null)
+				System.arraycopy(table, 0, larger, 0, table.length);
+			return larger;
+		}
+	}
+	
+	private static class UnresolvedHandler extends BaseTagHandler {
+		@Override
+		public String[] getTagNames() {
+			return new String[0];
+		}
+	}
+}
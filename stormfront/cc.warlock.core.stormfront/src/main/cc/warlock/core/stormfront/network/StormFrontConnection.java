@@ -25,18 +25,18 @@
 package cc.warlock.core.stormfront.network;
 
 import java.io.IOException;
-import java.net.Socket;
-import java.util.ArrayList;
+import java.nio.CharBuffer;
 
 import cc.warlock.core.client.IWarlockClient;
 import cc.warlock.core.client.WarlockClientRegistry;
 import cc.warlock.core.client.internal.WarlockMonospace;
-import cc.warlock.core.network.IConnection;
+import cc.warlock.core.network.ChannelReader;
+import cc.warlock.core.network.Connection;
+import cc.warlock.core.network.EngineChannel;
 import cc.warlock.core.network.IConnectionListener;
 import cc.warlock.core.stormfront.client.IStormFrontClient;
-import cc.warlock.core.stormfront.internal.ParseException;
 import cc.warlock.core.stormfront.internal.StormFrontProtocolHandler;
-import cc.warlock.core.stormfront.internal.StormFrontProtocolParser;
+import cc.warlock.core.stormfront.internal.StormFrontTokenizer;
 
 /**
  * @author Sean Proctor
@@ -44,17 +44,14 @@ import cc.warlock.core.stormfront.internal.StormFrontProtocolParser;
  *
  * The Internal Storm Front protocol handler. Not meant to be instantiated outside of Warlock.
  */
-public class StormFrontConnection implements IConnection
+public class StormFrontConnection extends Connection
 {
 	protected StormFrontProtocolHandler handler;
 	private StormFrontReader reader;
-	private StormFrontProtocolParser parser;
+	private StormFrontTokenizer parser;
+	private ChannelReader channelReader = new ChannelReader();
 	protected IStormFrontClient client;
-	protected String key, host;
-	protected int port;
-	protected ArrayList<IConnectionListener> listeners = new ArrayList<IConnectionListener>();
-	protected Socket socket;
-	protected boolean connected = false;
+	protected String key;
 	
 	public StormFrontConnection (IStormFrontClient client, String key) {
 		this.client = client;
@@ -62,69 +59,86 @@ public class StormFrontConnection implements IConnection
 		this.handler = new StormFrontProtocolHandler(client);
 	}
 	
+	@Override
 	public void connect(String host, int port)
 	throws IOException {
-		this.host = host;
-		this.port = port;
+		super.connect(host, port);
 		
-		this.socket = new Socket(host, port);
-		connected = true;
-		new Thread(new SFParser()).start();
-	}
-	
-	public boolean isConnected() {
-		return connected;
-	}
-	
-	public void addConnectionListener(IConnectionListener listener) {
-		listeners.add(listener);
+		if (channel != null)
+			startParser();
 	}
 	
-	public void removeConnectionListener(IConnectionListener listener) {
-		listeners.remove(listener);
+	protected void startParser ()
+	{
+		new Thread(new SFParser(), "StormFront parser: " + host).start();
 	}
 	
+	@Override
 	public void disconnect() throws IOException {
 		sendLine("quit");
 	}
 	
-	public void send(byte[] bytes) throws IOException {
-		socket.getOutputStream().write(bytes);
-		for (IConnectionListener listener : listeners)
-		{
-			listener.dataSent(this, bytes.toString());
-		}
-	}
-	
-	public void send(String toSend) throws IOException {
-		socket.getOutputStream().write(toSend.getBytes());
-		for (IConnectionListener listener : listeners)
-		{
-			listener.dataSent(this, toSend);
-		}
-	}
-	
+	@Override
 	public void sendLine (String line)
 	throws IOException {
-		send ("<c>" + line + "\n");
+		synchronized (outbound) {
+			outbound.append("<c>");
+			outbound.append(line);
+			outbound.append("\n");
+			outbound.endCommand();
+		}
+		if (!connectionListeners.isEmpty())
+			listenersDataSent("<c>" + line + "\n");
 	}
 	
+	@Override
 	public IWarlockClient getClient() {
 		return client;
 	}
 	
 	public void dataReady (String line)
 	{
-		for (IConnectionListener listener : listeners)
-		{
-			listener.dataReady(this, line);
-		}
+		listenersGotData(line);
 	}
 	
 	public void passThrough() {
 		parser.passThrough();
 	}
 	
+	@Override
+	public void channelConnected(EngineChannel channel) {
+		// the key goes out before connect() has stored the channel
+		this.channel = channel;
+		connected = true;
+		try {
+			sendLine(key);
+			sendLine("/FE:STORMFRONT /VERSION:1.0.1.22 /XML");
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		listenersConnected();
+	}
+	
+	@Override
+	protected void dataReceived(CharBuffer data) {
+		channelReader.append(data);
+	}
+	
+	@Override
+	public void channelError(EngineChannel channel, IOException e) {
+		super.channelError(channel, e);
+		// a failed connect is never closed, so end the parser here
+		if (!connected)
+			channelReader.finish();
+	}
+	
+	@Override
+	public void channelClosed(EngineChannel channel) {
+		stopRecording();
+		// the parser thread reports the disconnect once it has consumed everything
+		channelReader.finish();
+	}
+	
 	protected void disconnected ()
 	{	
 		String message = 
@@ -135,7 +149,7 @@ public class StormFrontConnection implements IConnection
 		client.echo(message, WarlockMonospace.getInstance());
 		connected = false;
 		
-		for (IConnectionListener listener : listeners)
+		for (IConnectionListener listener : connectionListeners)
 		{
 			listener.disconnected(this);
 		}
@@ -145,40 +159,20 @@ public class StormFrontConnection implements IConnection
 	
 	class SFParser implements Runnable {
 		public void run() {
+			reader = new StormFrontReader(StormFrontConnection.this, channelReader);
+			parser = new StormFrontTokenizer(reader);
+			parser.setHandler(handler);
+			
 			try {
-				sendLine(key);
-				sendLine("/FE:STORMFRONT /VERSION:1.0.1.22 /XML");
-				
-				reader = new StormFrontReader(StormFrontConnection.this, socket.getInputStream());
-				parser = new StormFrontProtocolParser(reader);
-				parser.setHandler(handler);
-				
-				while(socket.isConnected()) {
-					try {
-						parser.Document();
-						break;
-					} catch (ParseException e) {
-						e.printStackTrace();
-						client.echo("\n*** Parse error ***\n");
-						parser.ReInit(reader);
-					}
-				}
-				
-				disconnected();
+				parser.parse();
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
+			
+			disconnected();
 		}
 	}
 
-	public String getHost() {
-		return host;
-	}
-
-	public int getPort() {
-		return port;
-	}
-
 	public String getKey() {
 		return key;
 	}
@@ -23,8 +23,7 @@ package cc.warlock.core.stormfront.network;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.CharBuffer;
 
 public class StormFrontReader extends BufferedReader {
@@ -32,9 +31,9 @@ public class StormFrontReader extends BufferedReader {
 	private StormFrontConnection connection;
 	private StringBuffer recentText = new StringBuffer();
 	
-	public StormFrontReader (StormFrontConnection connection, InputStream stream)
+	public StormFrontReader (StormFrontConnection connection, Reader in)
 	{
-		super(new InputStreamReader(stream));
+		super(in);
 		this.connection = connection;
 	}
 
@@ -0,0 +1,106 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.stormfront.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import cc.warlock.core.network.EngineChannel;
+import cc.warlock.core.network.SessionRecording;
+import cc.warlock.core.stormfront.client.IStormFrontClient;
+
+/**
+ * A StormFrontConnection that plays a session recording into its client
+ * instead of talking to a server, either as fast as the client can take it
+ * or with the pacing the session was recorded at. Anything the client sends
+ * is dropped.
+ */
+public class StormFrontReplayConnection extends StormFrontConnection
+{
+	protected File recording;
+	protected boolean originalPacing;
+	
+	public StormFrontReplayConnection (IStormFrontClient client, File recording, boolean originalPacing)
+	{
+		super(client, null);
+		this.recording = recording;
+		this.originalPacing = originalPacing;
+	}
+	
+	@Override
+	public void connect(String host, int port)
+	throws IOException {
+		this.host = host;
+		this.port = port;
+		
+		final SessionRecording session = new SessionRecording(recording);
+		startParser();
+		new Thread(new Runnable() {
+			public void run() {
+				replay(session);
+			}
+		}, "StormFront replay: " + recording.getName()).start();
+	}
+	
+	@Override
+	public void channelConnected(EngineChannel channel) {
+		// there's no server to log in to
+		connected = true;
+		listenersConnected();
+	}
+	
+	@Override
+	public void disconnect() throws IOException {
+		connected = false;
+	}
+	
+	@Override
+	protected void write(ByteBuffer buffer) throws IOException {
+		// nobody is listening
+	}
+	
+	protected void replay (SessionRecording session)
+	{
+		channelConnected(null);
+		
+		long start = System.currentTimeMillis();
+		try {
+			while (connected && session.next()) {
+				if (originalPacing) {
+					long delay = start + session.getTime() - System.currentTimeMillis();
+					if (delay > 0)
+						Thread.sleep(delay);
+				}
+				channelRead(null, session.getData());
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		} finally {
+			session.close();
+		}
+		
+		channelClosed(null);
+	}
+}
@@ -0,0 +1,194 @@
+/**
+ * Warlock, the open-source cross-platform game client
+ *  
+ * Copyright 2008, Warlock LLC, and individual contributors as indicated
+ * by the @authors tag. 
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package cc.warlock.core.stormfront.settings;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import cc.warlock.core.stormfront.xml.StormFrontDocument;
+
+/**
+ * Captures the server's &lt;settings&gt; document as it arrives, straight into
+ * a temporary file, so the parser thread only ever does buffered writes.
+ * 
+ * Once the capture is finished, process() parses it, compares its CRC to the
+ * saved copy and saves it if it changed, all on a background thread.
+ */
+public class ServerSettingsCapture {
+
+	private static ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Warlock server settings");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	
+	private File file;
+	private Writer writer;
+	
+	public ServerSettingsCapture ()
+	{
+		try {
+			file = File.createTempFile("serverSettings", ".xml");
+			file.deleteOnExit();
+			writer = new BufferedWriter(new FileWriter(file));
+		} catch (IOException e) {
+			e.printStackTrace();
+			discard();
+		}
+	}
+	
+	public void append (String text)
+	{
+		if (writer == null)
+			return;
+		
+		try {
+			writer.write(text);
+		} catch (IOException e) {
+			e.printStackTrace();
+			discard();
+		}
+	}
+	
+	/**
+	 * Stop capturing.
+	 * @return the captured document, or null if it couldn't be captured
+	 */
+	public File finish ()
+	{
+		if (writer == null)
+			return null;
+		
+		try {
+			writer.close();
+			writer = null;
+			return file;
+		} catch (IOException e) {
+			e.printStackTrace();
+			discard();
+			return null;
+		}
+	}
+	
+	public void discard ()
+	{
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			writer = null;
+		}
+		if (file != null) {
+			file.delete();
+			file = null;
+		}
+	}
+	
+	/**
+	 * Parse a finished capture and save it pretty-printed to settingsFile,
+	 * unless settingsFile already holds settings with the same CRC. The
+	 * capture is deleted afterwards. Runs on the settings thread.
+	 * 
+	 * @param done run on the settings thread once the settings are saved, may be null
+	 */
+	public static Future<?> process (final File capture, final File settingsFile, final Runnable done)
+	{
+		return executor.submit(new Runnable() {
+			public void run() {
+				try {
+					StormFrontDocument document = load(capture);
+					if (document == null || document.getRootElement() == null)
+						return;
+					
+					String crc = getCRC(document);
+					String savedCRC = getCRC(load(settingsFile));
+					if (crc == null || !crc.equals(savedCRC))
+						save(document, settingsFile);
+					
+					if (done != null)
+						done.run();
+				} catch (Throwable t) {
+					t.printStackTrace();
+				} finally {
+					capture.delete();
+				}
+			}
+		});
+	}
+	
+	private static String getCRC (StormFrontDocument document)
+	{
+		if (document == null || document.getRootElement() == null)
+			return null;
+		return document.getRootElement().attributeValue("crc");
+	}
+	
+	private static StormFrontDocument load (File file)
+	{
+		if (!file.exists() || file.length() == 0)
+			return null;
+		
+		try {
+			InputStream stream = new FileInputStream(file);
+			try {
+				StormFrontDocument document = new StormFrontDocument(stream);
+				return document.getRootElement() == null ? null : document;
+			} finally {
+				stream.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	private static void save (StormFrontDocument document, File settingsFile) throws IOException
+	{
+		// write next to the old settings and swap, so they're never half written
+		File temp = new File(settingsFile.getParentFile(), settingsFile.getName() + ".tmp");
+		Writer writer = new BufferedWriter(new FileWriter(temp));
+		try {
+			document.saveTo(writer, true);
+		} finally {
+			writer.close();
+		}
+		
+		if (!temp.renameTo(settingsFile)) {
+			settingsFile.delete();
+			if (!temp.renameTo(settingsFile))
+				throw new IOException("Couldn't replace " + settingsFile);
+		}
+	}
+}
@@ -41,6 +41,10 @@ abstract public class BaseTagHandler implements IStormFrontTagHandler {
 		return false;
 	}
 	
+	public boolean needsRawXML() {
+		return false;
+	}
+	
 	public String getCurrentTag() {
 		return currentTag;
 	}
@@ -27,6 +27,8 @@ public class CasttimeTagHandler extends DefaultTagHandler {
 
 	@Override
 	public void handleStart(StormFrontAttributeList attributes, String rawXML) {
-		handler.getClient().getTimer("casttime").setup(new Long(attributes.getValue("value")));
+		long value = attributes.getLong("value", -1);
+		if(value >= 0)
+			handler.getClient().getTimer("casttime").setup(value);
 	}
 }
@@ -22,7 +22,7 @@
 package cc.warlock.core.stormfront.tags;
 
 import cc.warlock.core.client.IWarlockStyle;
-import cc.warlock.core.client.internal.WarlockStyle;
+import cc.warlock.core.client.internal.StyleRegistry;
 import cc.warlock.core.stormfront.IStormFrontProtocolHandler;
 import cc.warlock.core.stormfront.xml.StormFrontAttributeList;
 
@@ -50,10 +50,11 @@ public class OutputTagHandler extends DefaultTagHandler {
 		String className = attributes.getValue("class");
 		
 		if (className != null) {
-			currentStyle = new WarlockStyle(className);
-		
+			StyleRegistry styles = handler.getClient().getStyleRegistry();
 			if(className.equals("mono"))
-				currentStyle.setMonospace(true);
+				currentStyle = styles.getMonospaceStyle(className);
+			else
+				currentStyle = styles.getStyle(className);
 			
 			handler.addStyle(currentStyle);
 		}
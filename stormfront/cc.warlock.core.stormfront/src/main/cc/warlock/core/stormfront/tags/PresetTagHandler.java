@@ -24,7 +24,6 @@ package cc.warlock.core.stormfront.tags;
 import java.util.Stack;
 
 import cc.warlock.core.client.IWarlockStyle;
-import cc.warlock.core.client.internal.WarlockStyle;
 import cc.warlock.core.stormfront.IStormFrontProtocolHandler;
 import cc.warlock.core.stormfront.xml.StormFrontAttributeList;
 
@@ -45,7 +44,7 @@ public class PresetTagHandler extends DefaultTagHandler {
 	@Override
 	public void handleStart(StormFrontAttributeList attributes, String rawXML) {
 		String id = attributes.getValue("id");
-		IWarlockStyle style = new WarlockStyle(id);
+		IWarlockStyle style = handler.getClient().getStyleRegistry().getStyle(id);
 
 		styles.push(style);
 		handler.addStyle(style);
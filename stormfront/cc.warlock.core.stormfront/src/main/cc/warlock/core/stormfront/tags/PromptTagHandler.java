@@ -51,9 +51,9 @@ public class PromptTagHandler extends DefaultTagHandler {
 		handler.clearStyles();
 		handler.clearStreams();
 		
-		String time = attributes.getValue("time");
-		if (time != null)
-			handler.getClient().syncTime(new Long(time));
+		long time = attributes.getLong("time", -1);
+		if (time >= 0)
+			handler.getClient().syncTime(time);
 	}
 	
 	@Override
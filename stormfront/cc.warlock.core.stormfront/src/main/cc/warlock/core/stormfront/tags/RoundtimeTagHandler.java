@@ -50,9 +50,9 @@ public class RoundtimeTagHandler extends DefaultTagHandler {
 	
 	@Override
 	public void handleStart(StormFrontAttributeList attributes, String rawXML) {
-		String value = attributes.getValue("value");
-		if(value != null)
-			handler.getClient().getTimer("roundtime").setup(new Long(value));
+		long value = attributes.getLong("value", -1);
+		if(value >= 0)
+			handler.getClient().getTimer("roundtime").setup(value);
 	}
 
 }
@@ -21,14 +21,17 @@
  */
 package cc.warlock.core.stormfront.tags;
 
+import java.io.File;
+
 import cc.warlock.core.stormfront.IStormFrontProtocolHandler;
 import cc.warlock.core.stormfront.IStormFrontTagHandler;
+import cc.warlock.core.stormfront.settings.ServerSettingsCapture;
 import cc.warlock.core.stormfront.xml.StormFrontAttributeList;
 
 
 public class SettingsTagHandler extends DefaultTagHandler {
 
-	private StringBuffer buffer = new StringBuffer();
+	private ServerSettingsCapture capture = null;
 	private String clientVersion = null;
 	private IStormFrontTagHandler subElements;
 	private NullTagHandler nullHandler = new NullTagHandler();
@@ -64,8 +67,10 @@ public class SettingsTagHandler extends DefaultTagHandler {
 		if(clientVersion != null && !clientVersion.equals("1.0.1.25"))
 			return;
 		
-		buffer.setLength(0);
-		buffer.append(rawXML);
+		if(capture != null)
+			capture.discard();
+		capture = new ServerSettingsCapture();
+		capture.append(rawXML);
 		
 		handler.getClient().startedDownloadingServerSettings();
 	}
@@ -75,9 +80,14 @@ public class SettingsTagHandler extends DefaultTagHandler {
 		if(clientVersion != null && !clientVersion.equals("1.0.1.25"))
 			return;
 		
-		buffer.append(rawXML);
+		if(capture == null)
+			return;
 		
-		handler.getClient().finishedDownloadingServerSettings(buffer.toString());
+		capture.append(rawXML);
+		File file = capture.finish();
+		capture = null;
+		if(file != null)
+			handler.getClient().finishedDownloadingServerSettings(file);
 	}
 	
 	@Override
@@ -85,12 +95,18 @@ public class SettingsTagHandler extends DefaultTagHandler {
 		if(clientVersion != null && !clientVersion.equals("1.0.1.25"))
 			return true;
 		
-		buffer.append(characters);
+		append(characters);
 		return true;
 	}
 	
 	public void append(String text) {
-		buffer.append(text);
+		if(capture != null)
+			capture.append(text);
+	}
+	
+	@Override
+	public boolean needsRawXML() {
+		return true;
 	}
 	
 	@Override
@@ -28,7 +28,6 @@
 package cc.warlock.core.stormfront.tags;
 
 import cc.warlock.core.client.IWarlockStyle;
-import cc.warlock.core.client.internal.WarlockStyle;
 import cc.warlock.core.stormfront.IStormFrontProtocolHandler;
 import cc.warlock.core.stormfront.xml.StormFrontAttributeList;
 
@@ -64,8 +63,7 @@ public class StyleTagHandler extends DefaultTagHandler {
 		
 		if (styleId != null && styleId.length() > 0)
 		{
-			IWarlockStyle style = new WarlockStyle(styleId);
-			currentStyle = style;
+			currentStyle = handler.getClient().getStyleRegistry().getStyle(styleId);
 			handler.addStyle(currentStyle);
 		}
 	}
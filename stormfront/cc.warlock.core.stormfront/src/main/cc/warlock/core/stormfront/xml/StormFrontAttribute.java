@@ -27,12 +27,18 @@ public class StormFrontAttribute {
 
 	protected String name;
 	protected String value;
+	
+	// the parser hands values over as a slice of its buffer, which is only
+	// turned into a String when someone asks for it
+	private char[] source;
+	private int offset, length;
+	private String unescaped;
 
 	public StormFrontAttribute () { }
 	public StormFrontAttribute (StormFrontAttribute other)
 	{
-		this.name = new String(other.name);
-		this.value = other.value == null ? null :new String(other.value);
+		this.name = other.name;
+		this.value = other.getRawValue();
 	}
 	
 	public String getName() {
@@ -44,16 +50,88 @@ public class StormFrontAttribute {
 	}
 
 	public String getValue() {
-		return StringEscapeUtils.unescapeXml(value);
+		if (unescaped == null) {
+			String raw = getRawValue();
+			if (raw != null)
+				unescaped = raw.indexOf('&') < 0 ? raw : StringEscapeUtils.unescapeXml(raw);
+		}
+		return unescaped;
 	}
 
 	public void setValue(String value) {
 		this.value = value;
+		this.source = null;
+		this.unescaped = null;
+	}
+	
+	/**
+	 * Set the value to a slice of a buffer. The buffer must not change until
+	 * the value is read or the attribute is reused.
+	 */
+	public void setValue(char[] source, int offset, int length) {
+		this.value = null;
+		this.source = source;
+		this.offset = offset;
+		this.length = length;
+		this.unescaped = null;
+	}
+	
+	/**
+	 * @return the value as it appeared in the tag, with entities left escaped
+	 */
+	public String getRawValue() {
+		if (value == null && source != null) {
+			value = new String(source, offset, length);
+			source = null;
+		}
+		return value;
+	}
+	
+	public int getInt(int defaultValue) {
+		long result = getLong(defaultValue);
+		if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE)
+			return defaultValue;
+		return (int)result;
+	}
+	
+	/**
+	 * Parse the value as a decimal number without making a String of it.
+	 * 
+	 * @return the number, or defaultValue if there is no value or it isn't a number
+	 */
+	public long getLong(long defaultValue) {
+		int length = source != null ? this.length : (value != null ? value.length() : 0);
+		if (length == 0 || length > 19)
+			return defaultValue;
+		
+		int i = 0;
+		boolean negative = false;
+		char c = charAt(0);
+		if (c == '-' || c == '+') {
+			negative = c == '-';
+			if (++i == length)
+				return defaultValue;
+		}
+		
+		long result = 0;
+		for (; i < length; i++) {
+			c = charAt(i);
+			if (c < '0' || c > '9')
+				return defaultValue;
+			result = result * 10 + (c - '0');
+			if (result < 0)
+				return defaultValue;
+		}
+		return negative ? -result : result;
+	}
+	
+	private char charAt(int index) {
+		return source != null ? source[offset + index] : value.charAt(index);
 	}
 	
 	@Override
 	public String toString() {
-		return name + "=\"" + value + "\"";
+		return name + "=\"" + getRawValue() + "\"";
 	}
 	
 }
@@ -22,7 +22,17 @@
 package cc.warlock.core.stormfront.xml;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
+/**
+ * The attributes of a tag. Lookups by name go through a small open-addressed
+ * index that is rebuilt the first time the list is searched after it
+ * changes. Names from the parser are interned, so most probes are an
+ * identity check.
+ * 
+ * The parser reuses one list and its attributes for every tag; copy anything
+ * that needs to outlive the handler call.
+ */
 public class StormFrontAttributeList extends ArrayList<StormFrontAttribute> {
 
 	/**
@@ -30,15 +40,55 @@ public class StormFrontAttributeList extends ArrayList<StormFrontAttribute> {
 	 */
 	private static final long serialVersionUID = -2384442199925800758L;
 	
+	private transient StormFrontAttribute[] index;
+	private transient int indexedModCount = -1;
+	
 	public StormFrontAttribute getAttribute(String attributeName)
 	{
-		for (StormFrontAttribute attribute : this) {
-			if (attribute.getName().equals(attributeName))
-				return attribute;
+		if (indexedModCount != modCount)
+			buildIndex();
+		
+		int mask = index.length - 1;
+		for (int slot = attributeName.hashCode() & mask; index[slot] != null; slot = (slot + 1) & mask) {
+			String name = index[slot].getName();
+			if (name == attributeName || attributeName.equals(name))
+				return index[slot];
 		}
 		return null;
 	}
 	
+	private void buildIndex ()
+	{
+		int capacity = 8;
+		while (capacity < size() * 2)
+			capacity <<= 1;
+		if (index == null || index.length < capacity)
+			index = new StormFrontAttribute[capacity];
+		else
+			Arrays.fill(index, null);
+		
+		int mask = index.length - 1;
+		for (StormFrontAttribute attribute : this) {
+			String name = attribute.getName();
+			if (name == null)
+				continue;
+			
+			int slot = name.hashCode() & mask;
+			while (index[slot] != null && !name.equals(index[slot].getName()))
+				slot = (slot + 1) & mask;
+			// the first attribute with a name wins, as with a linear search
+			if (index[slot] == null)
+				index[slot] = attribute;
+		}
+		indexedModCount = modCount;
+	}
+	
+	@Override
+	public StormFrontAttribute set(int index, StormFrontAttribute element) {
+		indexedModCount = -1;
+		return super.set(index, element);
+	}
+	
 	public String getValue (String attributeName)
 	{
 		StormFrontAttribute attr = getAttribute(attributeName);
@@ -46,4 +96,20 @@ public class StormFrontAttributeList extends ArrayList<StormFrontAttribute> {
 			return attr.getValue();
 		return null;
 	}
+	
+	public int getInt (String attributeName, int defaultValue)
+	{
+		StormFrontAttribute attr = getAttribute(attributeName);
+		if (attr != null)
+			return attr.getInt(defaultValue);
+		return defaultValue;
+	}
+	
+	public long getLong (String attributeName, long defaultValue)
+	{
+		StormFrontAttribute attr = getAttribute(attributeName);
+		if (attr != null)
+			return attr.getLong(defaultValue);
+		return defaultValue;
+	}
 }
@@ -23,14 +23,14 @@ package cc.warlock.core.stormfront.xml;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Writer;
 import java.util.EmptyStackException;
 import java.util.Stack;
 
-import cc.warlock.core.stormfront.internal.ParseException;
-import cc.warlock.core.stormfront.internal.StormFrontProtocolParser;
+import cc.warlock.core.stormfront.internal.StormFrontTokenizer;
 
-public class StormFrontDocument implements IStormFrontXMLHandler {
+public class StormFrontDocument implements IStormFrontRawXMLFilter {
 
 	protected Stack<StormFrontElement> elementStack = new Stack<StormFrontElement>();
 	protected StormFrontElement rootElement;
@@ -41,12 +41,12 @@ public class StormFrontDocument implements IStormFrontXMLHandler {
 	
 	public StormFrontDocument (InputStream stream)
 	{
-		StormFrontProtocolParser parser = new StormFrontProtocolParser(stream);
+		StormFrontTokenizer parser = new StormFrontTokenizer(new InputStreamReader(stream));
 		parser.setHandler(this);
 		
 		try {
-			parser.Document();
-		} catch (ParseException e) {
+			parser.parse();
+		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
@@ -54,9 +54,10 @@ public class StormFrontDocument implements IStormFrontXMLHandler {
 	
 	public void startElement(String name, StormFrontAttributeList attributes, String rawXML) {
 		StormFrontElement currentElement = new StormFrontElement(name);
+		// the parser reuses its attribute objects, so keep copies
 		for (StormFrontAttribute attribute : attributes)
 		{
-			currentElement.addAttribute(attribute);
+			currentElement.addAttribute(new StormFrontAttribute(attribute));
 		}
 		
 		if (rootElement == null)
@@ -74,6 +75,10 @@ public class StormFrontDocument implements IStormFrontXMLHandler {
 		elementStack.push(currentElement);
 	}
 	
+	public boolean needsRawXML(String name) {
+		return false;
+	}
+	
 	public void characters(String characters) {
 		// Check if there is an element to apply this to, 
 		//   if not it's probably outside the root element so we ignore it.
@@ -24,6 +24,8 @@ package cc.warlock.rcp.stormfront.ui;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.viewers.DecorationOverlayIcon;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.layout.GridData;
@@ -44,7 +46,7 @@ import cc.warlock.core.settings.IWarlockSettingListener;
 import cc.warlock.rcp.ui.client.SWTPropertyListener;
 import cc.warlock.rcp.ui.client.SWTWarlockClientListener;
 import cc.warlock.rcp.ui.client.SWTWarlockClientViewerListener;
-import cc.warlock.rcp.util.ColorUtil;
+import cc.warlock.rcp.util.ResourceCache;
 import cc.warlock.rcp.views.GameView;
 
 public class StormFrontStatus extends Composite {
@@ -107,11 +109,18 @@ public class StormFrontStatus extends Composite {
 		}
 	});
 	private IWarlockSettingListener settingListener;
+	private ResourceCache.Holder resources;
 	
 	public StormFrontStatus (Composite parent, GameView viewer) {
 		super(parent, SWT.BORDER);
 		
 		this.viewer = viewer;
+		resources = new ResourceCache.Holder(getDisplay());
+		addDisposeListener(new DisposeListener() {
+			public void widgetDisposed(DisposeEvent e) {
+				resources.dispose();
+			}
+		});
 		
 		GridLayout layout = new GridLayout(statusLabels.length, false);
 		layout.horizontalSpacing = 0;
@@ -128,7 +137,7 @@ public class StormFrontStatus extends Composite {
 			statusLabels[i].setLayoutData(data);
 		}
 		
-		setColors(new Color(getDisplay(), 240, 240, 255), new Color(getDisplay(), 25, 25, 50));
+		setColors(resources.getColor(240, 240, 255), resources.getColor(25, 25, 50));
 		
 		viewer.addClientViewerListener(viewerListener);
 	}
@@ -217,16 +226,16 @@ public class StormFrontStatus extends Composite {
 			statusLabels[i].setForeground(fg);
 			statusLabels[i].setBackground(bg);
 		}
-		statusLabels[4].setForeground(new Color(getDisplay(), 225, 50, 50));
+		statusLabels[4].setForeground(resources.getColor(225, 50, 50));
 		statusLabels[4].setBackground(bg);
-		statusLabels[5].setForeground(new Color(getDisplay(), 50, 50, 225));
+		statusLabels[5].setForeground(resources.getColor(50, 50, 225));
 		statusLabels[5].setBackground(bg);
 	}
 	
 	private void loadSettings (IClientSettings settings) {
 		WindowConfigurationProvider provider = WindowConfigurationProvider.getProvider(settings);
-		Color bg = ColorUtil.warlockColorToColor(provider.getDefaultBackground());
-		Color fg = ColorUtil.warlockColorToColor(provider.getDefaultForeground());
+		Color bg = resources.getColor("background", provider.getDefaultBackground());
+		Color fg = resources.getColor("foreground", provider.getDefaultForeground());
 		
 		setColors(fg, bg);
 		
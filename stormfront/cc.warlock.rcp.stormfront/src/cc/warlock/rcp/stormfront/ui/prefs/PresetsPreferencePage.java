@@ -39,7 +39,6 @@ import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.StyleRange;
 import org.eclipse.swt.custom.StyledText;
 import org.eclipse.swt.graphics.Color;
-import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.graphics.FontData;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.RGB;
@@ -64,6 +63,7 @@ import cc.warlock.core.settings.IWindowSettings;
 import cc.warlock.rcp.prefs.PreferencePageUtils;
 import cc.warlock.rcp.util.ColorUtil;
 import cc.warlock.rcp.util.FontSelector;
+import cc.warlock.rcp.util.ResourceCache;
 
 /**
  * 
@@ -84,6 +84,7 @@ public class PresetsPreferencePage extends PreferencePageUtils implements
 	private ColorSelector bgSelector, fgSelector;
 	private StyledText preview;
 	private TableViewer stylesTable;
+	private ResourceCache.Holder resources;
 	
 	private static String roomNamePreview = "[Riverhaven, Crescent Way]";
 	private static String boldPreview = "You also see a Sir Robyn.";
@@ -133,6 +134,7 @@ public class PresetsPreferencePage extends PreferencePageUtils implements
 	@Override
 	protected Control createContents(Composite parent) {
 		createProfileDropDown(parent);
+		resources = new ResourceCache.Holder(parent.getDisplay());
 		
 		Composite main = new Composite (parent, SWT.NONE);
 		main.setLayout(new GridLayout(3, false));
@@ -191,7 +193,7 @@ public class PresetsPreferencePage extends PreferencePageUtils implements
 		columnFontSelector.setFontData(getDefaultColumnFont());
 
 		stylesTable.setInput(styles.values());
-		stylesTable.getTable().setBackground(new Color(getShell().getDisplay(), getColor(mainBGSelector)));
+		stylesTable.getTable().setBackground(resources.getColor("tableBackground", getColor(mainBGSelector)));
 	}
 	
 	protected Color getWorkingBackgroundColor (IWarlockStyle style)
@@ -210,7 +212,7 @@ public class PresetsPreferencePage extends PreferencePageUtils implements
 			color = ColorUtil.rgbToWarlockColor(mainBGSelector.getColorValue());
 		}
 		
-		return ColorUtil.warlockColorToColor(color);
+		return resources.getColor(color);
 	}
 	
 	protected Color getWorkingForegroundColor (IWarlockStyle style)
@@ -229,7 +231,7 @@ public class PresetsPreferencePage extends PreferencePageUtils implements
 			color = ColorUtil.rgbToWarlockColor(mainFGSelector.getColorValue());
 		}
 		
-		return ColorUtil.warlockColorToColor(color);
+		return resources.getColor(color);
 	}
 	
 	protected class PresetsLabelProvider implements ITableLabelProvider, ITableColorProvider
@@ -492,15 +494,16 @@ public class PresetsPreferencePage extends PreferencePageUtils implements
 	
 	private void updatePreview ()
 	{
-		Color mainBG = new Color(getShell().getDisplay(), mainBGSelector.getColorValue());
-		Color mainFG = new Color(getShell().getDisplay(), mainFGSelector.getColorValue());
+		Color mainBG = resources.getColor("background", mainBGSelector.getColorValue());
+		Color mainFG = resources.getColor("foreground", mainFGSelector.getColorValue());
 		
 		stylesTable.getTable().setBackground(mainBG);
+		resources.release("tableBackground");
 		stylesTable.setInput(styles.values());
 		
 		preview.setBackground(mainBG);
 		preview.setForeground(mainFG);
-		preview.setFont(new Font(getShell().getDisplay(), mainFontSelector.getFontData()));
+		preview.setFont(resources.getFont("font", new FontData[] { mainFontSelector.getFontData() }));
 		
 		updatePresetColors(PresetStyleConfigurationProvider.PRESET_ROOM_NAME, roomNameStyleRange);
 		updatePresetColors(PresetStyleConfigurationProvider.PRESET_BOLD, boldStyleRange);
@@ -514,13 +517,20 @@ public class PresetsPreferencePage extends PreferencePageUtils implements
 		
 		columnStyleRange.background = mainBG;
 		columnStyleRange.foreground = mainFG;
-		columnStyleRange.font = new Font(getShell().getDisplay(), columnFontSelector.getFontData());
+		columnStyleRange.font = resources.getFont("columnFont", new FontData[] { columnFontSelector.getFontData() });
 		
 		preview.setStyleRanges(new StyleRange[] { roomNameStyleRange, boldStyleRange, commandStyleRange, speechStyleRange, whisperStyleRange, thoughtStyleRange, columnStyleRange });
 		preview.update();
 		
 	}
 	
+	@Override
+	public void dispose() {
+		if (resources != null)
+			resources.dispose();
+		super.dispose();
+	}
+	
 	@Override
 	public boolean performOk() {
 		
@@ -161,6 +161,10 @@ public class LoginUtil {
 				MessageDialog.openError(Display.getDefault().getActiveShell(), "Error connecting to SGE", 
 					"There was an error connecting to SGE: The server: \"eaccess.play.net\" was returned as unknown by your DNS.");
 			} break;
+			case ConnectionFailed: {
+				MessageDialog.openError(Display.getDefault().getActiveShell(), "Error connecting to SGE", 
+					"The connection to eaccess.play.net failed. This could be caused by a network problem or a server outage.");
+			} break;
 			default: break;
 		}
 	}
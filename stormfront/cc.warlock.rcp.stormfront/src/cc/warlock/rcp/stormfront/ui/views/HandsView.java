@@ -28,6 +28,7 @@ import org.eclipse.swt.events.PaintEvent;
 import org.eclipse.swt.events.PaintListener;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.RGB;
 import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.layout.FillLayout;
 import org.eclipse.swt.layout.GridData;
@@ -44,7 +45,7 @@ import cc.warlock.core.settings.IWarlockSetting;
 import cc.warlock.core.settings.IWarlockSettingListener;
 import cc.warlock.rcp.stormfront.ui.StormFrontSharedImages;
 import cc.warlock.rcp.ui.client.SWTPropertyListener;
-import cc.warlock.rcp.util.ColorUtil;
+import cc.warlock.rcp.util.ResourceCache;
 import cc.warlock.rcp.views.GameView;
 import cc.warlock.rcp.views.IGameViewFocusListener;
 
@@ -57,6 +58,7 @@ public class HandsView extends ViewPart
 	protected IWarlockClient activeClient;
 	protected ArrayList<IWarlockClient> clients = new ArrayList<IWarlockClient>();
 	private IWarlockSettingListener settingListener;
+	private ResourceCache.Holder resources;
 	
 	public HandsView () {
 		_instance = this;
@@ -73,16 +75,19 @@ public class HandsView extends ViewPart
 		protected String text;
 		protected Image image;
 		protected Color background, foreground, gradientColor;
+		// the gradient follows the background, so it's held under its own role
+		protected String gradientRole;
 		
-		public GradientInfo (Composite parent, Image image)
+		public GradientInfo (Composite parent, Image image, String name)
 		{
 			super(parent, SWT.NONE);
 			
 			this.image = image;
+			this.gradientRole = name + "Gradient";
 			
 			addPaintListener(this);
-			this.foreground = new Color(getDisplay(), 255, 255, 255);
-			this.background = new Color(getDisplay(), 0, 0, 0);
+			this.foreground = resources.getColor(255, 255, 255);
+			this.background = resources.getColor(0, 0, 0);
 			this.gradientColor = getGradientColor(50, true);
 		}
 		
@@ -104,7 +109,7 @@ public class HandsView extends ViewPart
 				blue = background.getRed() > factor ? background.getRed() - factor : 0;
 			}
 			
-			return new Color(getShell().getDisplay(), red, green, blue);
+			return resources.getColor(gradientRole, new RGB(red, green, blue));
 		}
 		
 		@Override
@@ -146,6 +151,7 @@ public class HandsView extends ViewPart
 	
 	@Override
 	public void createPartControl(Composite parent) {
+		resources = new ResourceCache.Holder(parent.getDisplay());
 		parent.setLayout(new FillLayout());
 		parent.setLayoutData(new GridData(GridData.FILL, GridData.FILL, true, true));
 		
@@ -158,26 +164,33 @@ public class HandsView extends ViewPart
 		main.setLayout(layout);
 		main.setLayoutData(new GridData(GridData.FILL, GridData.FILL, true, true));
 		
-		leftHandInfo = new GradientInfo(main, StormFrontSharedImages.getImage(StormFrontSharedImages.IMG_LEFT_HAND_SMALL));
+		leftHandInfo = new GradientInfo(main, StormFrontSharedImages.getImage(StormFrontSharedImages.IMG_LEFT_HAND_SMALL), "leftHand");
 		
-		leftHandInfo.setForeground(new Color(main.getDisplay(), 240, 240, 255));
-		leftHandInfo.setBackground(new Color(main.getDisplay(), 25, 25, 50));
+		leftHandInfo.setForeground(resources.getColor(240, 240, 255));
+		leftHandInfo.setBackground(resources.getColor(25, 25, 50));
 		leftHandInfo.setLayoutData(new GridData(GridData.FILL, GridData.FILL, true, true));
 		
-		rightHandInfo = new GradientInfo(main, StormFrontSharedImages.getImage(StormFrontSharedImages.IMG_RIGHT_HAND_SMALL));
+		rightHandInfo = new GradientInfo(main, StormFrontSharedImages.getImage(StormFrontSharedImages.IMG_RIGHT_HAND_SMALL), "rightHand");
 			
-		rightHandInfo.setForeground(new Color(main.getDisplay(), 240, 240, 255));
-		rightHandInfo.setBackground(new Color(main.getDisplay(), 25, 25, 50));
+		rightHandInfo.setForeground(resources.getColor(240, 240, 255));
+		rightHandInfo.setBackground(resources.getColor(25, 25, 50));
 		rightHandInfo.setLayoutData(new GridData(GridData.FILL, GridData.FILL, true, true));
 		
-		spellInfo = new GradientInfo(main, StormFrontSharedImages.getImage(StormFrontSharedImages.IMG_SPELL_HAND_SMALL));
+		spellInfo = new GradientInfo(main, StormFrontSharedImages.getImage(StormFrontSharedImages.IMG_SPELL_HAND_SMALL), "spell");
 			
-		spellInfo.setForeground(new Color(main.getDisplay(), 240, 240, 255));
-		spellInfo.setBackground(new Color(main.getDisplay(), 25, 25, 50));
+		spellInfo.setForeground(resources.getColor(240, 240, 255));
+		spellInfo.setBackground(resources.getColor(25, 25, 50));
 		spellInfo.setLayoutData(new GridData(GridData.FILL, GridData.FILL, true, true));
 		clear();
 	}
 	
+	@Override
+	public void dispose() {
+		if (resources != null)
+			resources.dispose();
+		super.dispose();
+	}
+	
 	@Override
 	public void setFocus() {
 		// TODO Auto-generated method stub
@@ -227,8 +240,8 @@ public class HandsView extends ViewPart
 			return;
 		
 		WindowConfigurationProvider provider = WindowConfigurationProvider.getProvider(settings);
-		Color bg = ColorUtil.warlockColorToColor(provider.getDefaultBackground());
-		Color fg = ColorUtil.warlockColorToColor(provider.getDefaultForeground());
+		Color bg = resources.getColor("background", provider.getDefaultBackground());
+		Color fg = resources.getColor("foreground", provider.getDefaultForeground());
 		
 		setColors(fg, bg);
 		